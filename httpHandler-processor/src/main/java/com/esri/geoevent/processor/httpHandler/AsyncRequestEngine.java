@@ -0,0 +1,189 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+
+import com.esri.ges.framework.i18n.BundleLogger;
+import com.esri.ges.framework.i18n.BundleLoggerFactory;
+
+/**
+ * Non-blocking request engine. Requests are multiplexed over a small number of NIO selector threads, so the
+ * number of requests in flight is limited by <code>maxInFlight</code> rather than by a thread per request.
+ * The in-flight limit is also the backpressure: {@link #execute} blocks the caller once it is reached.
+ */
+public class AsyncRequestEngine
+{
+  private static final BundleLogger LOGGER = BundleLoggerFactory.getLogger(AsyncRequestEngine.class);
+
+  /**
+   * Receives the outcome of a request. Called on a selector thread, so implementations must hand any real
+   * work off to another thread. The response entity has already been buffered when this is called.
+   */
+  public interface ResponseListener
+  {
+    void completed(HttpRequestBase request, HttpResponse response);
+
+    void failed(HttpRequestBase request, Exception error);
+  }
+
+  private final String                   name;
+  private final int                      ioThreads;
+  private final int                      maxInFlight;
+  private final int                      timeout;
+  private final Semaphore                inFlight;
+  private final CloseableHttpAsyncClient client;
+
+  private final AtomicLong               completedCount = new AtomicLong();
+  private final AtomicLong               failedCount    = new AtomicLong();
+
+  public AsyncRequestEngine(String name, int ioThreads, int maxInFlight, int timeout)
+  {
+    this.name = name;
+    this.ioThreads = Math.max(1, ioThreads);
+    this.maxInFlight = Math.max(1, maxInFlight);
+    this.timeout = timeout;
+    this.inFlight = new Semaphore(this.maxInFlight);
+
+    IOReactorConfig reactorConfig = IOReactorConfig.custom().setIoThreadCount(this.ioThreads).setConnectTimeout(timeout).setSoTimeout(timeout).setSoKeepAlive(true).build();
+    RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(timeout).setSocketTimeout(timeout).setConnectionRequestTimeout(timeout).build();
+    client = HttpAsyncClients.custom().setDefaultIOReactorConfig(reactorConfig).setDefaultRequestConfig(requestConfig).setMaxConnTotal(this.maxInFlight).setMaxConnPerRoute(this.maxInFlight).setThreadFactory(new ThreadFactory()
+      {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r)
+        {
+          Thread thread = new Thread(r, AsyncRequestEngine.this.name + "-io-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      }).build();
+    client.start();
+  }
+
+  public boolean hasSameConfiguration(int ioThreads, int maxInFlight, int timeout)
+  {
+    return this.ioThreads == Math.max(1, ioThreads) && this.maxInFlight == Math.max(1, maxInFlight) && this.timeout == timeout;
+  }
+
+  /**
+   * Starts the request and returns as soon as it has been handed to the selector threads, or blocks while
+   * <code>maxInFlight</code> requests are outstanding.
+   */
+  public void execute(final HttpRequestBase request, final ResponseListener listener)
+  {
+    try
+    {
+      inFlight.acquire();
+    }
+    catch (InterruptedException e)
+    {
+      // the listener still has to hear of the request, or its coalesced waiters and cache refresh are never
+      // released
+      Thread.currentThread().interrupt();
+      failedCount.incrementAndGet();
+      listener.failed(request, e);
+      return;
+    }
+    try
+    {
+      client.execute(request, new FutureCallback<HttpResponse>()
+        {
+          @Override
+          public void completed(HttpResponse response)
+          {
+            completedCount.incrementAndGet();
+            release();
+            listener.completed(request, response);
+          }
+
+          @Override
+          public void failed(Exception error)
+          {
+            failedCount.incrementAndGet();
+            release();
+            listener.failed(request, error);
+          }
+
+          @Override
+          public void cancelled()
+          {
+            failedCount.incrementAndGet();
+            release();
+            listener.failed(request, new CancellationException("Request cancelled"));
+          }
+        });
+    }
+    catch (RuntimeException e)
+    {
+      // the client is no longer running
+      release();
+      failedCount.incrementAndGet();
+      listener.failed(request, e);
+    }
+  }
+
+  private void release()
+  {
+    inFlight.release();
+  }
+
+  public int getInFlightCount()
+  {
+    return maxInFlight - inFlight.availablePermits();
+  }
+
+  public void shutdown()
+  {
+    try
+    {
+      client.close();
+    }
+    catch (IOException e)
+    {
+      LOGGER.debug("Error closing " + name + ": " + e.getMessage());
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return "asyncEngine[ioThreads=" + ioThreads + ", inFlight=" + getInFlightCount() + "/" + maxInFlight + ", completed=" + completedCount.get() + ", failed=" + failedCount.get() + "]";
+  }
+}
@@ -0,0 +1,216 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads RFC 4180 delimited text one record at a time. Fields may be quoted, in which case they can hold
+ * separators, line breaks and doubled quotes; lines may end in CRLF, LF or CR, and blank lines are skipped.
+ * Only the current record is held in memory, so exports of any length are read in constant space.
+ */
+public class CsvReader implements Closeable
+{
+  private static final int          BUFFER_SIZE = 8192;
+
+  private final Reader              reader;
+  private final char                separator;
+  private final char[]              buffer      = new char[BUFFER_SIZE];
+  private final StringBuilder       field       = new StringBuilder();
+  private final List<String>        values      = new ArrayList<String>();
+  private int                       position;
+  private int                       limit;
+  private long                      recordNumber;
+  private boolean                   started;
+
+  public CsvReader(Reader reader, char separator)
+  {
+    if (separator == '"' || separator == '\r' || separator == '\n')
+      throw new IllegalArgumentException("Invalid field separator '" + separator + "'");
+    this.reader = reader;
+    this.separator = separator;
+  }
+
+  /**
+   * Returns the separator configured as text: its first character, or a tab for <code>\t</code>, or a comma
+   * if there is none or it cannot separate fields.
+   */
+  public static char toSeparator(String fieldSeparator)
+  {
+    if (fieldSeparator == null || fieldSeparator.isEmpty())
+      return ',';
+    if (fieldSeparator.equals("\\t") || fieldSeparator.equalsIgnoreCase("tab"))
+      return '\t';
+    char separator = fieldSeparator.charAt(0);
+    return (separator == '"' || separator == '\r' || separator == '\n') ? ',' : separator;
+  }
+
+  /**
+   * Advances to the next record; returns false at the end of the input. An unterminated quoted field at the
+   * end of the input ends the record.
+   */
+  public boolean readRecord() throws IOException
+  {
+    values.clear();
+    int c = read();
+    if (!started)
+    {
+      started = true;
+      if (c == '\uFEFF')
+        c = read();
+    }
+    // skip blank lines
+    while (c == '\r' || c == '\n')
+      c = read();
+    if (c < 0)
+      return false;
+
+    field.setLength(0);
+    boolean quoted = false;
+    boolean inQuotes = false;
+    while (true)
+    {
+      if (inQuotes)
+      {
+        if (c < 0)
+          break;
+        if (c == '"')
+        {
+          c = read();
+          if (c != '"')
+          {
+            inQuotes = false;
+            continue;
+          }
+        }
+        field.append((char) c);
+      }
+      else if (c == separator)
+      {
+        endField(quoted);
+        quoted = false;
+      }
+      else if (c == '\r' || c == '\n' || c < 0)
+      {
+        if (c == '\r')
+        {
+          c = read();
+          if (c != '\n' && c >= 0)
+            position--;
+        }
+        break;
+      }
+      else if (c == '"' && !quoted && isBlank(field))
+      {
+        // padding before the opening quote is dropped
+        field.setLength(0);
+        quoted = true;
+        inQuotes = true;
+      }
+      else
+      {
+        field.append((char) c);
+      }
+      c = read();
+    }
+    endField(quoted);
+    recordNumber++;
+    return true;
+  }
+
+  /**
+   * Returns the number of fields of the current record.
+   */
+  public int size()
+  {
+    return values.size();
+  }
+
+  /**
+   * Returns a field of the current record, or null past its last field.
+   */
+  public String get(int index)
+  {
+    return (index < values.size()) ? values.get(index) : null;
+  }
+
+  /**
+   * Returns a copy of the fields of the current record.
+   */
+  public String[] toArray()
+  {
+    return values.toArray(new String[values.size()]);
+  }
+
+  /**
+   * Returns the number of records read so far, the current one included.
+   */
+  public long getRecordNumber()
+  {
+    return recordNumber;
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    reader.close();
+  }
+
+  private void endField(boolean quoted)
+  {
+    // unquoted fields are trimmed, as spreadsheet exports often pad them
+    values.add(quoted ? field.toString() : field.toString().trim());
+    field.setLength(0);
+  }
+
+  private static boolean isBlank(StringBuilder text)
+  {
+    for (int i = 0; i < text.length(); i++)
+    {
+      if (text.charAt(i) != ' ')
+        return false;
+    }
+    return true;
+  }
+
+  private int read() throws IOException
+  {
+    if (position >= limit)
+    {
+      limit = reader.read(buffer, 0, buffer.length);
+      position = 0;
+      if (limit <= 0)
+      {
+        limit = 0;
+        return -1;
+      }
+    }
+    return buffer[position++];
+  }
+}
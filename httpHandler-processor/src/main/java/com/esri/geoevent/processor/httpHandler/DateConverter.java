@@ -0,0 +1,260 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.esri.ges.util.DateUtil;
+
+/**
+ * Converts JSON values to dates. Numbers are epoch seconds or milliseconds, told apart by magnitude: values
+ * below 10^11 are seconds (up to the year 5138), larger ones milliseconds. Digit-only strings are converted
+ * the same way. Other strings are parsed with the custom date format, if any, then with the common ISO 8601
+ * and US formats; the format that parsed a field last is tried first for that field, so a feed usually
+ * costs one parse per value.
+ * <p>
+ * SimpleDateFormat is not thread safe, so every thread parses with its own copies of the formats, and all
+ * other state is immutable or concurrent; one converter may be shared by all worker threads.
+ */
+public class DateConverter
+{
+  private static final long                      EPOCH_SECONDS_LIMIT = 100000000000L;
+
+  private static final String[]                  STANDARD_FORMATS    = { "yyyy-MM-dd'T'HH:mm:ss.SSSXXX", "yyyy-MM-dd'T'HH:mm:ssXXX", "yyyy-MM-dd'T'HH:mm:ss.SSS", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd HH:mm:ss", "MM/dd/yyyy hh:mm:ss a", "MM/dd/yyyy HH:mm:ss", "yyyy-MM-dd" };
+
+  private static final int                       MAX_DATE_LENGTH     = 64;
+
+  private static final Pattern                   US_DATE_TIME        = Pattern.compile("\\d?\\d/\\d?\\d/\\d?\\d?\\d\\d \\d?\\d:\\d\\d:\\d\\d( [aApP][mM])?");
+  // SimpleDateFormat reads the fraction as a number of milliseconds, so it is cut or padded to three digits
+  private static final Pattern                   ISO_FRACTION        = Pattern.compile("(T\\d\\d:\\d\\d:\\d\\d)\\.(\\d+)");
+
+  private final String[]                         formats;
+  private final boolean                          hasCustomFormat;
+  private final Map<String, Integer>             learnedFormats      = new ConcurrentHashMap<String, Integer>();
+  private final ThreadLocal<SimpleDateFormat[]>  parsers;
+
+  public DateConverter(String customDateFormat)
+  {
+    List<String> patterns = new ArrayList<String>();
+    hasCustomFormat = customDateFormat != null && !customDateFormat.trim().isEmpty();
+    if (hasCustomFormat)
+      patterns.add(customDateFormat);
+    for (String pattern : STANDARD_FORMATS)
+      patterns.add(pattern);
+    formats = patterns.toArray(new String[patterns.size()]);
+    // validates the custom format up front, SimpleDateFormat throws IllegalArgumentException
+    createParsers(formats, hasCustomFormat);
+    parsers = new ThreadLocal<SimpleDateFormat[]>()
+      {
+        @Override
+        protected SimpleDateFormat[] initialValue()
+        {
+          return createParsers(formats, hasCustomFormat);
+        }
+      };
+  }
+
+  /**
+   * Converts epoch seconds or milliseconds.
+   */
+  public Date fromEpoch(long value)
+  {
+    return new Date((Math.abs(value) < EPOCH_SECONDS_LIMIT) ? value * 1000 : value);
+  }
+
+  /**
+   * Converts epoch seconds or milliseconds with a fraction.
+   */
+  public Date fromEpoch(double value)
+  {
+    return new Date((long) ((Math.abs(value) < EPOCH_SECONDS_LIMIT) ? value * 1000 : value));
+  }
+
+  /**
+   * Converts the text of the field, returning null if no format fits.
+   */
+  public Date convert(String fieldName, String text)
+  {
+    if (text == null)
+      return null;
+    String value = text.trim();
+    if (value.isEmpty())
+      return null;
+    if (isEpoch(value))
+      return fromEpoch(Long.parseLong(value));
+
+    value = normalizeFraction(value);
+    SimpleDateFormat[] threadParsers = parsers.get();
+    Integer learned = (fieldName != null) ? learnedFormats.get(fieldName) : null;
+    if (learned != null)
+    {
+      Date date = parse(threadParsers[learned], value);
+      if (date != null)
+        return date;
+    }
+    for (int i = 0; i < threadParsers.length; i++)
+    {
+      if (learned != null && i == learned)
+        continue;
+      Date date = parse(threadParsers[i], value);
+      if (date != null)
+      {
+        if (fieldName != null)
+          learnedFormats.put(fieldName, i);
+        return date;
+      }
+    }
+    // whatever else the GeoEvent utilities understand
+    try
+    {
+      return DateUtil.convert(text);
+    }
+    catch (RuntimeException e)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * True if the text has the shape of a date: the custom date format if there is one, otherwise an ISO 8601
+   * or US date and time.
+   */
+  public boolean looksLikeADate(String value)
+  {
+    if (value == null)
+      return false;
+    if (!hasCustomFormat)
+    {
+      if (hasIsoShape(value))
+        return true;
+      // the US pattern only runs on strings with a slash where a month or day ends
+      return value.length() >= 12 && (value.indexOf('/') == 1 || value.indexOf('/') == 2) && US_DATE_TIME.matcher(value).matches();
+    }
+    // strings without digits or far longer than any date cannot parse as one
+    return value.length() <= MAX_DATE_LENGTH && hasDigit(value) && parse(parsers.get()[0], value) != null;
+  }
+
+  // the character classes of "yyyy-MM-ddTHH:mm:ss", followed by anything
+  static boolean hasIsoShape(String value)
+  {
+    if (value.length() < 19)
+      return false;
+    for (int i = 0; i < 19; i++)
+    {
+      char c = value.charAt(i);
+      switch (i)
+      {
+        case 4:
+        case 7:
+          if (c != '-')
+            return false;
+          break;
+        case 10:
+          if (c != 'T')
+            return false;
+          break;
+        case 13:
+        case 16:
+          if (c != ':')
+            return false;
+          break;
+        default:
+          if (c < '0' || c > '9')
+            return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean hasDigit(String value)
+  {
+    for (int i = 0; i < value.length(); i++)
+    {
+      char c = value.charAt(i);
+      if (c >= '0' && c <= '9')
+        return true;
+    }
+    return false;
+  }
+
+  private static boolean isEpoch(String value)
+  {
+    int length = value.length();
+    int start = (length > 0 && value.charAt(0) == '-') ? 1 : 0;
+    if (length == start || length - start > 18)
+      return false;
+    for (int i = start; i < length; i++)
+    {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9')
+        return false;
+    }
+    return true;
+  }
+
+  // a full match only, without the cost of a ParseException
+  private static Date parse(SimpleDateFormat parser, String value)
+  {
+    ParsePosition position = new ParsePosition(0);
+    Date date = parser.parse(value, position);
+    return (date != null && position.getIndex() == value.length()) ? date : null;
+  }
+
+  private static String normalizeFraction(String value)
+  {
+    if (value.indexOf('.') < 0)
+      return value;
+    Matcher matcher = ISO_FRACTION.matcher(value);
+    if (!matcher.find())
+      return value;
+    String fraction = matcher.group(2);
+    if (fraction.length() == 3)
+      return value;
+    fraction = (fraction.length() > 3) ? fraction.substring(0, 3) : (fraction + "00").substring(0, 3);
+    return value.substring(0, matcher.start(2)) + fraction + value.substring(matcher.end(2));
+  }
+
+  // the standard formats are parsed in English (AM/PM), a custom format in the default locale
+  private static SimpleDateFormat[] createParsers(String[] formats, boolean hasCustomFormat)
+  {
+    SimpleDateFormat[] parsers = new SimpleDateFormat[formats.length];
+    for (int i = 0; i < formats.length; i++)
+    {
+      parsers[i] = (hasCustomFormat && i == 0) ? new SimpleDateFormat(formats[i]) : new SimpleDateFormat(formats[i], Locale.US);
+      parsers[i].setLenient(false);
+    }
+    return parsers;
+  }
+}
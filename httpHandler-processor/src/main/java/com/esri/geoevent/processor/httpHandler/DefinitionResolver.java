@@ -0,0 +1,203 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.jackson.JsonNode;
+
+import com.esri.ges.core.geoevent.FieldDefinition;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+import com.esri.ges.manager.geoeventdefinition.GeoEventDefinitionManager;
+
+/**
+ * Remembers which GeoEventDefinition each record shape resolved to. A shape is identified by a 64 bit
+ * fingerprint of the record's top level field names and JSON value kinds, independent of field order, so
+ * heterogeneous feeds resolve with one map lookup per record. A remembered definition is checked against the
+ * manager on every hit: it is forgotten once the manager no longer knows its GUID (deleted) or returns a
+ * different instance whose fields no longer fit the shape (changed).
+ */
+public class DefinitionResolver
+{
+  private static final int                     MAX_SHAPES    = 1024;
+
+  private static final int                     KIND_NULL     = 1;
+  private static final int                     KIND_NUMBER   = 2;
+  private static final int                     KIND_TEXT     = 3;
+  private static final int                     KIND_BOOL     = 4;
+  private static final int                     KIND_OBJECT   = 5;
+  private static final int                     KIND_ARRAY    = 6;
+
+  private final GeoEventDefinitionManager      manager;
+  private final Map<Long, GeoEventDefinition>  shapes        = new ConcurrentHashMap<Long, GeoEventDefinition>();
+
+  private final AtomicLong                     hits          = new AtomicLong();
+  private final AtomicLong                     misses        = new AtomicLong();
+  private final AtomicLong                     invalidations = new AtomicLong();
+
+  public DefinitionResolver(GeoEventDefinitionManager manager)
+  {
+    this.manager = manager;
+  }
+
+  /**
+   * Returns the fingerprint of the record's shape: the sum of a mixed hash per field name and value kind.
+   */
+  public static long fingerprint(JsonNode record)
+  {
+    long fingerprint = record.size();
+    Iterator<Map.Entry<String, JsonNode>> fields = record.getFields();
+    while (fields.hasNext())
+    {
+      Map.Entry<String, JsonNode> field = fields.next();
+      long hash = field.getKey().hashCode() * 31L + kind(field.getValue());
+      fingerprint += mix(hash);
+    }
+    return fingerprint;
+  }
+
+  /**
+   * Returns the definition remembered for the fingerprint if it is still valid, otherwise null.
+   */
+  public GeoEventDefinition get(long fingerprint, JsonNode record, int perfectSize)
+  {
+    Long key = fingerprint;
+    GeoEventDefinition cached = shapes.get(key);
+    if (cached == null)
+    {
+      misses.incrementAndGet();
+      return null;
+    }
+    GeoEventDefinition current = manager.getGeoEventDefinition(cached.getGuid());
+    if (current != cached && (current == null || !fits(current, record, perfectSize)))
+    {
+      shapes.remove(key);
+      invalidations.incrementAndGet();
+      misses.incrementAndGet();
+      return null;
+    }
+    if (current != cached)
+      shapes.put(key, current);
+    hits.incrementAndGet();
+    return current;
+  }
+
+  public void put(long fingerprint, GeoEventDefinition geoEventDefinition)
+  {
+    // a feed producing endless shapes, e.g. through optional fields, starts over rather than grow unbounded
+    if (shapes.size() >= MAX_SHAPES)
+      shapes.clear();
+    shapes.put(fingerprint, geoEventDefinition);
+  }
+
+  /**
+   * Picks the candidate whose fields fit the record, else the first candidate with the expected number of
+   * fields, else the first candidate.
+   */
+  public GeoEventDefinition choose(Collection<GeoEventDefinition> candidates, JsonNode record, int perfectSize)
+  {
+    GeoEventDefinition sameSize = null;
+    for (GeoEventDefinition candidate : candidates)
+    {
+      if (fits(candidate, record, perfectSize))
+        return candidate;
+      if (sameSize == null && candidate.getFieldDefinitions().size() == perfectSize)
+        sameSize = candidate;
+    }
+    if (sameSize != null)
+      return sameSize;
+    return candidates.isEmpty() ? null : candidates.iterator().next();
+  }
+
+  public void clear()
+  {
+    shapes.clear();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "definitionResolver[shapes=" + shapes.size() + ", hits=" + hits.get() + ", misses=" + misses.get() + ", invalidations=" + invalidations.get() + "]";
+  }
+
+  /**
+   * True if the definition has the expected number of fields and a field for every field of the record.
+   */
+  static boolean fits(GeoEventDefinition geoEventDefinition, JsonNode record, int perfectSize)
+  {
+    List<FieldDefinition> fieldDefinitions = geoEventDefinition.getFieldDefinitions();
+    if (fieldDefinitions.size() != perfectSize)
+      return false;
+    Iterator<String> fieldNames = record.getFieldNames();
+    while (fieldNames.hasNext())
+    {
+      String fieldName = fieldNames.next();
+      boolean found = false;
+      for (FieldDefinition fieldDefinition : fieldDefinitions)
+      {
+        if (fieldDefinition.getName().equals(fieldName))
+        {
+          found = true;
+          break;
+        }
+      }
+      if (!found)
+        return false;
+    }
+    return true;
+  }
+
+  private static int kind(JsonNode value)
+  {
+    if (value == null || value.isNull())
+      return KIND_NULL;
+    if (value.isNumber())
+      return KIND_NUMBER;
+    if (value.isTextual())
+      return KIND_TEXT;
+    if (value.isBoolean())
+      return KIND_BOOL;
+    if (value.isObject())
+      return KIND_OBJECT;
+    return KIND_ARRAY;
+  }
+
+  // 64 bit finalizer of MurmurHash3, spreads the field hashes before they are summed
+  private static long mix(long hash)
+  {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
@@ -0,0 +1,571 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.ObjectNode;
+
+import com.esri.core.geometry.Envelope;
+import com.esri.core.geometry.Geometry;
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.MultiPath;
+import com.esri.core.geometry.MultiPoint;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.Polygon;
+import com.esri.core.geometry.Polyline;
+import com.esri.core.geometry.SpatialReference;
+
+/**
+ * Streams the <code>features</code> of a GeoJSON FeatureCollection or an Esri JSON FeatureSet, handing each
+ * feature's <code>properties</code> or <code>attributes</code> to the target together with its geometry. The
+ * geometry is built straight from the coordinate tokens rather than parsed again from its JSON text; GeoJSON
+ * polygon rings are reoriented to the clockwise exteriors of the geometry engine. GeoJSON is in WGS84, as is
+ * Esri JSON without a <code>spatialReference</code>. A bare array of features is read as well.
+ * <p>
+ * The third value of a GeoJSON position is z. In Esri JSON the <code>hasZ</code> and <code>hasM</code> flags
+ * of the geometry, else of the FeatureSet, say which of z and m follow x and y; without either flag the
+ * third value is z and the fourth m. A null value leaves its place empty.
+ */
+public class FeatureSetReader
+{
+  /**
+   * Receives the features found; the geometry is null for features without one.
+   */
+  public interface Target
+  {
+    void found(ObjectNode attributes, MapGeometry geometry) throws IOException;
+  }
+
+  public static final String GEOJSON           = "geojson";
+  public static final String ESRI_JSON         = "esrijson";
+
+  private static final int   DEFAULT_WKID      = 4326;
+  private static final int   CLOCKWISE         = -1;
+  private static final int   COUNTERCLOCKWISE  = 1;
+
+  private final boolean      geoJson;
+
+  /**
+   * Where z and m are in a position, -1 when it has none, and the flags they follow (null when not given).
+   */
+  private static class Layout
+  {
+    private static final Layout GEOJSON  = new Layout(2, -1, null, null);
+    private static final Layout UNTAGGED = new Layout(2, 3, null, null);
+
+    private final int           z;
+    private final int           m;
+    private final Boolean       hasZ;
+    private final Boolean       hasM;
+
+    private Layout(int z, int m, Boolean hasZ, Boolean hasM)
+    {
+      this.z = z;
+      this.m = m;
+      this.hasZ = hasZ;
+      this.hasM = hasM;
+    }
+
+    // a flag that is not given is taken from the enclosing FeatureSet
+    static Layout of(Boolean hasZ, Boolean hasM, Layout enclosing)
+    {
+      if (hasZ == null)
+        hasZ = enclosing.hasZ;
+      if (hasM == null)
+        hasM = enclosing.hasM;
+      if (hasZ == null && hasM == null)
+        return enclosing;
+      boolean z = Boolean.TRUE.equals(hasZ);
+      boolean m = Boolean.TRUE.equals(hasM);
+      return new Layout(z ? 2 : -1, m ? (z ? 3 : 2) : -1, hasZ, hasM);
+    }
+  }
+
+  public FeatureSetReader(boolean geoJson)
+  {
+    this.geoJson = geoJson;
+  }
+
+  /**
+   * Reads the feature collections of the document, which may hold several concatenated top-level values;
+   * returns the number of features.
+   */
+  public int read(JsonParser parser, Target target) throws IOException
+  {
+    int count = 0;
+    JsonToken token;
+    while ((token = parser.nextToken()) != null)
+    {
+      SpatialReference spatialReference = PointGeometryBuilder.getSpatialReference(DEFAULT_WKID);
+      Layout layout = geoJson ? Layout.GEOJSON : Layout.UNTAGGED;
+      if (token == JsonToken.START_ARRAY)
+      {
+        count += readFeatures(parser, token, spatialReference, layout, target);
+      }
+      else if (token == JsonToken.START_OBJECT)
+      {
+        // ArcGIS writes the flags ahead of the features
+        Boolean hasZ = null, hasM = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+          String fieldName = parser.getCurrentName();
+          token = parser.nextToken();
+          if ("features".equals(fieldName))
+            count += readFeatures(parser, token, spatialReference, geoJson ? layout : Layout.of(hasZ, hasM, layout), target);
+          else if (!geoJson && "spatialReference".equals(fieldName))
+            spatialReference = readSpatialReference(parser, token, spatialReference);
+          else if (!geoJson && "hasZ".equals(fieldName))
+            hasZ = readFlag(parser, token);
+          else if (!geoJson && "hasM".equals(fieldName))
+            hasM = readFlag(parser, token);
+          else if (geoJson && "crs".equals(fieldName))
+            spatialReference = readCrs(parser, token, spatialReference);
+          else
+            parser.skipChildren();
+        }
+      }
+    }
+    return count;
+  }
+
+  private int readFeatures(JsonParser parser, JsonToken token, SpatialReference spatialReference, Layout layout, Target target) throws IOException
+  {
+    if (token != JsonToken.START_ARRAY)
+    {
+      parser.skipChildren();
+      return 0;
+    }
+    int count = 0;
+    while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY)
+    {
+      if (token == JsonToken.START_OBJECT)
+      {
+        readFeature(parser, spatialReference, layout, target);
+        count++;
+      }
+      else
+        parser.skipChildren();
+    }
+    return count;
+  }
+
+  // the parser is on the START_OBJECT of the feature and is left on its END_OBJECT
+  private void readFeature(JsonParser parser, SpatialReference spatialReference, Layout layout, Target target) throws IOException
+  {
+    ObjectNode attributes = null;
+    MapGeometry geometry = null;
+    JsonNode featureId = null;
+    String attributesName = geoJson ? "properties" : "attributes";
+    while (parser.nextToken() == JsonToken.FIELD_NAME)
+    {
+      String fieldName = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+      if (attributesName.equals(fieldName) && token == JsonToken.START_OBJECT)
+        attributes = (ObjectNode) parser.readValueAsTree();
+      else if ("geometry".equals(fieldName))
+        geometry = geoJson ? readGeoJsonGeometry(parser, token, spatialReference) : readEsriGeometry(parser, token, spatialReference, layout);
+      else if (geoJson && "id".equals(fieldName))
+        featureId = parser.readValueAsTree();
+      else
+        parser.skipChildren();
+    }
+    if (attributes == null)
+      attributes = JsonNodeFactory.instance.objectNode();
+    // a GeoJSON feature keeps its identifier next to the properties
+    if (featureId != null && !featureId.isNull() && !attributes.has("id"))
+      attributes.put("id", featureId);
+    target.found(attributes, geometry);
+  }
+
+  private MapGeometry readEsriGeometry(JsonParser parser, JsonToken token, SpatialReference spatialReference, Layout layout) throws IOException
+  {
+    if (token != JsonToken.START_OBJECT)
+    {
+      parser.skipChildren();
+      return null;
+    }
+    double x = Double.NaN, y = Double.NaN, z = Double.NaN, m = Double.NaN;
+    Boolean hasZ = null, hasM = null;
+    double xmin = Double.NaN, ymin = Double.NaN, xmax = Double.NaN, ymax = Double.NaN;
+    Object points = null, paths = null, rings = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME)
+    {
+      String fieldName = parser.getCurrentName();
+      token = parser.nextToken();
+      switch (fieldName)
+      {
+        case "x":
+          x = readNumber(parser, token);
+          break;
+        case "y":
+          y = readNumber(parser, token);
+          break;
+        case "z":
+          z = readNumber(parser, token);
+          break;
+        case "m":
+          m = readNumber(parser, token);
+          break;
+        case "hasZ":
+          hasZ = readFlag(parser, token);
+          break;
+        case "hasM":
+          hasM = readFlag(parser, token);
+          break;
+        case "points":
+          points = readCoordinates(parser, token);
+          break;
+        case "paths":
+          paths = readCoordinates(parser, token);
+          break;
+        case "rings":
+          rings = readCoordinates(parser, token);
+          break;
+        case "xmin":
+          xmin = readNumber(parser, token);
+          break;
+        case "ymin":
+          ymin = readNumber(parser, token);
+          break;
+        case "xmax":
+          xmax = readNumber(parser, token);
+          break;
+        case "ymax":
+          ymax = readNumber(parser, token);
+          break;
+        case "spatialReference":
+          spatialReference = readSpatialReference(parser, token, spatialReference);
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+
+    Geometry geometry = null;
+    // the flags may follow the coordinates
+    layout = Layout.of(hasZ, hasM, layout);
+    if (!Double.isNaN(x) && !Double.isNaN(y))
+    {
+      geometry = toPoint(x, y, z, m);
+    }
+    else if (rings != null)
+    {
+      // Esri JSON rings are oriented already
+      Polygon polygon = new Polygon();
+      for (Object ring : toList(rings))
+        addPath(polygon, toPositions(ring), true, 0, layout);
+      geometry = polygon;
+    }
+    else if (paths != null)
+    {
+      Polyline polyline = new Polyline();
+      for (Object path : toList(paths))
+        addPath(polyline, toPositions(path), false, 0, layout);
+      geometry = polyline;
+    }
+    else if (points != null)
+    {
+      geometry = toMultiPoint(points, layout);
+    }
+    else if (!Double.isNaN(xmin) && !Double.isNaN(ymin) && !Double.isNaN(xmax) && !Double.isNaN(ymax))
+    {
+      geometry = new Envelope(xmin, ymin, xmax, ymax);
+    }
+    return (geometry != null) ? new MapGeometry(geometry, spatialReference) : null;
+  }
+
+  private MapGeometry readGeoJsonGeometry(JsonParser parser, JsonToken token, SpatialReference spatialReference) throws IOException
+  {
+    if (token != JsonToken.START_OBJECT)
+    {
+      parser.skipChildren();
+      return null;
+    }
+    // the coordinates may come before the type, so they are read first and built once both are known
+    String type = null;
+    Object coordinates = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME)
+    {
+      String fieldName = parser.getCurrentName();
+      token = parser.nextToken();
+      if ("type".equals(fieldName) && token == JsonToken.VALUE_STRING)
+        type = parser.getText();
+      else if ("coordinates".equals(fieldName))
+        coordinates = readCoordinates(parser, token);
+      else
+        parser.skipChildren();
+    }
+    if (type == null || coordinates == null)
+      return null;
+
+    Geometry geometry = null;
+    switch (type)
+    {
+      case "Point":
+        if (isPosition(coordinates))
+          geometry = toPoint((double[]) coordinates, Layout.GEOJSON);
+        break;
+      case "MultiPoint":
+        geometry = toMultiPoint(coordinates, Layout.GEOJSON);
+        break;
+      case "LineString":
+        Polyline line = new Polyline();
+        addPath(line, toPositions(coordinates), false, 0, Layout.GEOJSON);
+        geometry = line;
+        break;
+      case "MultiLineString":
+        Polyline lines = new Polyline();
+        for (Object path : toList(coordinates))
+          addPath(lines, toPositions(path), false, 0, Layout.GEOJSON);
+        geometry = lines;
+        break;
+      case "Polygon":
+        Polygon polygon = new Polygon();
+        addRings(polygon, coordinates);
+        geometry = polygon;
+        break;
+      case "MultiPolygon":
+        Polygon polygons = new Polygon();
+        for (Object rings : toList(coordinates))
+          addRings(polygons, rings);
+        geometry = polygons;
+        break;
+      default:
+        // e.g. a GeometryCollection, which has no single Esri geometry
+        break;
+    }
+    return (geometry != null) ? new MapGeometry(geometry, spatialReference) : null;
+  }
+
+  // GeoJSON exteriors are counterclockwise and holes clockwise, the geometry engine expects the opposite
+  private static void addRings(Polygon polygon, Object rings)
+  {
+    boolean exterior = true;
+    for (Object ring : toList(rings))
+    {
+      addPath(polygon, toPositions(ring), true, exterior ? CLOCKWISE : COUNTERCLOCKWISE, Layout.GEOJSON);
+      exterior = false;
+    }
+  }
+
+  private static void addPath(MultiPath multiPath, List<double[]> positions, boolean ring, int orientation, Layout layout)
+  {
+    int size = positions.size();
+    // rings are closed implicitly, a repeated first position would be a duplicate vertex
+    if (ring && size > 1 && Arrays.equals(positions.get(0), positions.get(size - 1)))
+      size--;
+    if (size == 0)
+      return;
+    double area = (orientation != 0) ? signedArea(positions, size) : 0;
+    boolean reverse = (orientation == CLOCKWISE && area > 0) || (orientation == COUNTERCLOCKWISE && area < 0);
+    for (int i = 0; i < size; i++)
+    {
+      Point point = toPoint(positions.get(reverse ? size - 1 - i : i), layout);
+      if (i == 0)
+        multiPath.startPath(point);
+      else
+        multiPath.lineTo(point);
+    }
+  }
+
+  // positive for counterclockwise rings
+  private static double signedArea(List<double[]> positions, int size)
+  {
+    double area = 0;
+    for (int i = 0; i < size; i++)
+    {
+      double[] current = positions.get(i);
+      double[] next = positions.get((i + 1) % size);
+      area += current[0] * next[1] - next[0] * current[1];
+    }
+    return area / 2;
+  }
+
+  private static MultiPoint toMultiPoint(Object coordinates, Layout layout)
+  {
+    MultiPoint multiPoint = new MultiPoint();
+    for (double[] position : toPositions(coordinates))
+      multiPoint.add(toPoint(position, layout));
+    return multiPoint;
+  }
+
+  private static Point toPoint(double[] position, Layout layout)
+  {
+    double z = (layout.z >= 0 && layout.z < position.length) ? position[layout.z] : Double.NaN;
+    double m = (layout.m >= 0 && layout.m < position.length) ? position[layout.m] : Double.NaN;
+    return toPoint(position[0], position[1], z, m);
+  }
+
+  private static Point toPoint(double x, double y, double z, double m)
+  {
+    Point point = Double.isNaN(z) ? new Point(x, y) : new Point(x, y, z);
+    if (!Double.isNaN(m))
+      point.setM(m);
+    return point;
+  }
+
+  private static List<double[]> toPositions(Object coordinates)
+  {
+    List<double[]> positions = new ArrayList<double[]>();
+    for (Object item : toList(coordinates))
+    {
+      if (isPosition(item))
+        positions.add((double[]) item);
+    }
+    return positions;
+  }
+
+  private static boolean isPosition(Object coordinates)
+  {
+    if (!(coordinates instanceof double[]))
+      return false;
+    double[] position = (double[]) coordinates;
+    return position.length >= 2 && !Double.isNaN(position[0]) && !Double.isNaN(position[1]);
+  }
+
+  private static List<?> toList(Object coordinates)
+  {
+    return (coordinates instanceof List) ? (List<?>) coordinates : Collections.emptyList();
+  }
+
+  /**
+   * Reads nested coordinate arrays: an array of numbers is a position, read into a double[] of its first
+   * four values with NaN in place of a null, and any other array a list of what it holds.
+   */
+  private static Object readCoordinates(JsonParser parser, JsonToken token) throws IOException
+  {
+    if (token != JsonToken.START_ARRAY)
+    {
+      parser.skipChildren();
+      return null;
+    }
+    token = parser.nextToken();
+    if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT)
+    {
+      double[] position = new double[4];
+      int size = 0;
+      for (; token != null && token != JsonToken.END_ARRAY; token = parser.nextToken())
+      {
+        // a null keeps its place, so that [x, y, null, m] still has m fourth
+        if (size < position.length)
+          position[size++] = readNumber(parser, token);
+        else
+          parser.skipChildren();
+      }
+      return (size == position.length) ? position : Arrays.copyOf(position, size);
+    }
+    List<Object> items = new ArrayList<Object>();
+    for (; token != null && token != JsonToken.END_ARRAY; token = parser.nextToken())
+    {
+      Object item = readCoordinates(parser, token);
+      if (item != null)
+        items.add(item);
+    }
+    return items;
+  }
+
+  private static double readNumber(JsonParser parser, JsonToken token) throws IOException
+  {
+    if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT)
+      return parser.getDoubleValue();
+    // null or "NaN" marks an empty point
+    parser.skipChildren();
+    return Double.NaN;
+  }
+
+  private static Boolean readFlag(JsonParser parser, JsonToken token) throws IOException
+  {
+    if (token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE)
+      return token == JsonToken.VALUE_TRUE;
+    parser.skipChildren();
+    return null;
+  }
+
+  // {"wkid": 102100, "latestWkid": 3857} or {"wkt": "..."}
+  private static SpatialReference readSpatialReference(JsonParser parser, JsonToken token, SpatialReference defaultReference) throws IOException
+  {
+    if (token != JsonToken.START_OBJECT)
+    {
+      parser.skipChildren();
+      return defaultReference;
+    }
+    int wkid = 0;
+    int latestWkid = 0;
+    String wkt = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME)
+    {
+      String fieldName = parser.getCurrentName();
+      token = parser.nextToken();
+      if ("wkid".equals(fieldName) && token == JsonToken.VALUE_NUMBER_INT)
+        wkid = parser.getIntValue();
+      else if ("latestWkid".equals(fieldName) && token == JsonToken.VALUE_NUMBER_INT)
+        latestWkid = parser.getIntValue();
+      else if ("wkt".equals(fieldName) && token == JsonToken.VALUE_STRING)
+        wkt = parser.getText();
+      else
+        parser.skipChildren();
+    }
+    if (wkid > 0)
+      return PointGeometryBuilder.getSpatialReference(wkid);
+    if (latestWkid > 0)
+      return PointGeometryBuilder.getSpatialReference(latestWkid);
+    if (wkt != null)
+      return PointGeometryBuilder.getSpatialReference(wkt);
+    return defaultReference;
+  }
+
+  // the named crs of GeoJSON before RFC 7946, e.g. {"type": "name", "properties": {"name": "EPSG:3857"}}
+  private static SpatialReference readCrs(JsonParser parser, JsonToken token, SpatialReference defaultReference) throws IOException
+  {
+    if (token != JsonToken.START_OBJECT)
+    {
+      parser.skipChildren();
+      return defaultReference;
+    }
+    JsonNode name = parser.readValueAsTree().path("properties").path("name");
+    String text = name.isTextual() ? name.getTextValue() : null;
+    if (text == null)
+      return defaultReference;
+    if (text.endsWith("CRS84"))
+      return PointGeometryBuilder.getSpatialReference(DEFAULT_WKID);
+    try
+    {
+      return PointGeometryBuilder.getSpatialReference(Integer.parseInt(text.substring(text.lastIndexOf(':') + 1)));
+    }
+    catch (NumberFormatException e)
+    {
+      return defaultReference;
+    }
+  }
+}
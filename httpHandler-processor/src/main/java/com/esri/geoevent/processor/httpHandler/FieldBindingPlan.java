@@ -0,0 +1,139 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.esri.ges.core.geoevent.FieldCardinality;
+import com.esri.ges.core.geoevent.FieldDefinition;
+import com.esri.ges.core.geoevent.FieldType;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+
+/**
+ * A GeoEventDefinition compiled for populating events from JSON: every field name maps to its slot, which
+ * holds the field index for <code>setField(int, ...)</code>, the type to convert to and, for
+ * <code>Group</code> fields, the plan of the children. Compiled once per definition, so populating an event
+ * costs one hash lookup per JSON field.
+ */
+public class FieldBindingPlan
+{
+  public static class Slot
+  {
+    private final int              index;
+    private final FieldDefinition  definition;
+    private final FieldType        type;
+    private final boolean          many;
+    private final FieldBindingPlan children;
+
+    Slot(int index, FieldDefinition definition)
+    {
+      this.index = index;
+      this.definition = definition;
+      this.type = definition.getType();
+      this.many = definition.getCardinality() == FieldCardinality.Many;
+      this.children = (FieldType.Group.equals(type)) ? new FieldBindingPlan(null, definition.getChildren()) : null;
+    }
+
+    public int getIndex()
+    {
+      return index;
+    }
+
+    public FieldDefinition getDefinition()
+    {
+      return definition;
+    }
+
+    public FieldType getType()
+    {
+      return type;
+    }
+
+    public boolean isMany()
+    {
+      return many;
+    }
+
+    public FieldBindingPlan getChildren()
+    {
+      return children;
+    }
+  }
+
+  private final GeoEventDefinition geoEventDefinition;
+  private final Map<String, Slot>  slots;
+
+  private FieldBindingPlan(GeoEventDefinition geoEventDefinition, List<FieldDefinition> fieldDefinitions)
+  {
+    this.geoEventDefinition = geoEventDefinition;
+    int size = (fieldDefinitions != null) ? fieldDefinitions.size() : 0;
+    slots = new HashMap<String, Slot>(Math.max(4, size * 4 / 3 + 1));
+    for (int i = 0; i < size; i++)
+    {
+      FieldDefinition fieldDefinition = fieldDefinitions.get(i);
+      // the first of duplicate names wins, as with a lookup by name
+      if (!slots.containsKey(fieldDefinition.getName()))
+        slots.put(fieldDefinition.getName(), new Slot(i, fieldDefinition));
+    }
+  }
+
+  public static FieldBindingPlan compile(GeoEventDefinition geoEventDefinition)
+  {
+    return new FieldBindingPlan(geoEventDefinition, geoEventDefinition.getFieldDefinitions());
+  }
+
+  /**
+   * True if the plan was compiled from this very definition instance; a modified definition is a new
+   * instance and needs a new plan.
+   */
+  public boolean isCompiledFrom(GeoEventDefinition geoEventDefinition)
+  {
+    return this.geoEventDefinition == geoEventDefinition;
+  }
+
+  /**
+   * Returns the definition the plan was compiled from, null for the plan of a group.
+   */
+  public GeoEventDefinition getGeoEventDefinition()
+  {
+    return geoEventDefinition;
+  }
+
+  /**
+   * Returns the slot bound to the JSON key, or null if the definition has no such field.
+   */
+  public Slot get(String key)
+  {
+    return slots.get(key);
+  }
+
+  public int size()
+  {
+    return slots.size();
+  }
+}
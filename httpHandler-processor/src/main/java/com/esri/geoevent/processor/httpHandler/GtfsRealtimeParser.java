@@ -0,0 +1,612 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Point;
+import com.esri.ges.core.AccessType;
+import com.esri.ges.core.ConfigurationException;
+import com.esri.ges.core.Uri;
+import com.esri.ges.core.geoevent.DefaultFieldDefinition;
+import com.esri.ges.core.geoevent.DefaultGeoEventDefinition;
+import com.esri.ges.core.geoevent.FieldCardinality;
+import com.esri.ges.core.geoevent.FieldDefinition;
+import com.esri.ges.core.geoevent.FieldException;
+import com.esri.ges.core.geoevent.FieldGroup;
+import com.esri.ges.core.geoevent.FieldType;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+import com.esri.ges.core.geoevent.GeoEventPropertyName;
+import com.esri.ges.framework.i18n.BundleLogger;
+import com.esri.ges.framework.i18n.BundleLoggerFactory;
+import com.esri.ges.manager.geoeventdefinition.GeoEventDefinitionManager;
+import com.esri.ges.manager.geoeventdefinition.GeoEventDefinitionManagerException;
+import com.esri.ges.messaging.GeoEventCreator;
+import com.esri.ges.messaging.MessagingException;
+
+/**
+ * Decodes a GTFS-realtime <code>FeedMessage</code> straight from the protobuf response stream into
+ * GeoEvents: one per <code>VehiclePosition</code>, with a point geometry, and one per
+ * <code>TripUpdate</code>, with its stop time updates as a group. Entities are decoded one at a time, so
+ * memory use does not grow with the feed. Alerts, deleted entities and unknown fields are skipped.
+ * <p>
+ * The GeoEvents use the prebuilt definitions {@value #VEHICLE_POSITION_DEFINITION_NAME} and
+ * {@value #TRIP_UPDATE_DEFINITION_NAME}, which are created if the manager does not have them yet. Fields
+ * are bound by name, so fields removed from an edited definition are dropped.
+ */
+public class GtfsRealtimeParser
+{
+  /**
+   * Receives the GeoEvents decoded from a feed.
+   */
+  public interface Target
+  {
+    void found(GeoEvent event);
+  }
+
+  public static final String          VEHICLE_POSITION_DEFINITION_NAME = "gtfs-rt-vehicle-position";
+  public static final String          TRIP_UPDATE_DEFINITION_NAME      = "gtfs-rt-trip-update";
+
+  private static final BundleLogger   LOGGER                           = BundleLoggerFactory.getLogger(GtfsRealtimeParser.class);
+
+  private static final int            VARINT                           = ProtobufReader.WIRETYPE_VARINT;
+  private static final int            FIXED64                          = ProtobufReader.WIRETYPE_FIXED64;
+  private static final int            MESSAGE                          = ProtobufReader.WIRETYPE_LENGTH_DELIMITED;
+  private static final int            FIXED32                          = ProtobufReader.WIRETYPE_FIXED32;
+
+  // enum values of gtfs-realtime.proto, indexed by number
+  private static final String[]       TRIP_SCHEDULE_RELATIONSHIPS      = { "SCHEDULED", "ADDED", "UNSCHEDULED", "CANCELED", null, "REPLACEMENT", "DUPLICATED", "DELETED" };
+  private static final String[]       STOP_SCHEDULE_RELATIONSHIPS      = { "SCHEDULED", "SKIPPED", "NO_DATA", "UNSCHEDULED" };
+  private static final String[]       VEHICLE_STOP_STATUSES            = { "INCOMING_AT", "STOPPED_AT", "IN_TRANSIT_TO" };
+  private static final String[]       CONGESTION_LEVELS                = { "UNKNOWN_CONGESTION_LEVEL", "RUNNING_SMOOTHLY", "STOP_AND_GO", "CONGESTION", "SEVERE_CONGESTION" };
+  private static final String[]       OCCUPANCY_STATUSES               = { "EMPTY", "MANY_SEATS_AVAILABLE", "FEW_SEATS_AVAILABLE", "STANDING_ROOM_ONLY", "CRUSHED_STANDING_ROOM_ONLY", "FULL", "NOT_ACCEPTING_PASSENGERS", "NO_DATA_AVAILABLE", "NOT_BOARDABLE" };
+
+  private final GeoEventCreator       geoEventCreator;
+  private final Uri                   uri;
+  private final String                id;
+  private volatile FieldBindingPlan   vehiclePositionPlan;
+  private volatile FieldBindingPlan   tripUpdatePlan;
+
+  public GtfsRealtimeParser(GeoEventCreator geoEventCreator, Uri uri, String id)
+  {
+    this.geoEventCreator = geoEventCreator;
+    this.uri = uri;
+    this.id = id;
+  }
+
+  /**
+   * Decodes the feed, handing each GeoEvent to the target as soon as its entity has been read; returns the
+   * number of GeoEvents. Entities before a decoding error have already been handed over.
+   */
+  public int read(InputStream in, Target target) throws IOException
+  {
+    ProtobufReader reader = new ProtobufReader(in);
+    long feedTimestamp = 0;
+    int count = 0;
+    int tag;
+    while ((tag = reader.readTag()) != 0)
+    {
+      switch (tag)
+      {
+        case 1 << 3 | MESSAGE:
+          feedTimestamp = readFeedHeader(reader);
+          break;
+        case 2 << 3 | MESSAGE:
+          count += readFeedEntity(reader, feedTimestamp, target);
+          break;
+        default:
+          reader.skipField(tag);
+      }
+    }
+    return count;
+  }
+
+  // returns the feed timestamp in seconds, 0 if there is none
+  private long readFeedHeader(ProtobufReader reader) throws IOException
+  {
+    long previous = reader.pushLimit();
+    long timestamp = 0;
+    int tag;
+    while ((tag = reader.readTag()) != 0)
+    {
+      if (tag == (3 << 3 | VARINT))
+        timestamp = reader.readVarint();
+      else
+        reader.skipField(tag);
+    }
+    reader.popLimit(previous);
+    return timestamp;
+  }
+
+  private int readFeedEntity(ProtobufReader reader, long feedTimestamp, Target target) throws IOException
+  {
+    long previous = reader.pushLimit();
+    String entityId = null;
+    boolean deleted = false;
+    int count = 0;
+    int tag;
+    while ((tag = reader.readTag()) != 0)
+    {
+      switch (tag)
+      {
+        case 1 << 3 | MESSAGE:
+          entityId = reader.readString();
+          break;
+        case 2 << 3 | VARINT:
+          deleted = reader.readBool();
+          break;
+        case 3 << 3 | MESSAGE:
+          Map<String, Object> tripUpdate = readTripUpdate(reader);
+          if (!deleted && send(getTripUpdatePlan(), entityId, tripUpdate, feedTimestamp, target))
+            count++;
+          break;
+        case 4 << 3 | MESSAGE:
+          Map<String, Object> vehiclePosition = readVehiclePosition(reader);
+          if (!deleted && send(getVehiclePositionPlan(), entityId, vehiclePosition, feedTimestamp, target))
+            count++;
+          break;
+        default:
+          reader.skipField(tag);
+      }
+    }
+    reader.popLimit(previous);
+    return count;
+  }
+
+  private Map<String, Object> readVehiclePosition(ProtobufReader reader) throws IOException
+  {
+    Map<String, Object> fields = new HashMap<String, Object>();
+    long previous = reader.pushLimit();
+    int tag;
+    while ((tag = reader.readTag()) != 0)
+    {
+      switch (tag)
+      {
+        case 1 << 3 | MESSAGE:
+          readTripDescriptor(reader, fields);
+          break;
+        case 2 << 3 | MESSAGE:
+          readPosition(reader, fields);
+          break;
+        case 3 << 3 | VARINT:
+          fields.put("currentStopSequence", reader.readInt32());
+          break;
+        case 4 << 3 | VARINT:
+          fields.put("currentStatus", name(VEHICLE_STOP_STATUSES, reader.readInt32()));
+          break;
+        case 5 << 3 | VARINT:
+          fields.put("timestamp", new Date(reader.readVarint() * 1000));
+          break;
+        case 6 << 3 | VARINT:
+          fields.put("congestionLevel", name(CONGESTION_LEVELS, reader.readInt32()));
+          break;
+        case 7 << 3 | MESSAGE:
+          fields.put("stopId", reader.readString());
+          break;
+        case 8 << 3 | MESSAGE:
+          readVehicleDescriptor(reader, fields);
+          break;
+        case 9 << 3 | VARINT:
+          fields.put("occupancyStatus", name(OCCUPANCY_STATUSES, reader.readInt32()));
+          break;
+        default:
+          reader.skipField(tag);
+      }
+    }
+    reader.popLimit(previous);
+    return fields;
+  }
+
+  private Map<String, Object> readTripUpdate(ProtobufReader reader) throws IOException
+  {
+    Map<String, Object> fields = new HashMap<String, Object>();
+    List<Map<String, Object>> stopTimeUpdates = new ArrayList<Map<String, Object>>();
+    long previous = reader.pushLimit();
+    int tag;
+    while ((tag = reader.readTag()) != 0)
+    {
+      switch (tag)
+      {
+        case 1 << 3 | MESSAGE:
+          readTripDescriptor(reader, fields);
+          break;
+        case 2 << 3 | MESSAGE:
+          stopTimeUpdates.add(readStopTimeUpdate(reader));
+          break;
+        case 3 << 3 | MESSAGE:
+          readVehicleDescriptor(reader, fields);
+          break;
+        case 4 << 3 | VARINT:
+          fields.put("timestamp", new Date(reader.readVarint() * 1000));
+          break;
+        case 5 << 3 | VARINT:
+          fields.put("delay", reader.readInt32());
+          break;
+        default:
+          reader.skipField(tag);
+      }
+    }
+    reader.popLimit(previous);
+    fields.put("stopTimeUpdates", stopTimeUpdates);
+    return fields;
+  }
+
+  private Map<String, Object> readStopTimeUpdate(ProtobufReader reader) throws IOException
+  {
+    Map<String, Object> fields = new HashMap<String, Object>();
+    long previous = reader.pushLimit();
+    int tag;
+    while ((tag = reader.readTag()) != 0)
+    {
+      switch (tag)
+      {
+        case 1 << 3 | VARINT:
+          fields.put("stopSequence", reader.readInt32());
+          break;
+        case 2 << 3 | MESSAGE:
+          readStopTimeEvent(reader, "arrival", fields);
+          break;
+        case 3 << 3 | MESSAGE:
+          readStopTimeEvent(reader, "departure", fields);
+          break;
+        case 4 << 3 | MESSAGE:
+          fields.put("stopId", reader.readString());
+          break;
+        case 5 << 3 | VARINT:
+          fields.put("scheduleRelationship", name(STOP_SCHEDULE_RELATIONSHIPS, reader.readInt32()));
+          break;
+        default:
+          reader.skipField(tag);
+      }
+    }
+    reader.popLimit(previous);
+    return fields;
+  }
+
+  private void readStopTimeEvent(ProtobufReader reader, String prefix, Map<String, Object> fields) throws IOException
+  {
+    long previous = reader.pushLimit();
+    int tag;
+    while ((tag = reader.readTag()) != 0)
+    {
+      switch (tag)
+      {
+        case 1 << 3 | VARINT:
+          fields.put(prefix + "Delay", reader.readInt32());
+          break;
+        case 2 << 3 | VARINT:
+          fields.put(prefix + "Time", new Date(reader.readVarint() * 1000));
+          break;
+        case 3 << 3 | VARINT:
+          fields.put(prefix + "Uncertainty", reader.readInt32());
+          break;
+        default:
+          reader.skipField(tag);
+      }
+    }
+    reader.popLimit(previous);
+  }
+
+  private void readTripDescriptor(ProtobufReader reader, Map<String, Object> fields) throws IOException
+  {
+    long previous = reader.pushLimit();
+    int tag;
+    while ((tag = reader.readTag()) != 0)
+    {
+      switch (tag)
+      {
+        case 1 << 3 | MESSAGE:
+          fields.put("tripId", reader.readString());
+          break;
+        case 2 << 3 | MESSAGE:
+          fields.put("startTime", reader.readString());
+          break;
+        case 3 << 3 | MESSAGE:
+          fields.put("startDate", reader.readString());
+          break;
+        case 4 << 3 | VARINT:
+          fields.put("tripScheduleRelationship", name(TRIP_SCHEDULE_RELATIONSHIPS, reader.readInt32()));
+          break;
+        case 5 << 3 | MESSAGE:
+          fields.put("routeId", reader.readString());
+          break;
+        case 6 << 3 | VARINT:
+          fields.put("directionId", reader.readInt32());
+          break;
+        default:
+          reader.skipField(tag);
+      }
+    }
+    reader.popLimit(previous);
+  }
+
+  private void readVehicleDescriptor(ProtobufReader reader, Map<String, Object> fields) throws IOException
+  {
+    long previous = reader.pushLimit();
+    int tag;
+    while ((tag = reader.readTag()) != 0)
+    {
+      switch (tag)
+      {
+        case 1 << 3 | MESSAGE:
+          fields.put("vehicleId", reader.readString());
+          break;
+        case 2 << 3 | MESSAGE:
+          fields.put("vehicleLabel", reader.readString());
+          break;
+        case 3 << 3 | MESSAGE:
+          fields.put("licensePlate", reader.readString());
+          break;
+        default:
+          reader.skipField(tag);
+      }
+    }
+    reader.popLimit(previous);
+  }
+
+  private void readPosition(ProtobufReader reader, Map<String, Object> fields) throws IOException
+  {
+    long previous = reader.pushLimit();
+    int tag;
+    while ((tag = reader.readTag()) != 0)
+    {
+      switch (tag)
+      {
+        case 1 << 3 | FIXED32:
+          fields.put("latitude", toDouble(reader.readFloat()));
+          break;
+        case 2 << 3 | FIXED32:
+          fields.put("longitude", toDouble(reader.readFloat()));
+          break;
+        case 3 << 3 | FIXED32:
+          fields.put("bearing", toDouble(reader.readFloat()));
+          break;
+        case 4 << 3 | FIXED64:
+          fields.put("odometer", reader.readDouble());
+          break;
+        case 5 << 3 | FIXED32:
+          fields.put("speed", toDouble(reader.readFloat()));
+          break;
+        default:
+          reader.skipField(tag);
+      }
+    }
+    reader.popLimit(previous);
+  }
+
+  private boolean send(FieldBindingPlan plan, String entityId, Map<String, Object> fields, long feedTimestamp, Target target)
+  {
+    if (plan == null)
+      return false;
+    fields.put("entityId", entityId);
+    // entities without a timestamp of their own were observed at the feed timestamp
+    if (!fields.containsKey("timestamp") && feedTimestamp > 0)
+      fields.put("timestamp", new Date(feedTimestamp * 1000));
+
+    GeoEvent event = null;
+    try
+    {
+      event = geoEventCreator.create(plan.getGeoEventDefinition().getGuid());
+
+      event.setProperty(GeoEventPropertyName.TYPE, "event");
+      event.setProperty(GeoEventPropertyName.OWNER_ID, id);
+      event.setProperty(GeoEventPropertyName.OWNER_URI, uri);
+
+      populate(event, plan, fields);
+      Object latitude = fields.get("latitude");
+      Object longitude = fields.get("longitude");
+      if (latitude != null && longitude != null)
+        event.setGeometry(new MapGeometry(new Point((Double) longitude, (Double) latitude), PointGeometryBuilder.getSpatialReference(4326)));
+    }
+    catch (MessagingException e)
+    {
+      LOGGER.error("GE_CREATION_ERROR", e, e.getMessage());
+      return false;
+    }
+    catch (FieldException e)
+    {
+      LOGGER.error("GE_GEOMETRY_CREATION_ERROR", e);
+    }
+    target.found(event);
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void populate(FieldGroup group, FieldBindingPlan plan, Map<String, Object> fields)
+  {
+    for (Map.Entry<String, Object> field : fields.entrySet())
+    {
+      FieldBindingPlan.Slot slot = plan.get(field.getKey());
+      if (slot == null || field.getValue() == null)
+        continue;
+      try
+      {
+        if (slot.getChildren() != null && field.getValue() instanceof List)
+        {
+          List<FieldGroup> groups = new ArrayList<FieldGroup>();
+          for (Map<String, Object> child : (List<Map<String, Object>>) field.getValue())
+          {
+            FieldGroup childGroup = group.createFieldGroup(slot.getDefinition().getName());
+            populate(childGroup, slot.getChildren(), child);
+            groups.add(childGroup);
+          }
+          group.setField(slot.getIndex(), groups);
+        }
+        else if (slot.getChildren() == null && !slot.isMany())
+        {
+          group.setField(slot.getIndex(), field.getValue());
+        }
+      }
+      catch (FieldException ex)
+      {
+        LOGGER.error("FIELD_ERROR", field.getKey(), ex.getMessage());
+      }
+    }
+  }
+
+  private FieldBindingPlan getVehiclePositionPlan()
+  {
+    FieldBindingPlan plan = vehiclePositionPlan;
+    if (plan == null || !isCurrent(plan))
+      vehiclePositionPlan = plan = resolve(VEHICLE_POSITION_DEFINITION_NAME);
+    return plan;
+  }
+
+  private FieldBindingPlan getTripUpdatePlan()
+  {
+    FieldBindingPlan plan = tripUpdatePlan;
+    if (plan == null || !isCurrent(plan))
+      tripUpdatePlan = plan = resolve(TRIP_UPDATE_DEFINITION_NAME);
+    return plan;
+  }
+
+  // the manager returns another instance once the definition has been edited, and null once it is deleted
+  private boolean isCurrent(FieldBindingPlan plan)
+  {
+    GeoEventDefinition current = geoEventCreator.getGeoEventDefinitionManager().getGeoEventDefinition(plan.getGeoEventDefinition().getGuid());
+    return current != null && plan.isCompiledFrom(current);
+  }
+
+  /**
+   * Looks the prebuilt definition up by name, creating it if the manager does not have it. Synchronized so
+   * that concurrent feeds do not create it twice.
+   */
+  private synchronized FieldBindingPlan resolve(String name)
+  {
+    GeoEventDefinitionManager manager = geoEventCreator.getGeoEventDefinitionManager();
+    Collection<GeoEventDefinition> searchResults = manager.searchGeoEventDefinitionByName(name);
+    GeoEventDefinition geoEventDefinition = searchResults.isEmpty() ? null : searchResults.iterator().next();
+    if (geoEventDefinition == null)
+    {
+      try
+      {
+        geoEventDefinition = VEHICLE_POSITION_DEFINITION_NAME.equals(name) ? createVehiclePositionDefinition() : createTripUpdateDefinition();
+        manager.addGeoEventDefinition(geoEventDefinition);
+      }
+      catch (ConfigurationException | GeoEventDefinitionManagerException e)
+      {
+        LOGGER.error("GED_CREATION_ERROR", e.getMessage(), name);
+        return null;
+      }
+    }
+    return FieldBindingPlan.compile(geoEventDefinition);
+  }
+
+  private GeoEventDefinition createVehiclePositionDefinition() throws ConfigurationException
+  {
+    List<FieldDefinition> fieldDefinitions = new ArrayList<FieldDefinition>();
+    fieldDefinitions.add(new DefaultFieldDefinition("entityId", FieldType.String));
+    fieldDefinitions.add(new DefaultFieldDefinition("vehicleId", FieldType.String, "TRACK_ID"));
+    fieldDefinitions.add(new DefaultFieldDefinition("vehicleLabel", FieldType.String));
+    fieldDefinitions.add(new DefaultFieldDefinition("licensePlate", FieldType.String));
+    addTripFields(fieldDefinitions);
+    fieldDefinitions.add(new DefaultFieldDefinition("latitude", FieldType.Double));
+    fieldDefinitions.add(new DefaultFieldDefinition("longitude", FieldType.Double));
+    fieldDefinitions.add(new DefaultFieldDefinition("bearing", FieldType.Double));
+    fieldDefinitions.add(new DefaultFieldDefinition("odometer", FieldType.Double));
+    fieldDefinitions.add(new DefaultFieldDefinition("speed", FieldType.Double));
+    fieldDefinitions.add(new DefaultFieldDefinition("currentStopSequence", FieldType.Integer));
+    fieldDefinitions.add(new DefaultFieldDefinition("stopId", FieldType.String));
+    fieldDefinitions.add(new DefaultFieldDefinition("currentStatus", FieldType.String));
+    fieldDefinitions.add(new DefaultFieldDefinition("congestionLevel", FieldType.String));
+    fieldDefinitions.add(new DefaultFieldDefinition("occupancyStatus", FieldType.String));
+    fieldDefinitions.add(new DefaultFieldDefinition("timestamp", FieldType.Date, "TIME_START"));
+    fieldDefinitions.add(new DefaultFieldDefinition("geometry", FieldType.Geometry, "GEOMETRY"));
+    return createDefinition(VEHICLE_POSITION_DEFINITION_NAME, fieldDefinitions);
+  }
+
+  private GeoEventDefinition createTripUpdateDefinition() throws ConfigurationException
+  {
+    List<FieldDefinition> fieldDefinitions = new ArrayList<FieldDefinition>();
+    fieldDefinitions.add(new DefaultFieldDefinition("entityId", FieldType.String));
+    // trip updates are tracked per trip, a vehicle serves many trips
+    fieldDefinitions.add(new DefaultFieldDefinition("tripId", FieldType.String, "TRACK_ID"));
+    fieldDefinitions.add(new DefaultFieldDefinition("routeId", FieldType.String));
+    fieldDefinitions.add(new DefaultFieldDefinition("directionId", FieldType.Integer));
+    fieldDefinitions.add(new DefaultFieldDefinition("startTime", FieldType.String));
+    fieldDefinitions.add(new DefaultFieldDefinition("startDate", FieldType.String));
+    fieldDefinitions.add(new DefaultFieldDefinition("tripScheduleRelationship", FieldType.String));
+    fieldDefinitions.add(new DefaultFieldDefinition("vehicleId", FieldType.String));
+    fieldDefinitions.add(new DefaultFieldDefinition("vehicleLabel", FieldType.String));
+    fieldDefinitions.add(new DefaultFieldDefinition("licensePlate", FieldType.String));
+    fieldDefinitions.add(new DefaultFieldDefinition("timestamp", FieldType.Date, "TIME_START"));
+    fieldDefinitions.add(new DefaultFieldDefinition("delay", FieldType.Integer));
+
+    FieldDefinition stopTimeUpdates = new DefaultFieldDefinition("stopTimeUpdates", FieldType.Group);
+    stopTimeUpdates.setCardinality(FieldCardinality.Many);
+    stopTimeUpdates.addChild(new DefaultFieldDefinition("stopSequence", FieldType.Integer));
+    stopTimeUpdates.addChild(new DefaultFieldDefinition("stopId", FieldType.String));
+    stopTimeUpdates.addChild(new DefaultFieldDefinition("arrivalTime", FieldType.Date));
+    stopTimeUpdates.addChild(new DefaultFieldDefinition("arrivalDelay", FieldType.Integer));
+    stopTimeUpdates.addChild(new DefaultFieldDefinition("arrivalUncertainty", FieldType.Integer));
+    stopTimeUpdates.addChild(new DefaultFieldDefinition("departureTime", FieldType.Date));
+    stopTimeUpdates.addChild(new DefaultFieldDefinition("departureDelay", FieldType.Integer));
+    stopTimeUpdates.addChild(new DefaultFieldDefinition("departureUncertainty", FieldType.Integer));
+    stopTimeUpdates.addChild(new DefaultFieldDefinition("scheduleRelationship", FieldType.String));
+    fieldDefinitions.add(stopTimeUpdates);
+    return createDefinition(TRIP_UPDATE_DEFINITION_NAME, fieldDefinitions);
+  }
+
+  // the trip descriptor of a vehicle position, without the track id a trip update puts on its trip
+  private static void addTripFields(List<FieldDefinition> fieldDefinitions) throws ConfigurationException
+  {
+    fieldDefinitions.add(new DefaultFieldDefinition("tripId", FieldType.String));
+    fieldDefinitions.add(new DefaultFieldDefinition("routeId", FieldType.String));
+    fieldDefinitions.add(new DefaultFieldDefinition("directionId", FieldType.Integer));
+    fieldDefinitions.add(new DefaultFieldDefinition("startTime", FieldType.String));
+    fieldDefinitions.add(new DefaultFieldDefinition("startDate", FieldType.String));
+    fieldDefinitions.add(new DefaultFieldDefinition("tripScheduleRelationship", FieldType.String));
+  }
+
+  private GeoEventDefinition createDefinition(String name, List<FieldDefinition> fieldDefinitions) throws ConfigurationException
+  {
+    GeoEventDefinition geoEventDefinition = new DefaultGeoEventDefinition();
+    geoEventDefinition.setName(name);
+    geoEventDefinition.setAccessType(AccessType.editable);
+    geoEventDefinition.setOwner(uri.toString());
+    geoEventDefinition.setFieldDefinitions(fieldDefinitions);
+    return geoEventDefinition;
+  }
+
+  private static String name(String[] names, int value)
+  {
+    return (value >= 0 && value < names.length && names[value] != null) ? names[value] : Integer.toString(value);
+  }
+
+  // the decimal digits of the float, rather than its binary expansion such as 34.12345504760742
+  private static Double toDouble(float value)
+  {
+    return Double.valueOf(Float.toString(value));
+  }
+}
@@ -0,0 +1,276 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+
+import com.esri.ges.framework.i18n.BundleLogger;
+import com.esri.ges.framework.i18n.BundleLoggerFactory;
+
+/**
+ * Long-lived pooled HTTP client shared by all HttpHandler processors of the service. Connections are kept
+ * alive and pooled per route (scheme, host and port), so processors talking to the same host share one warm
+ * pool instead of paying connection and TLS setup on every request.
+ */
+public class HttpClientManager
+{
+  private static final BundleLogger                LOGGER                     = BundleLoggerFactory.getLogger(HttpClientManager.class);
+
+  public static final int                          DEFAULT_MAX_TOTAL          = 200;
+  public static final int                          DEFAULT_MAX_PER_ROUTE      = 20;
+  public static final long                         DEFAULT_IDLE_TIMEOUT_MS    = 60 * 1000;
+  public static final long                         DEFAULT_KEEP_ALIVE_MS      = 30 * 1000;
+  private static final long                        EVICTION_INTERVAL_MS       = 10 * 1000;
+
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final CloseableHttpClient                client;
+  private final ScheduledExecutorService           evictor;
+  private final long                               idleTimeout;
+  private final ConcurrentMap<String, RouteStatistics> routes                 = new ConcurrentHashMap<String, RouteStatistics>();
+
+  public HttpClientManager()
+  {
+    this(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE, DEFAULT_IDLE_TIMEOUT_MS, DEFAULT_KEEP_ALIVE_MS);
+  }
+
+  public HttpClientManager(int maxTotal, int defaultMaxPerRoute, long idleTimeout, final long keepAlive)
+  {
+    this.idleTimeout = idleTimeout;
+    connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxTotal);
+    connectionManager.setDefaultMaxPerRoute(defaultMaxPerRoute);
+
+    ConnectionKeepAliveStrategy keepAliveStrategy = new ConnectionKeepAliveStrategy()
+      {
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context)
+        {
+          // honor the server's Keep-Alive header, otherwise keep the connection for the default period
+          long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+          return (duration > 0) ? duration : keepAlive;
+        }
+      };
+    client = HttpClients.custom().setConnectionManager(connectionManager).setKeepAliveStrategy(keepAliveStrategy).build();
+
+    evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+      {
+        @Override
+        public Thread newThread(Runnable r)
+        {
+          Thread thread = new Thread(r, "HttpHandlerIdleConnectionEvictor");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    evictor.scheduleWithFixedDelay(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          evictIdleConnections();
+        }
+      }, EVICTION_INTERVAL_MS, EVICTION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Makes sure the pool of the request's route allows at least <code>maxConnections</code> connections.
+   * Processors sharing a route share its connections, so the largest demand wins.
+   */
+  public void ensureRouteCapacity(String endpointURL, int maxConnections)
+  {
+    HttpRoute route = toRoute(endpointURL);
+    if (route != null)
+      ensureRouteCapacity(route, getRouteStatistics(route), maxConnections);
+    else
+      LOGGER.debug("No route for " + endpointURL + ", its connection limit is applied when it is requested.");
+  }
+
+  /**
+   * Executes the request on the shared client. The caller must close the response (after consuming its
+   * entity) to return the connection to the pool.
+   */
+  public CloseableHttpResponse execute(HttpRequestBase request) throws IOException
+  {
+    return execute(request, 0);
+  }
+
+  /**
+   * Executes the request on the shared client, first making sure the pool of its route allows at least
+   * <code>maxConnectionsPerRoute</code> connections.
+   */
+  public CloseableHttpResponse execute(HttpRequestBase request, int maxConnectionsPerRoute) throws IOException
+  {
+    HttpRoute route = toRoute(request.getURI());
+    if (route != null)
+    {
+      RouteStatistics statistics = getRouteStatistics(route);
+      if (statistics.maxConnections < maxConnectionsPerRoute)
+        ensureRouteCapacity(route, statistics, maxConnectionsPerRoute);
+      // a request finding an idle connection of its route in the pool is a hit
+      if (connectionManager.getStats(route).getAvailable() > 0)
+        statistics.hits.incrementAndGet();
+      else
+        statistics.misses.incrementAndGet();
+    }
+    return client.execute(request);
+  }
+
+  public long getHitCount()
+  {
+    long count = 0;
+    for (RouteStatistics statistics : routes.values())
+      count += statistics.hits.get();
+    return count;
+  }
+
+  public long getMissCount()
+  {
+    long count = 0;
+    for (RouteStatistics statistics : routes.values())
+      count += statistics.misses.get();
+    return count;
+  }
+
+  public PoolStats getTotalStats()
+  {
+    return connectionManager.getTotalStats();
+  }
+
+  public void evictIdleConnections()
+  {
+    try
+    {
+      connectionManager.closeExpiredConnections();
+      connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+    }
+    catch (RuntimeException e)
+    {
+      LOGGER.debug("Idle connection eviction failed: " + e.getMessage());
+    }
+  }
+
+  public void shutdown()
+  {
+    evictor.shutdownNow();
+    try
+    {
+      client.close();
+    }
+    catch (IOException e)
+    {
+      LOGGER.debug("Error closing the shared http client: " + e.getMessage());
+    }
+    connectionManager.shutdown();
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder sb = new StringBuilder("httpClientManager[");
+    PoolStats total = connectionManager.getTotalStats();
+    sb.append("hits=").append(getHitCount()).append(", misses=").append(getMissCount()).append(", leased=").append(total.getLeased()).append(", available=").append(total.getAvailable()).append(", pending=").append(total.getPending()).append(", max=").append(total.getMax());
+    for (Map.Entry<String, RouteStatistics> entry : routes.entrySet())
+      sb.append(", ").append(entry.getKey()).append("{hits=").append(entry.getValue().hits.get()).append(", misses=").append(entry.getValue().misses.get()).append("}");
+    return sb.append("]").toString();
+  }
+
+  private void ensureRouteCapacity(HttpRoute route, RouteStatistics statistics, int maxConnections)
+  {
+    synchronized (statistics)
+    {
+      if (connectionManager.getMaxPerRoute(route) < maxConnections)
+        connectionManager.setMaxPerRoute(route, maxConnections);
+      statistics.maxConnections = Math.max(statistics.maxConnections, maxConnections);
+    }
+  }
+
+  private RouteStatistics getRouteStatistics(HttpRoute route)
+  {
+    String key = route.getTargetHost().toHostString();
+    RouteStatistics statistics = routes.get(key);
+    if (statistics == null)
+    {
+      statistics = new RouteStatistics();
+      RouteStatistics existing = routes.putIfAbsent(key, statistics);
+      if (existing != null)
+        statistics = existing;
+    }
+    return statistics;
+  }
+
+  private static HttpRoute toRoute(String endpointURL)
+  {
+    try
+    {
+      return toRoute(URI.create(endpointURL));
+    }
+    catch (IllegalArgumentException e)
+    {
+      return null;
+    }
+  }
+
+  private static HttpRoute toRoute(URI uri)
+  {
+    if (uri == null || uri.getHost() == null)
+      return null;
+    String scheme = (uri.getScheme() != null) ? uri.getScheme() : "http";
+    int port = uri.getPort();
+    if (port < 0)
+      port = "https".equalsIgnoreCase(scheme) ? 443 : 80;
+    boolean secure = "https".equalsIgnoreCase(scheme);
+    return new HttpRoute(new HttpHost(uri.getHost(), port, scheme), null, secure);
+  }
+
+  private static class RouteStatistics
+  {
+    final AtomicLong hits   = new AtomicLong();
+    final AtomicLong misses = new AtomicLong();
+    // the largest limit requested for the route so far
+    volatile int     maxConnections;
+  }
+}
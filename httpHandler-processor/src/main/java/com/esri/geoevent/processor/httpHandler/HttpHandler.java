@@ -24,41 +24,55 @@
 
 package com.esri.geoevent.processor.httpHandler;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.ParseException;
 import org.apache.http.StatusLine;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.util.EntityUtils;
+import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.map.ObjectMapper;
-import org.json.JSONObject;
-import org.json.XML;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
 
+import com.esri.geoevent.processor.httpHandler.RequestDispatcher.OverflowPolicy;
 import com.esri.ges.core.component.ComponentException;
-import com.esri.ges.core.geoevent.Field;
-import com.esri.ges.core.geoevent.FieldDefinition;
-import com.esri.ges.core.geoevent.FieldExpression;
 import com.esri.ges.core.geoevent.GeoEvent;
-import com.esri.ges.core.geoevent.GeoEventDefinition;
 import com.esri.ges.core.http.GeoEventHttpClient;
+import com.esri.ges.core.http.GeoEventHttpClientService;
 import com.esri.ges.core.validation.ValidationException;
 import com.esri.ges.framework.i18n.BundleLogger;
 import com.esri.ges.framework.i18n.BundleLoggerFactory;
@@ -78,6 +92,7 @@ public class HttpHandler extends GeoEventProcessorBase implements GeoEventProduc
   private static final BundleLogger LOGGER                                = BundleLoggerFactory.getLogger(HttpHandler.class);
 
   public static final String        MODE_PROPERTY                         = "mode";
+  public static final String        LEGACY_MODE_PROPERTY                  = "Mode";
   public static final String        CLIENT_URL_PROPERTY                   = "clientURL";
   public static final String        CLIENT_URL_USE_PROXY_PROPERTY         = "useClientURLProxy";
   public static final String        CLIENT_URL_PROXY_PROPERTY             = "clientURLProxy";
@@ -85,6 +100,7 @@ public class HttpHandler extends GeoEventProcessorBase implements GeoEventProduc
   public static final String        HTTP_METHOD_PROPERTY                  = "httpMethod";
   public static final String        ACCEPTABLE_MIME_TYPES_CLIENT_PROPERTY = "acceptableMimeTypesClientMode";
   public static final String        ACCEPTABLE_MIME_TYPES_SERVER_PROPERTY = "acceptableMimeTypesServerMode";
+  public static final String        POLLING_ENABLED_PROPERTY              = "pollingEnabled";
   public static final String        FREQUENCY_PROPERTY                    = "frequency";
   public static final String        POST_BODY_PROPERTY                    = "clientPostBody";
   public static final String        POST_CONTENT_TYPE_PROPERTY            = "postContentType";
@@ -98,20 +114,70 @@ public class HttpHandler extends GeoEventProcessorBase implements GeoEventProduc
   public static final String        HTTP_TIMEOUT_VALUE                    = "httpTimeoutValue";
   public static final String        HTTP_APPEND_TO_MESSAGE                = "httpAppendToEnd";
   public static final String        CUSTOM_DATE_FORMAT_PROPERTY_NAME      = "CustomDateFormat";
+  public static final String        MAX_CONNECTIONS_PER_ROUTE_PROPERTY    = "maxConnectionsPerRoute";
+  public static final String        DISPATCH_POOL_SIZE_PROPERTY           = "dispatchPoolSize";
+  public static final String        DISPATCH_QUEUE_CAPACITY_PROPERTY      = "dispatchQueueCapacity";
+  public static final String        DISPATCH_OVERFLOW_POLICY_PROPERTY     = "dispatchOverflowPolicy";
+  public static final String        REQUEST_ENGINE_PROPERTY               = "requestEngine";
+  public static final String        HTTP_CLIENT_PROPERTY                  = "httpClient";
+  public static final String        ASYNC_IO_THREADS_PROPERTY             = "asyncIoThreads";
+  public static final String        ASYNC_MAX_IN_FLIGHT_PROPERTY          = "asyncMaxInFlight";
+  public static final String        CACHE_ENABLED_PROPERTY                = "cacheEnabled";
+  public static final String        CACHE_TTL_SECONDS_PROPERTY            = "cacheTtlSeconds";
+  public static final String        CACHE_STALE_SECONDS_PROPERTY          = "cacheStaleSeconds";
+  public static final String        CACHE_MAX_ENTRIES_PROPERTY            = "cacheMaxEntries";
+  public static final String        CACHE_MAX_MEGABYTES_PROPERTY          = "cacheMaxMegabytes";
+  public static final String        COALESCE_REQUESTS_PROPERTY            = "coalesceRequests";
+  public static final String        BATCH_ENABLED_PROPERTY                = "batchEnabled";
+  public static final String        BATCH_MAX_COUNT_PROPERTY              = "batchMaxCount";
+  public static final String        BATCH_MAX_KILOBYTES_PROPERTY          = "batchMaxKilobytes";
+  public static final String        BATCH_LINGER_MILLIS_PROPERTY          = "batchLingerMillis";
+  public static final String        BATCH_ENVELOPE_PROPERTY               = "batchEnvelope";
+  public static final String        BATCH_RESPONSE_MAPPING_PROPERTY       = "batchResponseMapping";
+  public static final String        BATCH_KEY_FIELD_PROPERTY              = "batchKeyField";
+  public static final String        BATCH_MAPPING_POSITION                = "POSITION";
+  public static final String        BATCH_MAPPING_KEY                     = "KEY";
+  public static final String        SERVER_BIND_ADDRESS_PROPERTY          = "serverBindAddress";
+  public static final String        OUTBOUND_STAGING_PROPERTY             = "outboundStaging";
+  public static final String        OUTBOUND_CAPACITY_PROPERTY            = "outboundCapacity";
+  public static final String        OUTBOUND_BATCH_SIZE_PROPERTY          = "outboundBatchSize";
+  public static final String        OUTBOUND_LINGER_MILLIS_PROPERTY       = "outboundLingerMillis";
+  public static final String        SERVER_PORT_PROPERTY                  = "serverPort";
+  public static final String        SERVER_MAX_BODY_KILOBYTES_PROPERTY    = "serverMaxBodyKilobytes";
+  public static final String        SERVER_IDLE_TIMEOUT_PROPERTY          = "serverIdleTimeoutSeconds";
+  public static final String        PAGING_MODE_PROPERTY                  = "pagingMode";
+  public static final String        PAGE_SIZE_PROPERTY                    = "pageSize";
+  public static final String        PAGE_PARALLELISM_PROPERTY             = "pageParallelism";
+  public static final String        PAGE_MAX_COUNT_PROPERTY               = "pageMaxCount";
+  public static final String        PAGE_MAX_CONCURRENT_QUERIES_PROPERTY  = "pageMaxConcurrentQueries";
+  public static final String        PAGE_OFFSET_PARAMETER_PROPERTY        = "pageOffsetParameter";
+  public static final String        PAGE_SIZE_PARAMETER_PROPERTY          = "pageSizeParameter";
+  public static final String        PAGE_COUNT_QUERY_PROPERTY             = "pageCountQuery";
+  public static final String        PAGE_COUNT_FIELD_PROPERTY             = "pageCountField";
+  public static final String        NEXT_LINK_FIELD_PROPERTY              = "nextLinkField";
+  public static final String        CURSOR_FIELD_PROPERTY                 = "cursorField";
+  public static final String        CURSOR_PARAMETER_PROPERTY             = "cursorParameter";
+  public static final String        MODE_CLIENT                           = "CLIENT";
+  public static final String        MODE_SERVER                           = "SERVER";
+  public static final String        REQUEST_ENGINE_BLOCKING               = "BLOCKING";
+  public static final String        REQUEST_ENGINE_ASYNC                  = "ASYNC";
+  public static final String        HTTP_CLIENT_POOLED                    = "POOLED";
+  public static final String        HTTP_CLIENT_GEOEVENT                  = "GEOEVENT";
+  private static final String       DEFAULT_RESPONSE_CHARSET              = "ISO-8859-1";
 
   private String                    serviceURL;
+  private String                    mode                                  = MODE_CLIENT;
   protected String                  clientUrl;
   private String                    clientParameters                      = "";
   protected String                  httpMethod;
   private String                    acceptableMimeTypes_server;
   protected String                  acceptableMimeTypes_client;
+  private boolean                   pollingEnabled;
   private int                       frequency;
   protected String                  postBodyType;
   protected String                  postBody;
   private boolean                   honorLastModified;
   private String                    trackIdField;
-  private String                    fieldSeparator;
-
   private Boolean                   useLongPolling                        = false;
   private String                    headerParams;
   private String                    postFrom;
@@ -119,6 +185,44 @@ public class HttpHandler extends GeoEventProcessorBase implements GeoEventProduc
   private int                       httpTimeoutValue;
   private String                    eom                                   = "";
   private String                    responseFormat                        = "json";
+  private int                       maxConnectionsPerRoute                = HttpClientManager.DEFAULT_MAX_PER_ROUTE;
+  private RequestConfig             requestConfig;
+  private int                       dispatchPoolSize                      = 20;
+  private int                       dispatchQueueCapacity                 = 1000;
+  private OverflowPolicy            dispatchOverflowPolicy                = OverflowPolicy.BLOCK;
+  private String                    requestEngine                         = REQUEST_ENGINE_BLOCKING;
+  private String                    httpClient                            = HTTP_CLIENT_POOLED;
+  private int                       asyncIoThreads                        = 2;
+  private int                       asyncMaxInFlight                      = 1000;
+  private boolean                   cacheEnabled                          = false;
+  private int                       cacheTtlSeconds                       = 60;
+  private int                       cacheStaleSeconds                     = 30;
+  private int                       cacheMaxEntries                       = 1000;
+  private int                       cacheMaxMegabytes                     = 64;
+  private boolean                   coalesceRequests                      = false;
+  private boolean                   batchEnabled                          = false;
+  private int                       batchMaxCount                         = 100;
+  private int                       batchMaxKilobytes                     = 1024;
+  private int                       batchLingerMillis                     = 100;
+  private String                    batchEnvelope                         = RequestBatcher.DEFAULT_ENVELOPE;
+  private String                    batchResponseMapping                  = BATCH_MAPPING_POSITION;
+  private String                    batchKeyField;
+  private boolean                   outboundStaging                       = false;
+  private int                       outboundCapacity                      = 10000;
+  private int                       outboundBatchSize                     = 500;
+  private int                       outboundLingerMillis                  = 20;
+  private String                    pagingMode                            = PagedQuery.MODE_NONE;
+  private int                       pageSize                              = 1000;
+  private int                       pageParallelism                       = 4;
+  private int                       pageMaxCount                          = 1000;
+  private int                       pageMaxConcurrentQueries              = 2;
+  private String                    pageOffsetParameter                   = "resultOffset";
+  private String                    pageSizeParameter                     = "resultRecordCount";
+  private String                    pageCountQuery                        = "returnCountOnly=true";
+  private String                    pageCountField                        = "count";
+  private String                    nextLinkField                         = "";
+  private String                    cursorField                           = "next_cursor";
+  private String                    cursorParameter                       = "cursor";
 
   private Messaging                 messaging;
   private GeoEventCreator           geoEventCreator;
@@ -129,7 +233,7 @@ public class HttpHandler extends GeoEventProcessorBase implements GeoEventProduc
   private GeoEventDefinitionManager geoEventDefinitionManager;
   private Map<String, String>       edMapper                              = new ConcurrentHashMap<String, String>();
   private String                    newGeoEventDefinitionName;
-  private Date                      lastPollingDateTime;
+  private volatile Date             lastPollingDateTime;
   private int                       historicalTimespanSeconds;
   private Boolean                   useEpochMilliseconds;
 
@@ -138,13 +242,27 @@ public class HttpHandler extends GeoEventProcessorBase implements GeoEventProduc
   final Object                      lock1                                 = new Object();
   private static final ObjectMapper mapper                                = new ObjectMapper();
 
-  private String[]                  urlParts;
-  private String[]                  headers;
-  private String[]                  postBodyParts;
-  
-  private String                    lastGeoEventDefinitionsGUID;
-
-  ExecutorService                   executor                              = Executors.newFixedThreadPool(20);
+  private RequestTemplate           urlTemplate;
+  private RequestTemplate           postBodyTemplate;
+  private String[]                  headerNames;
+  private RequestTemplate[]         headerTemplates;
+
+  private RequestDispatcher         dispatcher;
+  private volatile AsyncRequestEngine asyncEngine;
+  private volatile ResponseCache    responseCache;
+  private final AtomicLong          droppedResponses                      = new AtomicLong();
+  private final RequestCoalescer    coalescer                             = new RequestCoalescer();
+  private volatile RequestBatcher   batcher;
+  private volatile PagedQuery       pagedQuery;
+  private OutboundStager            outboundStager;
+  private ScheduledFuture<?>        pollTask;
+  private HttpReceiver              receiver;
+  private String                    serverBindAddress                     = "127.0.0.1";
+  private int                       serverPort                            = 8080;
+  private int                       serverMaxBodyKilobytes                = 10240;
+  private int                       serverIdleTimeoutSeconds              = 30;
+  private final AtomicLong          pollStartedAt                         = new AtomicLong();
+  private final AtomicLong          skippedPolls                          = new AtomicLong();
 
   protected HttpHandler(GeoEventProcessorDefinition definition) throws ComponentException
   {
@@ -160,8 +278,19 @@ public class HttpHandler extends GeoEventProcessorBase implements GeoEventProduc
     if (hasProperty("responseFormat"))
       responseFormat = getProperty("responseFormat").getValueAsString();
 
-    if (hasProperty("fieldSeparator"))
-      fieldSeparator = getProperty("fieldSeparator").getValueAsString();
+    // processors saved before the property was renamed hold their mode under the old name
+    if (hasProperty(LEGACY_MODE_PROPERTY))
+      mode = getProperty(LEGACY_MODE_PROPERTY).getValueAsString();
+    else if (hasProperty(MODE_PROPERTY))
+      mode = getProperty(MODE_PROPERTY).getValueAsString();
+
+    if (hasProperty(ACCEPTABLE_MIME_TYPES_SERVER_PROPERTY))
+      acceptableMimeTypes_server = getProperty(ACCEPTABLE_MIME_TYPES_SERVER_PROPERTY).getValueAsString();
+    if (hasProperty(SERVER_BIND_ADDRESS_PROPERTY))
+      serverBindAddress = getProperty(SERVER_BIND_ADDRESS_PROPERTY).getValueAsString().trim();
+    serverPort = getIntProperty(SERVER_PORT_PROPERTY, serverPort);
+    serverMaxBodyKilobytes = getIntProperty(SERVER_MAX_BODY_KILOBYTES_PROPERTY, serverMaxBodyKilobytes);
+    serverIdleTimeoutSeconds = getIntProperty(SERVER_IDLE_TIMEOUT_PROPERTY, serverIdleTimeoutSeconds);
 
     if (hasProperty(CLIENT_URL_PROPERTY))
       serviceURL = getProperty(CLIENT_URL_PROPERTY).getValueAsString();
@@ -169,6 +298,7 @@ public class HttpHandler extends GeoEventProcessorBase implements GeoEventProduc
     if (hasProperty(HTTP_METHOD_PROPERTY))
       httpMethod = getProperty(HTTP_METHOD_PROPERTY).getValueAsString();
 
+    pollingEnabled = hasProperty(POLLING_ENABLED_PROPERTY) && Boolean.parseBoolean(getProperty(POLLING_ENABLED_PROPERTY).getValueAsString());
     String stringValue = "";
     try
     {
@@ -184,14 +314,18 @@ public class HttpHandler extends GeoEventProcessorBase implements GeoEventProduc
     }
     if (hasProperty(POST_BODY_PROPERTY))
       postBody = getProperty(POST_BODY_PROPERTY).getValueAsString();
+    headerNames = null;
+    headerTemplates = null;
     if (hasProperty(HEADER_PROPERTY))
     {
       headerParams = getProperty(HEADER_PROPERTY).getValueAsString();
       if (headerParams.isEmpty() == false)
       {
-        headers = headerParams.split("[|]");        
+        compileHeaders(headerParams.split("[|]"));
       }
     }
+    urlTemplate = RequestTemplate.compile(serviceURL);
+    postBodyTemplate = RequestTemplate.compile(postBody);
 
     if (hasProperty(HTTP_TIMEOUT_VALUE))
     {
@@ -223,130 +357,524 @@ public class HttpHandler extends GeoEventProcessorBase implements GeoEventProduc
       useEpochMilliseconds = Boolean.parseBoolean(getProperty("useEpochMilliseconds").getValueAsString());
     }
 
+    int timeout = getRequestTimeout();
+    requestConfig = RequestConfig.custom().setConnectTimeout(timeout).setSocketTimeout(timeout).setConnectionRequestTimeout(timeout).build();
+    maxConnectionsPerRoute = getIntProperty(MAX_CONNECTIONS_PER_ROUTE_PROPERTY, maxConnectionsPerRoute);
+    if (hasProperty(HTTP_CLIENT_PROPERTY))
+      httpClient = getProperty(HTTP_CLIENT_PROPERTY).getValueAsString();
+    // the limit is also applied to the route of every rendered URL when its first request is sent
+    String origin = getLiteralOrigin(serviceURL);
+    if (origin == null)
+      LOGGER.info("ROUTE_CAPACITY_DEFERRED", getId(), maxConnectionsPerRoute);
+    else if (HttpHandlerService.clientManager != null)
+      HttpHandlerService.clientManager.ensureRouteCapacity(origin, maxConnectionsPerRoute);
+
+    dispatchPoolSize = getIntProperty(DISPATCH_POOL_SIZE_PROPERTY, dispatchPoolSize);
+    dispatchQueueCapacity = getIntProperty(DISPATCH_QUEUE_CAPACITY_PROPERTY, dispatchQueueCapacity);
+    if (hasProperty(DISPATCH_OVERFLOW_POLICY_PROPERTY))
+      dispatchOverflowPolicy = RequestDispatcher.parsePolicy(getProperty(DISPATCH_OVERFLOW_POLICY_PROPERTY).getValueAsString());
+    createDispatcher();
+
+    if (hasProperty(REQUEST_ENGINE_PROPERTY))
+      requestEngine = getProperty(REQUEST_ENGINE_PROPERTY).getValueAsString();
+    asyncIoThreads = getIntProperty(ASYNC_IO_THREADS_PROPERTY, asyncIoThreads);
+    asyncMaxInFlight = getIntProperty(ASYNC_MAX_IN_FLIGHT_PROPERTY, asyncMaxInFlight);
+    createAsyncEngine();
+
+    if (hasProperty(CACHE_ENABLED_PROPERTY))
+      cacheEnabled = Boolean.parseBoolean(getProperty(CACHE_ENABLED_PROPERTY).getValueAsString());
+    cacheTtlSeconds = getIntProperty(CACHE_TTL_SECONDS_PROPERTY, cacheTtlSeconds);
+    cacheStaleSeconds = getIntProperty(CACHE_STALE_SECONDS_PROPERTY, cacheStaleSeconds);
+    cacheMaxEntries = getIntProperty(CACHE_MAX_ENTRIES_PROPERTY, cacheMaxEntries);
+    cacheMaxMegabytes = getIntProperty(CACHE_MAX_MEGABYTES_PROPERTY, cacheMaxMegabytes);
+    createResponseCache();
+
+    if (hasProperty(COALESCE_REQUESTS_PROPERTY))
+      coalesceRequests = Boolean.parseBoolean(getProperty(COALESCE_REQUESTS_PROPERTY).getValueAsString());
+
+    if (hasProperty(BATCH_ENABLED_PROPERTY))
+      batchEnabled = Boolean.parseBoolean(getProperty(BATCH_ENABLED_PROPERTY).getValueAsString());
+    batchMaxCount = getIntProperty(BATCH_MAX_COUNT_PROPERTY, batchMaxCount);
+    batchMaxKilobytes = getIntProperty(BATCH_MAX_KILOBYTES_PROPERTY, batchMaxKilobytes);
+    batchLingerMillis = getIntProperty(BATCH_LINGER_MILLIS_PROPERTY, batchLingerMillis);
+    if (hasProperty(BATCH_ENVELOPE_PROPERTY))
+      batchEnvelope = getProperty(BATCH_ENVELOPE_PROPERTY).getValueAsString();
+    if (hasProperty(BATCH_RESPONSE_MAPPING_PROPERTY))
+      batchResponseMapping = getProperty(BATCH_RESPONSE_MAPPING_PROPERTY).getValueAsString();
+    batchKeyField = null;
+    if (hasProperty(BATCH_KEY_FIELD_PROPERTY))
+    {
+      batchKeyField = getProperty(BATCH_KEY_FIELD_PROPERTY).getValueAsString();
+      if (batchKeyField != null && batchKeyField.trim().isEmpty())
+        batchKeyField = null;
+    }
+    createBatcher();
+
+    if (hasProperty(PAGING_MODE_PROPERTY))
+      pagingMode = getProperty(PAGING_MODE_PROPERTY).getValueAsString();
+    pageSize = getIntProperty(PAGE_SIZE_PROPERTY, pageSize);
+    pageParallelism = getIntProperty(PAGE_PARALLELISM_PROPERTY, pageParallelism);
+    pageMaxCount = getIntProperty(PAGE_MAX_COUNT_PROPERTY, pageMaxCount);
+    pageMaxConcurrentQueries = getIntProperty(PAGE_MAX_CONCURRENT_QUERIES_PROPERTY, pageMaxConcurrentQueries);
+    if (hasProperty(PAGE_OFFSET_PARAMETER_PROPERTY))
+      pageOffsetParameter = getProperty(PAGE_OFFSET_PARAMETER_PROPERTY).getValueAsString();
+    if (hasProperty(PAGE_SIZE_PARAMETER_PROPERTY))
+      pageSizeParameter = getProperty(PAGE_SIZE_PARAMETER_PROPERTY).getValueAsString();
+    if (hasProperty(PAGE_COUNT_QUERY_PROPERTY))
+      pageCountQuery = getProperty(PAGE_COUNT_QUERY_PROPERTY).getValueAsString();
+    if (hasProperty(PAGE_COUNT_FIELD_PROPERTY))
+      pageCountField = getProperty(PAGE_COUNT_FIELD_PROPERTY).getValueAsString();
+    if (hasProperty(NEXT_LINK_FIELD_PROPERTY))
+      nextLinkField = getProperty(NEXT_LINK_FIELD_PROPERTY).getValueAsString();
+    if (hasProperty(CURSOR_FIELD_PROPERTY))
+      cursorField = getProperty(CURSOR_FIELD_PROPERTY).getValueAsString();
+    if (hasProperty(CURSOR_PARAMETER_PROPERTY))
+      cursorParameter = getProperty(CURSOR_PARAMETER_PROPERTY).getValueAsString();
+    createPagedQuery();
+
     if (httpHandlerAdapter == null)
     {
       httpHandlerAdapter = new HttpHandlerAdapter(geoEventCreator, geoEventProducer, processDefinition, getId(), trackIdField);
     }
     httpHandlerAdapter.afterPropertiesSet(this);
+
+    if (hasProperty(OUTBOUND_STAGING_PROPERTY))
+      outboundStaging = Boolean.parseBoolean(getProperty(OUTBOUND_STAGING_PROPERTY).getValueAsString());
+    outboundCapacity = getIntProperty(OUTBOUND_CAPACITY_PROPERTY, outboundCapacity);
+    outboundBatchSize = getIntProperty(OUTBOUND_BATCH_SIZE_PROPERTY, outboundBatchSize);
+    outboundLingerMillis = getIntProperty(OUTBOUND_LINGER_MILLIS_PROPERTY, outboundLingerMillis);
+    createOutboundStager();
+
+    createReceiver();
+    schedulePolling();
   }
 
-  @Override
-  public void setId(String id)
+  int getIntProperty(String name, int defaultValue)
   {
-    super.setId(id);
+    if (!hasProperty(name))
+      return defaultValue;
+    String value = getProperty(name).getValueAsString();
+    try
+    {
+      return Integer.parseInt(value.trim());
+    }
+    catch (NumberFormatException ex)
+    {
+      LOGGER.error("INT_PARSE_ERROR", name, value);
+    }
+    return defaultValue;
+  }
 
-    destination = new EventDestination(getId() + ":event");
-    geoEventProducer = messaging.createGeoEventProducer(new EventDestination(id + ":event"));
+  /**
+   * Returns the scheme, host and port of a URL template, or null if a field slot is part of them.
+   */
+  static String getLiteralOrigin(String urlTemplate)
+  {
+    if (urlTemplate == null)
+      return null;
+    int slot = urlTemplate.indexOf('{');
+    String literal = (slot >= 0) ? urlTemplate.substring(0, slot) : urlTemplate;
+    int authority = literal.indexOf("://");
+    if (authority <= 0)
+      return null;
+    int end = authority + 3;
+    while (end < literal.length() && "/?#".indexOf(literal.charAt(end)) < 0)
+      end++;
+    // a slot right after the host could still be part of it
+    if (end == literal.length() && slot >= 0)
+      return null;
+    return (end > authority + 3) ? literal.substring(0, end) : null;
   }
 
-  @Override
-  public GeoEvent process(GeoEvent geoevent) throws Exception
+  private int getRequestTimeout()
   {
-    GeoEventDefinition gd = geoevent.getGeoEventDefinition();
-    // "http://server/{f1}/folder/{f2}?value={f3}";
-    urlParts = serviceURL.split("[{*}]");
-    String[] tempUrlParts = Arrays.copyOf(urlParts, urlParts.length);
-    String newURL = "";
-    String newPostBody = "";
-    for (int i = 0; i < tempUrlParts.length; i++)
+    return (httpTimeoutValue > 0) ? httpTimeoutValue : GeoEventHttpClient.DEFAULT_TIMEOUT;
+  }
+
+  private synchronized void createDispatcher()
+  {
+    RequestDispatcher previous = dispatcher;
+    if (previous != null)
     {
-      Integer idx = gd.getIndexOf(tempUrlParts[i]);
-      // LOGGER.info(tempUrlParts[i].toString() + ":" + idx.toString());
-      if (idx >= 0)
+      if (previous.hasSameConfiguration(dispatchPoolSize, dispatchQueueCapacity, dispatchOverflowPolicy))
+        return;
+      previous.shutdownAsync();
+    }
+    // one directory per user, which the dispatcher restricts to that user
+    File spillDirectory = new File(System.getProperty("java.io.tmpdir"), "httpHandler-" + System.getProperty("user.name").replaceAll("[^A-Za-z0-9._-]", "_"));
+    // the new dispatcher takes over the requests the previous one has spilled
+    dispatcher = new RequestDispatcher("HttpHandler-" + getId(), dispatchPoolSize, dispatchQueueCapacity, dispatchOverflowPolicy, spillDirectory, new RequestDispatcher.SpillReader()
       {
-        Field field = geoevent.getField(new FieldExpression(tempUrlParts[i]));
-        if (field != null)
+        @Override
+        public RequestDispatcher.SpillableTask readFrom(DataInputStream in) throws IOException
         {
-          String fieldValue = field.getValue().toString();
-          tempUrlParts[i] = fieldValue;
-          if (fieldValue != null)
-          {
-            // LOGGER.info("Got " + field.getDefinition().getName() + " " + tempUrlParts[i]);
-          }
+          return readRequester(in);
         }
-      }
-      else
-      {
-         //field not found - add lastpollDateTime and currentDateTime URL params
-        if (tempUrlParts[i].equals("$lastPollingDateTime"))
+      }, previous);
+  }
+
+  private synchronized void createAsyncEngine()
+  {
+    int timeout = getRequestTimeout();
+    // the GeoEvent HTTP client only offers blocking requests
+    boolean useAsync = REQUEST_ENGINE_ASYNC.equalsIgnoreCase(requestEngine) && !HTTP_CLIENT_GEOEVENT.equalsIgnoreCase(httpClient);
+    if (asyncEngine != null)
+    {
+      if (useAsync && asyncEngine.hasSameConfiguration(asyncIoThreads, asyncMaxInFlight, timeout))
+        return;
+      asyncEngine.shutdown();
+      asyncEngine = null;
+    }
+    if (useAsync)
+      asyncEngine = new AsyncRequestEngine("HttpHandler-" + getId(), asyncIoThreads, asyncMaxInFlight, timeout);
+  }
+
+  private synchronized void createResponseCache()
+  {
+    long ttl = cacheTtlSeconds * 1000L;
+    long stale = cacheStaleSeconds * 1000L;
+    long maxBytes = cacheMaxMegabytes * 1024L * 1024L;
+    if (responseCache != null)
+    {
+      if (cacheEnabled && responseCache.hasSameConfiguration(ttl, stale, cacheMaxEntries, maxBytes))
+        return;
+      LOGGER.debug(responseCache.toString());
+      responseCache = null;
+    }
+    if (cacheEnabled)
+      responseCache = new ResponseCache(ttl, stale, cacheMaxEntries, maxBytes);
+  }
+
+  private synchronized void createBatcher()
+  {
+    boolean useBatching = batchEnabled && "POST".equals(httpMethod);
+    long maxBytes = batchMaxKilobytes * 1024L;
+    if (batcher != null)
+    {
+      if (useBatching && batcher.hasSameConfiguration(batchMaxCount, maxBytes, batchLingerMillis, batchEnvelope))
+        return;
+      batcher.shutdown();
+      batcher = null;
+    }
+    if (useBatching)
+    {
+      batcher = new RequestBatcher("HttpHandler-" + getId(), batchMaxCount, maxBytes, batchLingerMillis, batchEnvelope, new RequestBatcher.Flusher()
         {
-          Long timeValue = (Long)lastPollingDateTime.getTime();
-          if (useEpochMilliseconds == false)
+          @Override
+          public void flush(String endpointURL, String[] headerValues, String payload, String[] keys)
           {
-            timeValue = timeValue / 1000;
-          }            
-          tempUrlParts[i] = timeValue.toString();
-        }
-        else if(tempUrlParts[i].equals("$currentDateTime"))
+            sendRequest(endpointURL, payload, headerValues, null, 0, false, keys);
+          }
+        });
+    }
+  }
+
+  private synchronized void createPagedQuery()
+  {
+    if (pagedQuery != null)
+    {
+      // queries already submitted still run on the old executors
+      LOGGER.debug(pagedQuery.toString());
+      pagedQuery.shutdown();
+      pagedQuery = null;
+    }
+    if (pagingMode != null && !pagingMode.trim().isEmpty() && !PagedQuery.MODE_NONE.equalsIgnoreCase(pagingMode.trim()))
+      pagedQuery = new PagedQuery("HttpHandler-" + getId(), pagingMode.trim(), pageSize, pageParallelism, pageMaxCount, pageMaxConcurrentQueries, pageOffsetParameter, pageSizeParameter, pageCountQuery, pageCountField, nextLinkField, cursorField, cursorParameter);
+  }
+
+  private synchronized void createOutboundStager()
+  {
+    if (outboundStager != null)
+    {
+      if (outboundStaging && outboundStager.hasSameConfiguration(geoEventProducer, outboundCapacity, outboundBatchSize, outboundLingerMillis))
+        return;
+      // send the staged GeoEvents before they are detached
+      httpHandlerAdapter.setOutboundStager(null);
+      outboundStager.shutdown();
+      LOGGER.debug(outboundStager.toString());
+      outboundStager = null;
+    }
+    if (outboundStaging && geoEventProducer != null)
+    {
+      outboundStager = new OutboundStager("HttpHandler-" + getId(), geoEventProducer, outboundCapacity, outboundBatchSize, outboundLingerMillis);
+      httpHandlerAdapter.setOutboundStager(outboundStager);
+    }
+  }
+
+  private synchronized void createReceiver()
+  {
+    boolean useServer = MODE_SERVER.equalsIgnoreCase(mode);
+    int maxBodyBytes = (int) Math.min(Integer.MAX_VALUE, serverMaxBodyKilobytes * 1024L);
+    long idleTimeoutMillis = serverIdleTimeoutSeconds * 1000L;
+    if (receiver != null)
+    {
+      if (useServer && receiver.hasSameConfiguration(serverBindAddress, serverPort, acceptableMimeTypes_server, maxBodyBytes, idleTimeoutMillis))
+        return;
+      receiver.shutdown();
+      LOGGER.debug(receiver.toString());
+      receiver = null;
+    }
+    if (!useServer)
+      return;
+    try
+    {
+      receiver = new HttpReceiver("HttpHandler-" + getId(), serverBindAddress, serverPort, acceptableMimeTypes_server, maxBodyBytes, idleTimeoutMillis, new HttpReceiver.BodyHandler()
         {
-          Date currentDateTime = new Date();
-          Long timeValue = (Long)currentDateTime.getTime();
-          if (useEpochMilliseconds == false)
+          @Override
+          public boolean received(final byte[] body, String contentType)
           {
-            timeValue = timeValue / 1000;
-          }            
-          tempUrlParts[i] = timeValue.toString();            
+            final String charsetName = getCharsetName(contentType);
+            RequestDispatcher currentDispatcher = dispatcher;
+            // parse on the worker pool; a full queue is answered with 503 rather than blocking the selector
+            return currentDispatcher != null && currentDispatcher.tryDispatch(new Runnable()
+              {
+                @Override
+                public void run()
+                {
+                  processBody(body, charsetName, 1, null);
+                }
+              });
+          }
+        });
+    }
+    catch (IOException e)
+    {
+      LOGGER.error("SERVER_START_ERROR", serverBindAddress, serverPort, e.getMessage());
+    }
+  }
+
+  // pushed payloads without a charset are taken as UTF-8, the JSON default
+  private static String getCharsetName(String contentType)
+  {
+    try
+    {
+      Charset charset = (contentType != null) ? ContentType.parse(contentType).getCharset() : null;
+      if (charset != null)
+        return charset.name();
+    }
+    catch (RuntimeException e)
+    {
+      LOGGER.debug("Invalid content type " + contentType);
+    }
+    return "UTF-8";
+  }
+
+  /**
+   * In CLIENT mode with polling enabled and a positive frequency the templated request is also sent on a timer. Templates that
+   * reference GeoEvent fields need an event to render and are only sent from process().
+   */
+  private synchronized void schedulePolling()
+  {
+    if (pollTask != null)
+    {
+      pollTask.cancel(false);
+      pollTask = null;
+    }
+    PollingScheduler scheduler = HttpHandlerService.pollingScheduler;
+    if (scheduler == null || !MODE_CLIENT.equalsIgnoreCase(mode) || !pollingEnabled || frequency <= 0)
+      return;
+    if (urlTemplate.hasFieldSlots() || postBodyTemplate.hasFieldSlots() || hasFieldSlots(headerTemplates))
+    {
+      LOGGER.debug("Polling disabled, the request of " + getId() + " references GeoEvent fields.");
+      return;
+    }
+    pollTask = scheduler.schedule(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          poll();
         }
+      }, frequency * 1000L);
+  }
+
+  private static boolean hasFieldSlots(RequestTemplate[] templates)
+  {
+    if (templates != null)
+    {
+      for (RequestTemplate template : templates)
+      {
+        if (template.hasFieldSlots())
+          return true;
       }
-      
-      newURL += tempUrlParts[i];
     }
+    return false;
+  }
 
-    if (httpMethod.equals("POST"))
+  private void poll()
+  {
+    // an exception escaping a tick would cancel the polling for good
+    try
+    {
+      startPoll();
+    }
+    catch (RuntimeException e)
+    {
+      pollStartedAt.set(0);
+      LOGGER.error("POLL_ERROR", getId(), e.getMessage());
+    }
+  }
+
+  private void startPoll()
+  {
+    // skip the tick while the previous poll is running, unless it has been running for so long that its
+    // task must have been lost (e.g. dropped by a full dispatch queue)
+    long now = System.currentTimeMillis();
+    final long startedAt = pollStartedAt.get();
+    PagedQuery query = pagedQuery;
+    long staleAfter = Math.max(frequency * 1000L, 2L * getRequestTimeout() * ((query != null) ? query.getMaxPages() : 1));
+    if (startedAt != 0 && now - startedAt < staleAfter)
+    {
+      long skipped = skippedPolls.incrementAndGet();
+      LOGGER.debug("Skipping poll of " + getId() + ", the previous one is still running (" + skipped + " skipped so far).");
+      return;
+    }
+    if (!pollStartedAt.compareAndSet(startedAt, now))
+      return;
+
+    final long pollStart = now;
+    final Date since = lastPollingDateTime;
+    boolean epochMillis = Boolean.TRUE.equals(useEpochMilliseconds);
+    final String url = urlTemplate.render(null, since, epochMillis);
+    final String body = httpMethod.equals("POST") ? postBodyTemplate.render(null, since, epochMillis) : "";
+    String[] values = null;
+    if (headerTemplates != null)
+    {
+      values = new String[headerTemplates.length];
+      for (int i = 0; i < headerTemplates.length; i++)
+        values[i] = headerTemplates[i].render(null, since, epochMillis);
+    }
+    final String[] headerValues = values;
+
+    // a paged query runs on threads of its own, it would hold a dispatch thread for all of its pages
+    if (query != null)
     {
-      postBodyParts = postBody.split("[{*}]");
-      String[] tempPostBodyParts = Arrays.copyOf(postBodyParts, postBodyParts.length);
-      for (int i = 0; i < tempPostBodyParts.length; i++)
+      boolean submitted = query.submit(url, new PageRequester(body, headerValues), new PagedQuery.Completion()
+        {
+          @Override
+          public void completed(boolean succeeded)
+          {
+            pollCompleted(pollStart, succeeded);
+          }
+        });
+      // a dropped poll must not hold back the next one until it is taken as lost
+      if (!submitted)
+        pollStartedAt.compareAndSet(pollStart, 0);
+      return;
+    }
+
+    // polls always take the blocking path: one request per period gains nothing from multiplexing, and the
+    // outcome is needed to advance lastPollingDateTime
+    RequestDispatcher currentDispatcher = dispatcher;
+    if (currentDispatcher == null)
+    {
+      pollStartedAt.compareAndSet(pollStart, 0);
+      return;
+    }
+    // a full dispatch queue would block the shared scheduler thread, so the tick is skipped instead
+    boolean queued = currentDispatcher.tryDispatch(new Runnable()
       {
-        Integer idx = gd.getIndexOf(tempPostBodyParts[i]);
-        // LOGGER.info(tempPostBodyParts[i].toString() + ":" + idx.toString());
-        if (idx >= 0)
+        @Override
+        public void run()
         {
-          Field field = geoevent.getField(new FieldExpression(tempPostBodyParts[i]));
-          if (field != null)
+          boolean succeeded = false;
+          try
           {
-            String fieldValue = field.getValue().toString();
-            tempPostBodyParts[i] = fieldValue;
-            if (fieldValue != null)
-            {
-              // LOGGER.info("Got " + field.getDefinition().getName() + " " + tempPostBodyParts[i]);
-            }
+            succeeded = getFeed(url, body, headerValues, null, 0, false, null);
           }
-          else
+          finally
           {
-            // add lastpollDateTime and currentDateTime PostBody
-            if (tempPostBodyParts[i].equals("$lastPollingDateTime"))
-            {
-              Long timeValue = (Long)lastPollingDateTime.getTime();
-              if (useEpochMilliseconds == false)
-              {
-                timeValue = timeValue / 1000;
-              }
-              tempPostBodyParts[i] = timeValue.toString();
-            }
-            else if(tempPostBodyParts[i].equals("$currentDateTime"))
-            {
-              Date currentDateTime = new Date();
-              Long timeValue = (Long)currentDateTime.getTime();
-              if (useEpochMilliseconds == false)
-              {
-                timeValue = timeValue / 1000;
-              }
-              tempPostBodyParts[i] = timeValue.toString();            
-            }
+            pollCompleted(pollStart, succeeded);
           }
         }
-        newPostBody += tempPostBodyParts[i]; 
-      }
+      });
+    if (!queued)
+    {
+      pollStartedAt.compareAndSet(pollStart, 0);
+      long skipped = skippedPolls.incrementAndGet();
+      LOGGER.debug("Skipping poll of " + getId() + ", the dispatch queue is full (" + skipped + " skipped so far).");
+    }
+  }
+
+  private void pollCompleted(long pollStart, boolean succeeded)
+  {
+    // only the poll that is still current may advance the window
+    if (pollStartedAt.compareAndSet(pollStart, 0) && succeeded)
+      lastPollingDateTime = new Date(pollStart);
+  }
+
+  @Override
+  public void setId(String id)
+  {
+    super.setId(id);
+
+    destination = new EventDestination(getId() + ":event");
+    geoEventProducer = messaging.createGeoEventProducer(new EventDestination(id + ":event"));
+  }
+
+  private void compileHeaders(String[] headers)
+  {
+    List<String> names = new ArrayList<String>();
+    List<RequestTemplate> templates = new ArrayList<RequestTemplate>();
+    for (String header : headers)
+    {
+      int separator = header.indexOf(':');
+      if (separator <= 0)
+        continue;
+      names.add(header.substring(0, separator).trim());
+      templates.add(RequestTemplate.compile(header.substring(separator + 1).trim()));
+    }
+    headerNames = names.toArray(new String[names.size()]);
+    headerTemplates = templates.toArray(new RequestTemplate[templates.size()]);
+  }
+
+  @Override
+  public GeoEvent process(GeoEvent geoevent) throws Exception
+  {
+    // "http://server/{f1}/folder/{f2}?value={f3}";
+    boolean epochMillis = Boolean.TRUE.equals(useEpochMilliseconds);
+    String newURL = urlTemplate.render(geoevent, lastPollingDateTime, epochMillis);
+    String newPostBody = "";
+    if (httpMethod.equals("POST"))
+    {
+      newPostBody = postBodyTemplate.render(geoevent, lastPollingDateTime, epochMillis);
+    }
+    String[] headerValues = null;
+    if (headerTemplates != null)
+    {
+      headerValues = new String[headerTemplates.length];
+      for (int i = 0; i < headerTemplates.length; i++)
+        headerValues[i] = headerTemplates[i].render(geoevent, lastPollingDateTime, epochMillis);
     }
     LOGGER.debug("New URL " + newURL);
     if(httpMethod.equals("POST"))
     {
       LOGGER.debug("New PostBody " + newPostBody);    
     }
+
+    // the pages of a paged query are neither batched, cached nor coalesced; a query dropped because too
+    // many are running is counted and logged by the query
+    PagedQuery query = pagedQuery;
+    if (query != null)
+    {
+      query.submit(newURL, new PageRequester(newPostBody, headerValues), null);
+      return null;
+    }
+
+    RequestBatcher currentBatcher = batcher;
+    if (currentBatcher != null)
+    {
+      String key = null;
+      if (BATCH_MAPPING_KEY.equalsIgnoreCase(batchResponseMapping) && batchKeyField != null)
+      {
+        Object value = geoevent.getField(batchKeyField);
+        key = (value != null) ? value.toString() : null;
+      }
+      currentBatcher.add(newURL, headerValues, newPostBody, key);
+      return null;
+    }
     
-    HttpRequester httpRequester = new HttpRequester(newURL, newPostBody);
-    executor.execute(httpRequester);
+    executeRequest(newURL, newPostBody, headerValues);
 
     return null;
   }
@@ -386,13 +914,60 @@ public class HttpHandler extends GeoEventProcessorBase implements GeoEventProduc
   public void shutdown()
   {
     super.shutdown();
-    if (executor != null)
+    synchronized (this)
     {
-      executor.shutdown();
-      while (!executor.isTerminated())
+      if (receiver != null)
+      {
+        receiver.shutdown();
+        LOGGER.debug(receiver.toString());
+        receiver = null;
+      }
+      if (pollTask != null)
+      {
+        pollTask.cancel(false);
+        pollTask = null;
+        LOGGER.debug("Polling of " + getId() + " stopped, " + skippedPolls.get() + " poll(s) skipped.");
+      }
+      // flush pending batches while the engines can still send them
+      if (batcher != null)
+      {
+        batcher.shutdown();
+        LOGGER.debug(batcher.toString());
+        batcher = null;
+      }
+      if (pagedQuery != null)
       {
+        pagedQuery.shutdown();
+        LOGGER.debug(pagedQuery.toString());
+        pagedQuery = null;
       }
-      executor = null;
+      if (asyncEngine != null)
+      {
+        asyncEngine.shutdown();
+        LOGGER.debug(asyncEngine.toString() + ", " + droppedResponses.get() + " response(s) dropped.");
+        asyncEngine = null;
+      }
+      if (dispatcher != null)
+      {
+        dispatcher.shutdown();
+        LOGGER.debug(dispatcher.toString());
+        dispatcher = null;
+      }
+      // after the dispatcher, so that the GeoEvents of the last responses are still sent
+      if (outboundStager != null)
+      {
+        httpHandlerAdapter.setOutboundStager(null);
+        outboundStager.shutdown();
+        LOGGER.debug(outboundStager.toString());
+        outboundStager = null;
+      }
+      if (responseCache != null)
+      {
+        LOGGER.debug(responseCache.toString());
+        responseCache = null;
+      }
+      LOGGER.debug(coalescer.toString());
+      coalescer.clear();
     }
 
     clearGeoEventDefinitionMapper();
@@ -429,10 +1004,30 @@ public class HttpHandler extends GeoEventProcessorBase implements GeoEventProduc
       geoEventProducer.disconnect();
   }
 
+  /**
+   * The status of the producer, followed by the counters of the shared connection pool and of the parts
+   * of this processor that are enabled.
+   */
   @Override
   public String getStatusDetails()
   {
-    return (geoEventProducer != null) ? geoEventProducer.getStatusDetails() : "";
+    StringBuilder details = new StringBuilder();
+    if (geoEventProducer != null && geoEventProducer.getStatusDetails() != null)
+      details.append(geoEventProducer.getStatusDetails());
+    if (!HTTP_CLIENT_GEOEVENT.equalsIgnoreCase(httpClient))
+      appendStatus(details, HttpHandlerService.clientManager);
+    appendStatus(details, responseCache);
+    appendStatus(details, outboundStager);
+    return details.toString();
+  }
+
+  private static void appendStatus(StringBuilder details, Object component)
+  {
+    if (component == null)
+      return;
+    if (details.length() > 0)
+      details.append("; ");
+    details.append(component);
   }
 
   @Override
@@ -478,216 +1073,662 @@ public class HttpHandler extends GeoEventProcessorBase implements GeoEventProduc
     }
   }
 
-  private String xmlToJson(String responseBody)
+  private void executeRequest(String endpointURL, String postPayload, String[] headerValues)
+  {
+    ResponseCache cache = responseCache;
+    String requestKey = null;
+    if (cache != null || coalesceRequests)
+      requestKey = ResponseCache.key(httpMethod, endpointURL, postPayload, headerValues);
+    if (cache != null)
+    {
+      final ResponseCache.Entry entry = cache.get(requestKey);
+      if (entry != null)
+      {
+        dispatcher.dispatch(new Runnable()
+          {
+            @Override
+            public void run()
+            {
+              processBody(entry.getBody(), entry.getCharset(), 1, null);
+            }
+          });
+        // a stale entry is served as is and revalidated in the background by a single request
+        if (!cache.isFresh(entry) && cache.startRefresh(entry))
+          sendRequest(endpointURL, postPayload, headerValues, requestKey, 0, true, null);
+        return;
+      }
+    }
+    // an identical request already in flight will deliver its response to this one as well
+    long flight = 0;
+    if (coalesceRequests)
+    {
+      flight = coalescer.join(requestKey, 2L * getRequestTimeout());
+      if (flight == 0)
+        return;
+    }
+    sendRequest(endpointURL, postPayload, headerValues, requestKey, flight, false, null);
+  }
+
+  private void sendRequest(String endpointURL, String postPayload, String[] headerValues, String requestKey, long flight, boolean refreshOnly, String[] batchKeys)
   {
-    String json = "";
-    //if (responseBody.substring(0, 10).contains("<?xml"))
+    AsyncRequestEngine engine = asyncEngine;
+    if (engine != null)
+    {
+      HttpRequestBase httpRequest = createRequest(endpointURL, postPayload, headerValues);
+      if (httpRequest != null)
+        engine.execute(httpRequest, new AsyncResponseListener(requestKey, flight, refreshOnly, batchKeys));
+      else
+        requestFailed(requestKey, flight, refreshOnly);
+    }
+    else
     {
-      JSONObject jobj = XML.toJSONObject(responseBody);
-      json = jobj.toString();
-      LOGGER.debug(json);
+      HttpRequester httpRequester = new HttpRequester(endpointURL, postPayload, headerValues, requestKey, flight, refreshOnly, batchKeys);
+      dispatcher.dispatch(httpRequester);
     }
+  }
 
-    return json;
+  private void requestFailed(String requestKey, long flight, boolean refreshOnly)
+  {
+    if (requestKey == null)
+      return;
+    ResponseCache cache = responseCache;
+    if (refreshOnly)
+    {
+      if (cache != null)
+        cache.refreshFailed(requestKey);
+    }
+    else
+    {
+      int waiters = coalescer.complete(requestKey, flight);
+      if (waiters > 0)
+        LOGGER.debug("Request failed for " + waiters + " coalesced requests.");
+    }
   }
 
-  private String csvToJson(String responseBody)
+  private HttpRequestBase createRequest(String endpointURL, String postPayload, String[] headerValues)
   {
-    //TODO - test this
-    String geoEventDefinitionName = httpHandlerAdapter.getGeoEventDefinitionName();
-    String[] values = responseBody.split(fieldSeparator);
-    String json = "{\"" + geoEventDefinitionName + "\" : ";
-    if (httpHandlerAdapter.getCreateGeoEventDefinition())
+    return createRequest(endpointURL, postPayload, headerValues, null);
+  }
+
+  /**
+   * Creates the request, through the GeoEvent HTTP client if one is given, so that it carries the proxy
+   * settings of GeoEvent Server.
+   */
+  private HttpRequestBase createRequest(String endpointURL, String postPayload, String[] headerValues, GeoEventHttpClient geHttp)
+  {
+    HttpRequestBase httpRequest = null;
+    try
     {
-      for (Integer i = 0; i < values.length; i++)
+      if (geHttp != null)
       {
-        if (NumberUtils.isNumber(values[i]))
-        {
-          json += "\"field" + i.toString() + "\":" + values[i];
-        }
+        URL url = new URL(endpointURL);
+        ContentType contentType = getPostContentType();
+        if (httpMethod.equals("POST"))
+          httpRequest = geHttp.createPostRequest(url, postPayload, contentType.toString());
+        else if (httpMethod.equals("PUT"))
+          httpRequest = geHttp.createPutRequest(url, postPayload.getBytes((contentType.getCharset() != null) ? contentType.getCharset() : StandardCharsets.UTF_8), contentType.toString());
         else
-        {
-          json += "\"field" + i.toString() + "\":\"" + values[i] + "\"";
-        }
-        if (i < values.length - 1)
-        {
-          json += ",";
-        }
+          httpRequest = geHttp.createGetRequest(url, "");
+      }
+      else if (httpMethod.equals("POST"))
+      {
+        HttpPost post = new HttpPost(endpointURL);
+        post.setEntity(new StringEntity(postPayload, getPostContentType()));
+        httpRequest = post;
+      }
+      else if (httpMethod.equals("PUT"))
+      {
+        HttpPut put = new HttpPut(endpointURL);
+        put.setEntity(new StringEntity(postPayload, getPostContentType()));
+        httpRequest = put;
+      }
+      else
+      {
+        httpRequest = new HttpGet(endpointURL);
       }
+      if (httpRequest != null)
+        addHeaders(httpRequest, headerValues);
     }
-    else
+    catch (IllegalArgumentException | MalformedURLException e)
     {
-      int perfectSize = values.length;
-      if (httpHandlerAdapter.getBuildGeometryFromFields())
-        perfectSize++;
+      LOGGER.error("getFeed " + e.getMessage());
+    }
+    return httpRequest;
+  }
 
-      GeoEventDefinition geoEventDefinition = null;
-      if (lastGeoEventDefinitionsGUID != null)
+  // a new client of the GeoEvent HTTP client service per request, as before the shared pool, or null for the pool
+  private GeoEventHttpClient getGeoEventHttpClient()
+  {
+    GeoEventHttpClientService service = HttpHandlerService.httpClientService;
+    return (HTTP_CLIENT_GEOEVENT.equalsIgnoreCase(httpClient) && service != null) ? service.createNewClient() : null;
+  }
+
+  private HttpResponse execute(HttpRequestBase httpRequest, GeoEventHttpClient geHttp) throws IOException
+  {
+    if (geHttp != null)
+      return geHttp.execute(httpRequest, getRequestTimeout());
+    HttpClientManager clientManager = HttpHandlerService.clientManager;
+    if (clientManager == null)
+      throw new IOException("The shared HTTP client has been shut down.");
+    httpRequest.setConfig(requestConfig);
+    return clientManager.execute(httpRequest, maxConnectionsPerRoute);
+  }
+
+  // consuming the rest of the entity lets a pooled connection go back to the pool instead of being closed
+  private static void release(HttpResponse response)
+  {
+    if (response == null)
+      return;
+    EntityUtils.consumeQuietly(response.getEntity());
+    if (response instanceof Closeable)
+    {
+      try
       {
-        GeoEventDefinition def = geoEventCreator.getGeoEventDefinitionManager().getGeoEventDefinition(lastGeoEventDefinitionsGUID);
-        // if the old definition still exists and hasn't been modified structurally, just reuse it.
-        if (def != null && def.getFieldDefinitions().size() == perfectSize)
-          geoEventDefinition = def;
+        ((Closeable) response).close();
       }
-
-      if (geoEventDefinition == null)
+      catch (IOException e)
       {
-        Collection<GeoEventDefinition> searchResults = geoEventCreator.getGeoEventDefinitionManager().searchGeoEventDefinitionByName(geoEventDefinitionName);
-        for (GeoEventDefinition candidate : searchResults)
-        {
-          if (candidate.getFieldDefinitions().size() == perfectSize)
-          {
-            geoEventDefinition = candidate;
-            break;
-          }
-        }
-        if (geoEventDefinition == null)
-          geoEventDefinition = searchResults.iterator().next();
+        ;
       }
-      if (geoEventDefinition == null)
+    }
+  }
+
+  private ContentType getPostContentType()
+  {
+    try
+    {
+      if (postBodyType != null && !postBodyType.trim().isEmpty())
+        return ContentType.parse(postBodyType);
+    }
+    catch (RuntimeException e)
+    {
+      LOGGER.debug("Invalid post content type " + postBodyType);
+    }
+    return ContentType.create("text/plain", "UTF-8");
+  }
+
+  private void addHeaders(HttpRequestBase httpRequest, String[] headerValues)
+  {
+    if (headerNames != null && headerValues != null) 
+    {
+      for (int i = 0; i < headerNames.length && i < headerValues.length; i++)
       {
-        LOGGER.error("GED_DOESNT_EXIST");
-        return null;
+        httpRequest.addHeader(headerNames[i], headerValues[i]);                   
       }
-      lastGeoEventDefinitionsGUID = geoEventDefinition.getGuid();
+    }
+  }
+
+  private boolean getFeed(String endpointURL, String postPayload, String[] headerValues, String requestKey, long flight, boolean refreshOnly, String[] batchKeys)
+  {
+    GeoEventHttpClient geHttp = getGeoEventHttpClient();
+    HttpRequestBase httpRequest = createRequest(endpointURL, postPayload, headerValues, geHttp);
+    if (httpRequest == null)
+    {
+      requestFailed(requestKey, flight, refreshOnly);
+      return false;
+    }
+
+    HttpResponse response = null;
+    try
+    {
+      response = execute(httpRequest, geHttp);
+      return processResponse(httpRequest, response, requestKey, flight, refreshOnly, batchKeys);
+    }
+    catch (IOException e1)
+    {
+      requestFailed(requestKey, flight, refreshOnly);
+      LOGGER.error("getFeed " + e1.getMessage());
+      return false;
+    }
+    finally
+    {
+      release(response);
+    }
+  }
+
+  /**
+   * Returns true if the request succeeded (HTTP 200) and its body could be read.
+   */
+  private boolean processResponse(HttpRequestBase httpRequest, HttpResponse response, String requestKey, long flight, boolean refreshOnly, String[] batchKeys)
+  {
+    HttpEntity entity = (response != null) ? response.getEntity() : null;
+
+    if (entity != null)
+    {
+      LOGGER.debug("Got response from http request.");
+    }
+    else
+    {
+      requestFailed(requestKey, flight, refreshOnly);
+      return false;
+    }
 
-      List<FieldDefinition> fds = geoEventDefinition.getFieldDefinitions();
-      for (Integer i = 0; i < values.length; i++)
+    StatusLine statusLine = response.getStatusLine();
+    boolean succeeded = statusLine.getStatusCode() == HttpStatus.SC_OK;
+
+    if (!succeeded)
+    {
+      String message = httpRequest.getRequestLine().getUri() + " :  Request failed(" + statusLine.toString() + ")";
+      LOGGER.error(message);
+    }
+
+    try
+    {
+      String charsetName = getResponseCharsetName(entity);
+      if (requestKey == null && !refreshOnly && batchKeys == null)
       {
-        FieldDefinition fd = fds.get(i);
-        String fieldName = fd.getName();
-        if (NumberUtils.isNumber(values[i]))
-        {
-          json += "\"" + fieldName + "\":" + values[i];
-        }
-        else
+        // nothing else needs the raw body, so the records are parsed and sent as the entity is read
+        InputStream content = entity.getContent();
+        try
         {
-          json += "\"" + fieldName + "\":\"" + values[i] + "\"";
+          receive(content, charsetName);
         }
-        if (i < values.length - 1)
+        finally
         {
-          json += ",";
+          EntityUtils.consume(entity);
         }
+        return succeeded;
       }
-    }
-    json += "}";
 
-    LOGGER.debug(json);
+      byte[] body = EntityUtils.toByteArray(entity);
+
+      ResponseCache cache = responseCache;
+      if (succeeded && cache != null && requestKey != null && body != null)
+        cache.put(requestKey, body, charsetName);
+      else if (refreshOnly)
+        requestFailed(requestKey, flight, refreshOnly);
+
+      // a background refresh only updates the cache, the stale body has already been sent
+      if (refreshOnly)
+        return succeeded;
+      // the flight ends after the cache update, so later identical requests find the cached body
+      int copies = 1 + ((requestKey != null) ? coalescer.complete(requestKey, flight) : 0);
+      if (body != null)
+        processBody(body, charsetName, copies, batchKeys);
+      return succeeded && body != null;
+    }
+    catch (ParseException | IOException e)
+    {
+      requestFailed(requestKey, flight, refreshOnly);
+      LOGGER.error("getFeed " + e.getMessage());
+      return false;
+    }
+  }
 
-    return json;
+  // without a declared charset JSON is detected from its bytes and XML from its declaration, CSV defaults to ISO-8859-1
+  private String getResponseCharsetName(HttpEntity entity)
+  {
+    Charset charset = ContentType.getOrDefault(entity).getCharset();
+    return (charset != null) ? charset.name() : (isCsvResponse() ? DEFAULT_RESPONSE_CHARSET : null);
   }
 
-  private void getFeed(String endpointURL, String postPayload)
+  /**
+   * Sends the request of one page of a paged query and hands a successful (HTTP 200) response to the
+   * reader. The paging parameters are added to a form encoded POST body, otherwise to the URL.
+   */
+  private boolean fetchPage(String endpointURL, String parameters, String postPayload, String[] headerValues, PagedQuery.PageReader reader)
   {
-    // System.out.println("getFeed: " + messageType);
-    GeoEventHttpClient geHttp = HttpHandlerService.httpClientService.createNewClient();
+    if (!parameters.isEmpty())
+    {
+      if (!httpMethod.equals("GET") && "application/x-www-form-urlencoded".equalsIgnoreCase(getPostContentType().getMimeType()))
+        postPayload = (postPayload == null || postPayload.isEmpty()) ? parameters : postPayload + "&" + parameters;
+      else
+        endpointURL = endpointURL + ((endpointURL.indexOf('?') >= 0) ? "&" : "?") + parameters;
+    }
+    GeoEventHttpClient geHttp = getGeoEventHttpClient();
+    HttpRequestBase httpRequest = createRequest(endpointURL, postPayload, headerValues, geHttp);
+    if (httpRequest == null)
+      return false;
 
+    HttpResponse response = null;
     try
     {
-      URL url = new URL(endpointURL);
-      String queryString = "";
-      HttpRequestBase httpRequest = null;
-      if(httpMethod.equals("GET"))
+      response = execute(httpRequest, geHttp);
+      HttpEntity entity = response.getEntity();
+      StatusLine statusLine = response.getStatusLine();
+      if (statusLine.getStatusCode() != HttpStatus.SC_OK || entity == null)
       {
-        httpRequest = geHttp.createGetRequest(url, queryString);
+        LOGGER.error(httpRequest.getRequestLine().getUri() + " :  Request failed(" + statusLine.toString() + ")");
+        return false;
       }
-      else if(httpMethod.equals("POST"))
+      StringBuilder links = null;
+      for (Header header : response.getHeaders("Link"))
       {
-        httpRequest = geHttp.createPostRequest(url, postPayload, postBodyType);
+        links = (links == null) ? new StringBuilder() : links.append(", ");
+        links.append(header.getValue());
       }
-      else if(httpMethod.equals("PUT"))
+      reader.read(entity.getContent(), getResponseCharsetName(entity), (links != null) ? links.toString() : null);
+      return true;
+    }
+    catch (ParseException | IOException e)
+    {
+      LOGGER.error("PAGE_FETCH_ERROR", getId(), e.getMessage());
+      return false;
+    }
+    finally
+    {
+      release(response);
+    }
+  }
+
+  /**
+   * The pages of a paged query, requested with the rendered body and header values of the query.
+   */
+  private class PageRequester implements PagedQuery.PageSource
+  {
+    private final String   postPayload;
+    private final String[] headerValues;
+
+    PageRequester(String postPayload, String[] headerValues)
+    {
+      this.postPayload = postPayload;
+      this.headerValues = headerValues;
+    }
+
+    @Override
+    public boolean fetch(String url, String parameters, PagedQuery.PageReader reader)
+    {
+      return fetchPage(url, parameters, postPayload, headerValues, reader);
+    }
+
+    @Override
+    public int receive(InputStream in, String charsetName)
+    {
+      return HttpHandler.this.receive(in, charsetName);
+    }
+  }
+
+  private void processBody(byte[] body, String charsetName, int copies, String[] batchKeys)
+  {
+    // CSV rows, feed entities and features are not matched to batched requests, they are sent as they are
+    if (batchKeys == null || isCsvResponse() || isGtfsRealtimeResponse() || isFeatureResponse())
+    {
+      // parsed straight from the bytes, without decoding the whole body into a String first
+      try
       {
-        geHttp.createPutRequest(url, postPayload.getBytes(), postBodyType);
+        for (int i = 0; i < copies; i++)
+          receive(new ByteArrayInputStream(body), charsetName);
       }
-
-      if (headers != null && headers.length > 0) 
+      catch (Exception e)
       {
-        for (int i = 0; i < headers.length; i++)
-        {
-          String[] nameValue = headers[i].split(":");
-          httpRequest.addHeader(nameValue[0], nameValue[1]);                   
-        }
+        LOGGER.error(e.getMessage());
       }
-
+      return;
+    }
+    if (isXmlResponse())
+    {
       try
       {
-        HttpResponse response = null;
-        response = geHttp.execute(httpRequest, GeoEventHttpClient.DEFAULT_TIMEOUT);   
-        
-        HttpEntity entity = (response != null) ? response.getEntity() : null;
+        ObjectNode document = XmlRecordReader.readDocument(new ByteArrayInputStream(body), charsetName);
+        if (document != null)
+          receiveBatch(document, batchKeys);
+      }
+      catch (Exception e)
+      {
+        LOGGER.error(e.getMessage());
+      }
+      return;
+    }
 
-        if (entity != null)
-        {
-          LOGGER.debug("Got response from http request.");
-        }
+    String responseBody;
+    try
+    {
+      responseBody = new String(body, (charsetName != null) ? charsetName : "UTF-8");
+    }
+    catch (UnsupportedEncodingException e)
+    {
+      responseBody = new String(body, StandardCharsets.ISO_8859_1);
+    }
+    LOGGER.debug(responseBody);
 
-        StatusLine statusLine = response.getStatusLine();
+    // Send Message
+    try
+    {
+      receiveBatch(mapper.readTree(responseBody), batchKeys);
+    }
+    catch (Exception e)
+    {
+      LOGGER.error(e.getMessage());
+    }
+  }
 
-        if (statusLine.getStatusCode() != HttpStatus.SC_OK)
-        {
-          String message = httpRequest.getRequestLine().getUri() + " :  Request failed(" + statusLine.toString() + ")";
-          LOGGER.error(message);
-        }
+  // hands the response to the adapter's streaming reader for the response format, returns the records found
+  private int receive(InputStream in, String charsetName)
+  {
+    if (isCsvResponse())
+      return httpHandlerAdapter.receiveCsv(in, charsetName);
+    if (isGtfsRealtimeResponse())
+      return httpHandlerAdapter.receiveGtfsRealtime(in);
+    if (isFeatureResponse())
+      return httpHandlerAdapter.receiveFeatures(in, charsetName, responseFormat.equalsIgnoreCase(FeatureSetReader.GEOJSON));
+    if (isXmlResponse())
+      return httpHandlerAdapter.receiveXml(in, charsetName);
+    return httpHandlerAdapter.receive(in, charsetName);
+  }
 
-        try
-        {
-          String responseBody = EntityUtils.toString(entity);
-          LOGGER.debug(responseBody);
-          System.out.println(responseBody);
+  private boolean isXmlResponse()
+  {
+    return responseFormat.equalsIgnoreCase("xml");
+  }
 
-          if (responseFormat.equals("xml"))
-          {
-            responseBody = xmlToJson(responseBody);
-          }
-          else if (responseFormat.equalsIgnoreCase("csv"))
-          {
-            responseBody = csvToJson(responseBody);
-          }
+  private boolean isCsvResponse()
+  {
+    return responseFormat.equalsIgnoreCase("csv");
+  }
 
-          // Send Message
-          try
-          {
-            if (responseBody != null)
-            {
-              httpHandlerAdapter.receive(responseBody);
-            }
-          }
-          catch (Exception e)
+  private boolean isGtfsRealtimeResponse()
+  {
+    return responseFormat.equalsIgnoreCase("gtfs-rt");
+  }
+
+  private boolean isFeatureResponse()
+  {
+    return responseFormat.equalsIgnoreCase(FeatureSetReader.GEOJSON) || responseFormat.equalsIgnoreCase(FeatureSetReader.ESRI_JSON);
+  }
+
+  /**
+   * Hands the items of a batched POST response to the adapter one by one, matched to the batched requests by
+   * position or by key field value. The items are the array named by the JSON object name, else the root
+   * array, else the first array field of the root object.
+   */
+  private void receiveBatch(JsonNode root, String[] batchKeys) throws IOException
+  {
+    JsonNode items = findBatchItems(root);
+    if (items == null)
+    {
+      // nothing to map back to the requests, e.g. a bare acknowledgement
+      httpHandlerAdapter.receive(root);
+      return;
+    }
+
+    String keyField = BATCH_MAPPING_KEY.equalsIgnoreCase(batchResponseMapping) ? batchKeyField : null;
+    int unmatched = 0;
+    for (JsonNode item : RequestBatcher.mapResponse(items, batchKeys, keyField))
+    {
+      if (item != null)
+        httpHandlerAdapter.receiveRecord(item);
+      else
+        unmatched++;
+    }
+    if (unmatched > 0)
+      LOGGER.warn("BATCH_RESPONSE_UNMATCHED", unmatched, batchKeys.length, getId());
+  }
+
+  private JsonNode findBatchItems(JsonNode root)
+  {
+    JsonPath jsonObjectPath = httpHandlerAdapter.getJsonObjectPath();
+    if (jsonObjectPath != null)
+    {
+      List<JsonNode> selected = jsonObjectPath.select(root);
+      if (selected.size() == 1 && selected.get(0).isArray())
+        return selected.get(0);
+      if (!selected.isEmpty())
+      {
+        // e.g. $.results[*] selects the items themselves
+        ArrayNode items = mapper.createArrayNode();
+        for (JsonNode item : selected)
+          items.add(item);
+        return items;
+      }
+      return null;
+    }
+    String jsonObjectName = httpHandlerAdapter.getJsonObjectName();
+    if (jsonObjectName != null)
+    {
+      JsonNode named = root.findValue(jsonObjectName);
+      if (named != null && named.isArray())
+        return named;
+    }
+    if (root.isArray())
+      return root;
+    Iterator<JsonNode> fields = root.getElements();
+    while (fields.hasNext())
+    {
+      JsonNode field = fields.next();
+      if (field.isArray())
+        return field;
+    }
+    return null;
+  }
+
+  private class AsyncResponseListener implements AsyncRequestEngine.ResponseListener
+  {
+    private final String   requestKey;
+    private final long     flight;
+    private final boolean  refreshOnly;
+    private final String[] batchKeys;
+
+    AsyncResponseListener(String requestKey, long flight, boolean refreshOnly, String[] batchKeys)
+    {
+      this.requestKey = requestKey;
+      this.flight = flight;
+      this.refreshOnly = refreshOnly;
+      this.batchKeys = batchKeys;
+    }
+
+    @Override
+    public void completed(final HttpRequestBase request, final HttpResponse response)
+    {
+      // parse on the worker pool, never on a selector thread; the selector must not wait for a free slot
+      RequestDispatcher currentDispatcher = dispatcher;
+      boolean queued = currentDispatcher != null && currentDispatcher.tryDispatch(new Runnable()
+        {
+          @Override
+          public void run()
           {
-            LOGGER.error(e.getMessage());
+            processResponse(request, response, requestKey, flight, refreshOnly, batchKeys);
           }
-        }
-        catch (ParseException | IOException e)
-        {
-          LOGGER.error("getFeed " + e.getMessage());
-        }
-      }
-      catch (IOException e1)
+        });
+      if (!queued)
       {
-        LOGGER.error("getFeed " + e1.getMessage());
+        requestFailed(requestKey, flight, refreshOnly);
+        long count = droppedResponses.incrementAndGet();
+        if (count == 1 || count % 1000 == 0)
+          LOGGER.warn("ASYNC_RESPONSE_DROPPED", getId(), count);
       }
     }
-    catch (MalformedURLException e1)
+
+    @Override
+    public void failed(HttpRequestBase request, Exception error)
     {
-      LOGGER.error("getFeed " + e1.getMessage());
+      requestFailed(requestKey, flight, refreshOnly);
+      LOGGER.error("getFeed " + request.getRequestLine().getUri() + " : " + error.getMessage());
     }
   }
 
-  class HttpRequester implements Runnable
+  private HttpRequester readRequester(DataInputStream in) throws IOException
   {
-    private String endpointURL;
-    private String postPayload;
+    String endpointURL = readString(in);
+    String postPayload = readString(in);
+    String[] headerValues = readStrings(in);
+    String requestKey = readString(in);
+    long flight = in.readLong();
+    boolean refreshOnly = in.readBoolean();
+    String[] batchKeys = readStrings(in);
+    return new HttpRequester(endpointURL, postPayload, headerValues, requestKey, flight, refreshOnly, batchKeys);
+  }
 
-    public HttpRequester(String endpointURL, String postPayload)
+  // writeUTF() is limited to 64K, which a POST body can easily exceed
+  private static void writeString(DataOutputStream out, String value) throws IOException
+  {
+    if (value == null)
+    {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes("UTF-8");
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException
+  {
+    int length = in.readInt();
+    if (length < 0)
+      return null;
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, "UTF-8");
+  }
+
+  private static void writeStrings(DataOutputStream out, String[] values) throws IOException
+  {
+    out.writeInt((values != null) ? values.length : -1);
+    if (values != null)
+    {
+      for (String value : values)
+        writeString(out, value);
+    }
+  }
+
+  private static String[] readStrings(DataInputStream in) throws IOException
+  {
+    int count = in.readInt();
+    if (count < 0)
+      return null;
+    String[] values = new String[count];
+    for (int i = 0; i < count; i++)
+      values[i] = readString(in);
+    return values;
+  }
+
+  class HttpRequester implements RequestDispatcher.SpillableTask
+  {
+    private String   endpointURL;
+    private String   postPayload;
+    private String[] headerValues;
+    private String   requestKey;
+    private long     flight;
+    private boolean  refreshOnly;
+    private String[] batchKeys;
+
+    public HttpRequester(String endpointURL, String postPayload, String[] headerValues, String requestKey, long flight, boolean refreshOnly, String[] batchKeys)
     {
       this.endpointURL = endpointURL;
       this.postPayload = postPayload;
+      this.headerValues = headerValues;
+      this.requestKey = requestKey;
+      this.flight = flight;
+      this.refreshOnly = refreshOnly;
+      this.batchKeys = batchKeys;
     }
 
     @Override
     public void run()
     {
-      getFeed(endpointURL, postPayload);
+      getFeed(endpointURL, postPayload, headerValues, requestKey, flight, refreshOnly, batchKeys);
+    }
+
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException
+    {
+      writeString(out, endpointURL);
+      writeString(out, postPayload);
+      writeStrings(out, headerValues);
+      writeString(out, requestKey);
+      out.writeLong(flight);
+      out.writeBoolean(refreshOnly);
+      writeStrings(out, batchKeys);
     }
   }
 }
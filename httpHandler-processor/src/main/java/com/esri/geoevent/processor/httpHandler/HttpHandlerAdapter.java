@@ -25,25 +25,31 @@
 package com.esri.geoevent.processor.httpHandler;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.CharsetDecoder;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonLocation;
 import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.JsonParseException;
 import org.codehaus.jackson.JsonParser;
-import org.codehaus.jackson.JsonProcessingException;
 import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ObjectNode;
 
+import com.esri.core.geometry.MapGeometry;
 import com.esri.ges.adapter.AdapterDefinition;
 import com.esri.ges.adapter.InboundAdapterBase;
 import com.esri.ges.adapter.StringBuilderCacheItem;
@@ -74,6 +80,13 @@ public class HttpHandlerAdapter implements Runnable
   protected String                            lastGeoEventDefinitionsGUID                     = null;
 
   private String                              jsonObjectName;
+  private volatile boolean                    bufferingReported;
+  private JsonPath                            jsonObjectPath;
+  private boolean                             streamingBinding                                = false;
+  private volatile ParallelConverter          parallelConverter;
+  private char                                csvSeparator                                    = ',';
+  private boolean                             csvHasHeader                                    = false;
+  private XmlRecordReader                     xmlRecordReader;
 
   private boolean                             buildGeometryFromFields                         = true;
   private String                              xGeometryField                                  = "lon";
@@ -85,9 +98,11 @@ public class HttpHandlerAdapter implements Runnable
   private String                              id;
   private String                              trackIdField;
   private String                              customDateFormat;
-  private SimpleDateFormat                    customDateParser                                = null;
 
   private HttpHandlerDefinition               definition;
+  private volatile JsonInboundParser          inboundParser;
+  private volatile GtfsRealtimeParser         gtfsRealtimeParser;
+  private volatile OutboundStager             outboundStager;
   
   // Maximum Buffer Size is 100 MB
   private int                                 maxStringBuilderSize                            = 100 * 1024 * 1024;
@@ -109,6 +124,13 @@ public class HttpHandlerAdapter implements Runnable
   public static final String                  WKID_GEOMETRY_FIELD_PROPERTY_NAME               = "WKIDGeometryField";
   public static final String                  WK_TEXT_GEOMETRY_FIELD_PROPERTY_NAME            = "WKTextGeometryField";
   public static final String                  JSON_IS_LEARNING_MODE_PROPERTY_NAME             = "isLearningMode";
+  public static final String                  BINDING_MODE_PROPERTY_NAME                      = "bindingMode";
+  public static final String                  PARALLEL_CONVERSION_PROPERTY_NAME               = "parallelConversion";
+  public static final String                  CONVERSION_CHUNK_SIZE_PROPERTY_NAME             = "conversionChunkSize";
+  public static final String                  CONVERSION_ORDERING_PROPERTY_NAME               = "conversionOrdering";
+  public static final String                  FIELD_SEPARATOR_PROPERTY_NAME                   = "fieldSeparator";
+  public static final String                  CSV_HAS_HEADER_PROPERTY_NAME                    = "csvHasHeader";
+  public static final String                  XML_RECORD_PATH_PROPERTY_NAME                   = "xmlRecordPath";
 
   public HttpHandlerAdapter(GeoEventCreator geoEventCreator, GeoEventProducer geoEventProducer, HttpHandlerDefinition definition, String id, String trackIdField)
   {
@@ -146,10 +168,23 @@ public class HttpHandlerAdapter implements Runnable
   {
 	return buildGeometryFromFields;  
   }
+
+  public String getJsonObjectName()
+  {
+    return jsonObjectName;
+  }
+
+  /**
+   * Returns the compiled JSON object name if it is a path or pointer, or null if it is a plain name that is
+   * searched for at any depth.
+   */
+  public JsonPath getJsonObjectPath()
+  {
+    return jsonObjectPath;
+  }
   
   public void afterPropertiesSet(HttpHandler httpHandler)
   {
-    customDateParser = null;
     jsonObjectName = null;
     lastGeoEventDefinitionsGUID = null;
     if (httpHandler.hasProperty(JSON_OBJECT_NAME))
@@ -158,6 +193,20 @@ public class HttpHandlerAdapter implements Runnable
       if (jsonObjectName != null && jsonObjectName.trim().equals(""))
         jsonObjectName = null;
     }
+    bufferingReported = false;
+    jsonObjectPath = null;
+    if (JsonPath.isPath(jsonObjectName))
+    {
+      try
+      {
+        jsonObjectPath = JsonPath.compile(jsonObjectName);
+      }
+      catch (IllegalArgumentException e)
+      {
+        // fall back to searching for it as a plain name
+        LOGGER.error("JSON_PATH_INVALID", jsonObjectName, e.getMessage());
+      }
+    }
     if (httpHandler.hasProperty(CREATE_GEOEVENT_DEFINITION_PROPERTY_NAME))
       creatingGeoEventDefinition = ((Boolean) (httpHandler.getProperty(CREATE_GEOEVENT_DEFINITION_PROPERTY_NAME).getValue())).booleanValue();
     if (httpHandler.hasProperty(EXISTING_GEOEVENT_DEFINITION_NAME_PROPERTY_NAME))
@@ -167,8 +216,6 @@ public class HttpHandlerAdapter implements Runnable
     if (httpHandler.hasProperty(CUSTOM_DATE_FORMAT_PROPERTY_NAME))
     {
       customDateFormat = httpHandler.getProperty(CUSTOM_DATE_FORMAT_PROPERTY_NAME).getValueAsString();
-      if (customDateFormat != null && !customDateFormat.trim().isEmpty())
-        customDateParser = new SimpleDateFormat(customDateFormat);
     }
     
     if (httpHandler.hasProperty(BUILD_GEOMETRY_FROM_FIELDS_PROPERTY_NAME))
@@ -201,96 +248,469 @@ public class HttpHandlerAdapter implements Runnable
     else
       buildGeometryFromFields = false;
     
+    streamingBinding = false;
+    if (httpHandler.hasProperty(BINDING_MODE_PROPERTY_NAME))
+      streamingBinding = "STREAMING".equalsIgnoreCase(httpHandler.getProperty(BINDING_MODE_PROPERTY_NAME).getValueAsString());
+
+    csvSeparator = CsvReader.toSeparator(httpHandler.hasProperty(FIELD_SEPARATOR_PROPERTY_NAME) ? httpHandler.getProperty(FIELD_SEPARATOR_PROPERTY_NAME).getValueAsString() : null);
+    csvHasHeader = httpHandler.hasProperty(CSV_HAS_HEADER_PROPERTY_NAME) && ((Boolean) httpHandler.getProperty(CSV_HAS_HEADER_PROPERTY_NAME).getValue()).booleanValue();
+
+    createXmlRecordReader(httpHandler);
+
     if (httpHandler.hasProperty(JSON_IS_LEARNING_MODE_PROPERTY_NAME))
       isLearningMode = ((Boolean) (httpHandler.getProperty(JSON_IS_LEARNING_MODE_PROPERTY_NAME).getValue())).booleanValue();
+
+    // a new parser drops the definition it had resolved under the old configuration
+    inboundParser = createJSONParser();
+    gtfsRealtimeParser = new GtfsRealtimeParser(geoEventCreator, createUri(), id);
+    createParallelConverter(httpHandler);
+  }
+
+  // without an element path the JSON object name selects the record elements, else the whole document is one
+  private void createXmlRecordReader(HttpHandler httpHandler)
+  {
+    String path = httpHandler.hasProperty(XML_RECORD_PATH_PROPERTY_NAME) ? httpHandler.getProperty(XML_RECORD_PATH_PROPERTY_NAME).getValueAsString() : null;
+    if (path == null || path.trim().isEmpty())
+      path = (jsonObjectName != null && !JsonPath.isPath(jsonObjectName)) ? jsonObjectName : null;
+    try
+    {
+      xmlRecordReader = XmlRecordReader.compile(path);
+    }
+    catch (IllegalArgumentException e)
+    {
+      LOGGER.error("XML_PATH_INVALID", path, e.getMessage());
+      xmlRecordReader = XmlRecordReader.compile(null);
+    }
+  }
+
+  private void createParallelConverter(HttpHandler httpHandler)
+  {
+    boolean parallel = httpHandler.hasProperty(PARALLEL_CONVERSION_PROPERTY_NAME) && ((Boolean) httpHandler.getProperty(PARALLEL_CONVERSION_PROPERTY_NAME).getValue()).booleanValue();
+    ForkJoinPool pool = HttpHandlerService.conversionPool;
+    if (!parallel || pool == null)
+    {
+      parallelConverter = null;
+      return;
+    }
+    int chunkSize = httpHandler.getIntProperty(CONVERSION_CHUNK_SIZE_PROPERTY_NAME, 1000);
+    String ordering = httpHandler.hasProperty(CONVERSION_ORDERING_PROPERTY_NAME) ? httpHandler.getProperty(CONVERSION_ORDERING_PROPERTY_NAME).getValueAsString() : ParallelConverter.ORDERING_NONE;
+    parallelConverter = new ParallelConverter(pool, pool.getParallelism(), chunkSize, ordering, trackIdField, new ParallelConverter.Conversion()
+      {
+        @Override
+        public GeoEvent convert(JsonNode record)
+        {
+          return getJSONParser().makeGeoEvent(record);
+        }
+
+        @Override
+        public void send(GeoEvent event)
+        {
+          getJSONParser().send(event, geoEventProducer);
+        }
+      });
   }
 
 
   public void receive(String json)
   {
-    // LOGGER.debug("ChannelId: " + channelId);
-    // check the cache for an existing string buffer - we might not be done with it
-    StringBuilder stringBuilder = new StringBuilder(json);
+    JsonParser parser = null;
+    try
+    {
+      parser = mapper.getJsonFactory().createJsonParser(StringUtil.removeUTF8BOM(json));
+      readRecords(parser, new int[1]);
+    }
+    catch (IOException ex)
+    {
+      LOGGER.error("PARSE_ERROR");
+      LOGGER.info(ex.getMessage(), ex);
+    }
+    finally
+    {
+      closeQuietly(parser);
+    }
+  }
 
-    String remainingString = "";
+  /**
+   * Parses a JSON response straight from the stream with a single parser, sending each record as soon as it
+   * is complete, so memory use is bounded by the largest record rather than by the whole response. The
+   * charset may be null, in which case the JSON encoding is detected from the bytes. Returns the number of
+   * records found; records before a parse error have already been sent.
+   */
+  public int receive(InputStream in, String charsetName)
+  {
+    JsonParser parser = null;
+    int[] count = new int[1];
     try
     {
-      String jsonStrings = StringUtil.removeUTF8BOM(stringBuilder.toString());
+      parser = createJsonParser(in, charsetName);
+      readRecords(parser, count);
+    }
+    catch (IOException ex)
+    {
+      LOGGER.error("PARSE_ERROR");
+      LOGGER.info(ex.getMessage(), ex);
+    }
+    finally
+    {
+      closeQuietly(parser);
+    }
+    return count[0];
+  }
 
-      ArrayList<String> objectStrings = parseToIndividualObjects(jsonStrings);
-      for (String jsonString : objectStrings)
-      {
-        remainingString = jsonString;
-        JsonNode tree = mapper.readTree(jsonString);
-        // findNodes(tree, jsonObjectName);
-        JsonInboundParser parser = getJSONParser(geoEventDefinitionName);
-        parser.findNodes(tree, jsonObjectName, geoEventProducer);
-      }
+  /**
+   * Streams the features of a GeoJSON FeatureCollection or an Esri JSON FeatureSet, binding each feature's
+   * properties or attributes with the field plan of its definition and building its geometry straight from
+   * the coordinates. Returns the number of features; those before a parse error have already been sent.
+   */
+  public int receiveFeatures(InputStream in, String charsetName, boolean geoJson)
+  {
+    JsonParser parser = null;
+    final JsonInboundParser sender = getJSONParser();
+    try
+    {
+      parser = createJsonParser(in, charsetName);
+      return new FeatureSetReader(geoJson).read(parser, new FeatureSetReader.Target()
+        {
+          @Override
+          public void found(ObjectNode attributes, MapGeometry geometry)
+          {
+            sender.sendFeature(attributes, geometry, geoEventProducer);
+          }
+        });
+    }
+    catch (IOException ex)
+    {
+      LOGGER.error("PARSE_ERROR");
+      LOGGER.info(ex.getMessage(), ex);
+      return 0;
+    }
+    finally
+    {
+      closeQuietly(parser);
+    }
+  }
+
+  // without a charset, or with a UTF one, Jackson detects the encoding from the bytes
+  private JsonParser createJsonParser(InputStream in, String charsetName) throws IOException
+  {
+    if (charsetName != null && !charsetName.toUpperCase(Locale.ROOT).startsWith("UTF"))
+      return mapper.getJsonFactory().createJsonParser(new InputStreamReader(in, charsetName));
+    return mapper.getJsonFactory().createJsonParser(in);
+  }
+
+  /**
+   * Reads a CSV response straight from the stream, one record at a time, converting each record into the
+   * GeoEvent Definition without going through JSON text. The charset may be null, in which case UTF-8 is
+   * assumed. Returns the number of records found; records before a read error have already been sent.
+   */
+  public int receiveCsv(InputStream in, String charsetName)
+  {
+    CsvReader csv = null;
+    try
+    {
+      csv = new CsvReader(new InputStreamReader(in, (charsetName != null) ? charsetName : "UTF-8"), csvSeparator);
+      return getJSONParser().sendRecords(csv, csvHasHeader, geoEventProducer);
     }
     catch (IOException ex)
     {
-      String thisError = ex.getMessage();
-      String partialJSONError = "Unexpected end-of-input";
-      if (thisError.startsWith(partialJSONError))
+      LOGGER.error("CSV_PARSE_ERROR", (csv != null) ? csv.getRecordNumber() + 1 : 0, ex.getMessage());
+      LOGGER.info(ex.getMessage(), ex);
+      return (csv != null) ? (int) csv.getRecordNumber() : 0;
+    }
+    finally
+    {
+      if (csv != null)
       {
-        ///
+        try
+        {
+          csv.close();
+        }
+        catch (IOException e)
+        {
+          ;
+        }
       }
-      Integer count = stringBuilderCache.size();
-      LOGGER.info("StringBuilderCache Count: " + count.toString());
-      LOGGER.error("PARSE_ERROR");
+    }
+  }
+
+  /**
+   * Streams the record elements of an XML response, sending each record as soon as its element ends, so
+   * memory use is bounded by the largest record rather than by the whole response. The charset may be null,
+   * in which case it is taken from the XML declaration. Returns the number of records found; records before
+   * a parse error have already been sent.
+   */
+  public int receiveXml(InputStream in, String charsetName)
+  {
+    XmlRecordReader reader = xmlRecordReader;
+    if (reader == null)
+      xmlRecordReader = reader = XmlRecordReader.compile(null);
+    ParallelConverter converter = parallelConverter;
+    int[] count = new int[1];
+    final RecordSink sink = new RecordSink(getJSONParser(), (converter != null) ? converter.open() : null, count);
+    try
+    {
+      reader.read(in, charsetName, new XmlRecordReader.Target()
+        {
+          @Override
+          public void found(ObjectNode record) throws IOException
+          {
+            sink.record(record);
+          }
+        });
+    }
+    catch (IOException ex)
+    {
+      LOGGER.error("XML_PARSE_ERROR", ex.getMessage());
       LOGGER.info(ex.getMessage(), ex);
     }
+    finally
+    {
+      sink.finish();
+    }
+    return count[0];
   }
 
-  private ArrayList<String> parseToIndividualObjects(String inputString) throws JsonProcessingException, IOException
+  /**
+   * Decodes a GTFS-realtime feed straight from the stream into vehicle position and trip update GeoEvents.
+   * Returns the number of GeoEvents; those before a decoding error have already been sent.
+   */
+  public int receiveGtfsRealtime(InputStream in)
   {
-    ArrayList<String> results = new ArrayList<>();
-    JsonParser parser = new JsonFactory().createJsonParser(inputString);
-    LOGGER.debug("At the very beginning, the current location is " + parser.getCurrentLocation().getCharOffset());
-    // JsonNode tree = parser.readValueAsTree();
-    int depth = 0;
-    int start = 0;
-    JsonToken currentToken = null;
-    while (true)
+    GtfsRealtimeParser parser = gtfsRealtimeParser;
+    if (parser == null)
+      gtfsRealtimeParser = parser = new GtfsRealtimeParser(geoEventCreator, createUri(), id);
+    final JsonInboundParser sender = getJSONParser();
+    try
     {
-      try
+      return parser.read(in, new GtfsRealtimeParser.Target()
+        {
+          @Override
+          public void found(GeoEvent event)
+          {
+            sender.send(event, geoEventProducer);
+          }
+        });
+    }
+    catch (IOException ex)
+    {
+      LOGGER.error("GTFS_RT_PARSE_ERROR", ex.getMessage());
+      LOGGER.info(ex.getMessage(), ex);
+      return 0;
+    }
+  }
+
+  private void readRecords(JsonParser parser, int[] count) throws IOException
+  {
+    ParallelConverter converter = parallelConverter;
+    final RecordSink sink = new RecordSink(getJSONParser(), (converter != null) ? converter.open() : null, count);
+    JsonPath path = jsonObjectPath;
+    JsonPath.Target target = new JsonPath.Target()
+      {
+        @Override
+        public void found(JsonParser parser, JsonToken token) throws IOException
+        {
+          readValue(parser, token, null, sink);
+        }
+      };
+    try
+    {
+      // a response may hold several concatenated top-level values
+      JsonToken token;
+      while ((token = parser.nextToken()) != null)
       {
-        currentToken = parser.nextToken();
+        if (path != null)
+          path.select(parser, token, target);
+        else
+          readValue(parser, token, jsonObjectName, sink);
       }
-      catch (JsonParseException ex)
+    }
+    finally
+    {
+      sink.finish();
+    }
+  }
+
+  /**
+   * Streaming counterpart of {@link JsonInboundParser#findNodes}: objects are records once the JSON object
+   * name has been found (or when there is none), and arrays are searched element by element. As in
+   * findNodes, an object holding the named field contributes only that field, so the objects and arrays
+   * preceding it are buffered until it turns up, and searched in order if the object ends without it. The
+   * siblings following a matching field are skipped without being parsed. Those buffered siblings can be as
+   * large as the response (e.g. a features array ahead of the named field), which is reported once; only a
+   * JSON path, which selects records without any buffering, reads a response in bounded memory.
+   */
+  private void readValue(JsonParser parser, JsonToken token, String nodeName, RecordSink sink) throws IOException
+  {
+    if (token == JsonToken.START_ARRAY)
+    {
+      while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY)
+        readValue(parser, token, nodeName, sink);
+    }
+    else if (token == JsonToken.START_OBJECT)
+    {
+      if (nodeName == null)
       {
-        String leftovers = inputString.substring(start);
-        LOGGER.debug("Leftovers = " + leftovers);
-        results.add(leftovers);
-        currentToken = null;
+        sink.record(parser);
+        return;
       }
-      if (currentToken == null)
-        break;
-      if (currentToken == JsonToken.START_OBJECT || currentToken == JsonToken.START_ARRAY)
+      boolean found = false;
+      List<JsonNode> preceding = null;
+      while (parser.nextToken() == JsonToken.FIELD_NAME)
       {
-        if (depth == 0)
+        String fieldName = parser.getCurrentName();
+        token = parser.nextToken();
+        if (found)
+        {
+          parser.skipChildren();
+        }
+        else if (nodeName.equals(fieldName))
         {
-          LOGGER.debug("At the start of an object, the current location is " + parser.getCurrentLocation().getCharOffset());
-          start = (int) parser.getCurrentLocation().getCharOffset();
+          preceding = null;
+          readValue(parser, token, null, sink);
+          found = true;
         }
-        depth++;
+        else if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY)
+        {
+          if (preceding == null)
+            preceding = new ArrayList<JsonNode>();
+          if (!bufferingReported)
+          {
+            bufferingReported = true;
+            LOGGER.warn("JSON_OBJECT_NAME_BUFFERING", id, nodeName);
+          }
+          preceding.add(parser.readValueAsTree());
+        }
+      }
+      if (preceding != null)
+      {
+        for (JsonNode sibling : preceding)
+          readTree(sibling, nodeName, sink);
+      }
+    }
+  }
+
+  // the same search over a buffered value
+  private void readTree(JsonNode tree, String nodeName, RecordSink sink) throws IOException
+  {
+    if (tree.isArray())
+    {
+      for (JsonNode element : tree)
+        readTree(element, nodeName, sink);
+    }
+    else if (tree.isObject())
+    {
+      if (nodeName == null)
+        sink.record(tree);
+      else if (tree.has(nodeName))
+        readTree(tree.get(nodeName), null, sink);
+      else
+      {
+        for (JsonNode element : tree)
+          readTree(element, nodeName, sink);
+      }
+    }
+  }
+
+  /**
+   * Where the records of one response go: straight to the producer, or through a parallel conversion
+   * session when one is configured.
+   */
+  private class RecordSink
+  {
+    private final JsonInboundParser          inboundParser;
+    private final ParallelConverter.Session  session;
+    private final int[]                      count;
+
+    RecordSink(JsonInboundParser inboundParser, ParallelConverter.Session session, int[] count)
+    {
+      this.inboundParser = inboundParser;
+      this.session = session;
+      this.count = count;
+    }
+
+    // the parser is on the START_OBJECT of the record
+    void record(JsonParser parser) throws IOException
+    {
+      if (session != null || !streamingBinding)
+      {
+        record(parser.readValueAsTree());
+        return;
       }
-      else if (currentToken == JsonToken.END_OBJECT || currentToken == JsonToken.END_ARRAY)
+      count[0]++;
+      inboundParser.sendRecord(parser, geoEventProducer);
+    }
+
+    void record(JsonNode record) throws IOException
+    {
+      count[0]++;
+      if (session != null)
       {
-        depth--;
-        if (depth == 0)
+        try
         {
-          // we have a complete object
-          LOGGER.debug("At the end of an object, the current location is " + parser.getCurrentLocation().getCharOffset());
-          int end = (int) parser.getCurrentLocation().getCharOffset() + 1;
-          String jsonObjectString = inputString.substring(start, end);
-          start = end;
-          LOGGER.debug("jsonObject = " + jsonObjectString);
-          results.add(jsonObjectString);
+          session.add(record);
         }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while converting records");
+        }
+      }
+      else
+        inboundParser.sendRecord(record, geoEventProducer);
+    }
+
+    // waits until the records handed to the session have been sent
+    void finish()
+    {
+      if (session == null)
+        return;
+      try
+      {
+        session.finish();
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static void closeQuietly(JsonParser parser)
+  {
+    if (parser != null)
+    {
+      try
+      {
+        parser.close();
+      }
+      catch (IOException e)
+      {
+        ;
       }
     }
-    return results;
+  }
+
+  /**
+   * Looks up the configured JSON object name in an already parsed response and sends the GeoEvents found.
+   */
+  public void receive(JsonNode tree)
+  {
+    JsonPath path = jsonObjectPath;
+    if (path != null)
+    {
+      for (JsonNode node : path.select(tree))
+        getJSONParser().findNodes(node, null, geoEventProducer);
+    }
+    else
+      getJSONParser().findNodes(tree, jsonObjectName, geoEventProducer);
+  }
+
+  /**
+   * Sends a single record, e.g. one item of a batched response, without looking up the JSON object name.
+   */
+  public void receiveRecord(JsonNode record)
+  {
+    getJSONParser().findNodes(record, null, geoEventProducer);
   }
 
   public static void main(String[] args) throws JsonParseException, IOException
@@ -327,17 +747,40 @@ public class HttpHandlerAdapter implements Runnable
     }
   }
 
-  private JsonInboundParser getJSONParser(String geoEventDefName)
+  private JsonInboundParser getJSONParser()
+  {
+    JsonInboundParser parser = inboundParser;
+    if (parser == null)
+      inboundParser = parser = createJSONParser();
+    return parser;
+  }
+
+  /**
+   * Sets the stager the GeoEvents are sent through, or null to send them straight to the producer.
+   */
+  public void setOutboundStager(OutboundStager outboundStager)
+  {
+    this.outboundStager = outboundStager;
+    getJSONParser().setOutboundStager(outboundStager);
+  }
+
+  private JsonInboundParser createJSONParser()
   {
-    Uri uri = new Uri("auto-generated", definition.getDomain() + "." + definition.getName(), definition.getVersion());
+    Uri uri = createUri();
     
     JsonInboundParser parser = new JsonInboundParser(creatingGeoEventDefinition, geoEventDefinitionName, 
         buildGeometryFromFields, xGeometryField, yGeometryField, zGeometryField, wkidGeometryField, 
         wkTextGeometryField, customDateFormat, geoEventCreator, uri, id, trackIdField);
+    parser.setOutboundStager(outboundStager);
 
     return parser;
   }
 
+  private Uri createUri()
+  {
+    return new Uri("auto-generated", definition.getDomain() + "." + definition.getName(), definition.getVersion());
+  }
+
   /**
    * Added the run() method to cleanup its stringBuilder cache
    */
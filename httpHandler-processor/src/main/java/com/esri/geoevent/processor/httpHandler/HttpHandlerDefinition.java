@@ -55,16 +55,42 @@ public class HttpHandlerDefinition extends GeoEventProcessorDefinitionBase
       formatAllowedValues.add(new LabeledValue("Json", "json"));
       formatAllowedValues.add(new LabeledValue("XML", "xml"));
       formatAllowedValues.add(new LabeledValue("CSV", "csv"));
+      formatAllowedValues.add(new LabeledValue("GTFS Realtime", "gtfs-rt"));
+      formatAllowedValues.add(new LabeledValue("GeoJSON", "geojson"));
+      formatAllowedValues.add(new LabeledValue("Esri JSON", "esrijson"));
       propertyDefinitions.put("responseFormat", new PropertyDefinition("responseFormat", PropertyType.String, "json", "Response Format", "Response Format", true, false, formatAllowedValues));
-      propertyDefinitions.put("fieldSeparator", new PropertyDefinition("fieldSeparator", PropertyType.String, ",", "Field Separator", "Field Separator", "responseFormat=csv", false, false));
+      propertyDefinitions.put("fieldSeparator", new PropertyDefinition("fieldSeparator", PropertyType.String, ",", "Field Separator", "Character separating the fields of a CSV response, \\t for a tab", "responseFormat=csv", false, false));
+      propertyDefinitions.put("csvHasHeader", new PropertyDefinition("csvHasHeader", PropertyType.Boolean, false, "CSV Has Header Row", "The first row of a CSV response holds the column names", "responseFormat=csv", false, false));
+      propertyDefinitions.put("xmlRecordPath", new PropertyDefinition("xmlRecordPath", PropertyType.String, "", "XML Record Path", "Path of the repeating record elements, e.g. /rss/channel/item or item; defaults to the JSON object name", "responseFormat=xml", false, false));
 
       List<LabeledValue> modeAllowedValues = new ArrayList<>();
-      formatAllowedValues.add(new LabeledValue("Server", "SERVER"));
-      formatAllowedValues.add(new LabeledValue("Client", "CLIENT"));
-      propertyDefinitions.put("mode", new PropertyDefinition("Mode", PropertyType.String, "CLIENT", "Mode", "Mode", true, false, modeAllowedValues));
+      modeAllowedValues.add(new LabeledValue("Server", "SERVER"));
+      modeAllowedValues.add(new LabeledValue("Client", "CLIENT"));
+      propertyDefinitions.put("mode", new PropertyDefinition("mode", PropertyType.String, "CLIENT", "Mode", "Mode", true, false, modeAllowedValues));
+      
+      propertyDefinitions.put("serverBindAddress", new PropertyDefinition("serverBindAddress", PropertyType.String, "127.0.0.1", "Server Bind Address", "Address the processor listens on for pushed data, empty listens on all interfaces", "mode=SERVER", false, false));
+      propertyDefinitions.put("serverPort", new PropertyDefinition("serverPort", PropertyType.Integer, "8080", "Server Port", "Port the processor listens on for pushed data", "mode=SERVER", false, false));
+      propertyDefinitions.put("acceptableMimeTypesServerMode", new PropertyDefinition("acceptableMimeTypesServerMode", PropertyType.String, "application/json,text/plain", "Acceptable MIME Types", "Comma separated MIME types accepted from clients pushing data, empty accepts any", "mode=SERVER", false, false));
+      propertyDefinitions.put("serverMaxBodyKilobytes", new PropertyDefinition("serverMaxBodyKilobytes", PropertyType.Integer, "10240", "Server Max Body Size (KB)", "Maximum size of a pushed request body", "mode=SERVER", false, false));
+      propertyDefinitions.put("serverIdleTimeoutSeconds", new PropertyDefinition("serverIdleTimeoutSeconds", PropertyType.Integer, "30", "Server Idle Timeout (seconds)", "Closes a client connection that sends nothing for this long, or takes longer to send the headers of a request; 0 keeps connections open", "mode=SERVER", false, false));
       
       propertyDefinitions.put("clientURL", new PropertyDefinition("clientURL", PropertyType.String, "", "URL", "URL composed from fields in the format http://host/{field1}/folder/{field2}?value1={field3}&value2={$lastPollingDateTime}&value3={$currentDateTime}. Processor-defined (epoch-millisecond) time fields are $lastPollingDateTime and $currentDateTime", false, false));
-      propertyDefinitions.put("JsonObjectName", new PropertyDefinition("JsonObjectName", PropertyType.String, "", "Objectname", "Tag to use as object name", false, false));
+      propertyDefinitions.put("JsonObjectName", new PropertyDefinition("JsonObjectName", PropertyType.String, "", "Objectname", "Tag to use as object name, found at any depth, or the path of the records such as $.data.flights[*] or /data/flights. A name holds the objects and arrays preceding it in memory until it is found; only a path reads large responses in bounded memory", false, false));
+      List<LabeledValue> bindingAllowedValues = new ArrayList<>();
+      bindingAllowedValues.add(new LabeledValue("Tree", "TREE"));
+      bindingAllowedValues.add(new LabeledValue("Streaming", "STREAMING"));
+      propertyDefinitions.put("bindingMode", new PropertyDefinition("bindingMode", PropertyType.String, "TREE", "JSON Binding Mode", "Tree resolves the GeoEvent Definition of every record, Streaming binds records straight from the parser when they resolve to an existing GeoEvent Definition that is the only one with its name, and resolves every record otherwise", false, false, bindingAllowedValues));
+      propertyDefinitions.put("parallelConversion", new PropertyDefinition("parallelConversion", PropertyType.Boolean, false, "Parallel Conversion", "Convert the records of a response to GeoEvents on all cores", false, false));
+      propertyDefinitions.put("conversionChunkSize", new PropertyDefinition("conversionChunkSize", PropertyType.Integer, "1000", "Conversion Chunk Size", "Number of records handed to a conversion thread at a time", "parallelConversion=true", false, false));
+      List<LabeledValue> orderingAllowedValues = new ArrayList<>();
+      orderingAllowedValues.add(new LabeledValue("None", "NONE"));
+      orderingAllowedValues.add(new LabeledValue("Per Track", "TRACK_ID"));
+      orderingAllowedValues.add(new LabeledValue("Global", "GLOBAL"));
+      propertyDefinitions.put("conversionOrdering", new PropertyDefinition("conversionOrdering", PropertyType.String, "NONE", "Conversion Ordering", "Which records are sent in response order: none, the records of each track, or all records", false, false, orderingAllowedValues));
+      propertyDefinitions.put("outboundStaging", new PropertyDefinition("outboundStaging", PropertyType.Boolean, false, "Stage Outbound GeoEvents", "Queue created GeoEvents and send them in batches from a dedicated thread", false, false));
+      propertyDefinitions.put("outboundCapacity", new PropertyDefinition("outboundCapacity", PropertyType.Integer, "10000", "Outbound Queue Capacity", "Number of GeoEvents queued before conversion waits for the producer", "outboundStaging=true", false, false));
+      propertyDefinitions.put("outboundBatchSize", new PropertyDefinition("outboundBatchSize", PropertyType.Integer, "500", "Outbound Batch Size", "Maximum number of GeoEvents sent in one batch", "outboundStaging=true", false, false));
+      propertyDefinitions.put("outboundLingerMillis", new PropertyDefinition("outboundLingerMillis", PropertyType.Integer, "20", "Outbound Linger (ms)", "How long a short batch waits for more GeoEvents before it is sent", "outboundStaging=true", false, false));
       propertyDefinitions.put("httpMethod", new PropertyDefinition("httpMethod", PropertyType.String, "Get", "HTTP method", "HTTP method", true, false, methodAllowedValues));
       propertyDefinitions.put("CreateGeoEventDefinition", new PropertyDefinition("CreateGeoEventDefinition", PropertyType.Boolean, true, "Create New GeoEvent Definition", "Create New GeoEvent Definition", false, false));
       propertyDefinitions.put("NewGeoEventDefinitionName", new PropertyDefinition("NewGeoEventDefinitionName", PropertyType.String, "NewGeoEventDefinition", "New GeoEvent Definition Name", "New GeoEvent Definition Name", "CreateGeoEventDefinition=true", false, false));
@@ -82,9 +108,62 @@ public class HttpHandlerDefinition extends GeoEventProcessorDefinitionBase
       propertyDefinitions.put("WKIDGeometryField", new PropertyDefinition("WKIDGeometryField", PropertyType.String, "4326", "WKID Filed or Value", "WKID field or value", false, false));
       propertyDefinitions.put("CustomDateFormat", new PropertyDefinition("CustomDateFormat", PropertyType.String, "", "Custom Date Format", "Custom Date Format", false, false));
       
-      propertyDefinitions.put("frequency", new PropertyDefinition("frequency", PropertyType.Integer, "5", "Frequency", "Frequency in seconds", false, false));
+      propertyDefinitions.put("pollingEnabled", new PropertyDefinition("pollingEnabled", PropertyType.Boolean, false, "Poll", "Also send the request on a timer, for requests that do not reference GeoEvent fields", "mode=CLIENT", false, false));
+      propertyDefinitions.put("frequency", new PropertyDefinition("frequency", PropertyType.Integer, "5", "Frequency", "Frequency in seconds", "pollingEnabled=true", false, false));
       propertyDefinitions.put("httpTimeoutValue", new PropertyDefinition("httpTimeoutValue", PropertyType.Integer, "5", "Http Timeout Value", "Http Timeout Value", false, false));
       propertyDefinitions.put("historicalTimespanSeconds", new PropertyDefinition("historicalTimespanSeconds", PropertyType.Integer, "5", "Historical Timespan (seconds)", "Historical Timespan in seconds for calculate initial value of the processor-defined field $lastPollingDateTime", false, false));
+      List<LabeledValue> clientAllowedValues = new ArrayList<>();
+      clientAllowedValues.add(new LabeledValue("Pooled", "POOLED"));
+      clientAllowedValues.add(new LabeledValue("GeoEvent", "GEOEVENT"));
+      propertyDefinitions.put("httpClient", new PropertyDefinition("httpClient", PropertyType.String, "POOLED", "HTTP Client", "Pooled keeps connections alive in a pool shared by all processors but ignores the proxy and certificate settings of GeoEvent Server; GeoEvent sends every request with a new client of the GeoEvent HTTP client service, which applies them, and only supports the blocking request engine", false, false, clientAllowedValues));
+      propertyDefinitions.put("maxConnectionsPerRoute", new PropertyDefinition("maxConnectionsPerRoute", PropertyType.Integer, "20", "Max Connections Per Host", "Maximum number of pooled keep-alive connections to the URL's host, shared with other processors using the same host", "httpClient=POOLED", false, false));
+      propertyDefinitions.put("dispatchPoolSize", new PropertyDefinition("dispatchPoolSize", PropertyType.Integer, "20", "Dispatch Pool Size", "Number of threads sending HTTP requests", false, false));
+      propertyDefinitions.put("dispatchQueueCapacity", new PropertyDefinition("dispatchQueueCapacity", PropertyType.Integer, "1000", "Dispatch Queue Capacity", "Maximum number of HTTP requests waiting for a free thread", false, false));
+      List<LabeledValue> overflowAllowedValues = new ArrayList<>();
+      overflowAllowedValues.add(new LabeledValue("Block", "BLOCK"));
+      overflowAllowedValues.add(new LabeledValue("Drop Oldest", "DROP_OLDEST"));
+      overflowAllowedValues.add(new LabeledValue("Drop Newest", "DROP_NEWEST"));
+      overflowAllowedValues.add(new LabeledValue("Spill To Disk", "SPILL_TO_DISK"));
+      propertyDefinitions.put("dispatchOverflowPolicy", new PropertyDefinition("dispatchOverflowPolicy", PropertyType.String, "BLOCK", "Dispatch Overflow Policy", "What to do with a new HTTP request when the dispatch queue is full. Spill To Disk writes the waiting requests, including their header values, to a temporary directory only the user running GeoEvent Server can read", false, false, overflowAllowedValues));
+      List<LabeledValue> engineAllowedValues = new ArrayList<>();
+      engineAllowedValues.add(new LabeledValue("Blocking", "BLOCKING"));
+      engineAllowedValues.add(new LabeledValue("Asynchronous", "ASYNC"));
+      propertyDefinitions.put("requestEngine", new PropertyDefinition("requestEngine", PropertyType.String, "BLOCKING", "Request Engine", "Blocking sends each request on a dispatch thread, Asynchronous multiplexes requests over a few NIO threads", false, false, engineAllowedValues));
+      propertyDefinitions.put("asyncIoThreads", new PropertyDefinition("asyncIoThreads", PropertyType.Integer, "2", "Async I/O Threads", "Number of NIO selector threads of the asynchronous request engine", "requestEngine=ASYNC", false, false));
+      propertyDefinitions.put("asyncMaxInFlight", new PropertyDefinition("asyncMaxInFlight", PropertyType.Integer, "1000", "Async Max Requests In Flight", "Maximum number of outstanding asynchronous requests before new requests wait", "requestEngine=ASYNC", false, false));
+      propertyDefinitions.put("cacheEnabled", new PropertyDefinition("cacheEnabled", PropertyType.Boolean, false, "Cache Responses", "Serve repeated requests (same method, URL, body and headers) from an in-memory response cache", false, false));
+      propertyDefinitions.put("cacheTtlSeconds", new PropertyDefinition("cacheTtlSeconds", PropertyType.Integer, "60", "Cache Time To Live (seconds)", "Number of seconds a cached response is considered fresh", "cacheEnabled=true", false, false));
+      propertyDefinitions.put("cacheStaleSeconds", new PropertyDefinition("cacheStaleSeconds", PropertyType.Integer, "30", "Cache Stale While Revalidate (seconds)", "Number of seconds an expired response may still be served while it is refreshed in the background", "cacheEnabled=true", false, false));
+      propertyDefinitions.put("cacheMaxEntries", new PropertyDefinition("cacheMaxEntries", PropertyType.Integer, "1000", "Cache Max Entries", "Maximum number of cached responses, the least recently used are evicted first", "cacheEnabled=true", false, false));
+      propertyDefinitions.put("cacheMaxMegabytes", new PropertyDefinition("cacheMaxMegabytes", PropertyType.Integer, "64", "Cache Max Size (MB)", "Maximum total size of the cached response bodies", "cacheEnabled=true", false, false));
+      propertyDefinitions.put("coalesceRequests", new PropertyDefinition("coalesceRequests", PropertyType.Boolean, false, "Coalesce Identical Requests", "Send a single request for identical requests in flight at the same time and deliver its response to each of them", false, false));
+      propertyDefinitions.put("batchEnabled", new PropertyDefinition("batchEnabled", PropertyType.Boolean, false, "Batch POST Requests", "Gather the POST bodies of many GeoEvents into one request", "httpMethod=POST", false, false));
+      propertyDefinitions.put("batchMaxCount", new PropertyDefinition("batchMaxCount", PropertyType.Integer, "100", "Batch Max Count", "Maximum number of GeoEvents sent in one batch", "batchEnabled=true", false, false));
+      propertyDefinitions.put("batchMaxKilobytes", new PropertyDefinition("batchMaxKilobytes", PropertyType.Integer, "1024", "Batch Max Size (KB)", "Maximum UTF-8 encoded size of a batch body", "batchEnabled=true", false, false));
+      propertyDefinitions.put("batchLingerMillis", new PropertyDefinition("batchLingerMillis", PropertyType.Integer, "100", "Batch Linger (milliseconds)", "Maximum time a GeoEvent waits for its batch to fill up", "batchEnabled=true", false, false));
+      propertyDefinitions.put("batchEnvelope", new PropertyDefinition("batchEnvelope", PropertyType.String, "[{$items}]", "Batch Envelope", "Template of the batch body, {$items} is replaced by the comma separated POST bodies", "batchEnabled=true", false, false));
+      List<LabeledValue> batchMappingAllowedValues = new ArrayList<>();
+      batchMappingAllowedValues.add(new LabeledValue("Position", "POSITION"));
+      batchMappingAllowedValues.add(new LabeledValue("Key Field", "KEY"));
+      propertyDefinitions.put("batchResponseMapping", new PropertyDefinition("batchResponseMapping", PropertyType.String, "POSITION", "Batch Response Mapping", "Match the items of the batch response to the batched GeoEvents by position or by key field", false, false, batchMappingAllowedValues));
+      propertyDefinitions.put("batchKeyField", new PropertyDefinition("batchKeyField", PropertyType.String, "", "Batch Key Field", "Field whose value identifies a GeoEvent's item in the batch response", "batchResponseMapping=KEY", false, false));
+      List<LabeledValue> pagingAllowedValues = new ArrayList<>();
+      pagingAllowedValues.add(new LabeledValue("None", "NONE"));
+      pagingAllowedValues.add(new LabeledValue("Offset", "OFFSET"));
+      pagingAllowedValues.add(new LabeledValue("Next Link", "NEXT_LINK"));
+      pagingAllowedValues.add(new LabeledValue("Cursor", "CURSOR"));
+      propertyDefinitions.put("pagingMode", new PropertyDefinition("pagingMode", PropertyType.String, "NONE", "Paging Mode", "Fetch a query whose results are split over several responses page by page: by record offset, by the link to the next page, or by a cursor token", false, false, pagingAllowedValues));
+      propertyDefinitions.put("pageSize", new PropertyDefinition("pageSize", PropertyType.Integer, "1000", "Page Size", "Number of records requested per page, at most the maxRecordCount of an ArcGIS service", "pagingMode=OFFSET", false, false));
+      propertyDefinitions.put("pageParallelism", new PropertyDefinition("pageParallelism", PropertyType.Integer, "4", "Page Parallelism", "Number of pages fetched at the same time once the count query has answered the number of records", "pagingMode=OFFSET", false, false));
+      propertyDefinitions.put("pageOffsetParameter", new PropertyDefinition("pageOffsetParameter", PropertyType.String, "resultOffset", "Page Offset Parameter", "Query parameter holding the offset of the first record of a page", "pagingMode=OFFSET", false, false));
+      propertyDefinitions.put("pageSizeParameter", new PropertyDefinition("pageSizeParameter", PropertyType.String, "resultRecordCount", "Page Size Parameter", "Query parameter holding the number of records of a page, empty if the server has a fixed page size", "pagingMode=OFFSET", false, false));
+      propertyDefinitions.put("pageCountQuery", new PropertyDefinition("pageCountQuery", PropertyType.String, "returnCountOnly=true", "Count Query Parameters", "Parameters added to the URL to ask for the number of records; empty fetches the pages one after the other until one is empty", "pagingMode=OFFSET", false, false));
+      propertyDefinitions.put("pageCountField", new PropertyDefinition("pageCountField", PropertyType.String, "count", "Count Field", "Field or path of the number of records in the count response", "pagingMode=OFFSET", false, false));
+      propertyDefinitions.put("nextLinkField", new PropertyDefinition("nextLinkField", PropertyType.String, "", "Next Link Field", "Field or path of the next page's URL, e.g. $.links or $['@odata.nextLink']; empty uses the Link header", "pagingMode=NEXT_LINK", false, false));
+      propertyDefinitions.put("cursorField", new PropertyDefinition("cursorField", PropertyType.String, "next_cursor", "Cursor Field", "Field or path of the token of the next page", "pagingMode=CURSOR", false, false));
+      propertyDefinitions.put("cursorParameter", new PropertyDefinition("cursorParameter", PropertyType.String, "cursor", "Cursor Parameter", "Query parameter the token of the next page is sent in", "pagingMode=CURSOR", false, false));
+      propertyDefinitions.put("pageMaxCount", new PropertyDefinition("pageMaxCount", PropertyType.Integer, "1000", "Max Pages", "Maximum number of pages fetched by one query", "pagingMode=OFFSET,pagingMode=NEXT_LINK,pagingMode=CURSOR", false, false));
+      propertyDefinitions.put("pageMaxConcurrentQueries", new PropertyDefinition("pageMaxConcurrentQueries", PropertyType.Integer, "2", "Max Concurrent Queries", "Maximum number of paged queries running at the same time; further queries wait, and are dropped once 100 are waiting", "pagingMode=OFFSET,pagingMode=NEXT_LINK,pagingMode=CURSOR", false, false));
       propertyDefinitions.put("useEpochMilliseconds", new PropertyDefinition("useEpochMilliseconds", PropertyType.Boolean, false, "Use Epoch Milliseconds", "Use Epoch Milliseconds. The default is epoch seconds", false, false));
     }
     catch (Exception error)
@@ -24,6 +24,8 @@
 
 package com.esri.geoevent.processor.httpHandler;
 
+import java.util.concurrent.ForkJoinPool;
+
 import com.esri.ges.core.component.ComponentException;
 import com.esri.ges.core.http.GeoEventHttpClientService;
 import com.esri.ges.manager.geoeventdefinition.GeoEventDefinitionManager;
@@ -34,12 +36,21 @@ import com.esri.ges.processor.GeoEventProcessorServiceBase;
 public class HttpHandlerService extends GeoEventProcessorServiceBase
 {
   static GeoEventHttpClientService  httpClientService;
+  static HttpClientManager          clientManager;
+  static PollingScheduler           pollingScheduler;
+  static ForkJoinPool               conversionPool;
   private Messaging                 messaging;
   private GeoEventDefinitionManager geoEventDefinitionManager;
 
   public HttpHandlerService()
   {
     definition = new HttpHandlerDefinition();
+    if (clientManager == null)
+      clientManager = new HttpClientManager();
+    if (pollingScheduler == null)
+      pollingScheduler = new PollingScheduler();
+    if (conversionPool == null)
+      conversionPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
   }
 
   @Override
@@ -65,4 +76,23 @@ public class HttpHandlerService extends GeoEventProcessorServiceBase
   {
     this.geoEventDefinitionManager = geoEventDefinitionManager;
   }
+
+  public void destroy()
+  {
+    if (conversionPool != null)
+    {
+      conversionPool.shutdownNow();
+      conversionPool = null;
+    }
+    if (pollingScheduler != null)
+    {
+      pollingScheduler.shutdown();
+      pollingScheduler = null;
+    }
+    if (clientManager != null)
+    {
+      clientManager.shutdown();
+      clientManager = null;
+    }
+  }
 }
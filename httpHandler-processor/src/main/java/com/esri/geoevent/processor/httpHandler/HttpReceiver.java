@@ -0,0 +1,709 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.esri.ges.framework.i18n.BundleLogger;
+import com.esri.ges.framework.i18n.BundleLoggerFactory;
+
+/**
+ * Minimal non-blocking HTTP/1.1 listener for SERVER mode. A single selector thread accepts connections,
+ * parses requests and answers them; the bodies of accepted POST and PUT requests are handed to the
+ * {@link BodyHandler}, which must queue the parsing elsewhere. Keep-alive and pipelining are supported,
+ * responses are written in request order, and a connection whose client stops reading its responses is not
+ * read from until they have been flushed. Each read resumes decoding the pending request where the previous
+ * one stopped. Connections that stay idle, or take too long to send the headers of a request, are closed.
+ */
+public class HttpReceiver implements Runnable
+{
+  private static final BundleLogger LOGGER             = BundleLoggerFactory.getLogger(HttpReceiver.class);
+
+  private static final int          READ_BUFFER_SIZE   = 16 * 1024;
+  private static final int          MAX_HEADER_BYTES   = 16 * 1024;
+  private static final int          MAX_PENDING_WRITES = 1024;
+  private static final int          ACCEPT_BACKLOG     = 1024;
+  private static final byte[]       ACCEPTED           = response(202, "Accepted", false);
+
+  /**
+   * Receives the body of an accepted request on the selector thread. Implementations must not block and
+   * return false when the body cannot be taken right now, which is answered with 503.
+   */
+  public interface BodyHandler
+  {
+    boolean received(byte[] body, String contentType);
+  }
+
+  private final String              name;
+  private final String              bindAddress;
+  private final int                 port;
+  private final String              acceptableMimeTypes;
+  private final String[]            mimeTypes;
+  private final int                 maxBodyBytes;
+  private final long                idleTimeoutMillis;
+  private final BodyHandler         handler;
+  private final Selector            selector;
+  private final ServerSocketChannel serverChannel;
+  private final Thread              ioThread;
+  private volatile boolean          running            = true;
+
+  private final AtomicLong          acceptedCount      = new AtomicLong();
+  private final AtomicLong          rejectedCount      = new AtomicLong();
+  private final AtomicLong          throttledCount     = new AtomicLong();
+  private final AtomicLong          connectionCount    = new AtomicLong();
+  private final AtomicLong          timedOutCount      = new AtomicLong();
+
+  private static class Connection
+  {
+    private ByteBuffer                   input  = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final ArrayDeque<ByteBuffer> output = new ArrayDeque<ByteBuffer>();
+    private boolean                      continueSent;
+    private boolean                      closeAfterWrite;
+    private long                         lastActivity;
+    // when the first byte of headers still being received arrived, 0 when there are none
+    private long                         headStarted;
+    // bytes at the input position already searched for the end of the headers
+    private int                          headScanned;
+    // the request whose headers have been read and whose body is being received
+    private Request                      request;
+  }
+
+  private static class Request
+  {
+    private final String                method;
+    private final String                contentType;
+    private final String                expect;
+    private final boolean               keepAlive;
+    private final long                  contentLength;
+    private final ByteArrayOutputStream chunks;
+    private boolean                     trailers;
+
+    Request(String method, String contentType, String expect, boolean keepAlive, long contentLength, boolean chunked)
+    {
+      this.method = method;
+      this.contentType = contentType;
+      this.expect = expect;
+      this.keepAlive = keepAlive;
+      this.contentLength = contentLength;
+      this.chunks = chunked ? new ByteArrayOutputStream() : null;
+    }
+  }
+
+  private static class BadRequestException extends Exception
+  {
+    private static final long serialVersionUID = 1L;
+    private final int         status;
+    private final String      reason;
+
+    BadRequestException(int status, String reason)
+    {
+      super(reason);
+      this.status = status;
+      this.reason = reason;
+    }
+  }
+
+  /**
+   * Listens on <code>bindAddress</code>, or on all interfaces when it is empty, and on an ephemeral port when
+   * <code>port</code> is 0. A connection is closed once nothing has been received from or sent to it for
+   * <code>idleTimeoutMillis</code>, or once the headers of a request have not been completed within that
+   * time; 0 keeps connections open.
+   */
+  public HttpReceiver(String name, String bindAddress, int port, String acceptableMimeTypes, int maxBodyBytes, long idleTimeoutMillis, BodyHandler handler) throws IOException
+  {
+    this.name = name;
+    this.bindAddress = (bindAddress != null) ? bindAddress.trim() : "";
+    this.port = port;
+    this.acceptableMimeTypes = (acceptableMimeTypes != null) ? acceptableMimeTypes : "";
+    this.mimeTypes = parseMimeTypes(this.acceptableMimeTypes);
+    this.maxBodyBytes = Math.max(1, maxBodyBytes);
+    this.idleTimeoutMillis = Math.max(0, idleTimeoutMillis);
+    this.handler = handler;
+
+    selector = Selector.open();
+    serverChannel = ServerSocketChannel.open();
+    try
+    {
+      serverChannel.configureBlocking(false);
+      serverChannel.socket().setReuseAddress(true);
+      serverChannel.bind(this.bindAddress.isEmpty() ? new InetSocketAddress(port) : new InetSocketAddress(this.bindAddress, port), ACCEPT_BACKLOG);
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+    catch (IOException e)
+    {
+      serverChannel.close();
+      selector.close();
+      throw e;
+    }
+    ioThread = new Thread(this, name + "-receiver");
+    ioThread.setDaemon(true);
+    ioThread.start();
+  }
+
+  public boolean hasSameConfiguration(String bindAddress, int port, String acceptableMimeTypes, int maxBodyBytes, long idleTimeoutMillis)
+  {
+    return this.bindAddress.equals((bindAddress != null) ? bindAddress.trim() : "") && this.port == port && this.acceptableMimeTypes.equals((acceptableMimeTypes != null) ? acceptableMimeTypes : "") && this.maxBodyBytes == Math.max(1, maxBodyBytes) && this.idleTimeoutMillis == Math.max(0, idleTimeoutMillis);
+  }
+
+  public int getLocalPort()
+  {
+    return serverChannel.socket().getLocalPort();
+  }
+
+  public void shutdown()
+  {
+    running = false;
+    selector.wakeup();
+    try
+    {
+      ioThread.join(5000);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public void run()
+  {
+    // a sweep every half timeout closes a connection at most one and a half timeouts after its last activity
+    long sweepInterval = (idleTimeoutMillis > 0) ? Math.max(10, idleTimeoutMillis / 2) : 0;
+    long nextSweep = System.currentTimeMillis() + sweepInterval;
+    while (running)
+    {
+      try
+      {
+        selector.select(sweepInterval);
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext())
+        {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid())
+            continue;
+          try
+          {
+            if (key.isAcceptable())
+            {
+              accept();
+            }
+            else
+            {
+              if (key.isReadable())
+                read(key);
+              if (key.isValid() && key.isWritable())
+                write(key);
+            }
+          }
+          catch (IOException | CancelledKeyException e)
+          {
+            close(key);
+          }
+        }
+        if (sweepInterval > 0 && System.currentTimeMillis() >= nextSweep)
+        {
+          closeTimedOut(System.currentTimeMillis());
+          nextSweep = System.currentTimeMillis() + sweepInterval;
+        }
+      }
+      catch (ClosedSelectorException e)
+      {
+        break;
+      }
+      catch (IOException e)
+      {
+        LOGGER.debug("Receiver " + name + " select failed: " + e.getMessage());
+      }
+    }
+    closeAll();
+  }
+
+  private void accept() throws IOException
+  {
+    SocketChannel channel;
+    while ((channel = serverChannel.accept()) != null)
+    {
+      try
+      {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection();
+        connection.lastActivity = System.currentTimeMillis();
+        channel.register(selector, SelectionKey.OP_READ, connection);
+        connectionCount.incrementAndGet();
+      }
+      catch (IOException e)
+      {
+        // only this connection is lost, the listening socket stays open
+        channel.close();
+      }
+    }
+  }
+
+  private void read(SelectionKey key) throws IOException
+  {
+    SocketChannel channel = (SocketChannel) key.channel();
+    Connection connection = (Connection) key.attachment();
+    if (!connection.input.hasRemaining())
+      connection.input = grow(connection.input, connection.input.capacity() * 2);
+    int count = channel.read(connection.input);
+    if (count < 0)
+    {
+      close(key);
+      return;
+    }
+    if (count == 0)
+      return;
+    long now = System.currentTimeMillis();
+    connection.lastActivity = now;
+
+    connection.input.flip();
+    try
+    {
+      while (!connection.closeAfterWrite && connection.input.hasRemaining())
+      {
+        if (!handleRequest(connection))
+          break;
+      }
+    }
+    catch (BadRequestException e)
+    {
+      rejectedCount.incrementAndGet();
+      connection.output.add(ByteBuffer.wrap(response(e.status, e.reason, true)));
+      connection.closeAfterWrite = true;
+      connection.input.position(connection.input.limit());
+    }
+    // bytes left over without a request being received are the start of the next headers
+    if (connection.request != null || !connection.input.hasRemaining())
+      connection.headStarted = 0;
+    else if (connection.headStarted == 0)
+      connection.headStarted = now;
+    connection.input.compact();
+    write(key);
+  }
+
+  private void write(SelectionKey key) throws IOException
+  {
+    SocketChannel channel = (SocketChannel) key.channel();
+    Connection connection = (Connection) key.attachment();
+    while (!connection.output.isEmpty())
+    {
+      ByteBuffer buffer = connection.output.peek();
+      if (channel.write(buffer) > 0)
+        connection.lastActivity = System.currentTimeMillis();
+      if (buffer.hasRemaining())
+        break;
+      connection.output.poll();
+    }
+    if (connection.output.isEmpty())
+    {
+      if (connection.closeAfterWrite)
+      {
+        close(key);
+        return;
+      }
+      key.interestOps(SelectionKey.OP_READ);
+    }
+    else if (connection.output.size() > MAX_PENDING_WRITES || connection.closeAfterWrite)
+    {
+      // the client is pipelining faster than it reads the responses; stop reading until they are flushed
+      key.interestOps(SelectionKey.OP_WRITE);
+    }
+    else
+    {
+      key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+  }
+
+  /**
+   * Handles the request at the position of the input buffer. Returns false if it has not been fully
+   * received yet; the headers and complete chunks read so far are consumed and kept on the connection, so
+   * that the next read resumes after them.
+   */
+  private boolean handleRequest(Connection connection) throws BadRequestException
+  {
+    Request request = connection.request;
+    if (request == null)
+    {
+      request = readHead(connection);
+      if (request == null)
+        return false;
+      connection.request = request;
+    }
+    byte[] body = (request.chunks != null) ? readChunks(connection, request) : readContent(connection, request);
+    if (body == null)
+    {
+      sendContinue(connection, request.expect);
+      return false;
+    }
+    connection.request = null;
+    connection.continueSent = false;
+
+    boolean keepAlive = request.keepAlive;
+    if (!"POST".equals(request.method) && !"PUT".equals(request.method))
+      respond(connection, 405, "Method Not Allowed", keepAlive);
+    else if (!isAcceptable(request.contentType))
+      respond(connection, 415, "Unsupported Media Type", keepAlive);
+    else if (body.length > 0 && !handler.received(body, request.contentType))
+    {
+      throttledCount.incrementAndGet();
+      connection.output.add(ByteBuffer.wrap(response(503, "Service Unavailable", !keepAlive)));
+      connection.closeAfterWrite = !keepAlive;
+    }
+    else
+    {
+      acceptedCount.incrementAndGet();
+      connection.output.add(ByteBuffer.wrap(keepAlive ? ACCEPTED : response(202, "Accepted", true)));
+      connection.closeAfterWrite = !keepAlive;
+    }
+    return true;
+  }
+
+  private void respond(Connection connection, int status, String reason, boolean keepAlive)
+  {
+    rejectedCount.incrementAndGet();
+    connection.output.add(ByteBuffer.wrap(response(status, reason, !keepAlive)));
+    connection.closeAfterWrite = !keepAlive;
+  }
+
+  private static void sendContinue(Connection connection, String expect)
+  {
+    if (!connection.continueSent && "100-continue".equals(expect))
+    {
+      connection.output.add(ByteBuffer.wrap("HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1)));
+      connection.continueSent = true;
+    }
+  }
+
+  /**
+   * Parses and consumes the headers at the position of the input buffer, or returns null if they have not
+   * been fully received yet.
+   */
+  private Request readHead(Connection connection) throws BadRequestException
+  {
+    ByteBuffer input = connection.input;
+    byte[] array = input.array();
+    int start = input.position();
+    int limit = input.limit();
+
+    // the end of the headers may straddle the bytes already searched and the ones just read
+    int headerEnd = indexOfHeaderEnd(array, start + Math.max(0, connection.headScanned - 3), limit);
+    if (headerEnd < 0)
+    {
+      if (limit - start > MAX_HEADER_BYTES)
+        throw new BadRequestException(431, "Request Header Fields Too Large");
+      connection.headScanned = limit - start;
+      return null;
+    }
+    connection.headScanned = 0;
+
+    String head = new String(array, start, headerEnd - start, StandardCharsets.ISO_8859_1);
+    String[] lines = head.split("\r\n");
+    String[] requestLine = lines[0].split(" ");
+    if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1."))
+      throw new BadRequestException(400, "Bad Request");
+    String method = requestLine[0];
+    boolean http10 = requestLine[2].equals("HTTP/1.0");
+
+    String contentType = null;
+    String connectionHeader = null;
+    String transferEncoding = null;
+    String expect = null;
+    long contentLength = 0;
+    for (int i = 1; i < lines.length; i++)
+    {
+      int colon = lines[i].indexOf(':');
+      if (colon <= 0)
+        continue;
+      String header = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+      String value = lines[i].substring(colon + 1).trim();
+      switch (header)
+      {
+        case "content-type":
+          contentType = value;
+          break;
+        case "content-length":
+          try
+          {
+            contentLength = Long.parseLong(value);
+          }
+          catch (NumberFormatException e)
+          {
+            throw new BadRequestException(400, "Bad Request");
+          }
+          break;
+        case "connection":
+          connectionHeader = value.toLowerCase(Locale.ROOT);
+          break;
+        case "transfer-encoding":
+          transferEncoding = value.toLowerCase(Locale.ROOT);
+          break;
+        case "expect":
+          expect = value.toLowerCase(Locale.ROOT);
+          break;
+        default:
+          break;
+      }
+    }
+    boolean keepAlive = http10 ? "keep-alive".equals(connectionHeader) : !"close".equals(connectionHeader);
+    boolean chunked = transferEncoding != null && transferEncoding.contains("chunked");
+    if (!chunked)
+    {
+      if (contentLength < 0)
+        throw new BadRequestException(400, "Bad Request");
+      if (contentLength > maxBodyBytes)
+        throw new BadRequestException(413, "Payload Too Large");
+    }
+    input.position(headerEnd + 4);
+    return new Request(method, contentType, expect, keepAlive, contentLength, chunked);
+  }
+
+  /**
+   * Consumes and returns a body of <code>Content-Length</code> bytes, or returns null if it has not been
+   * fully received yet.
+   */
+  private static byte[] readContent(Connection connection, Request request)
+  {
+    ByteBuffer input = connection.input;
+    if (input.remaining() < request.contentLength)
+    {
+      // make room for the whole body, so that it can be copied from one buffer
+      if (input.capacity() < request.contentLength)
+      {
+        ByteBuffer larger = ByteBuffer.allocate((int) request.contentLength);
+        larger.put(input);
+        larger.flip();
+        connection.input = larger;
+      }
+      return null;
+    }
+    byte[] body = new byte[(int) request.contentLength];
+    input.get(body);
+    return body;
+  }
+
+  /**
+   * Decodes and consumes the complete chunks at the position of the input buffer, and returns the body once
+   * the last chunk and the trailers have been received, else null.
+   */
+  private byte[] readChunks(Connection connection, Request request) throws BadRequestException
+  {
+    ByteBuffer input = connection.input;
+    byte[] array = input.array();
+    int limit = input.limit();
+    while (true)
+    {
+      int pos = input.position();
+      int lineEnd = indexOfLineEnd(array, pos, limit);
+      if (lineEnd < 0)
+      {
+        if (limit - pos > MAX_HEADER_BYTES)
+          throw new BadRequestException(400, "Bad Request");
+        return null;
+      }
+      if (request.trailers)
+      {
+        // skip the trailers up to the empty line
+        input.position(lineEnd + 2);
+        if (lineEnd == pos)
+          return request.chunks.toByteArray();
+        continue;
+      }
+      String sizeLine = new String(array, pos, lineEnd - pos, StandardCharsets.ISO_8859_1);
+      int semicolon = sizeLine.indexOf(';');
+      int size;
+      try
+      {
+        size = Integer.parseInt(((semicolon >= 0) ? sizeLine.substring(0, semicolon) : sizeLine).trim(), 16);
+      }
+      catch (NumberFormatException e)
+      {
+        throw new BadRequestException(400, "Bad Request");
+      }
+      if (size < 0 || request.chunks.size() + size > maxBodyBytes)
+        throw new BadRequestException(413, "Payload Too Large");
+      if (size == 0)
+      {
+        request.trailers = true;
+        input.position(lineEnd + 2);
+        continue;
+      }
+      // a chunk is only consumed once it has been received completely, the buffer grows to hold it
+      if (limit - (lineEnd + 2) < size + 2)
+        return null;
+      request.chunks.write(array, lineEnd + 2, size);
+      input.position(lineEnd + 2 + size + 2);
+    }
+  }
+
+  private static int indexOfHeaderEnd(byte[] array, int from, int limit)
+  {
+    for (int i = from; i + 3 < limit; i++)
+    {
+      if (array[i] == '\r' && array[i + 1] == '\n' && array[i + 2] == '\r' && array[i + 3] == '\n')
+        return i;
+    }
+    return -1;
+  }
+
+  private static int indexOfLineEnd(byte[] array, int from, int limit)
+  {
+    for (int i = from; i + 1 < limit; i++)
+    {
+      if (array[i] == '\r' && array[i + 1] == '\n')
+        return i;
+    }
+    return -1;
+  }
+
+  private boolean isAcceptable(String contentType)
+  {
+    if (mimeTypes.length == 0)
+      return true;
+    if (contentType == null)
+      return false;
+    int semicolon = contentType.indexOf(';');
+    String mimeType = ((semicolon >= 0) ? contentType.substring(0, semicolon) : contentType).trim().toLowerCase(Locale.ROOT);
+    for (String acceptable : mimeTypes)
+    {
+      if (acceptable.equals("*/*") || acceptable.equals(mimeType))
+        return true;
+      if (acceptable.endsWith("/*") && mimeType.startsWith(acceptable.substring(0, acceptable.length() - 1)))
+        return true;
+    }
+    return false;
+  }
+
+  private static String[] parseMimeTypes(String acceptableMimeTypes)
+  {
+    List<String> types = new ArrayList<String>();
+    for (String type : acceptableMimeTypes.split("[,|]"))
+    {
+      String trimmed = type.trim().toLowerCase(Locale.ROOT);
+      if (!trimmed.isEmpty())
+        types.add(trimmed);
+    }
+    return types.toArray(new String[types.size()]);
+  }
+
+  private static ByteBuffer grow(ByteBuffer buffer, int capacity)
+  {
+    ByteBuffer larger = ByteBuffer.allocate(capacity);
+    buffer.flip();
+    larger.put(buffer);
+    return larger;
+  }
+
+  private static byte[] response(int status, String reason, boolean close)
+  {
+    StringBuilder sb = new StringBuilder(96);
+    sb.append("HTTP/1.1 ").append(status).append(' ').append(reason).append("\r\n");
+    sb.append("Content-Length: 0\r\n");
+    if (status == 405)
+      sb.append("Allow: POST, PUT\r\n");
+    if (status == 503)
+      sb.append("Retry-After: 1\r\n");
+    if (close)
+      sb.append("Connection: close\r\n");
+    sb.append("\r\n");
+    return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  private void closeTimedOut(long now)
+  {
+    for (SelectionKey key : selector.keys())
+    {
+      // the listening socket has no connection attached
+      if (!(key.attachment() instanceof Connection))
+        continue;
+      Connection connection = (Connection) key.attachment();
+      boolean idle = now - connection.lastActivity > idleTimeoutMillis;
+      boolean slowHead = connection.headStarted != 0 && now - connection.headStarted > idleTimeoutMillis;
+      if (idle || slowHead)
+      {
+        timedOutCount.incrementAndGet();
+        close(key);
+      }
+    }
+  }
+
+  private void close(SelectionKey key)
+  {
+    key.cancel();
+    try
+    {
+      key.channel().close();
+    }
+    catch (IOException e)
+    {
+      ;
+    }
+  }
+
+  private void closeAll()
+  {
+    try
+    {
+      for (SelectionKey key : selector.keys())
+        close(key);
+      selector.close();
+    }
+    catch (IOException | ClosedSelectorException e)
+    {
+      ;
+    }
+    try
+    {
+      serverChannel.close();
+    }
+    catch (IOException e)
+    {
+      ;
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return "receiver[address=" + bindAddress + ", port=" + port + ", connections=" + connectionCount.get() + ", accepted=" + acceptedCount.get() + ", rejected=" + rejectedCount.get() + ", throttled=" + throttledCount.get() + ", timedOut=" + timedOutCount.get() + "]";
+  }
+}
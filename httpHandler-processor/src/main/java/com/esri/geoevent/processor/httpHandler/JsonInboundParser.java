@@ -25,23 +25,26 @@
 package com.esri.geoevent.processor.httpHandler;
 
 import java.io.IOException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.commons.lang3.math.NumberUtils;
 import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.node.JsonNodeFactory;
 import org.codehaus.jackson.node.NullNode;
+import org.codehaus.jackson.node.ObjectNode;
 
 import com.esri.core.geometry.Line;
 import com.esri.core.geometry.MapGeometry;
 import com.esri.core.geometry.Point;
 import com.esri.core.geometry.Polyline;
-import com.esri.core.geometry.SpatialReference;
 import com.esri.ges.core.AccessType;
 import com.esri.ges.core.ConfigurationException;
 import com.esri.ges.core.Uri;
@@ -62,35 +65,39 @@ import com.esri.ges.messaging.GeoEventCreator;
 import com.esri.ges.messaging.GeoEventProducer;
 import com.esri.ges.messaging.MessagingException;
 import com.esri.ges.util.Converter;
-import com.esri.ges.util.DateUtil;
 import com.esri.ges.util.GeometryUtil;
-import com.esri.ges.util.Validator;
 
 public class JsonInboundParser
 {
-  private static final BundleLogger LOGGER = BundleLoggerFactory.getLogger(JsonInboundParser.class);
+  private static final BundleLogger           LOGGER       = BundleLoggerFactory.getLogger(JsonInboundParser.class);
 
   // properties
-  private boolean                   creatingGeoEventDefinition;
-  private String                    geoEventDefinitionName;
-  private boolean                   buildGeometryFromFields;
-  private String                    xGeometryField;
-  private String                    yGeometryField;
-  private String                    zGeometryField;
-  private String                    wkidGeometryField;
-  private String                    wkTextGeometryField;
-  private String                    customDateFormat;
-  private String                    trackIdField;
+  private boolean                             creatingGeoEventDefinition;
+  private String                              geoEventDefinitionName;
+  private boolean                             buildGeometryFromFields;
+  private String                              xGeometryField;
+  private String                              yGeometryField;
+  private String                              zGeometryField;
+  private String                              wkidGeometryField;
+  private String                              wkTextGeometryField;
+  private String                              customDateFormat;
+  private String                              trackIdField;
 
   // utilities
-  private GeoEventCreator           geoEventCreator;
-  private Uri                       uri;
-  private String                    id;
+  private GeoEventCreator                     geoEventCreator;
+  private Uri                                 uri;
+  private String                              id;
 
-  // local
-  private String                    lastGeoEventDefinitionsGUID;
-  private boolean                   haveDate;
-  private boolean                   haveGeometry;
+  // local, kept across responses
+  private final DefinitionResolver            definitionResolver;
+  private final Map<String, FieldBindingPlan> bindingPlans = new ConcurrentHashMap<String, FieldBindingPlan>();
+  private volatile GeoEventDefinition         streamingDefinition;
+  private volatile GeoEventDefinition         positionalDefinition;
+  private volatile OutboundStager             outboundStager;
+  private volatile DateConverter              dateConverter;
+  private volatile PointGeometryBuilder       geometryBuilder;
+  private boolean                             haveDate;
+  private boolean                             haveGeometry;
 
   public JsonInboundParser(boolean creatingGeoEventDefinition, String
                             geoEventDefinitionName, boolean buildGeometryFromFields, String
@@ -106,11 +113,14 @@ public class JsonInboundParser
     this.zGeometryField = zGeometryField;
     this.wkidGeometryField = wkidGeometryField;
     this.wkTextGeometryField = wkTextGeometryField;
+    updateGeometryBuilder();
     this.customDateFormat = customDateFormat;
+    this.dateConverter = createDateConverter(customDateFormat);
     this.geoEventCreator = geoEventCreator;
     this.uri = uri;
     this.id = id;
     this.trackIdField = trackIdField;
+    this.definitionResolver = new DefinitionResolver(geoEventCreator.getGeoEventDefinitionManager());
   }
 
   public void findNodes(JsonNode tree, String nodeName, GeoEventProducer geoEventProducer)
@@ -128,19 +138,7 @@ public class JsonInboundParser
     {
       if (nodeName == null)
       {
-        GeoEvent event = makeGeoEvent(tree);
-        if (geoEventProducer != null && event != null)
-        {
-          try
-          {
-            geoEventProducer.send(event);
-          }
-          catch (MessagingException e)
-          {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-          }
-        }
+        sendRecord(tree, geoEventProducer);
       }
       else if (tree.has(nodeName))
       {
@@ -158,65 +156,90 @@ public class JsonInboundParser
     }
   }
 
-  private GeoEvent makeGeoEvent(JsonNode node)
+  /**
+   * Turns a single JSON object into a GeoEvent and sends it.
+   */
+  public void sendRecord(JsonNode record, GeoEventProducer geoEventProducer)
   {
-    int perfectSize = node.size();
-    if (buildGeometryFromFields)
-      perfectSize++;
+    send(makeGeoEvent(record), geoEventProducer);
+  }
 
-    GeoEventDefinition geoEventDefinition = null;
-    if (lastGeoEventDefinitionsGUID != null)
+  /**
+   * Sends the event through the outbound stager if there is one, otherwise straight to the producer.
+   */
+  public void send(GeoEvent event, GeoEventProducer geoEventProducer)
+  {
+    if (event == null)
+      return;
+    OutboundStager stager = outboundStager;
+    if (stager != null)
     {
-      GeoEventDefinition def = geoEventCreator.getGeoEventDefinitionManager().getGeoEventDefinition(lastGeoEventDefinitionsGUID);
-      // if the old definition still exists and hasn't been modified structurally, just reuse it.
-      if (def != null && def.getFieldDefinitions().size() == perfectSize)
-        geoEventDefinition = def;
+      stager.stage(event);
+    }
+    else if (geoEventProducer != null)
+    {
+      try
+      {
+        geoEventProducer.send(event);
+      }
+      catch (MessagingException e)
+      {
+        LOGGER.error("SEND_ERROR", id, e.getMessage());
+      }
     }
+  }
 
-    if (geoEventDefinition == null)
+  public void setOutboundStager(OutboundStager outboundStager)
+  {
+    this.outboundStager = outboundStager;
+  }
+
+  /**
+   * Turns a single JSON object into a GeoEvent without sending it; returns null if it cannot be converted.
+   */
+  public GeoEvent makeGeoEvent(JsonNode node)
+  {
+    return makeGeoEvent(node, buildGeometryFromFields);
+  }
+
+  /**
+   * Turns the attributes of a GeoJSON or Esri JSON feature into a GeoEvent with the geometry already built
+   * from the feature, and sends it. A definition derived from the attributes gets a geometry field.
+   */
+  public void sendFeature(JsonNode attributes, MapGeometry geometry, GeoEventProducer geoEventProducer)
+  {
+    GeoEvent event = makeGeoEvent(attributes, true);
+    if (event != null && geometry != null)
     {
-      Collection<GeoEventDefinition> searchResults = geoEventCreator.getGeoEventDefinitionManager().searchGeoEventDefinitionByName(geoEventDefinitionName);
-      if (searchResults.size() == 0)
+      try
       {
-        if (creatingGeoEventDefinition)
-        {
-          try
-          {
-            geoEventDefinition = deriveGeoEventDefinition(node);
-            if (geoEventDefinition != null)
-              geoEventCreator.getGeoEventDefinitionManager().addGeoEventDefinition(geoEventDefinition);
-          }
-          catch (ConfigurationException e)
-          {
-            LOGGER.error("GED_CREATION_ERROR", e.getMessage(), node.toString());
-          }
-          catch (GeoEventDefinitionManagerException e)
-          {
-            LOGGER.error("GED_CREATION_ERROR", e.getMessage(), node.toString());
-          }
-        }
+        event.setGeometry(geometry);
       }
-      else
+      catch (FieldException e)
       {
-        for (GeoEventDefinition candidate : searchResults)
-        {
-          if (candidate.getFieldDefinitions().size() == perfectSize)
-          {
-            geoEventDefinition = candidate;
-            break;
-          }
-        }
-        if (geoEventDefinition == null)
-          geoEventDefinition = searchResults.iterator().next();
+        LOGGER.error("GE_GEOMETRY_CREATION_ERROR", e);
       }
     }
+    send(event, geoEventProducer);
+  }
+
+  // with a geometry, the definition has one field more than the record
+  private GeoEvent makeGeoEvent(JsonNode node, boolean withGeometry)
+  {
+    int perfectSize = node.size();
+    if (withGeometry)
+      perfectSize++;
+
+    long fingerprint = DefinitionResolver.fingerprint(node);
+    GeoEventDefinition geoEventDefinition = definitionResolver.get(fingerprint, node, perfectSize);
+    if (geoEventDefinition == null)
+      geoEventDefinition = resolveGeoEventDefinition(node, perfectSize, fingerprint, withGeometry);
     if (geoEventDefinition == null)
     {
       LOGGER.error("GED_DOESNT_EXIST");
       return null;
     }
-    
-    lastGeoEventDefinitionsGUID = geoEventDefinition.getGuid();
+
     GeoEvent event = null;
     try
     {
@@ -226,8 +249,9 @@ public class JsonInboundParser
       event.setProperty(GeoEventPropertyName.OWNER_ID, id);
       event.setProperty(GeoEventPropertyName.OWNER_URI, uri);
 
-      populateGeoEvent(event, node, geoEventDefinition.getFieldDefinitions());
-      constructGeometry(event);
+      FieldBindingPlan plan = getBindingPlan(geoEventDefinition);
+      populateGeoEvent(event, node, plan);
+      constructGeometry(event, plan);
     }
     catch (MessagingException e)
     {
@@ -240,52 +264,59 @@ public class JsonInboundParser
     return event;
   }
 
-  private void constructGeometry(GeoEvent event) throws FieldException
+  /**
+   * Searches the definitions by name, creating one if allowed. Synchronized so that concurrent responses
+   * neither create the same definition twice nor race on the derivation state.
+   */
+  private synchronized GeoEventDefinition resolveGeoEventDefinition(JsonNode node, int perfectSize, long fingerprint, boolean withGeometry)
   {
-    if (buildGeometryFromFields)
+    // another thread may have resolved the shape while this one waited
+    GeoEventDefinition geoEventDefinition = definitionResolver.get(fingerprint, node, perfectSize);
+    if (geoEventDefinition == null)
     {
-      if (xGeometryField != null && yGeometryField != null)
+      Collection<GeoEventDefinition> searchResults = geoEventCreator.getGeoEventDefinitionManager().searchGeoEventDefinitionByName(geoEventDefinitionName);
+      if (searchResults.size() == 0)
       {
-        double x = 0D;
-        double y = 0D;
-        double z = 0D;
-        int wkid = 4326;
-        Object xObject = event.getField(xGeometryField);
-        if (xObject != null)
-          x = Converter.convertToDouble(xObject);
-        else
-          LOGGER.warn("X Geometry field is null", xGeometryField, "x");
-        Object yObject = event.getField(yGeometryField);
-        if (yObject != null)
-          y = Converter.convertToDouble(yObject);
-        else
-          LOGGER.warn("Y Geometry field is null", yGeometryField, "y");
-        if (zGeometryField != null)
-        {
-          Object zObject = event.getField(zGeometryField);
-          if (zObject != null)
-            z = Converter.convertToDouble(zObject);
-          else
-            LOGGER.debug("Z Geometry field is null", zGeometryField, "z");        	  
-        }
-        if (!Validator.isEmpty(wkidGeometryField))
-        {
-          Object wkidObject = event.getField(wkidGeometryField);
-          if (wkidObject != null)
-            wkid = Converter.convertToInteger(wkidObject);
-        }
-        else
+        if (creatingGeoEventDefinition)
         {
-          if (!Validator.isEmpty(wkTextGeometryField))
+          try
           {
-            String wkText = (String) event.getField(wkTextGeometryField);
-            wkid = SpatialReference.create(wkText).getID();
+            geoEventDefinition = deriveGeoEventDefinition(node, withGeometry);
+            if (geoEventDefinition != null)
+              geoEventCreator.getGeoEventDefinitionManager().addGeoEventDefinition(geoEventDefinition);
+          }
+          catch (ConfigurationException e)
+          {
+            LOGGER.error("GED_CREATION_ERROR", e.getMessage(), node.toString());
+          }
+          catch (GeoEventDefinitionManagerException e)
+          {
+            LOGGER.error("GED_CREATION_ERROR", e.getMessage(), node.toString());
           }
         }
-        MapGeometry point = new MapGeometry(new Point(x, y, z), SpatialReference.create(wkid));
-        event.setGeometry(point);
       }
+      else
+      {
+        geoEventDefinition = definitionResolver.choose(searchResults, node, perfectSize);
+        // only then is every record bound to this definition whatever its shape, as when streaming
+        if (searchResults.size() == 1)
+          streamingDefinition = geoEventDefinition;
+      }
+      if (geoEventDefinition != null)
+        definitionResolver.put(fingerprint, geoEventDefinition);
     }
+    return geoEventDefinition;
+  }
+
+  private void updateGeometryBuilder()
+  {
+    geometryBuilder = (xGeometryField != null && yGeometryField != null) ? new PointGeometryBuilder(xGeometryField, yGeometryField, zGeometryField, wkidGeometryField, wkTextGeometryField) : null;
+  }
+
+  private void constructGeometry(GeoEvent event, FieldBindingPlan plan) throws FieldException
+  {
+    if (buildGeometryFromFields && geometryBuilder != null)
+      geometryBuilder.build(event, plan);
   }
 
   private void ConstructPolylineGeometry(GeoEvent event)
@@ -356,7 +387,7 @@ public class JsonInboundParser
 
       try
       {
-        MapGeometry pline = new MapGeometry(polyline, SpatialReference.create(wkid));
+        MapGeometry pline = new MapGeometry(polyline, PointGeometryBuilder.getSpatialReference(wkid));
         LOGGER.debug(pline.toString());
         event.setGeometry(pline);
       }
@@ -371,41 +402,42 @@ public class JsonInboundParser
     }
   }
 
-  private void populateGeoEvent(FieldGroup event, JsonNode node, List<FieldDefinition> fds)
+  private FieldBindingPlan getBindingPlan(GeoEventDefinition geoEventDefinition)
+  {
+    FieldBindingPlan plan = bindingPlans.get(geoEventDefinition.getGuid());
+    if (plan == null || !plan.isCompiledFrom(geoEventDefinition))
+    {
+      plan = FieldBindingPlan.compile(geoEventDefinition);
+      bindingPlans.put(geoEventDefinition.getGuid(), plan);
+    }
+    return plan;
+  }
+
+  private void populateGeoEvent(FieldGroup event, JsonNode node, FieldBindingPlan plan)
   {
     if (node != null && node.isObject())
     {
-      for (Iterator<String> fieldNames = node.getFieldNames(); fieldNames != null && fieldNames.hasNext();)
+      for (Iterator<Map.Entry<String, JsonNode>> fields = node.getFields(); fields != null && fields.hasNext();)
       {
         String fieldName = null;
         try
         {
-          fieldName = fieldNames.next();
-          for (FieldDefinition fd : fds)
+          Map.Entry<String, JsonNode> field = fields.next();
+          fieldName = field.getKey();
+          FieldBindingPlan.Slot slot = plan.get(fieldName);
+          JsonNode n = field.getValue();
+          if (slot != null && n != null)
           {
-            if (fd.getName().equals(fieldName))
+            if (!slot.isMany())
+            {
+              event.setField(slot.getIndex(), convert(event, slot, n));
+            }
+            else if (n.isArray())
             {
-              JsonNode n = node.get(fieldName);
-              if (n != null)
-              {
-                switch (fd.getCardinality())
-                {
-                  case One:
-                    event.setField(fieldName, convert(event, fd, n));
-                    break;
-                  case Many:
-                  {
-                    if (n.isArray())
-                    {
-                      ArrayList<Object> results = new ArrayList<Object>();
-                      for (Iterator<JsonNode> arrayElements = n.getElements(); arrayElements.hasNext();)
-                        results.add(convert(event, fd, arrayElements.next()));
-                      event.setField(fieldName, results);
-                    }
-                  }
-                    break;
-                }
-              }
+              ArrayList<Object> results = new ArrayList<Object>(n.size());
+              for (Iterator<JsonNode> arrayElements = n.getElements(); arrayElements.hasNext();)
+                results.add(convert(event, slot, arrayElements.next()));
+              event.setField(slot.getIndex(), results);
             }
           }
         }
@@ -436,70 +468,382 @@ public class JsonInboundParser
     return null;
   }
 
+  private Object convert(FieldGroup event, FieldBindingPlan.Slot slot, JsonNode node) throws FieldException
+  {
+    if (slot.getChildren() != null)
+    {
+      FieldGroup group = event.createFieldGroup(slot.getDefinition().getName());
+      populateGeoEvent(group, node, slot.getChildren());
+      return group;
+    }
+    return convertValue(slot, getJsonNodeValue(node));
+  }
+
   @SuppressWarnings("incomplete-switch")
-  private Object convert(FieldGroup event, FieldDefinition fieldDef, JsonNode node) throws FieldException
+  private Object convertValue(FieldBindingPlan.Slot slot, Object value)
   {
-    if (FieldType.Group.equals(fieldDef.getType()))
+    if (value != null)
     {
-      FieldGroup group = event.createFieldGroup(fieldDef.getName());
-      populateGeoEvent(group, node, fieldDef.getChildren());
+      switch (slot.getType())
+      {
+        case String:
+          return Converter.convertToString(value);
+        case Boolean:
+          return Converter.convertToBoolean(value);
+        case Date:
+          if (value instanceof String)
+            return dateConverter.convert(slot.getDefinition().getName(), (String) value);
+          else if (value instanceof Double || value instanceof Float)
+            return dateConverter.fromEpoch(((Number) value).doubleValue());
+          else if (value instanceof Number)
+            return dateConverter.fromEpoch(((Number) value).longValue());
+          break;
+        case Double:
+          return Converter.convertToDouble(value);
+        case Float:
+          return Converter.convertToFloat(value);
+        case Integer:
+          return Converter.convertToInteger(value);
+        case Long:
+          return Converter.convertToLong(value);
+        case Short:
+          return Converter.convertToShort(value);
+        case Geometry:
+          try
+          {
+            return GeometryUtil.fromJson(Converter.convertToString(value));
+          }
+          catch (Exception ex)
+          {
+            ;
+          }
+      }
+    }
+    return null;
+  }
+
+  private static DateConverter createDateConverter(String customDateFormat)
+  {
+    try
+    {
+      return new DateConverter(customDateFormat);
+    }
+    catch (IllegalArgumentException e)
+    {
+      LOGGER.error("INVALID_DATE_FORMAT", customDateFormat, e.getMessage());
+      return new DateConverter(null);
+    }
+  }
+
+  /**
+   * Streaming counterpart of {@link #sendRecord(JsonNode, GeoEventProducer)} for a parser positioned on the
+   * START_OBJECT of a record. The record is bound straight from the tokens: numbers are read with the
+   * primitive getters of the slot type and fields missing from the definition are skipped unparsed. That
+   * only gives the same GeoEvents as the tree when the shape of a record cannot change its definition, so
+   * records stream once they resolve to an existing GeoEvent Definition that is the only one with its name.
+   * While the definition is being created from the records, or several share the name, every record is
+   * read into a tree and resolved by its shape.
+   */
+  public void sendRecord(JsonParser parser, GeoEventProducer geoEventProducer) throws IOException
+  {
+    GeoEventDefinition geoEventDefinition = streamingDefinition;
+    if (geoEventDefinition != null)
+    {
+      // follows an update that keeps the GUID, or falls back to the tree once the definition is deleted
+      GeoEventDefinition current = geoEventCreator.getGeoEventDefinitionManager().getGeoEventDefinition(geoEventDefinition.getGuid());
+      if (current != geoEventDefinition)
+        streamingDefinition = geoEventDefinition = current;
+    }
+    if (geoEventDefinition == null)
+    {
+      JsonNode record = parser.readValueAsTree();
+      sendRecord(record, geoEventProducer);
+      return;
+    }
+
+    GeoEvent event = null;
+    try
+    {
+      event = geoEventCreator.create(geoEventDefinition.getGuid());
+
+      event.setProperty(GeoEventPropertyName.TYPE, "event");
+      event.setProperty(GeoEventPropertyName.OWNER_ID, id);
+      event.setProperty(GeoEventPropertyName.OWNER_URI, uri);
+
+      FieldBindingPlan plan = getBindingPlan(geoEventDefinition);
+      populateGeoEvent(event, parser, plan);
+      constructGeometry(event, plan);
+    }
+    catch (MessagingException e)
+    {
+      LOGGER.error("GE_CREATION_ERROR", e, e.getMessage());
+    }
+    catch (FieldException e)
+    {
+      LOGGER.error("GE_GEOMETRY_CREATION_ERROR", e);
+    }
+    send(event, geoEventProducer);
+  }
+
+  // the parser is on the START_OBJECT of the group and is left on its END_OBJECT
+  private void populateGeoEvent(FieldGroup event, JsonParser parser, FieldBindingPlan plan) throws IOException
+  {
+    while (parser.nextToken() == JsonToken.FIELD_NAME)
+    {
+      String fieldName = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+      FieldBindingPlan.Slot slot = plan.get(fieldName);
+      if (slot == null)
+      {
+        parser.skipChildren();
+        continue;
+      }
+      try
+      {
+        if (!slot.isMany())
+        {
+          event.setField(slot.getIndex(), convert(event, slot, parser, token));
+        }
+        else if (token == JsonToken.START_ARRAY)
+        {
+          ArrayList<Object> results = new ArrayList<Object>();
+          while ((token = parser.nextToken()) != JsonToken.END_ARRAY)
+            results.add(convert(event, slot, parser, token));
+          event.setField(slot.getIndex(), results);
+        }
+        else
+        {
+          parser.skipChildren();
+        }
+      }
+      catch (FieldException ex)
+      {
+        LOGGER.error("FIELD_ERROR", fieldName, ex.getMessage());
+      }
+    }
+  }
+
+  // consumes the value at the current token, including its children
+  private Object convert(FieldGroup event, FieldBindingPlan.Slot slot, JsonParser parser, JsonToken token) throws IOException, FieldException
+  {
+    if (slot.getChildren() != null)
+    {
+      if (token != JsonToken.START_OBJECT)
+      {
+        parser.skipChildren();
+        return null;
+      }
+      FieldGroup group = event.createFieldGroup(slot.getDefinition().getName());
+      populateGeoEvent(group, parser, slot.getChildren());
       return group;
     }
-    else
+    switch (token)
     {
-      Object value = getJsonNodeValue(node);
-      if (value != null)
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+        try
+        {
+          switch (slot.getType())
+          {
+            case Double:
+              return parser.getDoubleValue();
+            case Float:
+              return parser.getFloatValue();
+            case Integer:
+              return parser.getIntValue();
+            case Long:
+              return parser.getLongValue();
+            case Short:
+              return parser.getShortValue();
+            case Date:
+              return (token == JsonToken.VALUE_NUMBER_INT) ? dateConverter.fromEpoch(parser.getLongValue()) : dateConverter.fromEpoch(parser.getDoubleValue());
+            default:
+              return convertValue(slot, parser.getNumberValue());
+          }
+        }
+        catch (JsonParseException e)
+        {
+          // out of range of the field type, e.g. 3000000000 for an Integer, converted as in tree mode
+          return convertValue(slot, parser.getNumberValue());
+        }
+      case VALUE_STRING:
+        return convertValue(slot, parser.getText());
+      case VALUE_TRUE:
+      case VALUE_FALSE:
+        return convertValue(slot, token == JsonToken.VALUE_TRUE);
+      case START_OBJECT:
+        // e.g. a geometry, converted from its JSON text as in tree mode
+        return convertValue(slot, parser.readValueAsTree().toString());
+      default:
+        parser.skipChildren();
+        return null;
+    }
+  }
+
+  /**
+   * Converts the records of a CSV reader into GeoEvents and sends them; returns the number of records read.
+   * The column names come from the header row, else from the field order of the existing GeoEvent
+   * Definition, else they are <code>field0</code>, <code>field1</code>, ... A record is only turned into a
+   * tree to resolve the definition: the first one, and any whose column count differs from the previous
+   * one or that follows a change or deletion of the definition. All others are converted straight into the
+   * slots of their columns.
+   */
+  public int sendRecords(CsvReader csv, boolean hasHeader, GeoEventProducer geoEventProducer) throws IOException
+  {
+    String[] columns = null;
+    if (hasHeader)
+    {
+      if (!csv.readRecord())
+        return 0;
+      columns = csv.toArray();
+    }
+
+    int count = 0;
+    GeoEventDefinition geoEventDefinition = null;
+    FieldBindingPlan plan = null;
+    FieldBindingPlan.Slot[] slots = null;
+    while (csv.readRecord())
+    {
+      count++;
+      int width = csv.size();
+      if (slots == null || slots.length != width || geoEventCreator.getGeoEventDefinitionManager().getGeoEventDefinition(geoEventDefinition.getGuid()) != geoEventDefinition)
       {
-        switch (fieldDef.getType())
+        if (!hasHeader && (columns == null || columns.length != width))
+          columns = positionalColumnNames(width);
+        GeoEvent event = makeGeoEvent(toRecord(columns, csv));
+        send(event, geoEventProducer);
+        geoEventDefinition = (event != null) ? event.getGeoEventDefinition() : null;
+        if (geoEventDefinition == null)
         {
-          case String:
-            return Converter.convertToString(value);
-          case Boolean:
-            return Converter.convertToBoolean(value);
-          case Date:
-            // LOGGER.info("JsonInboundParser:convert:Date " +
-            if (node.isTextual())
-            {
-              // LOGGER.info("JsonInboundParser:convert:Date is textual");
+          slots = null;
+          continue;
+        }
+        plan = getBindingPlan(geoEventDefinition);
+        slots = new FieldBindingPlan.Slot[width];
+        for (int i = 0; i < width && i < columns.length; i++)
+        {
+          FieldBindingPlan.Slot slot = plan.get(columns[i]);
+          // groups and multi-valued fields cannot be written as a single column
+          if (slot != null && !slot.isMany() && slot.getChildren() == null)
+            slots[i] = slot;
+        }
+        continue;
+      }
 
-              // flightaware sent date in epoch seconds, make it milliseconds by appending "000"
-              return (customDateFormat != null && !customDateFormat.trim().isEmpty()) ? DateUtil.convert(node.asText() + "000", customDateFormat) : DateUtil.convert(node.asText() + "000");
-            }
-            else if (node.isLong() || node.isInt())
-            {
-              // flightaware sent date in epoch seconds, convert it to milliseconds
-              Long ms = (Long) value * 1000; 
+      GeoEvent event = null;
+      try
+      {
+        event = geoEventCreator.create(geoEventDefinition.getGuid());
 
-              // LOGGER.info("JsonInboundParser:convert: " + value.toString() + " -> " + ms.toString());
-              return DateUtil.convert(ms.toString());
-            }
+        event.setProperty(GeoEventPropertyName.TYPE, "event");
+        event.setProperty(GeoEventPropertyName.OWNER_ID, id);
+        event.setProperty(GeoEventPropertyName.OWNER_URI, uri);
+
+        for (int i = 0; i < width; i++)
+        {
+          FieldBindingPlan.Slot slot = slots[i];
+          String value = csv.get(i);
+          // an empty field stays null, as it does in the record the definition was resolved from
+          if (slot == null || value.isEmpty())
+            continue;
+          try
+          {
+            event.setField(slot.getIndex(), convertValue(slot, value));
+          }
+          catch (FieldException ex)
+          {
+            LOGGER.error("FIELD_ERROR", columns[i], ex.getMessage());
+          }
+        }
+        constructGeometry(event, plan);
+      }
+      catch (MessagingException e)
+      {
+        LOGGER.error("GE_CREATION_ERROR", e, e.getMessage());
+      }
+      catch (FieldException e)
+      {
+        LOGGER.error("GE_GEOMETRY_CREATION_ERROR", e);
+      }
+      send(event, geoEventProducer);
+    }
+    return count;
+  }
+
+  /**
+   * Names the columns of a CSV file without a header after the fields of the existing definition, in order,
+   * or <code>field0</code>, <code>field1</code>, ... when a definition is being created. The definition is
+   * looked up by name once and kept until the manager changes or deletes it.
+   */
+  private String[] positionalColumnNames(int width)
+  {
+    List<FieldDefinition> fieldDefinitions = null;
+    if (!creatingGeoEventDefinition)
+    {
+      GeoEventDefinition geoEventDefinition = positionalDefinition;
+      if (geoEventDefinition == null || geoEventCreator.getGeoEventDefinitionManager().getGeoEventDefinition(geoEventDefinition.getGuid()) != geoEventDefinition || geoEventDefinition.getFieldDefinitions().size() < width)
+      {
+        geoEventDefinition = null;
+        int perfectSize = buildGeometryFromFields ? width + 1 : width;
+        Collection<GeoEventDefinition> searchResults = geoEventCreator.getGeoEventDefinitionManager().searchGeoEventDefinitionByName(geoEventDefinitionName);
+        for (GeoEventDefinition candidate : searchResults)
+        {
+          if (candidate.getFieldDefinitions().size() == perfectSize)
+          {
+            geoEventDefinition = candidate;
             break;
-          case Double:
-            return Converter.convertToDouble(value);
-          case Float:
-            return Converter.convertToFloat(value);
-          case Integer:
-            return Converter.convertToInteger(value);
-          case Long:
-            return Converter.convertToLong(value);
-          case Short:
-            return Converter.convertToShort(value);
-          case Geometry:
-            try
-            {
-              return GeometryUtil.fromJson(Converter.convertToString(value));
-            }
-            catch (Exception ex)
-            {
-              ;
-            }
+          }
         }
+        if (geoEventDefinition == null && !searchResults.isEmpty())
+          geoEventDefinition = searchResults.iterator().next();
+        positionalDefinition = geoEventDefinition;
       }
+      if (geoEventDefinition != null)
+        fieldDefinitions = geoEventDefinition.getFieldDefinitions();
     }
-    return null;
+
+    String[] columns = new String[width];
+    for (int i = 0; i < width; i++)
+      columns[i] = (fieldDefinitions != null && i < fieldDefinitions.size()) ? fieldDefinitions.get(i).getName() : "field" + i;
+    return columns;
   }
 
-  private GeoEventDefinition deriveGeoEventDefinition(JsonNode attributes) throws ConfigurationException
+  // numbers become number nodes and empty fields nulls, so that a definition derived from the record is typed
+  private static ObjectNode toRecord(String[] columns, CsvReader csv)
+  {
+    ObjectNode record = JsonNodeFactory.instance.objectNode();
+    for (int i = 0; i < csv.size(); i++)
+    {
+      String name = (columns != null && i < columns.length) ? columns[i] : "field" + i;
+      String value = csv.get(i);
+      if (value.isEmpty())
+      {
+        record.putNull(name);
+      }
+      else if (NumberUtils.isNumber(value))
+      {
+        try
+        {
+          if (value.indexOf('.') < 0 && value.indexOf('e') < 0 && value.indexOf('E') < 0)
+            record.put(name, Long.parseLong(value));
+          else
+            record.put(name, Double.parseDouble(value));
+        }
+        catch (NumberFormatException e)
+        {
+          // e.g. a hexadecimal or type suffixed literal
+          record.put(name, value);
+        }
+      }
+      else
+      {
+        record.put(name, value);
+      }
+    }
+    return record;
+  }
+
+  private GeoEventDefinition deriveGeoEventDefinition(JsonNode attributes, boolean withGeometry) throws ConfigurationException
   {
     GeoEventDefinition geoEventDefinition = new DefaultGeoEventDefinition();
     geoEventDefinition.setName(geoEventDefinitionName);
@@ -512,7 +856,7 @@ public class JsonInboundParser
     haveGeometry = false;
 
     List<FieldDefinition> fieldDefinitions = generateFieldDefinitions(attributes, null);
-    if (buildGeometryFromFields)
+    if (withGeometry)
       fieldDefinitions.add(new DefaultFieldDefinition("geometry", FieldType.Geometry, "GEOMETRY"));
 
     geoEventDefinition.setFieldDefinitions(fieldDefinitions);
@@ -556,7 +900,7 @@ public class JsonInboundParser
         FieldDefinition fieldDef = null;
         if (field.isObject())
         {
-          if (looksLikeGeometry(field.toString()))
+          if (looksLikeGeometry(field))
             fieldDef = makeGeometryFieldDef(fieldName, field);
           else
           {
@@ -583,7 +927,7 @@ public class JsonInboundParser
         else if (field.isTextual())
         {
           String textValue = field.asText();
-          if (looksLikeADate(textValue))
+          if (dateConverter.looksLikeADate(textValue))
           {
             if (haveDate)
             {
@@ -657,13 +1001,34 @@ public class JsonInboundParser
     return fieldDef;
   }
 
+  /**
+   * Only objects with the keys of an Esri JSON geometry are parsed to make sure.
+   */
+  private boolean looksLikeGeometry(JsonNode field)
+  {
+    boolean candidate = (field.has("x") && field.has("y")) || field.has("paths") || field.has("rings") || field.has("points") || (field.has("xmin") && field.has("ymin"));
+    return candidate && canParseAsGeometry(field.toString());
+  }
+
+  /**
+   * Only text holding a JSON object that mentions a geometry key is parsed to make sure.
+   */
   private boolean looksLikeGeometry(String field)
+  {
+    String text = field.trim();
+    if (!text.startsWith("{"))
+      return false;
+    boolean candidate = text.contains("\"x\"") || text.contains("\"paths\"") || text.contains("\"rings\"") || text.contains("\"points\"") || text.contains("\"xmin\"");
+    return candidate && canParseAsGeometry(text);
+  }
+
+  private boolean canParseAsGeometry(String field)
   {
     boolean canParseAsGeometry = false;
     try
     {
       MapGeometry geom = GeometryUtil.fromJson(field);
-      if (geom.getGeometry() != null)
+      if (geom != null && geom.getGeometry() != null)
         canParseAsGeometry = true;
     }
     catch (IOException e)
@@ -672,33 +1037,6 @@ public class JsonInboundParser
     return canParseAsGeometry;
   }
 
-  private boolean looksLikeADate(String value)
-  {
-    if (customDateFormat.isEmpty())
-    {
-      if (Pattern.matches("\\d\\d\\d\\d-\\d\\d-\\d\\dT\\d\\d:\\d\\d:\\d\\d.*", value))
-        return true;
-      if (Pattern.matches("\\d?\\d/\\d?\\d/\\d?\\d?\\d\\d \\d?\\d:\\d\\d:\\d\\d( [a,A,p,P][m,M])?", value))
-        return true;
-    }
-    else
-    {
-      SimpleDateFormat sdf = new SimpleDateFormat(customDateFormat);
-      try
-      {
-        Date datetest = sdf.parse(value);
-        if (datetest != null)
-          return true;
-        return false;
-      }
-      catch (ParseException e)
-      {
-        return false;
-      }
-    }
-    return false;
-  }
-
   public JsonInboundParser setCreatingGeoEventDefinition(boolean creatingGeoEventDefinition)
   {
     this.creatingGeoEventDefinition = creatingGeoEventDefinition;
@@ -720,36 +1058,42 @@ public class JsonInboundParser
   public JsonInboundParser setxGeometryField(String xGeometryField)
   {
     this.xGeometryField = xGeometryField;
+    updateGeometryBuilder();
     return this;
   }
 
   public JsonInboundParser setyGeometryField(String yGeometryField)
   {
     this.yGeometryField = yGeometryField;
+    updateGeometryBuilder();
     return this;
   }
 
   public JsonInboundParser setzGeometryField(String zGeometryField)
   {
     this.zGeometryField = zGeometryField;
+    updateGeometryBuilder();
     return this;
   }
 
   public JsonInboundParser setWkidGeometryField(String wkidGeometryField)
   {
     this.wkidGeometryField = wkidGeometryField;
+    updateGeometryBuilder();
     return this;
   }
 
   public JsonInboundParser setWkTextGeometryField(String wkTextGeometryField)
   {
     this.wkTextGeometryField = wkTextGeometryField;
+    updateGeometryBuilder();
     return this;
   }
 
   public JsonInboundParser setCustomDateFormat(String customDateFormat)
   {
     this.customDateFormat = customDateFormat;
+    this.dateConverter = createDateConverter(customDateFormat);
     return this;
   }
 
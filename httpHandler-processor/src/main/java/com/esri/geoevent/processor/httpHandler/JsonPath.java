@@ -0,0 +1,282 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * A compiled location of the records in a JSON document, written either as a path such as
+ * <code>$.data.flights[*]</code>, <code>$.result[0].items</code> or <code>$['odd name']</code>, or as a JSON
+ * Pointer such as <code>/data/flights</code>. Unlike a plain JSON object name, which is searched for at any
+ * depth, a path only descends into the named fields and elements; everything else is skipped while
+ * streaming.
+ */
+public class JsonPath
+{
+  /**
+   * Receives the value found at the path, with the parser positioned on its first token.
+   */
+  public interface Target
+  {
+    void found(JsonParser parser, JsonToken token) throws IOException;
+  }
+
+  private static class Step
+  {
+    private final String  name;
+    private final int     index;
+    private final boolean wildcard;
+
+    Step(String name, int index, boolean wildcard)
+    {
+      this.name = name;
+      this.index = index;
+      this.wildcard = wildcard;
+    }
+
+    boolean matchesField(String fieldName)
+    {
+      return wildcard || (name != null && name.equals(fieldName));
+    }
+
+    boolean matchesElement(int elementIndex)
+    {
+      return wildcard || index == elementIndex;
+    }
+  }
+
+  private final String     expression;
+  private final List<Step> steps;
+
+  private JsonPath(String expression, List<Step> steps)
+  {
+    this.expression = expression;
+    this.steps = steps;
+  }
+
+  /**
+   * True if the expression is a path or a pointer rather than a plain object name.
+   */
+  public static boolean isPath(String expression)
+  {
+    return expression != null && (expression.startsWith("$") || expression.startsWith("/"));
+  }
+
+  /**
+   * Compiles a path or pointer expression, see {@link #isPath(String)}.
+   *
+   * @throws IllegalArgumentException if the expression is malformed
+   */
+  public static JsonPath compile(String expression)
+  {
+    String trimmed = expression.trim();
+    List<Step> steps = trimmed.startsWith("/") ? parsePointer(trimmed) : parsePath(trimmed);
+    return new JsonPath(trimmed, steps);
+  }
+
+  /**
+   * Streams the document from the current token, skipping everything that is not on the path and handing
+   * each value found to the target.
+   */
+  public void select(JsonParser parser, JsonToken token, Target target) throws IOException
+  {
+    select(parser, token, 0, target);
+  }
+
+  /**
+   * Returns the values found at the path in an already parsed document.
+   */
+  public List<JsonNode> select(JsonNode root)
+  {
+    List<JsonNode> results = new ArrayList<JsonNode>();
+    select(root, 0, results);
+    return results;
+  }
+
+  @Override
+  public String toString()
+  {
+    return expression;
+  }
+
+  private void select(JsonParser parser, JsonToken token, int depth, Target target) throws IOException
+  {
+    if (depth == steps.size())
+    {
+      target.found(parser, token);
+      return;
+    }
+    Step step = steps.get(depth);
+    if (token == JsonToken.START_OBJECT)
+    {
+      while (parser.nextToken() == JsonToken.FIELD_NAME)
+      {
+        boolean matches = step.matchesField(parser.getCurrentName());
+        token = parser.nextToken();
+        if (matches)
+          select(parser, token, depth + 1, target);
+        else
+          parser.skipChildren();
+      }
+    }
+    else if (token == JsonToken.START_ARRAY)
+    {
+      int elementIndex = 0;
+      while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null)
+      {
+        if (step.matchesElement(elementIndex++))
+          select(parser, token, depth + 1, target);
+        else
+          parser.skipChildren();
+      }
+    }
+  }
+
+  private void select(JsonNode node, int depth, List<JsonNode> results)
+  {
+    if (node == null)
+      return;
+    if (depth == steps.size())
+    {
+      results.add(node);
+      return;
+    }
+    Step step = steps.get(depth);
+    if (node.isObject())
+    {
+      if (step.wildcard)
+      {
+        for (Iterator<JsonNode> elements = node.getElements(); elements.hasNext();)
+          select(elements.next(), depth + 1, results);
+      }
+      else if (step.name != null)
+        select(node.get(step.name), depth + 1, results);
+    }
+    else if (node.isArray())
+    {
+      if (step.wildcard)
+      {
+        for (Iterator<JsonNode> elements = node.getElements(); elements.hasNext();)
+          select(elements.next(), depth + 1, results);
+      }
+      else if (step.index >= 0)
+        select(node.get(step.index), depth + 1, results);
+    }
+  }
+
+  // $.a.b[*], $.a[0], $['a b'], $.*
+  private static List<Step> parsePath(String expression)
+  {
+    List<Step> steps = new ArrayList<Step>();
+    int i = 1;
+    int length = expression.length();
+    while (i < length)
+    {
+      char c = expression.charAt(i);
+      if (c == '.')
+      {
+        int end = i + 1;
+        while (end < length && expression.charAt(end) != '.' && expression.charAt(end) != '[')
+          end++;
+        String name = expression.substring(i + 1, end);
+        if (name.isEmpty())
+          throw new IllegalArgumentException("Empty field name at " + i + " in " + expression);
+        steps.add("*".equals(name) ? new Step(null, -1, true) : new Step(name, -1, false));
+        i = end;
+      }
+      else if (c == '[')
+      {
+        // a quoted name may hold ']', so it ends at its closing quote
+        int start = i + 1;
+        while (start < length && expression.charAt(start) == ' ')
+          start++;
+        char quote = (start < length) ? expression.charAt(start) : 0;
+        int closingQuote = (quote == '\'' || quote == '"') ? expression.indexOf(quote, start + 1) : -1;
+        int end = expression.indexOf(']', (closingQuote >= 0) ? closingQuote : i);
+        if (end < 0)
+          throw new IllegalArgumentException("Unclosed [ at " + i + " in " + expression);
+        String selector = expression.substring(i + 1, end).trim();
+        if ("*".equals(selector))
+          steps.add(new Step(null, -1, true));
+        else if (selector.length() >= 2 && (selector.startsWith("'") && selector.endsWith("'") || selector.startsWith("\"") && selector.endsWith("\"")))
+          steps.add(new Step(selector.substring(1, selector.length() - 1), -1, false));
+        else
+        {
+          int index;
+          try
+          {
+            index = Integer.parseInt(selector);
+          }
+          catch (NumberFormatException e)
+          {
+            throw new IllegalArgumentException("Invalid selector [" + selector + "] in " + expression);
+          }
+          if (index < 0)
+            throw new IllegalArgumentException("Invalid selector [" + selector + "] in " + expression);
+          steps.add(new Step(null, index, false));
+        }
+        i = end + 1;
+      }
+      else
+        throw new IllegalArgumentException("Unexpected '" + c + "' at " + i + " in " + expression);
+    }
+    return steps;
+  }
+
+  // RFC 6901: /a/b/0, with ~1 for '/' and ~0 for '~'; a number is an array index or a field name
+  private static List<Step> parsePointer(String expression)
+  {
+    List<Step> steps = new ArrayList<Step>();
+    if (expression.length() <= 1)
+      return steps;
+    for (String token : expression.substring(1).split("/", -1))
+    {
+      String name = token.replace("~1", "/").replace("~0", "~");
+      int index = -1;
+      if (!name.isEmpty() && name.length() < 10 && isDigits(name))
+        index = Integer.parseInt(name);
+      steps.add(new Step(name, index, false));
+    }
+    return steps;
+  }
+
+  private static boolean isDigits(String value)
+  {
+    for (int i = 0; i < value.length(); i++)
+    {
+      if (!Character.isDigit(value.charAt(i)))
+        return false;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,253 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.framework.i18n.BundleLogger;
+import com.esri.ges.framework.i18n.BundleLoggerFactory;
+import com.esri.ges.messaging.GeoEventProducer;
+import com.esri.ges.messaging.MessagingException;
+
+/**
+ * Stages created GeoEvents in a bounded queue and hands them to the GeoEventProducer from a single thread in
+ * batches of up to <code>maxBatchSize</code>, sending a smaller batch once its first event has waited
+ * <code>lingerMillis</code>. A full queue blocks the converting threads until the producer catches up. Batch
+ * sizes, send latency and failures are counted; failures are logged once per batch.
+ */
+public class OutboundStager
+{
+  private static final BundleLogger     LOGGER            = BundleLoggerFactory.getLogger(OutboundStager.class);
+
+  private static final long             IDLE_POLL_MILLIS  = 1000;
+  private static final long             STAGE_WAIT_MILLIS = 100;
+
+  private final String                  name;
+  private final GeoEventProducer        producer;
+  private final int                     capacity;
+  private final int                     maxBatchSize;
+  private final long                    lingerMillis;
+  private final BlockingQueue<GeoEvent> queue;
+  private final Thread                  flusher;
+  private volatile boolean              running           = true;
+
+  private final AtomicLong              staged            = new AtomicLong();
+  private final AtomicLong              sent              = new AtomicLong();
+  private final AtomicLong              failed            = new AtomicLong();
+  private final AtomicLong              batches           = new AtomicLong();
+  private final AtomicLong              largestBatch      = new AtomicLong();
+  private final AtomicLong              backpressureWaits = new AtomicLong();
+  private final AtomicLong              sendNanos         = new AtomicLong();
+  private final AtomicLong              maxSendNanos      = new AtomicLong();
+
+  public OutboundStager(String name, GeoEventProducer producer, int capacity, int maxBatchSize, long lingerMillis)
+  {
+    this.name = name;
+    this.producer = producer;
+    this.capacity = Math.max(1, capacity);
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    this.lingerMillis = Math.max(0, lingerMillis);
+    this.queue = new ArrayBlockingQueue<GeoEvent>(this.capacity);
+    flusher = new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          flushLoop();
+        }
+      }, name + "-outbound");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  public boolean hasSameConfiguration(GeoEventProducer producer, int capacity, int maxBatchSize, long lingerMillis)
+  {
+    return this.producer == producer && this.capacity == Math.max(1, capacity) && this.maxBatchSize == Math.max(1, maxBatchSize) && this.lingerMillis == Math.max(0, lingerMillis);
+  }
+
+  /**
+   * Queues the event for sending, waiting while the queue is full. Returns false if the event was not
+   * queued because the stager is or has been shut down while waiting, or the thread was interrupted; it is
+   * counted as failed.
+   */
+  public boolean stage(GeoEvent event)
+  {
+    try
+    {
+      boolean waited = false;
+      while (running)
+      {
+        if (queue.offer(event, waited ? STAGE_WAIT_MILLIS : 0, TimeUnit.MILLISECONDS))
+        {
+          // shutdown may have drained the queue already, then the event is taken back rather than left behind
+          if (!running && queue.remove(event))
+            break;
+          staged.incrementAndGet();
+          return true;
+        }
+        if (!waited)
+        {
+          backpressureWaits.incrementAndGet();
+          waited = true;
+        }
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    failed.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * Stops accepting events and sends what is still queued.
+   */
+  public void shutdown()
+  {
+    running = false;
+    flusher.interrupt();
+    try
+    {
+      flusher.join(TimeUnit.SECONDS.toMillis(5));
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    // the flusher may have been stopped mid wait, whatever it left is sent here
+    List<GeoEvent> remaining = new ArrayList<GeoEvent>();
+    queue.drainTo(remaining);
+    if (!remaining.isEmpty())
+      send(remaining);
+  }
+
+  public long getSentCount()
+  {
+    return sent.get();
+  }
+
+  public long getFailedCount()
+  {
+    return failed.get();
+  }
+
+  public long getBackpressureWaits()
+  {
+    return backpressureWaits.get();
+  }
+
+  @Override
+  public String toString()
+  {
+    long batchCount = batches.get();
+    long sentCount = sent.get();
+    return "outboundStager[staged=" + staged.get() + ", sent=" + sentCount + ", failed=" + failed.get() + ", queued=" + queue.size() + ", batches=" + batchCount + ", averageBatch=" + ((batchCount > 0) ? (sentCount + failed.get()) / batchCount : 0) + ", largestBatch=" + largestBatch.get() + ", backpressureWaits=" + backpressureWaits.get() + ", averageSendMicros=" + ((sentCount > 0) ? sendNanos.get() / sentCount / 1000 : 0) + ", maxSendMicros=" + maxSendNanos.get() / 1000 + "]";
+  }
+
+  private void flushLoop()
+  {
+    List<GeoEvent> batch = new ArrayList<GeoEvent>(maxBatchSize);
+    while (running)
+    {
+      try
+      {
+        GeoEvent first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null)
+          continue;
+        batch.add(first);
+        queue.drainTo(batch, maxBatchSize - 1);
+        // a short batch lingers for more events, measured from its first event
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        while (batch.size() < maxBatchSize)
+        {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0)
+            break;
+          GeoEvent next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+          if (next == null)
+            break;
+          batch.add(next);
+          queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+      }
+      catch (InterruptedException e)
+      {
+        // shutting down, the batch collected so far is still sent
+      }
+      if (!batch.isEmpty())
+      {
+        send(batch);
+        batch.clear();
+      }
+    }
+  }
+
+  private void send(List<GeoEvent> batch)
+  {
+    batches.incrementAndGet();
+    updateMax(largestBatch, batch.size());
+    int batchFailures = 0;
+    Exception firstError = null;
+    for (GeoEvent event : batch)
+    {
+      long start = System.nanoTime();
+      try
+      {
+        producer.send(event);
+        long elapsed = System.nanoTime() - start;
+        sendNanos.addAndGet(elapsed);
+        updateMax(maxSendNanos, elapsed);
+        sent.incrementAndGet();
+      }
+      catch (MessagingException | RuntimeException e)
+      {
+        // a failing event must neither stop the flusher nor lose the rest of the batch
+        batchFailures++;
+        if (firstError == null)
+          firstError = e;
+      }
+    }
+    if (batchFailures > 0)
+    {
+      failed.addAndGet(batchFailures);
+      LOGGER.error("BATCH_SEND_FAILED", name, batchFailures, batch.size(), (firstError.getMessage() != null) ? firstError.getMessage() : firstError.toString());
+    }
+  }
+
+  private static void updateMax(AtomicLong max, long value)
+  {
+    long current;
+    while (value > (current = max.get()) && !max.compareAndSet(current, value))
+      ;
+  }
+}
@@ -0,0 +1,592 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import com.esri.ges.framework.i18n.BundleLogger;
+import com.esri.ges.framework.i18n.BundleLoggerFactory;
+
+/**
+ * Runs a query whose results are split over several responses, handing every page to the parser as soon as
+ * it arrives. Three styles of paging are supported:
+ * <ul>
+ * <li>OFFSET: <code>resultOffset</code>/<code>resultRecordCount</code> style parameters, as used by ArcGIS
+ * feature services. When a count query answers the total number of records the pages are fetched
+ * concurrently, otherwise one after the other until a page comes back empty.</li>
+ * <li>NEXT_LINK: the URL of the next page is taken from the <code>Link</code> header or from a field of the
+ * page.</li>
+ * <li>CURSOR: a token taken from a field of the page is sent as a parameter of the next request.</li>
+ * </ul>
+ * The offset of the next page advances by the number of records actually received, so a server that caps
+ * a page below the requested size does not lose records.
+ * <p>
+ * Queries submitted with {@link #submit(String, PageSource, Completion)} run on threads of their own, at
+ * most <code>maxConcurrentQueries</code> at once, so a long query never holds a thread of the request
+ * dispatcher. Queries beyond those waiting in the queue are dropped and counted.
+ */
+public class PagedQuery
+{
+  private static final BundleLogger  LOGGER           = BundleLoggerFactory.getLogger(PagedQuery.class);
+
+  public static final String         MODE_NONE        = "NONE";
+  public static final String         MODE_OFFSET      = "OFFSET";
+  public static final String         MODE_NEXT_LINK   = "NEXT_LINK";
+  public static final String         MODE_CURSOR      = "CURSOR";
+
+  private static final ObjectMapper  mapper           = new ObjectMapper();
+  private static final Pattern       LINK_PATTERN     = Pattern.compile("<([^>]*)>([^<]*)");
+  private static final Pattern       REL_NEXT_PATTERN = Pattern.compile("rel\\s*=\\s*\"?[^\",;]*\\bnext\\b", Pattern.CASE_INSENSITIVE);
+  // queries waiting for a free thread, beyond this new ones are dropped
+  private static final int           MAX_QUEUED       = 100;
+  private static final int           LOG_EVERY        = 1000;
+
+  /**
+   * Sends the requests of the pages on behalf of the query.
+   */
+  public interface PageSource
+  {
+    /**
+     * Requests the URL with the extra query parameters (possibly empty) and hands a successful response to
+     * the reader. Returns false if the request failed.
+     */
+    boolean fetch(String url, String parameters, PageReader reader);
+
+    /**
+     * Parses a page and sends its records, returning their number.
+     */
+    int receive(InputStream in, String charsetName);
+  }
+
+  /**
+   * Told the outcome of a submitted query once all its pages have been fetched.
+   */
+  public interface Completion
+  {
+    void completed(boolean succeeded);
+  }
+
+  /**
+   * Reads the body of a page; the link header is null when the response has none.
+   */
+  public interface PageReader
+  {
+    void read(InputStream in, String charsetName, String linkHeader) throws IOException;
+  }
+
+  // what a page told the query: its number of records and where the next page is
+  private static class Page
+  {
+    private int    records;
+    private String next;
+  }
+
+  private final String               name;
+  private final String               mode;
+  private final int                  pageSize;
+  private final int                  parallelism;
+  private final int                  maxPages;
+  private final int                  maxConcurrentQueries;
+  private final String               offsetParameter;
+  private final String               sizeParameter;
+  private final String               countQuery;
+  private final String               countField;
+  private final String               nextLinkField;
+  private final String               cursorField;
+  private final String               cursorParameter;
+  private final ExecutorService      executor;
+  private final ThreadPoolExecutor   queryExecutor;
+
+  private final AtomicLong           queryCount       = new AtomicLong();
+  private final AtomicLong           pageCount        = new AtomicLong();
+  private final AtomicLong           recordCount      = new AtomicLong();
+  private final AtomicLong           droppedCount     = new AtomicLong();
+
+  public PagedQuery(String name, String mode, int pageSize, int parallelism, int maxPages, int maxConcurrentQueries, String offsetParameter, String sizeParameter, String countQuery, String countField, String nextLinkField, String cursorField, String cursorParameter)
+  {
+    this.name = name;
+    this.mode = mode.toUpperCase();
+    this.pageSize = Math.max(1, pageSize);
+    this.parallelism = Math.max(1, parallelism);
+    this.maxPages = Math.max(1, maxPages);
+    this.maxConcurrentQueries = Math.max(1, maxConcurrentQueries);
+    this.offsetParameter = trimToNull(offsetParameter);
+    this.sizeParameter = trimToNull(sizeParameter);
+    this.countQuery = trimToNull(countQuery);
+    this.countField = (trimToNull(countField) != null) ? countField.trim() : "count";
+    this.nextLinkField = trimToNull(nextLinkField);
+    this.cursorField = trimToNull(cursorField);
+    this.cursorParameter = trimToNull(cursorParameter);
+
+    // the thread running the query fetches a share of the pages itself, the others run here
+    if (MODE_OFFSET.equals(this.mode) && this.countQuery != null && this.parallelism > 1)
+    {
+      ThreadPoolExecutor pool = new ThreadPoolExecutor(this.parallelism - 1, this.parallelism - 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory(name + "-page"));
+      pool.allowCoreThreadTimeOut(true);
+      executor = pool;
+    }
+    else
+    {
+      executor = null;
+    }
+    queryExecutor = new ThreadPoolExecutor(this.maxConcurrentQueries, this.maxConcurrentQueries, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_QUEUED), new NamedThreadFactory(name + "-query"));
+    queryExecutor.allowCoreThreadTimeOut(true);
+  }
+
+  public int getMaxPages()
+  {
+    return maxPages;
+  }
+
+  public long getDroppedCount()
+  {
+    return droppedCount.get();
+  }
+
+  /**
+   * Stops taking queries; the queries already submitted still run, and the page threads time out once they
+   * are done.
+   */
+  public void shutdown()
+  {
+    queryExecutor.shutdown();
+  }
+
+  /**
+   * Runs the query on a thread of its own and tells the completion, if any, its outcome. Returns false if
+   * the query was dropped because too many are waiting or the query has been shut down.
+   */
+  public boolean submit(final String url, final PageSource source, final Completion completion)
+  {
+    try
+    {
+      queryExecutor.execute(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            boolean succeeded = false;
+            try
+            {
+              succeeded = PagedQuery.this.run(url, source);
+            }
+            catch (RuntimeException e)
+            {
+              LOGGER.error("PAGE_FETCH_ERROR", name, e.getMessage());
+            }
+            finally
+            {
+              if (completion != null)
+                completion.completed(succeeded);
+            }
+          }
+        });
+      return true;
+    }
+    catch (RejectedExecutionException e)
+    {
+      long count = droppedCount.incrementAndGet();
+      if (queryExecutor.isShutdown())
+        LOGGER.debug("Paged query dropped, " + name + " is shut down.");
+      else if (count == 1 || count % LOG_EVERY == 0)
+        LOGGER.warn("PAGED_QUERY_DROPPED", name, maxConcurrentQueries, count);
+      return false;
+    }
+  }
+
+  /**
+   * Fetches all pages of the query at the URL. Returns true if every page was received; the records of the
+   * pages received before a failure have already been sent.
+   */
+  public boolean run(String url, PageSource source)
+  {
+    queryCount.incrementAndGet();
+    switch (mode)
+    {
+      case MODE_OFFSET:
+        return runOffset(url, source);
+      case MODE_NEXT_LINK:
+      case MODE_CURSOR:
+        return runLinked(url, source);
+      default:
+        return source.fetch(url, "", streamingReader(source, new Page()));
+    }
+  }
+
+  private boolean runOffset(String url, PageSource source)
+  {
+    long total = (countQuery != null) ? fetchCount(url, source) : -1;
+    if (total < 0)
+    {
+      // without a total the end is only known when a page comes back empty
+      return fetchRange(url, source, 0, Long.MAX_VALUE, new AtomicLong(Long.MAX_VALUE));
+    }
+    if (total == 0)
+      return true;
+
+    long pages = (total + pageSize - 1) / pageSize;
+    if (pages > maxPages)
+    {
+      LOGGER.warn("PAGE_LIMIT_REACHED", name, maxPages, total);
+      pages = maxPages;
+    }
+    // lowered to the offset of an empty page, the data ended earlier than counted
+    final AtomicLong dataEnd = new AtomicLong(Long.MAX_VALUE);
+    List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+    boolean succeeded = true;
+    try
+    {
+      // each range is one page long, its own loop catches up if the server returns fewer records
+      for (long page = 1; page < pages && executor != null; page++)
+      {
+        final String pageUrl = url;
+        final PageSource pageSource = source;
+        final long start = page * pageSize;
+        final long end = (page == pages - 1) ? Math.min(total, pages * pageSize) : start + pageSize;
+        futures.add(executor.submit(new Callable<Boolean>()
+          {
+            @Override
+            public Boolean call()
+            {
+              return fetchRange(pageUrl, pageSource, start, end, dataEnd);
+            }
+          }));
+      }
+      long firstEnd = (executor != null) ? Math.min(total, pageSize) : Math.min(total, pages * pageSize);
+      succeeded = fetchRange(url, source, 0, firstEnd, dataEnd);
+    }
+    finally
+    {
+      for (Future<Boolean> future : futures)
+      {
+        try
+        {
+          succeeded &= future.get();
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+          future.cancel(true);
+          succeeded = false;
+        }
+        catch (ExecutionException e)
+        {
+          LOGGER.error("PAGE_FETCH_ERROR", name, e.getCause().getMessage());
+          succeeded = false;
+        }
+      }
+    }
+    return succeeded;
+  }
+
+  /**
+   * Fetches the records from <code>start</code> up to <code>end</code> one page after the other, stopping
+   * at an empty page, after the maximum number of pages or where another range has found the data to end.
+   */
+  private boolean fetchRange(String url, PageSource source, long start, long end, AtomicLong dataEnd)
+  {
+    long offset = start;
+    for (int i = 0; i < maxPages; i++)
+    {
+      if (offset >= end || offset >= dataEnd.get())
+        return true;
+      Page page = new Page();
+      long size = Math.min(pageSize, end - offset);
+      if (!source.fetch(url, offsetParameters(offset, size), streamingReader(source, page)))
+        return false;
+      if (page.records <= 0)
+      {
+        long current = dataEnd.get();
+        while (offset < current && !dataEnd.compareAndSet(current, offset))
+          current = dataEnd.get();
+        return true;
+      }
+      offset += page.records;
+    }
+    if (offset < Math.min(end, dataEnd.get()))
+      LOGGER.warn("PAGE_LIMIT_REACHED", name, maxPages, offset);
+    return true;
+  }
+
+  private boolean runLinked(String url, PageSource source)
+  {
+    boolean cursor = MODE_CURSOR.equals(mode);
+    String field = cursor ? cursorField : nextLinkField;
+    String pageUrl = url;
+    String parameters = "";
+    String previous = null;
+    for (int i = 0; i < maxPages; i++)
+    {
+      Page page = new Page();
+      // the next link or cursor is read from the page before its records are, so the page is buffered
+      PageReader reader = (field != null) ? bufferingReader(source, page, field) : streamingReader(source, page);
+      if (!source.fetch(pageUrl, parameters, reader))
+        return false;
+      if (page.records <= 0 || page.next == null)
+        return true;
+      if (cursor)
+      {
+        if (page.next.equals(previous))
+          return true;
+        previous = page.next;
+        parameters = parameter(cursorParameter, page.next);
+      }
+      else
+      {
+        // a relative link is compared once resolved, a last page may link to itself either way
+        String next = resolve(pageUrl, page.next);
+        if (next.equals(pageUrl))
+          return true;
+        pageUrl = next;
+      }
+    }
+    LOGGER.warn("PAGE_LINK_LIMIT_REACHED", name, maxPages);
+    return true;
+  }
+
+  private long fetchCount(String url, PageSource source)
+  {
+    final long[] total = { -1 };
+    boolean succeeded = source.fetch(url, countQuery, new PageReader()
+      {
+        @Override
+        public void read(InputStream in, String charsetName, String linkHeader) throws IOException
+        {
+          JsonNode count = find(mapper.readTree(in), countField);
+          if (count != null && (count.isNumber() || count.isTextual()))
+          {
+            try
+            {
+              total[0] = Long.parseLong(count.asText().trim());
+            }
+            catch (NumberFormatException e)
+            {
+              ;
+            }
+          }
+        }
+      });
+    if (!succeeded || total[0] < 0)
+      LOGGER.warn("PAGE_COUNT_UNKNOWN", name);
+    return total[0];
+  }
+
+  private PageReader streamingReader(final PageSource source, final Page page)
+  {
+    return new PageReader()
+      {
+        @Override
+        public void read(InputStream in, String charsetName, String linkHeader)
+        {
+          page.records = source.receive(in, charsetName);
+          page.next = nextLink(linkHeader);
+          pageCount.incrementAndGet();
+          recordCount.addAndGet(page.records);
+        }
+      };
+  }
+
+  private PageReader bufferingReader(final PageSource source, final Page page, final String field)
+  {
+    return new PageReader()
+      {
+        @Override
+        public void read(InputStream in, String charsetName, String linkHeader) throws IOException
+        {
+          ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+          byte[] chunk = new byte[8192];
+          int length;
+          while ((length = in.read(chunk)) != -1)
+            buffer.write(chunk, 0, length);
+          byte[] body = buffer.toByteArray();
+
+          page.next = nextToken(body, field);
+          if (page.next == null)
+            page.next = nextLink(linkHeader);
+          page.records = source.receive(new ByteArrayInputStream(body), charsetName);
+          pageCount.incrementAndGet();
+          recordCount.addAndGet(page.records);
+        }
+      };
+  }
+
+  /**
+   * Returns the value of the field in the JSON page, or null if the page has none. A link array, as in OGC
+   * API responses, yields the <code>href</code> of its <code>next</code> link.
+   */
+  private static String nextToken(byte[] body, String field)
+  {
+    JsonNode value;
+    try
+    {
+      value = find(mapper.readTree(new ByteArrayInputStream(body)), field);
+    }
+    catch (IOException e)
+    {
+      return null;
+    }
+    if (value != null && value.isArray())
+    {
+      JsonNode next = null;
+      for (JsonNode link : value)
+      {
+        if (link.isObject() && "next".equalsIgnoreCase(link.path("rel").asText()))
+          next = link.get("href");
+      }
+      value = next;
+    }
+    if (value == null || value.isNull() || value.isContainerNode())
+      return null;
+    String token = value.asText().trim();
+    // an empty cursor, or 0 as some APIs send it, marks the last page
+    return (token.isEmpty() || token.equals("0")) ? null : token;
+  }
+
+  private static JsonNode find(JsonNode root, String field)
+  {
+    if (root == null)
+      return null;
+    if (JsonPath.isPath(field))
+    {
+      try
+      {
+        List<JsonNode> values = JsonPath.compile(field).select(root);
+        return values.isEmpty() ? null : values.get(0);
+      }
+      catch (IllegalArgumentException e)
+      {
+        return null;
+      }
+    }
+    return root.findValue(field);
+  }
+
+  /**
+   * Returns the URL of the <code>rel="next"</code> link of a Link header, or null.
+   */
+  static String nextLink(String linkHeader)
+  {
+    if (linkHeader == null)
+      return null;
+    Matcher matcher = LINK_PATTERN.matcher(linkHeader);
+    while (matcher.find())
+    {
+      if (REL_NEXT_PATTERN.matcher(matcher.group(2)).find())
+        return matcher.group(1).trim();
+    }
+    return null;
+  }
+
+  private static String resolve(String base, String link)
+  {
+    try
+    {
+      return URI.create(base).resolve(link).toString();
+    }
+    catch (IllegalArgumentException e)
+    {
+      return link;
+    }
+  }
+
+  private String offsetParameters(long offset, long size)
+  {
+    String parameters = parameter(offsetParameter, Long.toString(offset));
+    String sizeParameters = parameter(sizeParameter, Long.toString(size));
+    if (parameters.isEmpty())
+      return sizeParameters;
+    return sizeParameters.isEmpty() ? parameters : parameters + "&" + sizeParameters;
+  }
+
+  private static String parameter(String name, String value)
+  {
+    if (name == null)
+      return "";
+    try
+    {
+      return name + "=" + URLEncoder.encode(value, "UTF-8");
+    }
+    catch (UnsupportedEncodingException e)
+    {
+      return name + "=" + value;
+    }
+  }
+
+  private static String trimToNull(String value)
+  {
+    return (value == null || value.trim().isEmpty()) ? null : value.trim();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "pagedQuery[mode=" + mode + ", queries=" + queryCount.get() + ", running=" + queryExecutor.getActiveCount() + "/" + maxConcurrentQueries + ", queued=" + queryExecutor.getQueue().size() + ", dropped=" + droppedCount.get() + ", pages=" + pageCount.get() + ", records=" + recordCount.get() + "]";
+  }
+
+  private static class NamedThreadFactory implements ThreadFactory
+  {
+    private final String        prefix;
+    private final AtomicInteger count = new AtomicInteger();
+
+    NamedThreadFactory(String prefix)
+    {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable r)
+    {
+      Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,312 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.codehaus.jackson.JsonNode;
+
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.framework.i18n.BundleLogger;
+import com.esri.ges.framework.i18n.BundleLoggerFactory;
+
+/**
+ * Converts the records of a large response on a shared pool. The records are handed over in chunks of
+ * <code>chunkSize</code> while the response is still being parsed, and at most <code>maxChunksInFlight</code>
+ * chunks of a response are pending, so the parsing thread waits rather than buffer the whole response.
+ * <p>
+ * The ordering decides what reaches the GeoEventProducer in response order: <code>NONE</code> sends from the
+ * pool as chunks complete, <code>TRACK_ID</code> keeps the order of the records of each track by converting
+ * and sending every track on one serial lane, and <code>GLOBAL</code> converts on the pool but sends on the
+ * parsing thread, chunk by chunk in response order.
+ */
+public class ParallelConverter
+{
+  private static final BundleLogger LOGGER            = BundleLoggerFactory.getLogger(ParallelConverter.class);
+
+  public static final String        ORDERING_NONE     = "NONE";
+  public static final String        ORDERING_TRACK_ID = "TRACK_ID";
+  public static final String        ORDERING_GLOBAL   = "GLOBAL";
+
+  /**
+   * Turns a record into a GeoEvent (null if it cannot be converted) and sends GeoEvents.
+   */
+  public interface Conversion
+  {
+    GeoEvent convert(JsonNode record);
+
+    void send(GeoEvent event);
+  }
+
+  private final ExecutorService     pool;
+  private final int                 chunkSize;
+  private final int                 maxChunksInFlight;
+  private final int                 laneCount;
+  private final String              ordering;
+  private final String              trackIdField;
+  private final Conversion          conversion;
+
+  public ParallelConverter(ExecutorService pool, int parallelism, int chunkSize, String ordering, String trackIdField, Conversion conversion)
+  {
+    this.pool = pool;
+    this.chunkSize = Math.max(1, chunkSize);
+    this.laneCount = Math.max(1, parallelism);
+    this.maxChunksInFlight = 2 * laneCount;
+    this.ordering = effectiveOrdering(ordering, trackIdField);
+    this.trackIdField = trackIdField;
+    this.conversion = conversion;
+  }
+
+  public boolean hasSameConfiguration(int chunkSize, String ordering, String trackIdField)
+  {
+    return this.chunkSize == Math.max(1, chunkSize) && this.ordering.equals(effectiveOrdering(ordering, trackIdField)) && (this.trackIdField == null ? trackIdField == null : this.trackIdField.equals(trackIdField));
+  }
+
+  // without a track id field there are no tracks to keep in order
+  private static String effectiveOrdering(String ordering, String trackIdField)
+  {
+    if (ORDERING_TRACK_ID.equalsIgnoreCase(ordering))
+      return (trackIdField != null) ? ORDERING_TRACK_ID : ORDERING_NONE;
+    return ORDERING_GLOBAL.equalsIgnoreCase(ordering) ? ORDERING_GLOBAL : ORDERING_NONE;
+  }
+
+  /**
+   * Starts converting a response. A session is used by the parsing thread only.
+   */
+  public Session open()
+  {
+    return new Session();
+  }
+
+  public class Session
+  {
+    private final Deque<Future<GeoEvent[]>> pending = new ArrayDeque<Future<GeoEvent[]>>();
+    private final Lane[]                    lanes;
+    private final List<List<JsonNode>>      laneChunks;
+    private List<JsonNode>                  chunk   = new ArrayList<JsonNode>();
+    private int                             buffered;
+
+    Session()
+    {
+      if (ORDERING_TRACK_ID.equals(ordering))
+      {
+        lanes = new Lane[laneCount];
+        laneChunks = new ArrayList<List<JsonNode>>(laneCount);
+        for (int i = 0; i < laneCount; i++)
+        {
+          lanes[i] = new Lane(pool);
+          laneChunks.add(new ArrayList<JsonNode>());
+        }
+      }
+      else
+      {
+        lanes = null;
+        laneChunks = null;
+      }
+    }
+
+    public void add(JsonNode record) throws InterruptedException
+    {
+      if (lanes != null)
+      {
+        laneChunks.get(laneOf(record)).add(record);
+        if (++buffered >= chunkSize)
+          submitLanes();
+        return;
+      }
+      chunk.add(record);
+      if (chunk.size() >= chunkSize)
+      {
+        submit(chunk, null);
+        chunk = new ArrayList<JsonNode>();
+      }
+    }
+
+    /**
+     * Submits the last chunk and waits until every record of the response has been sent.
+     */
+    public void finish() throws InterruptedException
+    {
+      if (lanes != null)
+        submitLanes();
+      else if (!chunk.isEmpty())
+        submit(chunk, null);
+      chunk = new ArrayList<JsonNode>();
+      while (!pending.isEmpty())
+        complete(pending.removeFirst());
+    }
+
+    private void submitLanes() throws InterruptedException
+    {
+      for (int i = 0; i < lanes.length; i++)
+      {
+        List<JsonNode> laneChunk = laneChunks.get(i);
+        if (!laneChunk.isEmpty())
+        {
+          submit(laneChunk, lanes[i]);
+          laneChunks.set(i, new ArrayList<JsonNode>());
+        }
+      }
+      buffered = 0;
+    }
+
+    private void submit(final List<JsonNode> records, Lane lane) throws InterruptedException
+    {
+      final boolean sendOnPool = !ORDERING_GLOBAL.equals(ordering);
+      FutureTask<GeoEvent[]> task = new FutureTask<GeoEvent[]>(new Callable<GeoEvent[]>()
+        {
+          @Override
+          public GeoEvent[] call()
+          {
+            GeoEvent[] events = new GeoEvent[records.size()];
+            for (int i = 0; i < events.length; i++)
+            {
+              events[i] = conversion.convert(records.get(i));
+              if (sendOnPool && events[i] != null)
+              {
+                conversion.send(events[i]);
+                events[i] = null;
+              }
+            }
+            return events;
+          }
+        });
+      try
+      {
+        if (lane != null)
+          lane.execute(task);
+        else
+          pool.execute(task);
+      }
+      catch (RejectedExecutionException e)
+      {
+        // the pool is shut down, convert on the parsing thread
+        task.run();
+      }
+      pending.addLast(task);
+      while (pending.size() > maxChunksInFlight)
+        complete(pending.removeFirst());
+    }
+
+    private void complete(Future<GeoEvent[]> task) throws InterruptedException
+    {
+      try
+      {
+        for (GeoEvent event : task.get())
+        {
+          if (event != null)
+            conversion.send(event);
+        }
+      }
+      catch (ExecutionException e)
+      {
+        LOGGER.error("CONVERSION_ERROR", e.getCause().getMessage());
+        LOGGER.info(e.getCause().getMessage(), e.getCause());
+      }
+    }
+
+    private int laneOf(JsonNode record)
+    {
+      JsonNode trackId = record.get(trackIdField);
+      int hash = (trackId != null) ? trackId.asText().hashCode() : 0;
+      return (hash & Integer.MAX_VALUE) % lanes.length;
+    }
+  }
+
+  /**
+   * Runs its tasks one at a time, in submission order, on the pool.
+   */
+  private static class Lane implements Executor
+  {
+    private final Executor        pool;
+    private final Deque<Runnable> tasks = new ArrayDeque<Runnable>();
+    private boolean               running;
+
+    Lane(Executor pool)
+    {
+      this.pool = pool;
+    }
+
+    @Override
+    public void execute(final Runnable task)
+    {
+      synchronized (this)
+      {
+        tasks.addLast(new Runnable()
+          {
+            @Override
+            public void run()
+            {
+              try
+              {
+                task.run();
+              }
+              finally
+              {
+                scheduleNext();
+              }
+            }
+          });
+        if (running)
+          return;
+        running = true;
+      }
+      scheduleNext();
+    }
+
+    private void scheduleNext()
+    {
+      Runnable next;
+      synchronized (this)
+      {
+        next = tasks.pollFirst();
+        if (next == null)
+        {
+          running = false;
+          return;
+        }
+      }
+      try
+      {
+        pool.execute(next);
+      }
+      catch (RejectedExecutionException e)
+      {
+        next.run();
+      }
+    }
+  }
+}
@@ -0,0 +1,201 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import com.esri.ges.core.geoevent.FieldException;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.framework.i18n.BundleLogger;
+import com.esri.ges.framework.i18n.BundleLoggerFactory;
+import com.esri.ges.util.Converter;
+
+/**
+ * Builds the point geometry of a GeoEvent from its x, y and optional z, WKID or WKT fields. The field
+ * indexes are looked up once per binding plan and the coordinates are read as primitive doubles. Spatial
+ * references are immutable, so they are created once per WKID or WKT and shared by all events and
+ * processors.
+ */
+public class PointGeometryBuilder
+{
+  private static final BundleLogger                   LOGGER           = BundleLoggerFactory.getLogger(PointGeometryBuilder.class);
+
+  private static final int                            DEFAULT_WKID     = 4326;
+  private static final int                            MAX_WKT_ENTRIES  = 256;
+
+  private static final Map<Integer, SpatialReference> referencesByWkid = new ConcurrentHashMap<Integer, SpatialReference>();
+  private static final Map<String, SpatialReference>  referencesByWkt  = new ConcurrentHashMap<String, SpatialReference>();
+
+  private final String                                xField;
+  private final String                                yField;
+  private final String                                zField;
+  private final String                                wkidField;
+  private final String                                wkTextField;
+  private volatile Indexes                            lastIndexes;
+
+  // the field indexes of one binding plan, -1 for fields the definition does not have
+  private static class Indexes
+  {
+    private final FieldBindingPlan plan;
+    private final int              x;
+    private final int              y;
+    private final int              z;
+    private final int              wkid;
+    private final int              wkText;
+
+    Indexes(FieldBindingPlan plan, int x, int y, int z, int wkid, int wkText)
+    {
+      this.plan = plan;
+      this.x = x;
+      this.y = y;
+      this.z = z;
+      this.wkid = wkid;
+      this.wkText = wkText;
+    }
+  }
+
+  public PointGeometryBuilder(String xField, String yField, String zField, String wkidField, String wkTextField)
+  {
+    this.xField = xField;
+    this.yField = yField;
+    this.zField = isEmpty(zField) ? null : zField;
+    this.wkidField = isEmpty(wkidField) ? null : wkidField;
+    this.wkTextField = isEmpty(wkTextField) ? null : wkTextField;
+  }
+
+  /**
+   * Sets the point geometry of an event populated with the given plan.
+   */
+  public void build(GeoEvent event, FieldBindingPlan plan) throws FieldException
+  {
+    Indexes indexes = getIndexes(plan);
+
+    double x = 0D;
+    double y = 0D;
+    double z = 0D;
+    Object xObject = (indexes.x >= 0) ? event.getField(indexes.x) : null;
+    if (xObject != null)
+      x = toDouble(xObject);
+    else
+      LOGGER.warn("X Geometry field is null", xField, "x");
+    Object yObject = (indexes.y >= 0) ? event.getField(indexes.y) : null;
+    if (yObject != null)
+      y = toDouble(yObject);
+    else
+      LOGGER.warn("Y Geometry field is null", yField, "y");
+    if (zField != null)
+    {
+      Object zObject = (indexes.z >= 0) ? event.getField(indexes.z) : null;
+      if (zObject != null)
+        z = toDouble(zObject);
+      else
+        LOGGER.debug("Z Geometry field is null", zField, "z");
+    }
+
+    SpatialReference spatialReference = null;
+    if (wkidField != null)
+    {
+      Object wkidObject = (indexes.wkid >= 0) ? event.getField(indexes.wkid) : null;
+      Integer wkid = (wkidObject instanceof Number) ? Integer.valueOf(((Number) wkidObject).intValue()) : Converter.convertToInteger(wkidObject);
+      if (wkid != null)
+        spatialReference = getSpatialReference(wkid);
+    }
+    else if (wkTextField != null)
+    {
+      Object wkText = (indexes.wkText >= 0) ? event.getField(indexes.wkText) : null;
+      if (wkText != null)
+        spatialReference = getSpatialReference(wkText.toString());
+    }
+    if (spatialReference == null)
+      spatialReference = getSpatialReference(DEFAULT_WKID);
+
+    event.setGeometry(new MapGeometry(new Point(x, y, z), spatialReference));
+  }
+
+  public static SpatialReference getSpatialReference(int wkid)
+  {
+    SpatialReference spatialReference = referencesByWkid.get(wkid);
+    if (spatialReference == null)
+    {
+      spatialReference = SpatialReference.create(wkid);
+      referencesByWkid.put(wkid, spatialReference);
+    }
+    return spatialReference;
+  }
+
+  /**
+   * Returns the spatial reference of a well-known text, reusing the one of its WKID when it has one.
+   */
+  public static SpatialReference getSpatialReference(String wkText)
+  {
+    SpatialReference spatialReference = referencesByWkt.get(wkText);
+    if (spatialReference == null)
+    {
+      spatialReference = SpatialReference.create(wkText);
+      if (spatialReference.getID() > 0)
+        spatialReference = getSpatialReference(spatialReference.getID());
+      // texts differ in formatting, so the cache is bounded rather than keyed by every variant forever
+      if (referencesByWkt.size() >= MAX_WKT_ENTRIES)
+        referencesByWkt.clear();
+      referencesByWkt.put(wkText, spatialReference);
+    }
+    return spatialReference;
+  }
+
+  private Indexes getIndexes(FieldBindingPlan plan)
+  {
+    Indexes indexes = lastIndexes;
+    if (indexes == null || indexes.plan != plan)
+    {
+      indexes = new Indexes(plan, indexOf(plan, xField), indexOf(plan, yField), indexOf(plan, zField), indexOf(plan, wkidField), indexOf(plan, wkTextField));
+      lastIndexes = indexes;
+    }
+    return indexes;
+  }
+
+  private static int indexOf(FieldBindingPlan plan, String fieldName)
+  {
+    FieldBindingPlan.Slot slot = (fieldName != null) ? plan.get(fieldName) : null;
+    return (slot != null) ? slot.getIndex() : -1;
+  }
+
+  private static double toDouble(Object value)
+  {
+    if (value instanceof Number)
+      return ((Number) value).doubleValue();
+    Double converted = Converter.convertToDouble(value);
+    return (converted != null) ? converted.doubleValue() : 0D;
+  }
+
+  private static boolean isEmpty(String value)
+  {
+    return value == null || value.trim().isEmpty();
+  }
+}
@@ -0,0 +1,85 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scheduler shared by the polling HttpHandler processors of the service. Ticks only hand the poll to the
+ * processor's dispatcher or paged query executor and skip it when those are full, never waiting for room,
+ * so a couple of threads serve any number of processors. The first tick of each
+ * processor is delayed by a random fraction of its period so that processors do not poll in lockstep.
+ */
+public class PollingScheduler
+{
+  private static final int                  THREAD_COUNT = 2;
+
+  private final ScheduledThreadPoolExecutor executor;
+
+  public PollingScheduler()
+  {
+    executor = new ScheduledThreadPoolExecutor(THREAD_COUNT, new ThreadFactory()
+      {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r)
+        {
+          Thread thread = new Thread(r, "HttpHandlerPolling-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    // cancelled polls of stopped processors should not linger in the queue
+    executor.setRemoveOnCancelPolicy(true);
+  }
+
+  /**
+   * Runs the task every <code>periodMillis</code> milliseconds, starting after a random delay within the
+   * first period.
+   */
+  public ScheduledFuture<?> schedule(Runnable task, long periodMillis)
+  {
+    long period = Math.max(1, periodMillis);
+    long initialDelay = ThreadLocalRandom.current().nextLong(period);
+    return executor.scheduleAtFixedRate(task, initialDelay, period, TimeUnit.MILLISECONDS);
+  }
+
+  public void shutdown()
+  {
+    executor.shutdownNow();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "pollingScheduler[scheduled=" + executor.getQueue().size() + ", active=" + executor.getActiveCount() + "]";
+  }
+}
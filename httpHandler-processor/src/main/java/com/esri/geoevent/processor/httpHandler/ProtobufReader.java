@@ -0,0 +1,234 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the protocol buffers wire format field by field from a stream, without generated classes or the
+ * protobuf runtime. Embedded messages are read in place between {@link #pushLimit(long)} and
+ * {@link #popLimit(long)}, so a message is never copied into a buffer of its own and only the strings that
+ * are asked for are decoded.
+ */
+public class ProtobufReader
+{
+  public static final int   WIRETYPE_VARINT           = 0;
+  public static final int   WIRETYPE_FIXED64          = 1;
+  public static final int   WIRETYPE_LENGTH_DELIMITED = 2;
+  public static final int   WIRETYPE_FIXED32          = 5;
+
+  // a string field of a feed larger than this is taken as corrupt input rather than allocated
+  private static final int  MAX_STRING_BYTES          = 1024 * 1024;
+
+  private final InputStream in;
+  private long              position;
+  private long              limit                     = Long.MAX_VALUE;
+
+  public ProtobufReader(InputStream in)
+  {
+    this.in = (in instanceof BufferedInputStream) ? in : new BufferedInputStream(in);
+  }
+
+  public static int fieldNumber(int tag)
+  {
+    return tag >>> 3;
+  }
+
+  public static int wireType(int tag)
+  {
+    return tag & 7;
+  }
+
+  /**
+   * Returns the tag of the next field, or 0 at the end of the current message or of the stream.
+   */
+  public int readTag() throws IOException
+  {
+    if (position >= limit)
+      return 0;
+    if (limit == Long.MAX_VALUE)
+    {
+      // the top level message simply ends with the stream
+      in.mark(1);
+      if (in.read() < 0)
+        return 0;
+      in.reset();
+    }
+    int tag = (int) readVarint();
+    if (fieldNumber(tag) == 0)
+      throw new IOException("Invalid protobuf tag " + tag + " at byte " + position);
+    return tag;
+  }
+
+  public long readVarint() throws IOException
+  {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7)
+    {
+      int b = readByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+    throw new IOException("Malformed protobuf varint at byte " + position);
+  }
+
+  public int readInt32() throws IOException
+  {
+    return (int) readVarint();
+  }
+
+  public boolean readBool() throws IOException
+  {
+    return readVarint() != 0;
+  }
+
+  public float readFloat() throws IOException
+  {
+    return Float.intBitsToFloat(readFixed32());
+  }
+
+  public double readDouble() throws IOException
+  {
+    return Double.longBitsToDouble(readFixed64());
+  }
+
+  public int readFixed32() throws IOException
+  {
+    return readByte() | (readByte() << 8) | (readByte() << 16) | (readByte() << 24);
+  }
+
+  public long readFixed64() throws IOException
+  {
+    return (readFixed32() & 0xFFFFFFFFL) | ((long) readFixed32() << 32);
+  }
+
+  public String readString() throws IOException
+  {
+    long length = readLength();
+    if (length > MAX_STRING_BYTES)
+      throw new IOException("Protobuf string of " + length + " bytes at byte " + position);
+    byte[] bytes = new byte[(int) length];
+    int read = 0;
+    while (read < bytes.length)
+    {
+      int n = in.read(bytes, read, bytes.length - read);
+      if (n < 0)
+        throw new EOFException("Truncated protobuf message at byte " + (position + read));
+      read += n;
+    }
+    position += read;
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Enters the embedded message that follows a length delimited tag; returns the limit to restore with
+   * {@link #popLimit(long)} once its fields have been read.
+   */
+  public long pushLimit() throws IOException
+  {
+    long length = readLength();
+    long previous = limit;
+    limit = position + length;
+    return previous;
+  }
+
+  /**
+   * Leaves the current embedded message, skipping whatever of it has not been read.
+   */
+  public void popLimit(long previous) throws IOException
+  {
+    skipBytes(limit - position);
+    limit = previous;
+  }
+
+  /**
+   * Skips the value of a field that is not decoded, e.g. an extension or a newer field.
+   */
+  public void skipField(int tag) throws IOException
+  {
+    switch (wireType(tag))
+    {
+      case WIRETYPE_VARINT:
+        readVarint();
+        break;
+      case WIRETYPE_FIXED64:
+        skipBytes(8);
+        break;
+      case WIRETYPE_LENGTH_DELIMITED:
+        skipBytes(readLength());
+        break;
+      case WIRETYPE_FIXED32:
+        skipBytes(4);
+        break;
+      default:
+        throw new IOException("Unsupported protobuf wire type " + wireType(tag) + " at byte " + position);
+    }
+  }
+
+  public long getPosition()
+  {
+    return position;
+  }
+
+  private long readLength() throws IOException
+  {
+    long length = readVarint();
+    if (length < 0 || position + length > limit)
+      throw new IOException("Protobuf length " + length + " exceeds its message at byte " + position);
+    return length;
+  }
+
+  private void skipBytes(long count) throws IOException
+  {
+    while (count > 0)
+    {
+      long skipped = in.skip(count);
+      if (skipped <= 0)
+      {
+        if (in.read() < 0)
+          throw new EOFException("Truncated protobuf message at byte " + position);
+        skipped = 1;
+      }
+      position += skipped;
+      count -= skipped;
+    }
+  }
+
+  private int readByte() throws IOException
+  {
+    if (position >= limit)
+      throw new IOException("Protobuf field runs past its message at byte " + position);
+    int b = in.read();
+    if (b < 0)
+      throw new EOFException("Truncated protobuf message at byte " + position);
+    position++;
+    return b;
+  }
+}
@@ -0,0 +1,325 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.jackson.JsonNode;
+
+import com.esri.ges.framework.i18n.BundleLogger;
+import com.esri.ges.framework.i18n.BundleLoggerFactory;
+
+/**
+ * Gathers rendered POST bodies into batches, one per rendered URL and header values, and hands a batch to
+ * the {@link Flusher} once it holds <code>maxCount</code> items, once the next item would take its UTF-8
+ * payload past <code>maxBytes</code> or once it has lingered for <code>lingerMillis</code>. A single item
+ * larger than <code>maxBytes</code> is sent on its own. The flushed payload is the items joined by commas and wrapped in
+ * the envelope template, whose <code>{$items}</code> slot marks where the items go.
+ */
+public class RequestBatcher
+{
+  private static final BundleLogger LOGGER           = BundleLoggerFactory.getLogger(RequestBatcher.class);
+
+  public static final String        ITEMS_SLOT       = "{$items}";
+  public static final String        DEFAULT_ENVELOPE = "[" + ITEMS_SLOT + "]";
+
+  /**
+   * Sends a flushed batch. <code>keys</code> holds the per-item key field values (null entries when items
+   * are mapped back by position).
+   */
+  public interface Flusher
+  {
+    void flush(String endpointURL, String[] headerValues, String payload, String[] keys);
+  }
+
+  private final String                   name;
+  private final int                      maxCount;
+  private final long                     maxBytes;
+  private final long                     lingerMillis;
+  private final String                   envelope;
+  private final String                   prefix;
+  private final String                   suffix;
+  private final long                     envelopeBytes;
+  private final Flusher                  flusher;
+  private final Map<String, Batch>       batches       = new HashMap<String, Batch>();
+  private final ScheduledExecutorService scheduler;
+
+  private final AtomicLong               itemCount     = new AtomicLong();
+  private final AtomicLong               batchCount    = new AtomicLong();
+
+  private class Batch
+  {
+    private final String        batchKey;
+    private final String        endpointURL;
+    private final String[]      headerValues;
+    private final List<String>  items = new ArrayList<String>();
+    private final List<String>  keys  = new ArrayList<String>();
+    private long                bytes;
+    private ScheduledFuture<?>  lingerTask;
+
+    Batch(String batchKey, String endpointURL, String[] headerValues)
+    {
+      this.batchKey = batchKey;
+      this.endpointURL = endpointURL;
+      this.headerValues = headerValues;
+    }
+  }
+
+  public RequestBatcher(String name, int maxCount, long maxBytes, long lingerMillis, String envelope, Flusher flusher)
+  {
+    this.name = name;
+    this.maxCount = Math.max(1, maxCount);
+    this.maxBytes = Math.max(1, maxBytes);
+    this.lingerMillis = Math.max(0, lingerMillis);
+    this.envelope = (envelope != null && envelope.contains(ITEMS_SLOT)) ? envelope : DEFAULT_ENVELOPE;
+    int slot = this.envelope.indexOf(ITEMS_SLOT);
+    this.prefix = this.envelope.substring(0, slot);
+    this.suffix = this.envelope.substring(slot + ITEMS_SLOT.length());
+    this.envelopeBytes = utf8Length(prefix) + utf8Length(suffix);
+    this.flusher = flusher;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+      {
+        @Override
+        public Thread newThread(Runnable r)
+        {
+          Thread thread = new Thread(r, RequestBatcher.this.name + "-linger");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+  }
+
+  public boolean hasSameConfiguration(int maxCount, long maxBytes, long lingerMillis, String envelope)
+  {
+    String effectiveEnvelope = (envelope != null && envelope.contains(ITEMS_SLOT)) ? envelope : DEFAULT_ENVELOPE;
+    return this.maxCount == Math.max(1, maxCount) && this.maxBytes == Math.max(1, maxBytes) && this.lingerMillis == Math.max(0, lingerMillis) && this.envelope.equals(effectiveEnvelope);
+  }
+
+  /**
+   * Adds a rendered body to the batch of its URL and headers, flushing the batch on the calling thread if it
+   * is full.
+   */
+  public void add(String endpointURL, String[] headerValues, String body, String key)
+  {
+    itemCount.incrementAndGet();
+    long size = utf8Length(body);
+    Batch previous = null;
+    Batch full = null;
+    synchronized (batches)
+    {
+      String batchKey = batchKey(endpointURL, headerValues);
+      Batch batch = batches.get(batchKey);
+      // the pending items go first if this one would take them past the limit, counting its comma
+      if (batch != null && !batch.items.isEmpty() && envelopeBytes + batch.bytes + 1 + size > maxBytes)
+      {
+        previous = detach(batch);
+        batch = null;
+      }
+      if (batch == null)
+      {
+        batch = new Batch(batchKey, endpointURL, headerValues);
+        batches.put(batchKey, batch);
+        scheduleLinger(batch);
+      }
+      batch.bytes += batch.items.isEmpty() ? size : 1 + size;
+      batch.items.add(body);
+      batch.keys.add(key);
+      if (batch.items.size() >= maxCount || envelopeBytes + batch.bytes >= maxBytes)
+        full = detach(batch);
+    }
+    if (previous != null)
+      send(previous);
+    if (full != null)
+      send(full);
+  }
+
+  /**
+   * Sends every pending batch.
+   */
+  public void flushAll()
+  {
+    List<Batch> pending;
+    synchronized (batches)
+    {
+      pending = new ArrayList<Batch>(batches.values());
+      for (Batch batch : pending)
+        detach(batch);
+    }
+    for (Batch batch : pending)
+      send(batch);
+  }
+
+  public void shutdown()
+  {
+    scheduler.shutdownNow();
+    flushAll();
+  }
+
+  public long getItemCount()
+  {
+    return itemCount.get();
+  }
+
+  public long getBatchCount()
+  {
+    return batchCount.get();
+  }
+
+  @Override
+  public String toString()
+  {
+    long batchesSent = batchCount.get();
+    return "batcher[items=" + itemCount.get() + ", batches=" + batchesSent + ", averageSize=" + ((batchesSent > 0) ? itemCount.get() / batchesSent : 0) + "]";
+  }
+
+  private void scheduleLinger(final Batch batch)
+  {
+    if (scheduler.isShutdown())
+      return;
+    try
+    {
+      batch.lingerTask = scheduler.schedule(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            Batch expired = null;
+            synchronized (batches)
+            {
+              // the batch may already have been flushed because it filled up
+              if (batches.get(batch.batchKey) == batch)
+                expired = detach(batch);
+            }
+            if (expired != null)
+              send(expired);
+          }
+        }, lingerMillis, TimeUnit.MILLISECONDS);
+    }
+    catch (RejectedExecutionException e)
+    {
+      // shutting down, the remaining batches are flushed by shutdown()
+    }
+  }
+
+  // must hold the batches lock
+  private Batch detach(Batch batch)
+  {
+    batches.remove(batch.batchKey);
+    if (batch.lingerTask != null)
+      batch.lingerTask.cancel(false);
+    return batch;
+  }
+
+  private void send(Batch batch)
+  {
+    if (batch.items.isEmpty())
+      return;
+    StringBuilder payload = new StringBuilder((int) Math.min(Integer.MAX_VALUE, batch.bytes + prefix.length() + suffix.length()));
+    payload.append(prefix);
+    for (int i = 0; i < batch.items.size(); i++)
+    {
+      if (i > 0)
+        payload.append(',');
+      payload.append(batch.items.get(i));
+    }
+    payload.append(suffix);
+    batchCount.incrementAndGet();
+    try
+    {
+      flusher.flush(batch.endpointURL, batch.headerValues, payload.toString(), batch.keys.toArray(new String[batch.keys.size()]));
+    }
+    catch (RuntimeException e)
+    {
+      LOGGER.error("BATCH_SEND_ERROR", name, batch.items.size(), e.getMessage());
+    }
+  }
+
+  /**
+   * Matches the items of a batched response to the batched requests, by the value of <code>keyField</code>
+   * found in an item when it is set, else by position. Returns one entry per request, null where no item
+   * matched.
+   */
+  public static JsonNode[] mapResponse(JsonNode items, String[] keys, String keyField)
+  {
+    JsonNode[] matched = new JsonNode[keys.length];
+    if (keyField != null)
+    {
+      Map<String, JsonNode> itemsByKey = new HashMap<String, JsonNode>();
+      for (JsonNode item : items)
+      {
+        JsonNode keyNode = item.findValue(keyField);
+        if (keyNode != null && !keyNode.isContainerNode())
+          itemsByKey.put(keyNode.asText(), item);
+      }
+      for (int i = 0; i < keys.length; i++)
+        matched[i] = (keys[i] != null) ? itemsByKey.get(keys[i]) : null;
+    }
+    else
+    {
+      int count = Math.min(items.size(), keys.length);
+      for (int i = 0; i < count; i++)
+        matched[i] = items.get(i);
+    }
+    return matched;
+  }
+
+  // the encoded size without encoding, a surrogate pair is one four byte sequence
+  static long utf8Length(CharSequence text)
+  {
+    long length = 0;
+    for (int i = 0; i < text.length(); i++)
+    {
+      char c = text.charAt(i);
+      if (c < 0x80)
+        length++;
+      else if (c < 0x800)
+        length += 2;
+      else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1)))
+      {
+        length += 4;
+        i++;
+      }
+      else
+        length += 3;
+    }
+    return length;
+  }
+
+  private static String batchKey(String endpointURL, String[] headerValues)
+  {
+    return (headerValues != null) ? endpointURL + '\n' + Arrays.toString(headerValues) : endpointURL;
+  }
+}
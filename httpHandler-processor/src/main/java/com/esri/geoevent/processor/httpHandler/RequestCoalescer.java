@@ -0,0 +1,121 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-flight bookkeeping for identical requests. The first request for a key becomes the leader and is
+ * sent; identical requests arriving while it is in flight only add themselves as waiters. When the leader
+ * completes, the caller delivers its response once for itself and once per waiter.
+ */
+public class RequestCoalescer
+{
+  private final Map<String, Flight> flights   = new HashMap<String, Flight>();
+
+  private final AtomicLong          leaders   = new AtomicLong();
+  private final AtomicLong          followers = new AtomicLong();
+
+  private long                      lastId;
+
+  private static class Flight
+  {
+    private final long id;
+    private final long started;
+    private int        waiters;
+
+    Flight(long id, long started)
+    {
+      this.id = id;
+      this.started = started;
+    }
+  }
+
+  /**
+   * Returns 0 if an identical request is in flight, in which case the caller has been attached to it and
+   * must not send its own. Otherwise the caller is the leader and gets the id of its flight, which it must
+   * pass to {@link #complete(String, long)} once its request has finished. A leader older than
+   * <code>maxAge</code> milliseconds is presumed lost (e.g. dropped by a full queue) and is replaced, taking
+   * its waiters over. The id is a plain number so that it survives a request being spilled to disk.
+   */
+  public synchronized long join(String key, long maxAge)
+  {
+    long now = System.currentTimeMillis();
+    Flight flight = flights.get(key);
+    if (flight != null && now - flight.started <= maxAge)
+    {
+      flight.waiters++;
+      followers.incrementAndGet();
+      return 0;
+    }
+    Flight leader = new Flight(++lastId, now);
+    if (flight != null)
+      leader.waiters = flight.waiters;
+    flights.put(key, leader);
+    leaders.incrementAndGet();
+    return leader.id;
+  }
+
+  /**
+   * Ends the flight of the key and returns the number of requests that were waiting on it. A leader that
+   * has been replaced meanwhile gets 0 and leaves the flight of its replacement alone.
+   */
+  public synchronized int complete(String key, long id)
+  {
+    Flight flight = flights.get(key);
+    if (flight == null || flight.id != id)
+      return 0;
+    flights.remove(key);
+    return flight.waiters;
+  }
+
+  public synchronized void clear()
+  {
+    flights.clear();
+  }
+
+  public synchronized int getInFlightCount()
+  {
+    return flights.size();
+  }
+
+  public long getLeaderCount()
+  {
+    return leaders.get();
+  }
+
+  public long getCoalescedCount()
+  {
+    return followers.get();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "coalescer[inFlight=" + getInFlightCount() + ", sent=" + leaders.get() + ", coalesced=" + followers.get() + "]";
+  }
+}
@@ -0,0 +1,594 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.esri.ges.framework.i18n.BundleLogger;
+import com.esri.ges.framework.i18n.BundleLoggerFactory;
+
+/**
+ * Fixed size worker pool in front of a bounded queue. When the queue is full the configured
+ * {@link OverflowPolicy} decides what happens to the new task, so that a slow endpoint degrades throughput
+ * instead of exhausting the heap.
+ */
+public class RequestDispatcher
+{
+  private static final BundleLogger LOGGER              = BundleLoggerFactory.getLogger(RequestDispatcher.class);
+
+  private static final long         MAX_SPILL_BYTES     = 512L * 1024 * 1024;
+  private static final long         SHUTDOWN_TIMEOUT_MS = 30 * 1000;
+  private static final int          LOG_EVERY           = 1000;
+
+  public enum OverflowPolicy
+  {
+    BLOCK, DROP_OLDEST, DROP_NEWEST, SPILL_TO_DISK
+  }
+
+  /**
+   * A task that can be written to the spill file when the queue is full.
+   */
+  public interface SpillableTask extends Runnable
+  {
+    void writeTo(DataOutputStream out) throws IOException;
+  }
+
+  /**
+   * Recreates a spilled task from its serialized form.
+   */
+  public interface SpillReader
+  {
+    SpillableTask readFrom(DataInputStream in) throws IOException;
+  }
+
+  private final String                  name;
+  private final int                     poolSize;
+  private final int                     queueCapacity;
+  private final OverflowPolicy          overflowPolicy;
+  private final BlockingQueue<Runnable> queue;
+  private final ThreadPoolExecutor      executor;
+  private final SpillFile               spillFile;
+  private final SpillReader             spillReader;
+
+  private final AtomicLong              dispatched          = new AtomicLong();
+  private final AtomicLong              dropped             = new AtomicLong();
+  private final AtomicLong              spilled             = new AtomicLong();
+
+  public RequestDispatcher(String name, int poolSize, int queueCapacity, OverflowPolicy overflowPolicy, File spillDirectory, SpillReader spillReader)
+  {
+    this(name, poolSize, queueCapacity, overflowPolicy, spillDirectory, spillReader, null);
+  }
+
+  /**
+   * Creates the replacement of a reconfigured dispatcher, which must have been shut down. The requests the
+   * predecessor has spilled are taken over: they stay in its spill file if this dispatcher spills too.
+   * Otherwise one of the new workers moves them into the queue as room frees up and runs them itself while
+   * the queue is full, so the constructor never waits for the backlog.
+   */
+  public RequestDispatcher(String name, int poolSize, int queueCapacity, OverflowPolicy overflowPolicy, File spillDirectory, SpillReader spillReader, RequestDispatcher predecessor)
+  {
+    this.name = name;
+    this.poolSize = Math.max(1, poolSize);
+    this.queueCapacity = Math.max(1, queueCapacity);
+    this.overflowPolicy = (overflowPolicy != null) ? overflowPolicy : OverflowPolicy.BLOCK;
+    this.spillReader = spillReader;
+    this.queue = new ArrayBlockingQueue<Runnable>(this.queueCapacity);
+
+    SpillFile spill = null;
+    SpillFile inherited = (predecessor != null) ? predecessor.spillFile : null;
+    if (this.overflowPolicy == OverflowPolicy.SPILL_TO_DISK && inherited != null && spillReader != null)
+    {
+      // same name, same file: keep appending behind the predecessor's backlog
+      spill = inherited;
+      inherited = null;
+    }
+    else if (this.overflowPolicy == OverflowPolicy.SPILL_TO_DISK && spillDirectory != null && spillReader != null)
+    {
+      try
+      {
+        spill = new SpillFile(spillDirectory, name);
+      }
+      catch (IOException e)
+      {
+        LOGGER.error("DISPATCH_SPILL_ERROR", name, e.getMessage());
+      }
+    }
+    this.spillFile = spill;
+
+    executor = new ThreadPoolExecutor(this.poolSize, this.poolSize, 0L, TimeUnit.MILLISECONDS, queue, new NamedThreadFactory(name), new OverflowHandler())
+    {
+      @Override
+      protected void afterExecute(Runnable r, Throwable t)
+      {
+        super.afterExecute(r, t);
+        refillFromSpill();
+      }
+    };
+    // with all workers running, a task offered straight to the queue is always picked up (see tryDispatch)
+    executor.prestartAllCoreThreads();
+
+    if (inherited != null)
+    {
+      final SpillFile backlog = inherited;
+      final SpillReader backlogReader = predecessor.spillReader;
+      executor.execute(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            replay(backlog, backlogReader);
+          }
+        });
+    }
+    else
+      refillFromSpill();
+  }
+
+  public static OverflowPolicy parsePolicy(String value)
+  {
+    if (value != null)
+    {
+      for (OverflowPolicy policy : OverflowPolicy.values())
+      {
+        if (policy.name().equalsIgnoreCase(value.trim()))
+          return policy;
+      }
+    }
+    return OverflowPolicy.BLOCK;
+  }
+
+  public boolean hasSameConfiguration(int poolSize, int queueCapacity, OverflowPolicy overflowPolicy)
+  {
+    return this.poolSize == Math.max(1, poolSize) && this.queueCapacity == Math.max(1, queueCapacity) && this.overflowPolicy == overflowPolicy;
+  }
+
+  public void dispatch(Runnable task)
+  {
+    dispatched.incrementAndGet();
+    // once anything is spilled, new tasks queue up behind it so the original order is kept
+    if (spillFile != null && !spillFile.isEmpty() && task instanceof SpillableTask)
+    {
+      spill((SpillableTask) task);
+      return;
+    }
+    executor.execute(task);
+  }
+
+  /**
+   * Queues the task if there is room, without applying the overflow policy. Never blocks, so it can be
+   * called from I/O threads; returns false if the task was not queued.
+   */
+  public boolean tryDispatch(Runnable task)
+  {
+    if (executor.isShutdown() || !queue.offer(task))
+      return false;
+    dispatched.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Runs the queued and spilled requests, waiting up to 30 seconds for them; spilled requests left after
+   * that are discarded and counted in the log.
+   */
+  public void shutdown()
+  {
+    long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MS;
+    try
+    {
+      drainSpill(deadline);
+      executor.shutdown();
+      if (!executor.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS))
+        executor.shutdownNow();
+    }
+    catch (InterruptedException e)
+    {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    discardSpill();
+  }
+
+  /**
+   * Shuts the dispatcher down without waiting for the queued requests to finish. Its spilled requests are
+   * left for the successor created with this dispatcher as its predecessor.
+   */
+  public void shutdownAsync()
+  {
+    executor.shutdown();
+  }
+
+  public int getQueueSize()
+  {
+    return queue.size();
+  }
+
+  public int getActiveCount()
+  {
+    return executor.getActiveCount();
+  }
+
+  public long getDispatchedCount()
+  {
+    return dispatched.get();
+  }
+
+  public long getDroppedCount()
+  {
+    return dropped.get();
+  }
+
+  public long getSpilledCount()
+  {
+    return spilled.get();
+  }
+
+  @Override
+  public String toString()
+  {
+    return "dispatcher[policy=" + overflowPolicy + ", queued=" + queue.size() + "/" + queueCapacity + ", active=" + executor.getActiveCount() + "/" + poolSize + ", dispatched=" + dispatched.get() + ", dropped=" + dropped.get() + ", spilled=" + spilled.get() + ((spillFile != null) ? ", spillBacklog=" + spillFile.size() : "") + "]";
+  }
+
+  // keeps moving the spilled requests into the queue while the workers are still running
+  private void drainSpill(long deadline) throws InterruptedException
+  {
+    if (spillFile == null)
+      return;
+    while (System.currentTimeMillis() < deadline)
+    {
+      refillFromSpill();
+      if (spillFile.isEmpty())
+        return;
+      Thread.sleep(10);
+    }
+  }
+
+  // runs on a worker, which must not block on the queue it drains: a task that does not fit is run here
+  private void replay(SpillFile inherited, SpillReader reader)
+  {
+    try
+    {
+      SpillableTask task;
+      while ((task = inherited.poll(reader)) != null)
+      {
+        dispatched.incrementAndGet();
+        if (executor.isShutdown() || !queue.offer(task))
+          runReplayed(task);
+      }
+    }
+    catch (IOException e)
+    {
+      LOGGER.error("DISPATCH_SPILL_ERROR", name, e.getMessage());
+    }
+    int discarded = inherited.delete();
+    if (discarded > 0)
+      LOGGER.warn("DISPATCH_SPILL_DISCARDED", name, discarded);
+  }
+
+  private void runReplayed(Runnable task)
+  {
+    try
+    {
+      task.run();
+    }
+    catch (RuntimeException e)
+    {
+      LOGGER.error("DISPATCH_TASK_ERROR", name, e.getMessage());
+    }
+  }
+
+  private void discardSpill()
+  {
+    if (spillFile == null)
+      return;
+    int discarded = spillFile.delete();
+    if (discarded > 0)
+    {
+      dropped.addAndGet(discarded);
+      LOGGER.warn("DISPATCH_SPILL_DISCARDED", name, discarded);
+    }
+  }
+
+  private void drop(Runnable task)
+  {
+    long count = dropped.incrementAndGet();
+    if (executor.isShutdown())
+      LOGGER.debug("Request dropped, dispatcher " + name + " is shut down (" + count + " dropped so far).");
+    else if (count == 1 || count % LOG_EVERY == 0)
+      LOGGER.warn("DISPATCH_QUEUE_FULL", name, overflowPolicy, count);
+  }
+
+  private void spill(SpillableTask task)
+  {
+    try
+    {
+      if (spillFile.append(task))
+      {
+        spilled.incrementAndGet();
+        refillFromSpill();
+        return;
+      }
+    }
+    catch (IOException e)
+    {
+      LOGGER.error("DISPATCH_SPILL_ERROR", name, e.getMessage());
+    }
+    drop(task);
+  }
+
+  private void refillFromSpill()
+  {
+    if (spillFile == null || executor.isShutdown())
+      return;
+    // one refill at a time, so that the spilled requests enter the queue in their order
+    synchronized (spillFile)
+    {
+      try
+      {
+        while (queue.remainingCapacity() > 0)
+        {
+          SpillableTask task = spillFile.poll(spillReader);
+          if (task == null)
+            break;
+          if (!queue.offer(task))
+          {
+            // lost the race for the free slot; put it back at the end rather than block a worker
+            spillFile.append(task);
+            break;
+          }
+        }
+      }
+      catch (IOException e)
+      {
+        LOGGER.error("DISPATCH_SPILL_ERROR", name, e.getMessage());
+      }
+    }
+  }
+
+  private class OverflowHandler implements RejectedExecutionHandler
+  {
+    @Override
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor pool)
+    {
+      if (pool.isShutdown())
+      {
+        drop(task);
+        return;
+      }
+      switch (overflowPolicy)
+      {
+        case DROP_OLDEST:
+          Runnable oldest = queue.poll();
+          if (oldest != null)
+            drop(oldest);
+          if (!queue.offer(task))
+            drop(task);
+          break;
+        case DROP_NEWEST:
+          drop(task);
+          break;
+        case SPILL_TO_DISK:
+          if (spillFile != null && task instanceof SpillableTask)
+          {
+            spill((SpillableTask) task);
+            break;
+          }
+          drop(task);
+          break;
+        default:
+          try
+          {
+            while (!queue.offer(task, 1, TimeUnit.SECONDS))
+            {
+              if (pool.isShutdown())
+              {
+                drop(task);
+                return;
+              }
+            }
+          }
+          catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+            drop(task);
+          }
+      }
+    }
+  }
+
+  private static class NamedThreadFactory implements ThreadFactory
+  {
+    private final String        prefix;
+    private final AtomicInteger count = new AtomicInteger();
+
+    NamedThreadFactory(String prefix)
+    {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable r)
+    {
+      Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+  /**
+   * Append-only FIFO file of length-prefixed task records. The file is truncated whenever it has been read
+   * to the end.
+   */
+  private static class SpillFile
+  {
+    private final File             file;
+    private final RandomAccessFile raf;
+    private long                   readPosition  = 0;
+    private long                   writePosition = 0;
+    private int                    count         = 0;
+
+    SpillFile(File directory, String name) throws IOException
+    {
+      if (!directory.exists() && !directory.mkdirs())
+        throw new IOException("Cannot create spill directory " + directory);
+      // the records hold rendered URLs, bodies and header values, which often carry credentials
+      makePrivate(directory, true);
+      file = new File(directory, name.replaceAll("[^A-Za-z0-9._-]", "_") + ".spill");
+      raf = new RandomAccessFile(file, "rw");
+      makePrivate(file, false);
+      // the read position of a previous run is not kept, so its records cannot be told apart from the ones
+      // already sent and are not replayed
+      int stale = countRecords();
+      if (stale > 0)
+        LOGGER.warn("DISPATCH_SPILL_STALE", name, stale);
+      raf.setLength(0);
+    }
+
+    /**
+     * Restricts the file or directory to its owner. On POSIX file systems one that another user owns, e.g.
+     * created beforehand in a shared temporary directory, is refused.
+     */
+    private static void makePrivate(File target, boolean directory) throws IOException
+    {
+      Path path = target.toPath();
+      PosixFileAttributeView posix = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+      if (posix != null)
+      {
+        UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+        UserPrincipal owner = posix.getOwner();
+        if (!owner.equals(user))
+          throw new IOException(target + " is owned by " + owner.getName() + ", not by " + user.getName());
+        posix.setPermissions(PosixFilePermissions.fromString(directory ? "rwx------" : "rw-------"));
+      }
+      else
+      {
+        boolean restricted = target.setReadable(false, false) & target.setReadable(true, true) & target.setWritable(false, false) & target.setWritable(true, true);
+        if (directory)
+          restricted &= target.setExecutable(false, false) & target.setExecutable(true, true);
+        if (!restricted)
+          throw new IOException("Cannot restrict the permissions of " + target);
+      }
+    }
+
+    private int countRecords() throws IOException
+    {
+      int records = 0;
+      long position = 0;
+      long length = raf.length();
+      while (position + 4 <= length)
+      {
+        raf.seek(position);
+        int recordLength = raf.readInt();
+        if (recordLength < 0)
+          break;
+        position += 4L + recordLength;
+        records++;
+      }
+      return records;
+    }
+
+    synchronized boolean isEmpty()
+    {
+      return count == 0;
+    }
+
+    synchronized int size()
+    {
+      return count;
+    }
+
+    synchronized boolean append(SpillableTask task) throws IOException
+    {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+      DataOutputStream out = new DataOutputStream(bytes);
+      task.writeTo(out);
+      out.flush();
+      if (writePosition + bytes.size() + 4 > MAX_SPILL_BYTES)
+        return false;
+      raf.seek(writePosition);
+      raf.writeInt(bytes.size());
+      raf.write(bytes.toByteArray());
+      writePosition = raf.getFilePointer();
+      count++;
+      return true;
+    }
+
+    synchronized SpillableTask poll(SpillReader reader) throws IOException
+    {
+      if (count == 0)
+        return null;
+      raf.seek(readPosition);
+      int length = raf.readInt();
+      byte[] record = new byte[length];
+      raf.readFully(record);
+      readPosition = raf.getFilePointer();
+      if (--count == 0)
+      {
+        readPosition = 0;
+        writePosition = 0;
+        raf.setLength(0);
+      }
+      return reader.readFrom(new DataInputStream(new ByteArrayInputStream(record)));
+    }
+
+    /**
+     * Closes and deletes the file, returning the number of records it still held.
+     */
+    synchronized int delete()
+    {
+      try
+      {
+        raf.close();
+      }
+      catch (IOException e)
+      {
+        ;
+      }
+      int discarded = count;
+      count = 0;
+      if (!file.delete())
+        file.deleteOnExit();
+      return discarded;
+    }
+  }
+}
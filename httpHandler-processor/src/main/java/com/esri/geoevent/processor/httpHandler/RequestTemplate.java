@@ -0,0 +1,234 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+
+/**
+ * A URL, body or header template such as <code>http://host/{field1}/folder?t={$lastPollingDateTime}</code>
+ * compiled once into literal and slot segments. Field slots are resolved to field indexes once per
+ * GeoEventDefinition GUID, so rendering an event is a single pass over the segments into a reused builder.
+ */
+public class RequestTemplate
+{
+  public static final String                      LAST_POLLING_DATE_TIME = "$lastPollingDateTime";
+  public static final String                      CURRENT_DATE_TIME      = "$currentDateTime";
+
+  private static final int                        LITERAL                = 0;
+  private static final int                        FIELD                  = 1;
+  private static final int                        LAST_POLLING           = 2;
+  private static final int                        CURRENT_TIME           = 3;
+
+  private static final ThreadLocal<StringBuilder> BUILDER                = new ThreadLocal<StringBuilder>()
+  {
+    @Override
+    protected StringBuilder initialValue()
+    {
+      return new StringBuilder(256);
+    }
+  };
+
+  private final String                            template;
+  private final int[]                             kinds;
+  private final String[]                          texts;
+  private final int[]                             slots;
+  private final String[]                          fieldNames;
+  private final ConcurrentMap<String, int[]>      fieldIndexes           = new ConcurrentHashMap<String, int[]>();
+
+  private RequestTemplate(String template, List<Integer> kinds, List<String> texts, List<Integer> slots, List<String> fieldNames)
+  {
+    this.template = template;
+    this.kinds = new int[kinds.size()];
+    this.texts = texts.toArray(new String[texts.size()]);
+    this.slots = new int[slots.size()];
+    for (int i = 0; i < this.kinds.length; i++)
+    {
+      this.kinds[i] = kinds.get(i);
+      this.slots[i] = slots.get(i);
+    }
+    this.fieldNames = fieldNames.toArray(new String[fieldNames.size()]);
+  }
+
+  /**
+   * Compiles a template. Text between '{' and '}' is a slot naming either a GeoEvent field or one of the
+   * processor-defined time values; everything else is copied as is.
+   */
+  public static RequestTemplate compile(String template)
+  {
+    List<Integer> kinds = new ArrayList<Integer>();
+    List<String> texts = new ArrayList<String>();
+    List<Integer> slots = new ArrayList<Integer>();
+    List<String> fieldNames = new ArrayList<String>();
+
+    String source = (template != null) ? template : "";
+    int length = source.length();
+    int literalStart = 0;
+    int pos = 0;
+    while (pos < length)
+    {
+      int open = source.indexOf('{', pos);
+      int close = (open >= 0) ? source.indexOf('}', open + 1) : -1;
+      if (open < 0 || close < 0)
+        break;
+
+      String name = source.substring(open + 1, close).trim();
+      if (name.isEmpty())
+      {
+        pos = close + 1;
+        continue;
+      }
+      if (open > literalStart)
+        addSegment(kinds, texts, slots, LITERAL, source.substring(literalStart, open), -1);
+
+      if (LAST_POLLING_DATE_TIME.equals(name))
+        addSegment(kinds, texts, slots, LAST_POLLING, name, -1);
+      else if (CURRENT_DATE_TIME.equals(name))
+        addSegment(kinds, texts, slots, CURRENT_TIME, name, -1);
+      else
+      {
+        int slot = fieldNames.indexOf(name);
+        if (slot < 0)
+        {
+          slot = fieldNames.size();
+          fieldNames.add(name);
+        }
+        addSegment(kinds, texts, slots, FIELD, name, slot);
+      }
+      pos = close + 1;
+      literalStart = pos;
+    }
+    if (literalStart < length)
+      addSegment(kinds, texts, slots, LITERAL, source.substring(literalStart), -1);
+
+    return new RequestTemplate(source, kinds, texts, slots, fieldNames);
+  }
+
+  private static void addSegment(List<Integer> kinds, List<String> texts, List<Integer> slots, int kind, String text, int slot)
+  {
+    kinds.add(kind);
+    texts.add(text);
+    slots.add(slot);
+  }
+
+  public String getTemplate()
+  {
+    return template;
+  }
+
+  /**
+   * Returns true if the template references GeoEvent fields, i.e. can only be rendered for an event.
+   */
+  public boolean hasFieldSlots()
+  {
+    return fieldNames.length > 0;
+  }
+
+  public boolean isLiteral()
+  {
+    return fieldNames.length == 0 && (kinds.length == 0 || (kinds.length == 1 && kinds[0] == LITERAL));
+  }
+
+  /**
+   * Renders the template for the given event. The event may be null (e.g. when polling), in which case field
+   * slots are rendered as their field names, just like slots that do not exist in the event's definition.
+   */
+  public String render(GeoEvent geoEvent, Date lastPollingDateTime, boolean useEpochMilliseconds)
+  {
+    if (isLiteral())
+      return template;
+
+    int[] indexes = null;
+    if (geoEvent != null && fieldNames.length > 0)
+      indexes = getFieldIndexes(geoEvent.getGeoEventDefinition());
+
+    StringBuilder sb = BUILDER.get();
+    sb.setLength(0);
+    for (int i = 0; i < kinds.length; i++)
+    {
+      switch (kinds[i])
+      {
+        case FIELD:
+          int idx = (indexes != null) ? indexes[slots[i]] : -1;
+          if (idx >= 0)
+          {
+            Object value = geoEvent.getField(idx);
+            if (value != null)
+              sb.append(value.toString());
+          }
+          else
+            sb.append(texts[i]);
+          break;
+        case LAST_POLLING:
+          appendTime(sb, (lastPollingDateTime != null) ? lastPollingDateTime.getTime() : System.currentTimeMillis(), useEpochMilliseconds);
+          break;
+        case CURRENT_TIME:
+          appendTime(sb, System.currentTimeMillis(), useEpochMilliseconds);
+          break;
+        default:
+          sb.append(texts[i]);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static void appendTime(StringBuilder sb, long millis, boolean useEpochMilliseconds)
+  {
+    sb.append(useEpochMilliseconds ? millis : millis / 1000);
+  }
+
+  private int[] getFieldIndexes(GeoEventDefinition gd)
+  {
+    if (gd == null)
+      return null;
+    String guid = gd.getGuid();
+    int fieldCount = gd.getFieldDefinitions().size();
+    int[] indexes = (guid != null) ? fieldIndexes.get(guid) : null;
+    // the last element records the field count the indexes were resolved against, so that a definition
+    // modified in place (same GUID) gets re-resolved.
+    if (indexes == null || indexes[fieldNames.length] != fieldCount)
+    {
+      indexes = new int[fieldNames.length + 1];
+      for (int i = 0; i < fieldNames.length; i++)
+        indexes[i] = gd.getIndexOf(fieldNames[i]);
+      indexes[fieldNames.length] = fieldCount;
+      if (guid != null)
+        fieldIndexes.put(guid, indexes);
+    }
+    return indexes;
+  }
+
+  @Override
+  public String toString()
+  {
+    return template;
+  }
+}
@@ -0,0 +1,242 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process cache of response bodies keyed by method, rendered URL, rendered header values and rendered
+ * body. Entries are fresh for <code>ttl</code> milliseconds and may then be served stale for another
+ * <code>staleWhileRevalidate</code> milliseconds while a single background request refreshes them. The
+ * cache is bounded by entry count and by total body size, evicting the least recently used entries first.
+ */
+public class ResponseCache
+{
+  private final long                         ttl;
+  private final long                         staleWhileRevalidate;
+  private final int                          maxEntries;
+  private final long                         maxBytes;
+
+  private final LinkedHashMap<String, Entry> entries     = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+  private long                               totalBytes;
+
+  private final AtomicLong                   hits        = new AtomicLong();
+  private final AtomicLong                   staleHits   = new AtomicLong();
+  private final AtomicLong                   misses      = new AtomicLong();
+  private final AtomicLong                   evictions   = new AtomicLong();
+  private final AtomicLong                   expirations = new AtomicLong();
+
+  public static class Entry
+  {
+    private final byte[] body;
+    private final String charset;
+    private final long   created;
+    private boolean      refreshing;
+
+    Entry(byte[] body, String charset, long created)
+    {
+      this.body = body;
+      this.charset = charset;
+      this.created = created;
+    }
+
+    public byte[] getBody()
+    {
+      return body;
+    }
+
+    public String getCharset()
+    {
+      return charset;
+    }
+  }
+
+  public ResponseCache(long ttl, long staleWhileRevalidate, int maxEntries, long maxBytes)
+  {
+    this.ttl = Math.max(0, ttl);
+    this.staleWhileRevalidate = Math.max(0, staleWhileRevalidate);
+    this.maxEntries = Math.max(1, maxEntries);
+    this.maxBytes = Math.max(1, maxBytes);
+  }
+
+  public static String key(String method, String url, String body, String[] headerValues)
+  {
+    StringBuilder sb = new StringBuilder(method.length() + url.length() + ((body != null) ? body.length() : 0) + 16);
+    sb.append(method).append('\n').append(url).append('\n');
+    if (headerValues != null)
+    {
+      for (String value : headerValues)
+        sb.append(value).append('\n');
+    }
+    if (body != null)
+      sb.append(body);
+    return sb.toString();
+  }
+
+  public boolean hasSameConfiguration(long ttl, long staleWhileRevalidate, int maxEntries, long maxBytes)
+  {
+    return this.ttl == Math.max(0, ttl) && this.staleWhileRevalidate == Math.max(0, staleWhileRevalidate) && this.maxEntries == Math.max(1, maxEntries) && this.maxBytes == Math.max(1, maxBytes);
+  }
+
+  /**
+   * Returns the cached entry if it is fresh or still within its stale-while-revalidate window, otherwise
+   * null. Use {@link #isFresh(Entry)} to tell the two apart.
+   */
+  public synchronized Entry get(String key)
+  {
+    Entry entry = entries.get(key);
+    if (entry == null)
+    {
+      misses.incrementAndGet();
+      return null;
+    }
+    long age = System.currentTimeMillis() - entry.created;
+    if (age <= ttl)
+    {
+      hits.incrementAndGet();
+      return entry;
+    }
+    if (age <= ttl + staleWhileRevalidate)
+    {
+      staleHits.incrementAndGet();
+      return entry;
+    }
+    remove(key);
+    expirations.incrementAndGet();
+    misses.incrementAndGet();
+    return null;
+  }
+
+  public boolean isFresh(Entry entry)
+  {
+    return System.currentTimeMillis() - entry.created <= ttl;
+  }
+
+  /**
+   * Claims the refresh of a stale entry. Only the first caller gets true, so a hot key is revalidated by a
+   * single request.
+   */
+  public synchronized boolean startRefresh(Entry entry)
+  {
+    if (entry.refreshing)
+      return false;
+    entry.refreshing = true;
+    return true;
+  }
+
+  /**
+   * Lets another request retry the refresh of the key after a failed one.
+   */
+  public synchronized void refreshFailed(String key)
+  {
+    Entry entry = entries.get(key);
+    if (entry != null)
+      entry.refreshing = false;
+  }
+
+  public synchronized void put(String key, byte[] body, String charset)
+  {
+    if (body == null || body.length > maxBytes)
+      return;
+    remove(key);
+    entries.put(key, new Entry(body, charset, System.currentTimeMillis()));
+    totalBytes += body.length;
+
+    Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+    while ((entries.size() > maxEntries || totalBytes > maxBytes) && eldest.hasNext())
+    {
+      Map.Entry<String, Entry> candidate = eldest.next();
+      if (candidate.getKey().equals(key))
+        break;
+      totalBytes -= candidate.getValue().body.length;
+      eldest.remove();
+      evictions.incrementAndGet();
+    }
+  }
+
+  public synchronized void clear()
+  {
+    entries.clear();
+    totalBytes = 0;
+  }
+
+  private void remove(String key)
+  {
+    Entry old = entries.remove(key);
+    if (old != null)
+      totalBytes -= old.body.length;
+  }
+
+  public synchronized int size()
+  {
+    return entries.size();
+  }
+
+  public synchronized long getTotalBytes()
+  {
+    return totalBytes;
+  }
+
+  public long getHitCount()
+  {
+    return hits.get();
+  }
+
+  public long getStaleHitCount()
+  {
+    return staleHits.get();
+  }
+
+  public long getMissCount()
+  {
+    return misses.get();
+  }
+
+  public long getEvictionCount()
+  {
+    return evictions.get();
+  }
+
+  public long getExpirationCount()
+  {
+    return expirations.get();
+  }
+
+  public double getHitRatio()
+  {
+    long served = hits.get() + staleHits.get();
+    long total = served + misses.get();
+    return (total > 0) ? (double) served / total : 0D;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "responseCache[entries=" + size() + ", bytes=" + getTotalBytes() + ", hits=" + hits.get() + ", staleHits=" + staleHits.get() + ", misses=" + misses.get() + ", hitRatio=" + String.format("%.3f", getHitRatio()) + ", evictions=" + evictions.get() + ", expirations=" + expirations.get() + "]";
+  }
+}
@@ -0,0 +1,330 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.ObjectNode;
+
+/**
+ * Streams the repeating record elements of an XML document with StAX and hands each one to a target as a
+ * JSON object, so records go through the same definition resolution as JSON ones. Only the record being
+ * read is held in memory. The records are selected by an element path: <code>/rss/channel/item</code>
+ * matches from the root element, <code>channel/item</code> or <code>item</code> at any depth, and
+ * <code>*</code> matches any one element. Without a path the whole document is one record.
+ * <p>
+ * Elements map to objects the way org.json's XML conversion does: attributes and child elements become
+ * fields, repeated child elements become arrays, text of an element that also has attributes or children
+ * becomes its <code>content</code> field, and numbers and booleans are typed.
+ */
+public class XmlRecordReader
+{
+  /**
+   * Receives the records found at the path.
+   */
+  public interface Target
+  {
+    void found(ObjectNode record) throws IOException;
+  }
+
+  private static final XMLInputFactory FACTORY = createFactory();
+
+  private final String                 expression;
+  private final String[]               steps;
+  private final boolean                absolute;
+
+  private XmlRecordReader(String expression, String[] steps, boolean absolute)
+  {
+    this.expression = expression;
+    this.steps = steps;
+    this.absolute = absolute;
+  }
+
+  /**
+   * Compiles an element path; null or blank selects the whole document.
+   *
+   * @throws IllegalArgumentException if the path has an empty step
+   */
+  public static XmlRecordReader compile(String expression)
+  {
+    if (expression == null || expression.trim().isEmpty())
+      return new XmlRecordReader(null, null, false);
+    String trimmed = expression.trim();
+    boolean absolute = trimmed.startsWith("/");
+    String[] steps = (absolute ? trimmed.substring(1) : trimmed).split("/", -1);
+    for (String step : steps)
+    {
+      if (step.trim().isEmpty())
+        throw new IllegalArgumentException("Empty step in element path \"" + trimmed + "\"");
+    }
+    for (int i = 0; i < steps.length; i++)
+      steps[i] = steps[i].trim();
+    return new XmlRecordReader(trimmed, steps, absolute);
+  }
+
+  /**
+   * Reads the whole document into a single object holding its root element, e.g. to match the items of a
+   * batched response.
+   */
+  public static ObjectNode readDocument(InputStream in, String charsetName) throws IOException
+  {
+    final ObjectNode[] document = new ObjectNode[1];
+    compile(null).read(in, charsetName, new Target()
+      {
+        @Override
+        public void found(ObjectNode record)
+        {
+          document[0] = record;
+        }
+      });
+    return document[0];
+  }
+
+  /**
+   * Streams the document, handing each record found to the target; returns the number of records. The
+   * charset may be null, in which case it is taken from the XML declaration or detected from the bytes.
+   * Elements outside the records are skipped without being built, as are records with text only.
+   */
+  public int read(InputStream in, String charsetName, Target target) throws IOException
+  {
+    XMLStreamReader reader = null;
+    int count = 0;
+    try
+    {
+      reader = (charsetName != null) ? FACTORY.createXMLStreamReader(in, charsetName) : FACTORY.createXMLStreamReader(in);
+      List<String> names = new ArrayList<String>();
+      Element element = null;
+      while (reader.hasNext())
+      {
+        switch (reader.next())
+        {
+          case XMLStreamConstants.START_ELEMENT:
+            String name = qualifiedName(reader.getPrefix(), reader.getLocalName());
+            names.add(name);
+            if (element != null || matches(names, reader.getLocalName()))
+            {
+              element = new Element(name, element);
+              for (int i = 0; i < reader.getAttributeCount(); i++)
+                element.add(qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), toValue(reader.getAttributeValue(i)));
+            }
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+            if (element != null)
+              element.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            if (element != null)
+            {
+              JsonNode value = element.toValue();
+              if (element.parent != null)
+              {
+                element.parent.add(element.name, value);
+              }
+              else if (steps == null)
+              {
+                ObjectNode document = JsonNodeFactory.instance.objectNode();
+                document.put(element.name, value);
+                count++;
+                target.found(document);
+              }
+              else if (value.isObject())
+              {
+                count++;
+                target.found((ObjectNode) value);
+              }
+              element = element.parent;
+            }
+            names.remove(names.size() - 1);
+            break;
+          default:
+            break;
+        }
+      }
+    }
+    catch (XMLStreamException e)
+    {
+      throw new IOException(e.getMessage(), e);
+    }
+    finally
+    {
+      if (reader != null)
+      {
+        try
+        {
+          reader.close();
+        }
+        catch (XMLStreamException e)
+        {
+          ;
+        }
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public String toString()
+  {
+    return expression;
+  }
+
+  // the open elements end in a record element: all of them for an absolute path, the last few otherwise
+  private boolean matches(List<String> names, String localName)
+  {
+    if (steps == null)
+      return names.size() == 1;
+    int offset = names.size() - steps.length;
+    if (offset < 0 || (absolute && offset != 0))
+      return false;
+    for (int i = 0; i < steps.length; i++)
+    {
+      String step = steps[i];
+      String name = names.get(offset + i);
+      if (!step.equals("*") && !step.equals(name) && !(i == steps.length - 1 && step.equals(localName)))
+        return false;
+    }
+    return true;
+  }
+
+  private static String qualifiedName(String prefix, String localName)
+  {
+    return (prefix == null || prefix.isEmpty()) ? localName : prefix + ":" + localName;
+  }
+
+  // numbers and booleans are typed, other text is kept as is; integers with leading zeros are identifiers
+  static JsonNode toValue(String text)
+  {
+    JsonNodeFactory factory = JsonNodeFactory.instance;
+    if (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("false"))
+      return factory.booleanNode(Boolean.parseBoolean(text));
+    if (!text.isEmpty() && isNumberStart(text.charAt(0)) && !(text.length() > 1 && text.charAt(0) == '0' && text.charAt(1) != '.'))
+    {
+      try
+      {
+        if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0)
+          return factory.numberNode(Long.parseLong(text));
+        double value = Double.parseDouble(text);
+        if (!Double.isInfinite(value) && !Double.isNaN(value))
+          return factory.numberNode(value);
+      }
+      catch (NumberFormatException e)
+      {
+        ;
+      }
+    }
+    return factory.textNode(text);
+  }
+
+  private static boolean isNumberStart(char c)
+  {
+    return (c >= '0' && c <= '9') || c == '-' || c == '.';
+  }
+
+  private static XMLInputFactory createFactory()
+  {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    // feeds are untrusted: no DTDs, so neither external entities nor entity expansion
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    return factory;
+  }
+
+  /**
+   * An element of the record being read, built into a value once it ends.
+   */
+  private static class Element
+  {
+    private final String        name;
+    private final Element       parent;
+    private ObjectNode          fields;
+    private StringBuilder       text;
+
+    Element(String name, Element parent)
+    {
+      this.name = name;
+      this.parent = parent;
+    }
+
+    void add(String fieldName, JsonNode value)
+    {
+      if (fields == null)
+        fields = JsonNodeFactory.instance.objectNode();
+      JsonNode existing = fields.get(fieldName);
+      if (existing == null)
+      {
+        fields.put(fieldName, value);
+      }
+      else if (existing.isArray())
+      {
+        ((ArrayNode) existing).add(value);
+      }
+      else
+      {
+        ArrayNode values = fields.putArray(fieldName);
+        values.add(existing);
+        values.add(value);
+      }
+    }
+
+    void append(char[] characters, int start, int length)
+    {
+      // whitespace between child elements is only kept once there is other text
+      if (text == null)
+      {
+        int end = start + length;
+        while (start < end && Character.isWhitespace(characters[start]))
+          start++;
+        if (start == end)
+          return;
+        length = end - start;
+        text = new StringBuilder(length);
+      }
+      text.append(characters, start, length);
+    }
+
+    JsonNode toValue()
+    {
+      String content = (text != null) ? text.toString().trim() : "";
+      if (fields == null)
+        return XmlRecordReader.toValue(content);
+      if (!content.isEmpty())
+        fields.put("content", XmlRecordReader.toValue(content));
+      return fields;
+    }
+  }
+}
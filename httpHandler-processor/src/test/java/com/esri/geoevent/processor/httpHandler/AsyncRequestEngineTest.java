@@ -0,0 +1,76 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.Test;
+
+public class AsyncRequestEngineTest
+{
+  @Test
+  public void testInterruptedExecuteFailsTheRequest()
+  {
+    final List<Exception> failures = new ArrayList<Exception>();
+    AsyncRequestEngine engine = new AsyncRequestEngine("test", 1, 1, 1000);
+    try
+    {
+      Thread.currentThread().interrupt();
+      engine.execute(new HttpGet("http://127.0.0.1:1/"), new AsyncRequestEngine.ResponseListener()
+        {
+          @Override
+          public void completed(HttpRequestBase request, HttpResponse response)
+          {
+            throw new AssertionError("completed");
+          }
+
+          @Override
+          public void failed(HttpRequestBase request, Exception error)
+          {
+            failures.add(error);
+          }
+        });
+      // the interrupt is kept for the caller
+      assertTrue(Thread.interrupted());
+      assertEquals(1, failures.size());
+      assertTrue(failures.get(0) instanceof InterruptedException);
+      assertEquals(0, engine.getInFlightCount());
+    }
+    finally
+    {
+      Thread.interrupted();
+      engine.shutdown();
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CsvReaderTest
+{
+  @Test
+  public void testSimpleRecords() throws IOException
+  {
+    CsvReader csv = new CsvReader(new StringReader("a,b,c\n1,2,3\n"), ',');
+    assertTrue(csv.readRecord());
+    assertEquals(3, csv.size());
+    assertEquals("a", csv.get(0));
+    assertNull(csv.get(3));
+    assertTrue(csv.readRecord());
+    assertArrayEquals(new String[] { "1", "2", "3" }, csv.toArray());
+    assertEquals(2, csv.getRecordNumber());
+    assertFalse(csv.readRecord());
+    assertFalse(csv.readRecord());
+  }
+
+  @Test
+  public void testQuotedFields()
+  {
+    assertRecords("\"a,b\",\"say \"\"hi\"\"\",\"\"\n", row("a,b", "say \"hi\"", ""));
+    assertRecords("\"x\"\"\"\n", row("x\""));
+  }
+
+  @Test
+  public void testLineBreaksInQuotedFields()
+  {
+    assertRecords("\"line 1\r\nline 2\",b\n\"cr\ronly\",\"lf\nonly\"\n", row("line 1\r\nline 2", "b"), row("cr\ronly", "lf\nonly"));
+  }
+
+  @Test
+  public void testLineEndings()
+  {
+    assertRecords("a,b\r\nc,d\re,f\ng,h", row("a", "b"), row("c", "d"), row("e", "f"), row("g", "h"));
+    assertRecords("a\r\r\n\nb\r\n", row("a"), row("b"));
+  }
+
+  @Test
+  public void testBlankLinesAreSkipped() throws IOException
+  {
+    CsvReader csv = new CsvReader(new StringReader("\n\na\n\n\nb\n\n"), ',');
+    assertTrue(csv.readRecord());
+    assertEquals("a", csv.get(0));
+    assertTrue(csv.readRecord());
+    assertEquals("b", csv.get(0));
+    assertEquals(2, csv.getRecordNumber());
+    assertFalse(csv.readRecord());
+  }
+
+  @Test
+  public void testByteOrderMarkIsDroppedAtTheStartOnly()
+  {
+    assertRecords("\uFEFFa,b\n\uFEFFc\n", row("a", "b"), row("\uFEFFc"));
+  }
+
+  @Test
+  public void testPadding()
+  {
+    // unquoted fields are trimmed, quoted ones are kept as they are
+    assertRecords(" a , \" b \",c \n", row("a", " b ", "c"));
+  }
+
+  @Test
+  public void testEmptyFields()
+  {
+    assertRecords("a,,b,\n,\n", row("a", "", "b", ""), row("", ""));
+  }
+
+  @Test
+  public void testUnterminatedQuoteEndsTheRecord()
+  {
+    assertRecords("a,\"b\nc", row("a", "b\nc"));
+  }
+
+  @Test
+  public void testSeparators()
+  {
+    assertEquals('\t', CsvReader.toSeparator("\\t"));
+    assertEquals('\t', CsvReader.toSeparator("TAB"));
+    assertEquals(';', CsvReader.toSeparator(";"));
+    assertEquals(',', CsvReader.toSeparator(""));
+    assertEquals(',', CsvReader.toSeparator(null));
+    assertEquals(',', CsvReader.toSeparator("\""));
+    assertEquals(Arrays.asList(row("a", "b,c", "d;e")), read("a\tb,c\t\"d;e\"\n", '\t'));
+    assertEquals(Arrays.asList(row("a", "b,c")), read("a;\"b,c\"\n", ';'));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testQuoteCannotSeparate()
+  {
+    new CsvReader(new StringReader(""), '"');
+  }
+
+  @Test
+  public void testBufferBoundaries()
+  {
+    // a CRLF and a doubled quote split across the end of the read buffer
+    StringBuilder text = new StringBuilder();
+    while (text.length() < 8191)
+      text.append('x');
+    text.append("\r\n\"y\"\"z\"\n");
+    List<List<String>> records = read(text.toString(), ',');
+    assertEquals(2, records.size());
+    assertEquals(8191, records.get(0).get(0).length());
+    assertEquals(Arrays.asList("y\"z"), records.get(1));
+
+    text.setLength(8190);
+    text.append("\"\"\"\"\n");
+    records = read(text.toString(), ',');
+    assertEquals(1, records.size());
+  }
+
+  @Test
+  public void testShortReads()
+  {
+    String text = "\uFEFF\"a\r\nb\",\"c\"\"\"\r\nd,e\r\r\nf";
+    List<List<String>> expected = read(text, ',');
+    assertEquals(Arrays.asList(row("a\r\nb", "c\""), row("d", "e"), row("f")), expected);
+    assertEquals(expected, read(new OneCharReader(new StringReader(text)), ','));
+  }
+
+  private static List<String> row(String... values)
+  {
+    return Arrays.asList(values);
+  }
+
+  @SafeVarargs
+  private static void assertRecords(String text, List<String>... expected)
+  {
+    assertEquals(Arrays.asList(expected), read(text, ','));
+  }
+
+  private static List<List<String>> read(String text, char separator)
+  {
+    return read(new StringReader(text), separator);
+  }
+
+  private static List<List<String>> read(Reader reader, char separator)
+  {
+    List<List<String>> records = new ArrayList<List<String>>();
+    try (CsvReader csv = new CsvReader(reader, separator))
+    {
+      while (csv.readRecord())
+        records.add(Arrays.asList(csv.toArray()));
+    }
+    catch (IOException e)
+    {
+      throw new AssertionError(e);
+    }
+    return records;
+  }
+
+  // hands out one character per read, as a slow network stream may
+  private static class OneCharReader extends FilterReader
+  {
+    OneCharReader(Reader in)
+    {
+      super(in);
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException
+    {
+      return super.read(buffer, offset, Math.min(1, length));
+    }
+  }
+}
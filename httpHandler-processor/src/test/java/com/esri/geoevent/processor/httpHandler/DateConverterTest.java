@@ -0,0 +1,143 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import org.junit.Test;
+
+public class DateConverterTest
+{
+  private final DateConverter converter = new DateConverter(null);
+
+  @Test
+  public void testEpochSecondsAndMilliseconds()
+  {
+    assertEquals(1500000000000L, converter.fromEpoch(1500000000L).getTime());
+    assertEquals(1500000000000L, converter.fromEpoch(1500000000000L).getTime());
+    assertEquals(-1500000000000L, converter.fromEpoch(-1500000000L).getTime());
+    // 10^11 is the first value taken as milliseconds
+    assertEquals(99999999999000L, converter.fromEpoch(99999999999L).getTime());
+    assertEquals(100000000000L, converter.fromEpoch(100000000000L).getTime());
+    assertEquals(0L, converter.fromEpoch(0L).getTime());
+  }
+
+  @Test
+  public void testEpochWithFraction()
+  {
+    assertEquals(1500000000500L, converter.fromEpoch(1500000000.5).getTime());
+    assertEquals(1500000000123L, converter.fromEpoch(1500000000123.0).getTime());
+  }
+
+  @Test
+  public void testEpochText()
+  {
+    assertEquals(1500000000000L, converter.convert("time", "1500000000").getTime());
+    assertEquals(1500000000123L, converter.convert("time", " 1500000000123 ").getTime());
+    assertEquals(-60000L, converter.convert("time", "-60").getTime());
+    assertNull(converter.convert("time", ""));
+    assertNull(converter.convert("time", null));
+  }
+
+  @Test
+  public void testIsoFormats() throws ParseException
+  {
+    assertEquals(utc("2017-03-04T05:06:07.000Z"), converter.convert("time", "2017-03-04T05:06:07Z"));
+    assertEquals(utc("2017-03-04T05:06:07.000Z"), converter.convert("time", "2017-03-04T07:06:07+02:00"));
+    assertEquals(utc("2017-03-04T05:06:07.123Z"), converter.convert("time", "2017-03-04T05:06:07.123Z"));
+    // fractions are cut or padded to milliseconds
+    assertEquals(utc("2017-03-04T05:06:07.123Z"), converter.convert("time", "2017-03-04T05:06:07.123456Z"));
+    assertEquals(utc("2017-03-04T05:06:07.500Z"), converter.convert("time", "2017-03-04T05:06:07.5Z"));
+    assertEquals(local("yyyy-MM-dd'T'HH:mm:ss", "2017-03-04T05:06:07"), converter.convert("time", "2017-03-04T05:06:07"));
+    assertEquals(local("yyyy-MM-dd", "2017-03-04"), converter.convert("time", "2017-03-04"));
+  }
+
+  @Test
+  public void testUsFormats() throws ParseException
+  {
+    assertEquals(local("MM/dd/yyyy HH:mm:ss", "03/04/2017 17:06:07"), converter.convert("time", "03/04/2017 05:06:07 PM"));
+    assertEquals(local("MM/dd/yyyy HH:mm:ss", "03/04/2017 17:06:07"), converter.convert("time", "03/04/2017 17:06:07"));
+  }
+
+  @Test
+  public void testLearnedFormatIsPerField() throws ParseException
+  {
+    DateConverter european = new DateConverter("dd/MM/yyyy HH:mm:ss");
+    // only the US format fits, which the field then tries first
+    assertEquals(local("MM/dd/yyyy HH:mm:ss", "01/13/2017 10:00:00"), european.convert("us", "01/13/2017 10:00:00"));
+    assertEquals(local("MM/dd/yyyy HH:mm:ss", "02/03/2017 10:00:00"), european.convert("us", "02/03/2017 10:00:00"));
+    // another field still follows the custom format
+    assertEquals(local("dd/MM/yyyy HH:mm:ss", "02/03/2017 10:00:00"), european.convert("eu", "02/03/2017 10:00:00"));
+  }
+
+  @Test
+  public void testLearnedFormatFallsBack() throws ParseException
+  {
+    assertEquals(utc("2017-03-04T05:06:07.000Z"), converter.convert("time", "2017-03-04T05:06:07Z"));
+    assertEquals(local("yyyy-MM-dd", "2017-03-05"), converter.convert("time", "2017-03-05"));
+    assertEquals(utc("2017-03-06T05:06:07.000Z"), converter.convert("time", "2017-03-06T05:06:07Z"));
+  }
+
+  @Test
+  public void testLooksLikeADate()
+  {
+    assertTrue(converter.looksLikeADate("2017-03-04T05:06:07Z"));
+    assertTrue(converter.looksLikeADate("3/4/2017 5:06:07 PM"));
+    assertFalse(converter.looksLikeADate("2017-03-04"));
+    assertFalse(converter.looksLikeADate("12/34"));
+    assertFalse(converter.looksLikeADate("hello world, this is text"));
+    assertFalse(converter.looksLikeADate(null));
+
+    DateConverter custom = new DateConverter("dd.MM.yyyy");
+    assertTrue(custom.looksLikeADate("04.03.2017"));
+    assertFalse(custom.looksLikeADate("2017-03-04T05:06:07Z"));
+    assertFalse(custom.looksLikeADate("no digits"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidCustomFormat()
+  {
+    new DateConverter("yyyy-MM-dd'T");
+  }
+
+  private static Date utc(String value) throws ParseException
+  {
+    return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX", Locale.US).parse(value);
+  }
+
+  private static Date local(String pattern, String value) throws ParseException
+  {
+    return new SimpleDateFormat(pattern, Locale.US).parse(value);
+  }
+}
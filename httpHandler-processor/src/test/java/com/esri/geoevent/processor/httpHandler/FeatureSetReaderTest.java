@@ -0,0 +1,278 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ObjectNode;
+import org.junit.Test;
+
+import com.esri.core.geometry.Envelope;
+import com.esri.core.geometry.Geometry;
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.MultiPoint;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.Polygon;
+import com.esri.core.geometry.Polyline;
+import com.esri.core.geometry.VertexDescription;
+
+public class FeatureSetReaderTest
+{
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  private static class Feature
+  {
+    private final ObjectNode  attributes;
+    private final MapGeometry geometry;
+
+    Feature(ObjectNode attributes, MapGeometry geometry)
+    {
+      this.attributes = attributes;
+      this.geometry = geometry;
+    }
+  }
+
+  @Test
+  public void testGeoJsonRingsAreReoriented() throws IOException
+  {
+    // RFC 7946: a counterclockwise exterior with a clockwise hole, both closed
+    Polygon polygon = (Polygon) geoJson("{'type':'Polygon','coordinates':[[[0,0],[10,0],[10,10],[0,10],[0,0]],[[2,2],[2,4],[4,4],[4,2],[2,2]]]}");
+    assertEquals(2, polygon.getPathCount());
+    // the closing position is not repeated
+    assertEquals(8, polygon.getPointCount());
+    // a clockwise exterior has a positive area and a counterclockwise hole a negative one
+    assertEquals(100 - 4, polygon.calculateArea2D(), 0.0);
+    assertTrue(polygon.isExteriorRing(0));
+    assertFalse(polygon.isExteriorRing(1));
+    assertPoint(0, 10, polygon.getPoint(0));
+    assertPoint(10, 10, polygon.getPoint(1));
+    assertPoint(4, 2, polygon.getPoint(4));
+  }
+
+  @Test
+  public void testGeoJsonRingsAlreadyClockwiseAreKept() throws IOException
+  {
+    // written for the geometry engine rather than to RFC 7946, and without closing positions
+    Polygon polygon = (Polygon) geoJson("{'type':'Polygon','coordinates':[[[0,0],[0,10],[10,10],[10,0]],[[2,2],[4,2],[4,4],[2,4]]]}");
+    assertEquals(8, polygon.getPointCount());
+    assertEquals(96, polygon.calculateArea2D(), 0.0);
+    assertPoint(0, 0, polygon.getPoint(0));
+    assertPoint(0, 10, polygon.getPoint(1));
+    assertPoint(2, 2, polygon.getPoint(4));
+    assertPoint(4, 2, polygon.getPoint(5));
+  }
+
+  @Test
+  public void testGeoJsonMultiPolygon() throws IOException
+  {
+    Polygon polygon = (Polygon) geoJson("{'type':'MultiPolygon','coordinates':[[[[0,0],[1,0],[1,1],[0,1],[0,0]]],[[[5,5],[5,8],[8,8],[8,5],[5,5]],[[6,6],[7,6],[7,7],[6,7],[6,6]]]]}");
+    assertEquals(3, polygon.getPathCount());
+    assertEquals(1 + 9 - 1, polygon.calculateArea2D(), 0.0);
+    assertTrue(polygon.isExteriorRing(0));
+    assertTrue(polygon.isExteriorRing(1));
+    assertFalse(polygon.isExteriorRing(2));
+  }
+
+  @Test
+  public void testEsriRingsAreKeptAsGiven() throws IOException
+  {
+    List<Feature> features = read(false, "{'features':[{'attributes':{'id':1},'geometry':{'rings':[[[0,0],[0,10],[10,10],[10,0],[0,0]],[[2,2],[4,2],[4,4],[2,4],[2,2]]]}}]}");
+    Polygon polygon = (Polygon) features.get(0).geometry.getGeometry();
+    assertEquals(8, polygon.getPointCount());
+    assertEquals(96, polygon.calculateArea2D(), 0.0);
+    assertPoint(0, 10, polygon.getPoint(1));
+  }
+
+  @Test
+  public void testGeoJsonGeometryTypes() throws IOException
+  {
+    Point point = (Point) geoJson("{'coordinates':[1.5,2.5,3.5,4.5],'type':'Point'}");
+    assertPoint(1.5, 2.5, point);
+    assertEquals(3.5, point.getZ(), 0.0);
+
+    Polyline line = (Polyline) geoJson("{'type':'LineString','coordinates':[[0,0],[1,1],[2,0]]}");
+    assertEquals(1, line.getPathCount());
+    assertEquals(3, line.getPointCount());
+    // a closed line keeps its last vertex, only rings drop it
+    Polyline lines = (Polyline) geoJson("{'type':'MultiLineString','coordinates':[[[0,0],[1,1]],[[2,2],[3,3],[2,2]]]}");
+    assertEquals(2, lines.getPathCount());
+    assertEquals(5, lines.getPointCount());
+
+    MultiPoint points = (MultiPoint) geoJson("{'type':'MultiPoint','coordinates':[[0,0],[1,1]]}");
+    assertEquals(2, points.getPointCount());
+
+    assertNull(geoJson("{'type':'GeometryCollection','geometries':[{'type':'Point','coordinates':[0,0]}]}"));
+    assertNull(geoJson("{'type':'Point'}"));
+  }
+
+  @Test
+  public void testEsriGeometryTypes() throws IOException
+  {
+    List<Feature> features = read(false, "{'features':["
+        + "{'geometry':{'x':1,'y':2,'z':3}},"
+        + "{'geometry':{'paths':[[[0,0],[1,1]],[[2,2],[3,3]]]}},"
+        + "{'geometry':{'points':[[0,0],[1,1],[2,2]]}},"
+        + "{'geometry':{'xmin':0,'ymin':1,'xmax':2,'ymax':3}},"
+        + "{'geometry':{'x':'NaN','y':null}},"
+        + "{'attributes':{'a':1}}]}");
+    assertEquals(6, features.size());
+    Point point = (Point) features.get(0).geometry.getGeometry();
+    assertPoint(1, 2, point);
+    assertEquals(3, point.getZ(), 0.0);
+    assertEquals(2, ((Polyline) features.get(1).geometry.getGeometry()).getPathCount());
+    assertEquals(3, ((MultiPoint) features.get(2).geometry.getGeometry()).getPointCount());
+    Envelope envelope = (Envelope) features.get(3).geometry.getGeometry();
+    assertEquals(2, envelope.getXMax(), 0.0);
+    assertEquals(1, envelope.getYMin(), 0.0);
+    assertNull(features.get(4).geometry);
+    assertNull(features.get(5).geometry);
+    assertEquals(1, features.get(5).attributes.get("a").getIntValue());
+    assertEquals(0, features.get(4).attributes.size());
+  }
+
+  @Test
+  public void testEsriZAndMFollowTheFlags() throws IOException
+  {
+    List<Feature> features = read(false, "{'hasZ':false,'hasM':true,'features':["
+        + "{'geometry':{'points':[[1,2,7]]}},"
+        + "{'geometry':{'paths':[[[0,0,5,8],[1,1,null,9]]],'hasZ':true}},"
+        + "{'geometry':{'x':1,'y':2,'m':4}}]}");
+    MultiPoint points = (MultiPoint) features.get(0).geometry.getGeometry();
+    assertFalse(points.hasAttribute(VertexDescription.Semantics.Z));
+    assertEquals(7, points.getPoint(0).getM(), 0.0);
+    // the geometry's own flags win over the FeatureSet's
+    Polyline polyline = (Polyline) features.get(1).geometry.getGeometry();
+    assertEquals(5, polyline.getPoint(0).getZ(), 0.0);
+    assertEquals(8, polyline.getPoint(0).getM(), 0.0);
+    assertEquals(9, polyline.getPoint(1).getM(), 0.0);
+    Point point = (Point) features.get(2).geometry.getGeometry();
+    assertFalse(point.hasAttribute(VertexDescription.Semantics.Z));
+    assertEquals(4, point.getM(), 0.0);
+  }
+
+  @Test
+  public void testEsriPositionsWithoutFlags() throws IOException
+  {
+    List<Feature> features = read(false, "{'features':["
+        + "{'geometry':{'points':[[1,2,3],[1,2,null,4],[1,2,3,4]]}},"
+        + "{'geometry':{'rings':[[[0,0,1],[0,1,1],[1,1,1]]],'hasM':true}}]}");
+    MultiPoint points = (MultiPoint) features.get(0).geometry.getGeometry();
+    assertEquals(3, points.getPoint(0).getZ(), 0.0);
+    assertTrue(Double.isNaN(points.getPoint(0).getM()));
+    assertEquals(0, points.getPoint(1).getZ(), 0.0);
+    // a null z keeps m in fourth place
+    assertEquals(4, points.getPoint(1).getM(), 0.0);
+    assertEquals(3, points.getPoint(2).getZ(), 0.0);
+    assertEquals(4, points.getPoint(2).getM(), 0.0);
+    // an m-only geometry has m third
+    Polygon polygon = (Polygon) features.get(1).geometry.getGeometry();
+    assertEquals(1, polygon.getPoint(0).getM(), 0.0);
+    assertFalse(polygon.hasAttribute(VertexDescription.Semantics.Z));
+  }
+
+  @Test
+  public void testGeoJsonThirdValueIsZ() throws IOException
+  {
+    Point point = (Point) geoJson("{'type':'Point','coordinates':[1,2,3,4]}");
+    assertEquals(3, point.getZ(), 0.0);
+    assertFalse(point.hasAttribute(VertexDescription.Semantics.M));
+    assertNull(geoJson("{'type':'Point','coordinates':[1,null]}"));
+  }
+
+  @Test
+  public void testSpatialReferences() throws IOException
+  {
+    List<Feature> features = read(false, "{'spatialReference':{'wkid':102100,'latestWkid':3857},'features':["
+        + "{'geometry':{'x':1,'y':2}},"
+        + "{'geometry':{'x':1,'y':2,'spatialReference':{'latestWkid':2193}}}]}"
+        + "{'features':[{'geometry':{'x':1,'y':2}}]}");
+    assertEquals(102100, features.get(0).geometry.getSpatialReference().getID());
+    assertEquals(2193, features.get(1).geometry.getSpatialReference().getID());
+    // a FeatureSet without a spatial reference is in WGS84, whatever the document before it was
+    assertEquals(4326, features.get(2).geometry.getSpatialReference().getID());
+
+    features = read(true, "{'type':'FeatureCollection','crs':{'type':'name','properties':{'name':'urn:ogc:def:crs:EPSG::3857'}},'features':[{'type':'Feature','geometry':{'type':'Point','coordinates':[1,2]}}]}"
+        + "{'type':'FeatureCollection','crs':{'type':'name','properties':{'name':'urn:ogc:def:crs:OGC:1.3:CRS84'}},'features':[{'type':'Feature','geometry':{'type':'Point','coordinates':[1,2]}}]}"
+        + "{'type':'FeatureCollection','features':[{'type':'Feature','geometry':{'type':'Point','coordinates':[1,2]}}]}");
+    assertEquals(3857, features.get(0).geometry.getSpatialReference().getID());
+    assertEquals(4326, features.get(1).geometry.getSpatialReference().getID());
+    assertEquals(4326, features.get(2).geometry.getSpatialReference().getID());
+  }
+
+  @Test
+  public void testGeoJsonFeatureId() throws IOException
+  {
+    List<Feature> features = read(true, "[{'type':'Feature','id':'f1','properties':{'name':'a'},'geometry':null},"
+        + "{'type':'Feature','id':7,'properties':{'id':'own'}},"
+        + "{'type':'Feature','properties':null}, 5]");
+    assertEquals(3, features.size());
+    assertEquals("f1", features.get(0).attributes.get("id").getTextValue());
+    assertEquals("a", features.get(0).attributes.get("name").getTextValue());
+    assertNull(features.get(0).geometry);
+    // the properties keep an id of their own
+    assertEquals("own", features.get(1).attributes.get("id").getTextValue());
+    assertEquals(0, features.get(2).attributes.size());
+  }
+
+  private Geometry geoJson(String geometry) throws IOException
+  {
+    List<Feature> features = read(true, "{'type':'FeatureCollection','features':[{'type':'Feature','properties':{},'geometry':" + geometry + "}]}");
+    assertEquals(1, features.size());
+    MapGeometry mapGeometry = features.get(0).geometry;
+    return (mapGeometry != null) ? mapGeometry.getGeometry() : null;
+  }
+
+  // single quotes keep the documents readable, none of them holds a quote of its own
+  private List<Feature> read(boolean geoJson, String json) throws IOException
+  {
+    final List<Feature> features = new ArrayList<Feature>();
+    int count = new FeatureSetReader(geoJson).read(mapper.getJsonFactory().createJsonParser(json.replace('\'', '"')), new FeatureSetReader.Target()
+      {
+        @Override
+        public void found(ObjectNode attributes, MapGeometry geometry)
+        {
+          features.add(new Feature(attributes, geometry));
+        }
+      });
+    assertEquals(features.size(), count);
+    return features;
+  }
+
+  private static void assertPoint(double x, double y, Point point)
+  {
+    assertEquals(x, point.getX(), 0.0);
+    assertEquals(y, point.getY(), 0.0);
+  }
+}
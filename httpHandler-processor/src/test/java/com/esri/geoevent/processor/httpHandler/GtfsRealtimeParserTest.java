@@ -0,0 +1,233 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Point;
+import com.esri.ges.core.Uri;
+import com.esri.ges.core.geoevent.FieldGroup;
+import com.esri.ges.core.geoevent.FieldType;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+
+public class GtfsRealtimeParserTest
+{
+  private static final long FEED_TIMESTAMP = 1500000000L;
+
+  @Test
+  public void testVehiclePosition() throws IOException
+  {
+    ProtobufBytes vehicle = new ProtobufBytes()
+        .message(1, new ProtobufBytes().string(1, "trip-1").string(2, "08:15:00").string(3, "20170714").varint(4, 0).string(5, "route-7").varint(6, 1))
+        .message(2, new ProtobufBytes().fixed32(1, 34.1f).fixed32(2, -117.25f).fixed32(3, 90f).fixed64(4, 1234.5).fixed32(5, 10.5f).varint(99, 1))
+        .varint(3, 12)
+        .varint(4, 1)
+        .varint(6, 2)
+        .string(7, "stop-3")
+        .message(8, new ProtobufBytes().string(1, "bus-42").string(2, "42").string(3, "ABC 123"))
+        .varint(9, 3)
+        // fields this decoder does not know are skipped
+        .string(20, "extension")
+        .fixed64(21, 0.0);
+    List<GeoEvent> events = read(feed(new ProtobufBytes().string(1, "e1").message(4, vehicle)));
+
+    assertEquals(1, events.size());
+    GeoEvent event = events.get(0);
+    assertEquals("e1", event.getField("entityId"));
+    assertEquals("bus-42", event.getField("vehicleId"));
+    assertEquals("42", event.getField("vehicleLabel"));
+    assertEquals("trip-1", event.getField("tripId"));
+    assertEquals("route-7", event.getField("routeId"));
+    assertEquals(1, event.getField("directionId"));
+    assertEquals("08:15:00", event.getField("startTime"));
+    assertEquals("20170714", event.getField("startDate"));
+    assertEquals("SCHEDULED", event.getField("tripScheduleRelationship"));
+    // floats keep their decimal digits
+    assertEquals(34.1, event.getField("latitude"));
+    assertEquals(-117.25, event.getField("longitude"));
+    assertEquals(90.0, event.getField("bearing"));
+    assertEquals(1234.5, event.getField("odometer"));
+    assertEquals(10.5, event.getField("speed"));
+    assertEquals(12, event.getField("currentStopSequence"));
+    assertEquals("STOPPED_AT", event.getField("currentStatus"));
+    assertEquals("STOP_AND_GO", event.getField("congestionLevel"));
+    assertEquals("STANDING_ROOM_ONLY", event.getField("occupancyStatus"));
+    assertEquals("stop-3", event.getField("stopId"));
+    // a position without a timestamp of its own was observed at the feed timestamp
+    assertEquals(new Date(FEED_TIMESTAMP * 1000), event.getField("timestamp"));
+
+    MapGeometry geometry = event.getGeometry();
+    Point point = (Point) geometry.getGeometry();
+    assertEquals(-117.25, point.getX(), 1e-9);
+    assertEquals(34.1, point.getY(), 1e-9);
+    assertEquals(4326, geometry.getSpatialReference().getID());
+  }
+
+  @Test
+  public void testVehiclePositionTimestampAndUnknownEnumValues() throws IOException
+  {
+    ProtobufBytes vehicle = new ProtobufBytes().varint(5, FEED_TIMESTAMP + 30).varint(4, 9).message(8, new ProtobufBytes().string(1, "bus-1"));
+    List<GeoEvent> events = read(feed(new ProtobufBytes().string(1, "e1").message(4, vehicle)));
+
+    GeoEvent event = events.get(0);
+    assertEquals(new Date((FEED_TIMESTAMP + 30) * 1000), event.getField("timestamp"));
+    // a value added to the enum after this decoder is kept as its number
+    assertEquals("9", event.getField("currentStatus"));
+    assertNull(event.getField("latitude"));
+    assertNull(event.getGeometry());
+  }
+
+  @Test
+  public void testTripUpdate() throws IOException
+  {
+    ProtobufBytes tripUpdate = new ProtobufBytes()
+        .message(1, new ProtobufBytes().string(1, "trip-9").string(5, "route-2").varint(4, 3))
+        .message(2, new ProtobufBytes().varint(1, 1).string(4, "stop-a").message(2, new ProtobufBytes().varint(1, -30L).varint(2, FEED_TIMESTAMP + 60).varint(3, 5)))
+        .message(2, new ProtobufBytes().varint(1, 2).string(4, "stop-b").message(3, new ProtobufBytes().varint(2, FEED_TIMESTAMP + 120)).varint(5, 1))
+        .message(3, new ProtobufBytes().string(1, "bus-7"))
+        .varint(4, FEED_TIMESTAMP + 10)
+        .varint(5, -30L);
+    List<GeoEvent> events = read(feed(new ProtobufBytes().string(1, "e2").message(3, tripUpdate)));
+
+    assertEquals(1, events.size());
+    GeoEvent event = events.get(0);
+    assertEquals("e2", event.getField("entityId"));
+    assertEquals("trip-9", event.getField("tripId"));
+    assertEquals("route-2", event.getField("routeId"));
+    assertEquals("CANCELED", event.getField("tripScheduleRelationship"));
+    assertEquals("bus-7", event.getField("vehicleId"));
+    assertEquals(-30, event.getField("delay"));
+    assertEquals(new Date((FEED_TIMESTAMP + 10) * 1000), event.getField("timestamp"));
+    assertNull(event.getGeometry());
+
+    @SuppressWarnings("unchecked")
+    List<FieldGroup> stops = (List<FieldGroup>) event.getField("stopTimeUpdates");
+    assertEquals(2, stops.size());
+    assertEquals(1, stops.get(0).getField("stopSequence"));
+    assertEquals("stop-a", stops.get(0).getField("stopId"));
+    assertEquals(-30, stops.get(0).getField("arrivalDelay"));
+    assertEquals(new Date((FEED_TIMESTAMP + 60) * 1000), stops.get(0).getField("arrivalTime"));
+    assertEquals(5, stops.get(0).getField("arrivalUncertainty"));
+    assertNull(stops.get(0).getField("departureTime"));
+    assertNull(stops.get(0).getField("scheduleRelationship"));
+    assertEquals(2, stops.get(1).getField("stopSequence"));
+    assertEquals(new Date((FEED_TIMESTAMP + 120) * 1000), stops.get(1).getField("departureTime"));
+    assertNull(stops.get(1).getField("arrivalTime"));
+    assertEquals("SKIPPED", stops.get(1).getField("scheduleRelationship"));
+  }
+
+  @Test
+  public void testDeletedEntitiesAndAlertsAreSkipped() throws IOException
+  {
+    ProtobufBytes vehicle = new ProtobufBytes().message(8, new ProtobufBytes().string(1, "bus-1"));
+    ProtobufBytes alert = new ProtobufBytes().message(10, new ProtobufBytes().string(1, "Detour"));
+    List<GeoEvent> events = read(feed(
+        new ProtobufBytes().string(1, "deleted").varint(2, 1).message(4, vehicle),
+        new ProtobufBytes().string(1, "alert").message(5, alert),
+        new ProtobufBytes().string(1, "kept").varint(2, 0).message(4, vehicle)));
+
+    assertEquals(1, events.size());
+    assertEquals("kept", events.get(0).getField("entityId"));
+  }
+
+  @Test
+  public void testFieldsMissingFromTheDefinitionAreDropped() throws IOException
+  {
+    GeoEventDefinition vehiclePositions = SdkFakes.definition("vp", GtfsRealtimeParser.VEHICLE_POSITION_DEFINITION_NAME, SdkFakes.field("vehicleId", FieldType.String), SdkFakes.field("speed", FieldType.Double));
+    GtfsRealtimeParser parser = new GtfsRealtimeParser(SdkFakes.creator(vehiclePositions), new Uri("auto-generated", "test", "1"), "test");
+    ProtobufBytes vehicle = new ProtobufBytes().message(2, new ProtobufBytes().fixed32(1, 1f).fixed32(2, 2f).fixed32(5, 3f)).message(8, new ProtobufBytes().string(1, "bus-1").string(3, "XYZ"));
+    List<GeoEvent> events = read(parser, feed(new ProtobufBytes().string(1, "e1").message(4, vehicle)));
+
+    GeoEvent event = events.get(0);
+    assertEquals("bus-1", event.getField("vehicleId"));
+    assertEquals(3.0, event.getField("speed"));
+    assertEquals(2.0, ((Point) event.getGeometry().getGeometry()).getX(), 0.0);
+  }
+
+  @Test
+  public void testEmptyFeed() throws IOException
+  {
+    assertEquals(0, read(feed()).size());
+    assertEquals(0, read(new ProtobufBytes()).size());
+  }
+
+  private static ProtobufBytes feed(ProtobufBytes... entities)
+  {
+    ProtobufBytes feed = new ProtobufBytes().message(1, new ProtobufBytes().string(1, "2.0").varint(2, 0).varint(3, FEED_TIMESTAMP));
+    for (ProtobufBytes entity : entities)
+      feed.message(2, entity);
+    return feed;
+  }
+
+  private static List<GeoEvent> read(ProtobufBytes feed) throws IOException
+  {
+    GeoEventDefinition vehiclePositions = SdkFakes.definition("vp", GtfsRealtimeParser.VEHICLE_POSITION_DEFINITION_NAME,
+        SdkFakes.field("entityId", FieldType.String), SdkFakes.field("vehicleId", FieldType.String), SdkFakes.field("vehicleLabel", FieldType.String),
+        SdkFakes.field("licensePlate", FieldType.String), SdkFakes.field("tripId", FieldType.String), SdkFakes.field("routeId", FieldType.String),
+        SdkFakes.field("directionId", FieldType.Integer), SdkFakes.field("startTime", FieldType.String), SdkFakes.field("startDate", FieldType.String),
+        SdkFakes.field("tripScheduleRelationship", FieldType.String), SdkFakes.field("latitude", FieldType.Double), SdkFakes.field("longitude", FieldType.Double),
+        SdkFakes.field("bearing", FieldType.Double), SdkFakes.field("odometer", FieldType.Double), SdkFakes.field("speed", FieldType.Double),
+        SdkFakes.field("currentStopSequence", FieldType.Integer), SdkFakes.field("stopId", FieldType.String), SdkFakes.field("currentStatus", FieldType.String),
+        SdkFakes.field("congestionLevel", FieldType.String), SdkFakes.field("occupancyStatus", FieldType.String), SdkFakes.field("timestamp", FieldType.Date),
+        SdkFakes.field("geometry", FieldType.Geometry));
+    GeoEventDefinition tripUpdates = SdkFakes.definition("tu", GtfsRealtimeParser.TRIP_UPDATE_DEFINITION_NAME,
+        SdkFakes.field("entityId", FieldType.String), SdkFakes.field("tripId", FieldType.String), SdkFakes.field("routeId", FieldType.String),
+        SdkFakes.field("tripScheduleRelationship", FieldType.String), SdkFakes.field("vehicleId", FieldType.String), SdkFakes.field("timestamp", FieldType.Date),
+        SdkFakes.field("delay", FieldType.Integer),
+        SdkFakes.group("stopTimeUpdates", SdkFakes.field("stopSequence", FieldType.Integer), SdkFakes.field("stopId", FieldType.String),
+            SdkFakes.field("arrivalTime", FieldType.Date), SdkFakes.field("arrivalDelay", FieldType.Integer), SdkFakes.field("arrivalUncertainty", FieldType.Integer),
+            SdkFakes.field("departureTime", FieldType.Date), SdkFakes.field("departureDelay", FieldType.Integer), SdkFakes.field("departureUncertainty", FieldType.Integer),
+            SdkFakes.field("scheduleRelationship", FieldType.String)));
+    return read(new GtfsRealtimeParser(SdkFakes.creator(vehiclePositions, tripUpdates), new Uri("auto-generated", "test", "1"), "test"), feed);
+  }
+
+  private static List<GeoEvent> read(GtfsRealtimeParser parser, ProtobufBytes feed) throws IOException
+  {
+    final List<GeoEvent> events = new ArrayList<GeoEvent>();
+    int count = parser.read(new ByteArrayInputStream(feed.toByteArray()), new GtfsRealtimeParser.Target()
+      {
+        @Override
+        public void found(GeoEvent event)
+        {
+          events.add(event);
+        }
+      });
+    assertEquals(events.size(), count);
+    return events;
+  }
+}
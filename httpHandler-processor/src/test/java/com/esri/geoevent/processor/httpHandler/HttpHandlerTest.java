@@ -0,0 +1,46 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class HttpHandlerTest
+{
+  @Test
+  public void testLiteralOrigin()
+  {
+    assertEquals("http://host:8080", HttpHandler.getLiteralOrigin("http://host:8080/{folder}/query?where={where}"));
+    assertEquals("https://host", HttpHandler.getLiteralOrigin("https://host?token={token}"));
+    assertEquals("https://host", HttpHandler.getLiteralOrigin("https://host"));
+    assertNull(HttpHandler.getLiteralOrigin("http://{host}/query"));
+    assertNull(HttpHandler.getLiteralOrigin("http://host{suffix}/query"));
+    assertNull(HttpHandler.getLiteralOrigin("{url}"));
+    assertNull(HttpHandler.getLiteralOrigin(null));
+  }
+}
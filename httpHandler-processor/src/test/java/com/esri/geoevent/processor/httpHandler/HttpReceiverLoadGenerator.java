@@ -0,0 +1,215 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes JSON bodies to a receiver over keep-alive connections and reports the request rate and the
+ * responses. Without a host an in-process {@link HttpReceiver} on loopback is measured.
+ * <p>
+ * Usage: <code>HttpReceiverLoadGenerator [host port] [-connections n] [-pipeline n] [-seconds n] [-bodyBytes n]</code>
+ */
+public class HttpReceiverLoadGenerator
+{
+  private final String     host;
+  private final int        port;
+  private final int        pipeline;
+  private final byte[]     requests;
+  private volatile boolean running  = true;
+  private final AtomicLong accepted = new AtomicLong();
+  private final AtomicLong throttled = new AtomicLong();
+  private final AtomicLong other    = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+
+  HttpReceiverLoadGenerator(String host, int port, int pipeline, int bodyBytes)
+  {
+    this.host = host;
+    this.port = port;
+    this.pipeline = Math.max(1, pipeline);
+    StringBuilder body = new StringBuilder("{\"id\":1,\"value\":\"");
+    while (body.length() < bodyBytes - 2)
+      body.append('x');
+    body.append("\"}");
+    String request = "POST / HTTP/1.1\r\nHost: " + host + "\r\nContent-Type: application/json\r\nContent-Length: " + body.length() + "\r\n\r\n" + body;
+    StringBuilder batch = new StringBuilder();
+    for (int i = 0; i < this.pipeline; i++)
+      batch.append(request);
+    requests = batch.toString().getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  public static void main(String[] args) throws Exception
+  {
+    String host = null;
+    int port = 0;
+    int connections = 8;
+    int pipeline = 16;
+    int seconds = 10;
+    int bodyBytes = 256;
+    for (int i = 0; i < args.length; i++)
+    {
+      switch (args[i])
+      {
+        case "-connections":
+          connections = Integer.parseInt(args[++i]);
+          break;
+        case "-pipeline":
+          pipeline = Integer.parseInt(args[++i]);
+          break;
+        case "-seconds":
+          seconds = Integer.parseInt(args[++i]);
+          break;
+        case "-bodyBytes":
+          bodyBytes = Integer.parseInt(args[++i]);
+          break;
+        default:
+          host = args[i];
+          port = Integer.parseInt(args[++i]);
+          break;
+      }
+    }
+
+    HttpReceiver receiver = null;
+    final AtomicLong received = new AtomicLong();
+    if (host == null)
+    {
+      receiver = new HttpReceiver("load", "127.0.0.1", 0, "application/json", 1024 * 1024, 30000, new HttpReceiver.BodyHandler()
+        {
+          @Override
+          public boolean received(byte[] body, String contentType)
+          {
+            received.incrementAndGet();
+            return true;
+          }
+        });
+      host = "127.0.0.1";
+      port = receiver.getLocalPort();
+    }
+
+    HttpReceiverLoadGenerator generator = new HttpReceiverLoadGenerator(host, port, pipeline, bodyBytes);
+    System.out.println("Pushing to " + host + ":" + port + " over " + connections + " connections, " + pipeline + " pipelined requests of " + bodyBytes + " bytes, for " + seconds + "s");
+    long elapsed = generator.run(connections, seconds * 1000L);
+    generator.report(elapsed);
+    if (receiver != null)
+    {
+      receiver.shutdown();
+      System.out.println("Bodies handed over: " + received.get() + ", " + receiver);
+    }
+  }
+
+  long run(int connections, long durationMillis) throws InterruptedException
+  {
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < connections; i++)
+    {
+      Thread thread = new Thread(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            while (running)
+            {
+              try
+              {
+                push();
+              }
+              catch (IOException e)
+              {
+                failures.incrementAndGet();
+              }
+            }
+          }
+        }, "load-" + i);
+      thread.start();
+      threads.add(thread);
+    }
+    long start = System.nanoTime();
+    Thread.sleep(durationMillis);
+    running = false;
+    for (Thread thread : threads)
+      thread.join();
+    return (System.nanoTime() - start) / 1000000;
+  }
+
+  void report(long elapsedMillis)
+  {
+    long total = accepted.get() + throttled.get() + other.get();
+    System.out.println(String.format("%d requests in %d ms: %.0f requests/s", total, elapsedMillis, total * 1000.0 / Math.max(1, elapsedMillis)));
+    System.out.println("202 Accepted: " + accepted.get() + ", 503 Service Unavailable: " + throttled.get() + ", other: " + other.get() + ", connection failures: " + failures.get());
+  }
+
+  private void push() throws IOException
+  {
+    try (Socket socket = new Socket(host, port))
+    {
+      socket.setTcpNoDelay(true);
+      socket.setSoTimeout(10000);
+      OutputStream out = socket.getOutputStream();
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      while (running)
+      {
+        out.write(requests);
+        out.flush();
+        for (int i = 0; i < pipeline; i++)
+        {
+          int status = readResponse(in);
+          if (status == 202)
+            accepted.incrementAndGet();
+          else if (status == 503)
+            throttled.incrementAndGet();
+          else
+            other.incrementAndGet();
+          if (status != 202)
+            return; // the receiver may close the connection, start over on a new one
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads the head of a response without a body and returns its status code.
+   */
+  private static int readResponse(InputStream in) throws IOException
+  {
+    StringBuilder head = new StringBuilder(96);
+    while (head.length() < 4 || head.lastIndexOf("\r\n\r\n") != head.length() - 4)
+    {
+      int b = in.read();
+      if (b < 0)
+        throw new IOException("Connection closed");
+      head.append((char) b);
+    }
+    return Integer.parseInt(head.substring(9, 12));
+  }
+}
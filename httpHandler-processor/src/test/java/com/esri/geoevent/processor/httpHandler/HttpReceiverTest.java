@@ -0,0 +1,280 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpReceiverTest
+{
+  private final List<String> bodies    = Collections.synchronizedList(new ArrayList<String>());
+  private volatile boolean   accepting = true;
+  private HttpReceiver       receiver;
+
+  @Before
+  public void setUp() throws IOException
+  {
+    receiver = create(60000);
+  }
+
+  private HttpReceiver create(long idleTimeoutMillis) throws IOException
+  {
+    return new HttpReceiver("test", "127.0.0.1", 0, "application/json", 64, idleTimeoutMillis, new HttpReceiver.BodyHandler()
+      {
+        @Override
+        public boolean received(byte[] body, String contentType)
+        {
+          if (!accepting)
+            return false;
+          bodies.add(new String(body, StandardCharsets.UTF_8));
+          return true;
+        }
+      });
+  }
+
+  @After
+  public void tearDown()
+  {
+    receiver.shutdown();
+  }
+
+  @Test
+  public void testKeepAlive() throws IOException
+  {
+    try (Socket socket = connect())
+    {
+      send(socket, post("{\"a\":1}"));
+      assertEquals(Arrays.asList("HTTP/1.1 202 Accepted"), readStatus(socket, 1));
+      send(socket, post("{\"a\":2}"));
+      assertEquals(Arrays.asList("HTTP/1.1 202 Accepted"), readStatus(socket, 1));
+    }
+    assertEquals(Arrays.asList("{\"a\":1}", "{\"a\":2}"), bodies);
+  }
+
+  @Test
+  public void testPipelining() throws IOException
+  {
+    try (Socket socket = connect())
+    {
+      send(socket, post("{\"a\":1}") + post("{\"a\":2}") + post("{\"a\":3}"));
+      assertEquals(Arrays.asList("HTTP/1.1 202 Accepted", "HTTP/1.1 202 Accepted", "HTTP/1.1 202 Accepted"), readStatus(socket, 3));
+    }
+    assertEquals(Arrays.asList("{\"a\":1}", "{\"a\":2}", "{\"a\":3}"), bodies);
+  }
+
+  @Test
+  public void testChunkedBody() throws IOException
+  {
+    try (Socket socket = connect())
+    {
+      send(socket, "POST / HTTP/1.1\r\nContent-Type: application/json\r\nTransfer-Encoding: chunked\r\n\r\n4\r\n{\"a\"\r\n");
+      send(socket, "3;ext=1\r\n:1}\r\n0\r\n\r\n");
+      assertEquals(Arrays.asList("HTTP/1.1 202 Accepted"), readStatus(socket, 1));
+    }
+    assertEquals(Arrays.asList("{\"a\":1}"), bodies);
+  }
+
+  @Test
+  public void testRequestSplitAcrossReads() throws Exception
+  {
+    String request = post("{\"a\":1}") + "POST / HTTP/1.1\r\nContent-Type: application/json\r\nTransfer-Encoding: chunked\r\n\r\n5\r\n{\"a\":\r\n2\r\n2}\r\n0\r\n\r\n";
+    try (Socket socket = connect())
+    {
+      // one byte per read, so that the end of the headers and every chunk straddle reads
+      for (int i = 0; i < request.length(); i++)
+      {
+        send(socket, request.substring(i, i + 1));
+        Thread.sleep(1);
+      }
+      assertEquals(Arrays.asList("HTTP/1.1 202 Accepted", "HTTP/1.1 202 Accepted"), readStatus(socket, 2));
+    }
+    assertEquals(Arrays.asList("{\"a\":1}", "{\"a\":2}"), bodies);
+  }
+
+  @Test
+  public void testIdleConnectionIsClosed() throws Exception
+  {
+    receiver.shutdown();
+    receiver = create(100);
+    try (Socket socket = connect())
+    {
+      send(socket, post("{}"));
+      assertEquals(Arrays.asList("HTTP/1.1 202 Accepted"), readStatus(socket, 1));
+      assertClosed(socket);
+    }
+    assertTrue(receiver.toString().contains("timedOut=1"));
+  }
+
+  @Test
+  public void testSlowHeadersAreClosed() throws Exception
+  {
+    receiver.shutdown();
+    receiver = create(100);
+    try (Socket socket = connect())
+    {
+      // a byte every 20 ms keeps the connection active, but the headers never complete
+      long deadline = System.currentTimeMillis() + 5000;
+      try
+      {
+        while (System.currentTimeMillis() < deadline)
+        {
+          send(socket, "X");
+          Thread.sleep(20);
+        }
+        fail("The connection was not closed");
+      }
+      catch (SocketException e)
+      {
+        // the receiver has closed the connection
+      }
+    }
+    assertTrue(bodies.isEmpty());
+  }
+
+  @Test
+  public void testMethodNotAllowed() throws IOException
+  {
+    try (Socket socket = connect())
+    {
+      send(socket, "GET / HTTP/1.1\r\n\r\n" + post("{}"));
+      assertEquals(Arrays.asList("HTTP/1.1 405 Method Not Allowed", "HTTP/1.1 202 Accepted"), readStatus(socket, 2));
+    }
+  }
+
+  @Test
+  public void testUnsupportedMediaType() throws IOException
+  {
+    try (Socket socket = connect())
+    {
+      send(socket, "POST / HTTP/1.1\r\nContent-Type: text/xml\r\nContent-Length: 2\r\n\r\n<a");
+      assertEquals(Arrays.asList("HTTP/1.1 415 Unsupported Media Type"), readStatus(socket, 1));
+    }
+    assertTrue(bodies.isEmpty());
+  }
+
+  @Test
+  public void testPayloadTooLarge() throws IOException
+  {
+    try (Socket socket = connect())
+    {
+      send(socket, "POST / HTTP/1.1\r\nContent-Type: application/json\r\nContent-Length: 65\r\n\r\n");
+      assertEquals(Arrays.asList("HTTP/1.1 413 Payload Too Large"), readStatus(socket, 1));
+      // the connection is closed after a rejected request
+      assertEquals(-1, socket.getInputStream().read());
+    }
+  }
+
+  @Test
+  public void testThrottled() throws IOException
+  {
+    accepting = false;
+    try (Socket socket = connect())
+    {
+      send(socket, post("{}"));
+      assertEquals(Arrays.asList("HTTP/1.1 503 Service Unavailable"), readStatus(socket, 1));
+    }
+  }
+
+  @Test
+  public void testHasSameConfiguration()
+  {
+    assertTrue(receiver.hasSameConfiguration(" 127.0.0.1 ", 0, "application/json", 64, 60000));
+    assertTrue(!receiver.hasSameConfiguration("", 0, "application/json", 64, 60000));
+    assertTrue(!receiver.hasSameConfiguration("127.0.0.1", 0, "application/json", 64, 0));
+  }
+
+  private Socket connect() throws IOException
+  {
+    Socket socket = new Socket("127.0.0.1", receiver.getLocalPort());
+    socket.setSoTimeout(5000);
+    return socket;
+  }
+
+  private static void assertClosed(Socket socket) throws IOException
+  {
+    try
+    {
+      assertEquals(-1, socket.getInputStream().read());
+    }
+    catch (SocketException e)
+    {
+      // reset by the receiver
+    }
+  }
+
+  private static String post(String body)
+  {
+    return "POST / HTTP/1.1\r\nContent-Type: application/json\r\nContent-Length: " + body.length() + "\r\n\r\n" + body;
+  }
+
+  private static void send(Socket socket, String request) throws IOException
+  {
+    OutputStream out = socket.getOutputStream();
+    out.write(request.getBytes(StandardCharsets.ISO_8859_1));
+    out.flush();
+  }
+
+  /**
+   * Reads <code>count</code> responses, which have no body, and returns their status lines.
+   */
+  private static List<String> readStatus(Socket socket, int count) throws IOException
+  {
+    List<String> statusLines = new ArrayList<String>();
+    InputStream in = socket.getInputStream();
+    ByteArrayOutputStream head = new ByteArrayOutputStream();
+    while (statusLines.size() < count)
+    {
+      int b = in.read();
+      if (b < 0)
+        throw new IOException("Connection closed after " + statusLines.size() + " responses");
+      head.write(b);
+      String text = head.toString("ISO-8859-1");
+      if (text.endsWith("\r\n\r\n"))
+      {
+        statusLines.add(text.substring(0, text.indexOf("\r\n")));
+        head.reset();
+      }
+    }
+    return statusLines;
+  }
+}
@@ -0,0 +1,128 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.esri.ges.core.Uri;
+import com.esri.ges.core.geoevent.FieldDefinition;
+import com.esri.ges.core.geoevent.FieldType;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+import com.esri.ges.messaging.GeoEventCreator;
+
+/**
+ * Per-event cost of turning a JSON record into a GeoEvent with one parser kept across records, against a
+ * new parser for every record, which resolves the GeoEvent Definition by name each time. The server holds
+ * <code>definitions</code> GeoEvent Definitions, which a search by name scans.
+ * <p>
+ * Run with <code>java -cp &lt;test classpath&gt; com.esri.geoevent.processor.httpHandler.JsonInboundParserBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonInboundParserBenchmark
+{
+  private static final String DEFINITION_NAME = "flight";
+  private static final int    RECORD_COUNT    = 1024;
+
+  @Param({ "1", "200" })
+  private int                 definitions;
+
+  private GeoEventCreator     creator;
+  private Uri                 uri;
+  private JsonNode[]          records;
+  private JsonInboundParser   cachedParser;
+  private int                 next;
+
+  @Setup
+  public void setUp() throws Exception
+  {
+    FieldDefinition[] fields = { SdkFakes.field("id", FieldType.Long), SdkFakes.field("callsign", FieldType.String), SdkFakes.field("lat", FieldType.Double), SdkFakes.field("lon", FieldType.Double), SdkFakes.field("alt", FieldType.Double), SdkFakes.field("speed", FieldType.Double), SdkFakes.field("heading", FieldType.Integer), SdkFakes.field("geometry", FieldType.Geometry) };
+    List<GeoEventDefinition> registered = new ArrayList<GeoEventDefinition>();
+    for (int i = 1; i < definitions; i++)
+      registered.add(SdkFakes.definition("guid-" + i, "other-" + i, SdkFakes.field("value", FieldType.String)));
+    registered.add(SdkFakes.definition("guid-flight", DEFINITION_NAME, fields));
+    creator = SdkFakes.creator(registered.toArray(new GeoEventDefinition[registered.size()]));
+    uri = new Uri("auto-generated", "benchmark", "1");
+
+    ObjectMapper mapper = new ObjectMapper();
+    records = new JsonNode[RECORD_COUNT];
+    for (int i = 0; i < RECORD_COUNT; i++)
+      records[i] = mapper.readTree("{\"id\":" + i + ",\"callsign\":\"AB" + i + "\",\"lat\":" + (34.0 + i * 0.001) + ",\"lon\":" + (-117.0 - i * 0.001) + ",\"alt\":" + (1000 + i) + ",\"speed\":" + (200.5 + i % 50) + ",\"heading\":" + (i % 360) + "}");
+    cachedParser = newParser();
+  }
+
+  @Benchmark
+  public GeoEvent cachedParser()
+  {
+    return cachedParser.makeGeoEvent(nextRecord());
+  }
+
+  @Benchmark
+  public GeoEvent newParserPerObject()
+  {
+    return newParser().makeGeoEvent(nextRecord());
+  }
+
+  private JsonNode nextRecord()
+  {
+    next = (next + 1) % RECORD_COUNT;
+    return records[next];
+  }
+
+  private JsonInboundParser newParser()
+  {
+    return new JsonInboundParser(false, DEFINITION_NAME, true, "lon", "lat", "alt", null, null, null, creator, uri, "benchmark", "id");
+  }
+
+  public static void main(String[] args) throws RunnerException
+  {
+    new Runner(new OptionsBuilder().include(JsonInboundParserBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,143 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+
+import com.esri.ges.core.Uri;
+import com.esri.ges.core.geoevent.FieldType;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+import com.esri.ges.messaging.GeoEventCreator;
+
+public class JsonInboundParserTest
+{
+  private final ObjectMapper   mapper = new ObjectMapper();
+  private final List<GeoEvent> sent   = new ArrayList<GeoEvent>();
+
+  @Test
+  public void testStreamsWithTheOnlyDefinitionOfTheName() throws IOException
+  {
+    GeoEventDefinition flight = SdkFakes.definition("guid-flight", "flight", SdkFakes.field("id", FieldType.Long), SdkFakes.field("lat", FieldType.Double), SdkFakes.field("name", FieldType.String));
+    JsonInboundParser parser = newParser(SdkFakes.creator(flight), "flight");
+
+    stream(parser, "[{\"id\":1,\"lat\":34.5,\"name\":\"a\"},{\"id\":2,\"extra\":{\"x\":[1,2]},\"lat\":35,\"name\":\"b\"}]");
+    assertEquals(2, sent.size());
+    assertEquals(flight, sent.get(1).getGeoEventDefinition());
+    assertEquals(2L, sent.get(1).getField(0));
+    assertEquals(35.0, sent.get(1).getField(1));
+    assertEquals("b", sent.get(1).getField(2));
+  }
+
+  @Test
+  public void testResolvesEveryRecordWhenDefinitionsShareTheName() throws IOException
+  {
+    GeoEventDefinition position = SdkFakes.definition("guid-position", "track", SdkFakes.field("id", FieldType.Long), SdkFakes.field("lat", FieldType.Double));
+    GeoEventDefinition label = SdkFakes.definition("guid-label", "track", SdkFakes.field("id", FieldType.Long), SdkFakes.field("name", FieldType.String));
+    JsonInboundParser parser = newParser(SdkFakes.creator(position, label), "track");
+
+    stream(parser, "[{\"id\":1,\"lat\":34.5},{\"id\":2,\"name\":\"b\"},{\"id\":3,\"lat\":36.5}]");
+    assertEquals(3, sent.size());
+    assertEquals(position, sent.get(0).getGeoEventDefinition());
+    assertEquals(label, sent.get(1).getGeoEventDefinition());
+    assertEquals("b", sent.get(1).getField(1));
+    assertEquals(position, sent.get(2).getGeoEventDefinition());
+  }
+
+  @Test
+  public void testFallsBackToTheTreeOnceTheDefinitionIsDeleted() throws Exception
+  {
+    GeoEventDefinition flight = SdkFakes.definition("guid-flight", "flight", SdkFakes.field("id", FieldType.Long));
+    GeoEventCreator creator = SdkFakes.creator(flight);
+    JsonInboundParser parser = newParser(creator, "flight");
+
+    stream(parser, "[{\"id\":1}]");
+    creator.getGeoEventDefinitionManager().deleteGeoEventDefinition("guid-flight");
+    stream(parser, "[{\"id\":2}]");
+    assertEquals(1, sent.size());
+    assertNull(creator.getGeoEventDefinitionManager().getGeoEventDefinition("guid-flight"));
+  }
+
+  @Test
+  public void testOutOfRangeNumbersAreConvertedAsInTreeMode() throws IOException
+  {
+    GeoEventDefinition sample = SdkFakes.definition("guid-sample", "sample", SdkFakes.field("i", FieldType.Integer), SdkFakes.field("s", FieldType.Short), SdkFakes.field("l", FieldType.Long), SdkFakes.field("name", FieldType.String));
+    JsonInboundParser parser = newParser(SdkFakes.creator(sample), "sample");
+    // the first record resolves the definition from its tree, the second one streams
+    String json = "[{\"i\":1,\"s\":1,\"l\":1,\"name\":\"a\"},{\"i\":3000000000,\"s\":70000,\"l\":1e30,\"name\":\"a\"}]";
+
+    stream(parser, json);
+    parser.sendRecord(mapper.readTree(json).get(1), SdkFakes.producer(sent));
+    assertEquals(3, sent.size());
+    GeoEvent streamed = sent.get(1);
+    GeoEvent tree = sent.get(2);
+    for (int i = 0; i < 3; i++)
+      assertEquals(tree.getField(i), streamed.getField(i));
+    // the fields after an out of range number are still bound
+    assertEquals("a", streamed.getField(3));
+  }
+
+  @Test
+  public void testStreamsWhenCreatingDefinitionsAndTheNameExists() throws Exception
+  {
+    GeoEventDefinition flight = SdkFakes.definition("guid-flight", "flight", SdkFakes.field("id", FieldType.Long), SdkFakes.field("name", FieldType.String));
+    GeoEventCreator creator = SdkFakes.creator(flight);
+    JsonInboundParser parser = newParser(creator, "flight").setCreatingGeoEventDefinition(true);
+
+    stream(parser, "[{\"id\":1,\"name\":\"a\"}]");
+    // a record resolved from its tree would now match the added definition, a streamed one stays bound
+    creator.getGeoEventDefinitionManager().addGeoEventDefinition(SdkFakes.definition("guid-other", "flight", SdkFakes.field("id", FieldType.Long), SdkFakes.field("other", FieldType.Boolean)));
+    stream(parser, "[{\"id\":2,\"other\":true}]");
+    assertEquals(2, sent.size());
+    assertEquals(flight, sent.get(1).getGeoEventDefinition());
+    assertEquals(2L, sent.get(1).getField(0));
+    assertNull(sent.get(1).getField(1));
+  }
+
+  private JsonInboundParser newParser(GeoEventCreator creator, String definitionName)
+  {
+    return new JsonInboundParser(false, definitionName, false, null, null, null, null, null, null, creator, new Uri("auto-generated", "test", "1"), "test", null);
+  }
+
+  private void stream(JsonInboundParser parser, String json) throws IOException
+  {
+    JsonParser tokens = mapper.getJsonFactory().createJsonParser(json);
+    tokens.nextToken();
+    while (tokens.nextToken() == JsonToken.START_OBJECT)
+      parser.sendRecord(tokens, SdkFakes.producer(sent));
+    tokens.close();
+  }
+}
@@ -0,0 +1,179 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+
+public class JsonPathTest
+{
+  private static final String DOCUMENT = "{\"meta\":{\"count\":2},\"data\":{\"flights\":[{\"id\":1},{\"id\":2}],\"odd name\":{\"id\":3},\"a/b\":{\"id\":4},\"m~n\":{\"id\":5},\"x]y\":{\"id\":6},\"7\":{\"id\":7}},\"rows\":[[{\"id\":8}],[{\"id\":9},{\"id\":10}]]}";
+
+  private final ObjectMapper  mapper   = new ObjectMapper();
+
+  @Test
+  public void testIsPath()
+  {
+    assertTrue(JsonPath.isPath("$.data"));
+    assertTrue(JsonPath.isPath("/data"));
+    assertFalse(JsonPath.isPath("data"));
+    assertFalse(JsonPath.isPath(null));
+  }
+
+  @Test
+  public void testPath() throws IOException
+  {
+    assertIds("$.data.flights[*]", 1, 2);
+    assertIds("$.data.flights[1]", 2);
+    assertIds("$.data.flights", 1, 2);
+    assertIds("$['data'][\"odd name\"]", 3);
+    assertIds("$.data['x]y']", 6);
+    assertIds("$.data[ 'a/b' ]", 4);
+    assertIds("$.rows[*][*]", 8, 9, 10);
+    assertIds("$.rows[1][0]", 9);
+    assertIds("$.data.flights[5]");
+    assertIds("$.missing.flights");
+  }
+
+  @Test
+  public void testWildcardOverFields() throws IOException
+  {
+    assertIds("$.data.*", 1, 2, 3, 4, 5, 6, 7);
+  }
+
+  @Test
+  public void testRoot() throws IOException
+  {
+    assertEquals(1, select("$").size());
+    assertEquals(1, select("/").size());
+    assertEquals(select("$"), JsonPath.compile("$").select(mapper.readTree(DOCUMENT)));
+  }
+
+  @Test
+  public void testPointer() throws IOException
+  {
+    assertIds("/data/flights", 1, 2);
+    assertIds("/data/flights/0", 1);
+    assertIds("/data/odd name", 3);
+    assertIds("/data/a~1b", 4);
+    assertIds("/data/m~0n", 5);
+    assertIds("/rows/1/1", 10);
+    // a number names a field as well as an element
+    assertIds("/data/7", 7);
+  }
+
+  @Test
+  public void testPointerEscapesAreDecodedInOrder() throws IOException
+  {
+    JsonNode document = mapper.readTree("{\"~1\":{\"id\":1},\"/\":{\"id\":2}}");
+    assertEquals(1, JsonPath.compile("/~01").select(document).get(0).get("id").getIntValue());
+    assertEquals(2, JsonPath.compile("/~1").select(document).get(0).get("id").getIntValue());
+  }
+
+  @Test
+  public void testMalformedPaths()
+  {
+    for (String expression : new String[] { "$..flights", "$.", "$.data[", "$.data[x]", "$.data[-1]", "$data", "$.data[*]x" })
+    {
+      try
+      {
+        JsonPath.compile(expression);
+        fail(expression);
+      }
+      catch (IllegalArgumentException e)
+      {
+        ;
+      }
+    }
+  }
+
+  private void assertIds(String expression, int... ids) throws IOException
+  {
+    List<JsonNode> streamed = select(expression);
+    List<JsonNode> fromTree = JsonPath.compile(expression).select(mapper.readTree(DOCUMENT));
+    assertEquals(expression, fromTree, streamed);
+    List<Integer> expected = new ArrayList<Integer>();
+    for (int id : ids)
+      expected.add(id);
+    assertEquals(expression, expected, ids(streamed));
+  }
+
+  // records of the streaming selection, with arrays found at the path flattened as when reading records
+  private List<JsonNode> select(String expression) throws IOException
+  {
+    final List<JsonNode> found = new ArrayList<JsonNode>();
+    JsonParser parser = mapper.getJsonFactory().createJsonParser(DOCUMENT);
+    try
+    {
+      JsonPath.compile(expression).select(parser, parser.nextToken(), new JsonPath.Target()
+        {
+          @Override
+          public void found(JsonParser parser, JsonToken token) throws IOException
+          {
+            found.add(parser.readValueAsTree());
+          }
+        });
+    }
+    finally
+    {
+      parser.close();
+    }
+    return found;
+  }
+
+  private static List<Integer> ids(List<JsonNode> values)
+  {
+    List<Integer> ids = new ArrayList<Integer>();
+    for (JsonNode value : values)
+    {
+      if (value.isArray())
+        ids.addAll(ids(toList(value)));
+      else if (value.has("id"))
+        ids.add(value.get("id").getIntValue());
+    }
+    return ids;
+  }
+
+  private static List<JsonNode> toList(JsonNode array)
+  {
+    List<JsonNode> elements = new ArrayList<JsonNode>();
+    for (JsonNode element : array)
+      elements.add(element);
+    return elements;
+  }
+}
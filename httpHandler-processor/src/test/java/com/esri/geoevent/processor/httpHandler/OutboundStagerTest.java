@@ -0,0 +1,208 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+import com.esri.ges.messaging.GeoEventProducer;
+import com.esri.ges.messaging.MessagingException;
+
+public class OutboundStagerTest
+{
+  private final GeoEventDefinition definition = SdkFakes.definition("guid", "test");
+  private final List<GeoEvent>     sent       = Collections.synchronizedList(new ArrayList<GeoEvent>());
+  private final CountDownLatch     gate       = new CountDownLatch(1);
+  private OutboundStager           stager;
+
+  @After
+  public void tearDown()
+  {
+    gate.countDown();
+    if (stager != null)
+      stager.shutdown();
+  }
+
+  @Test
+  public void testSendsInOrder()
+  {
+    stager = new OutboundStager("test", producer(null, false), 16, 4, 0);
+    List<GeoEvent> events = events(10);
+    for (GeoEvent event : events)
+      assertTrue(stager.stage(event));
+    stager.shutdown();
+    assertEquals(events, sent);
+    assertEquals(10, stager.getSentCount());
+  }
+
+  @Test
+  public void testFailingEventsDoNotStopTheFlusher()
+  {
+    List<GeoEvent> events = events(6);
+    stager = new OutboundStager("test", producer(events.get(1), false), 16, 4, 0);
+    for (GeoEvent event : events)
+      stager.stage(event);
+    stager.shutdown();
+    assertEquals(5, sent.size());
+    assertEquals(5, stager.getSentCount());
+    assertEquals(1, stager.getFailedCount());
+  }
+
+  @Test
+  public void testRuntimeExceptionsAreCountedAsFailures() throws InterruptedException
+  {
+    List<GeoEvent> events = events(3);
+    stager = new OutboundStager("test", producer(events.get(0), true), 16, 1, 0);
+    for (GeoEvent event : events)
+      stager.stage(event);
+    // the flusher survives the exception and sends what follows
+    long deadline = System.currentTimeMillis() + 5000;
+    while (stager.getSentCount() < 2 && System.currentTimeMillis() < deadline)
+      Thread.sleep(10);
+    assertEquals(2, stager.getSentCount());
+    assertEquals(1, stager.getFailedCount());
+  }
+
+  @Test
+  public void testShutdownReleasesBlockedStage() throws InterruptedException
+  {
+    stager = new OutboundStager("test", blockingProducer(), 1, 1, 0);
+    List<GeoEvent> events = events(3);
+    assertTrue(stager.stage(events.get(0)));
+    // the second event is only queued once the flusher has taken the first, on which it then blocks
+    assertTrue(stager.stage(events.get(1)));
+
+    final AtomicBoolean staged = new AtomicBoolean(true);
+    final GeoEvent blocked = events.get(2);
+    Thread stagingThread = new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          staged.set(stager.stage(blocked));
+        }
+      });
+    stagingThread.start();
+    long deadline = System.currentTimeMillis() + 5000;
+    while (stager.getBackpressureWaits() == 0 && System.currentTimeMillis() < deadline)
+      Thread.sleep(1);
+
+    Thread shutdown = new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          stager.shutdown();
+        }
+      });
+    shutdown.start();
+    stagingThread.join(TimeUnit.SECONDS.toMillis(2));
+    assertFalse(stagingThread.isAlive());
+    assertFalse(staged.get());
+    gate.countDown();
+    shutdown.join();
+    assertFalse(sent.contains(blocked));
+  }
+
+  private List<GeoEvent> events(int count)
+  {
+    List<GeoEvent> events = new ArrayList<GeoEvent>();
+    for (int i = 0; i < count; i++)
+      events.add(SdkFakes.event(definition));
+    return events;
+  }
+
+  // fails the given event with a MessagingException, or a RuntimeException
+  private GeoEventProducer producer(final GeoEvent failing, final boolean runtime)
+  {
+    return producer(new InvocationHandler()
+      {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+          if (args[0] == failing)
+            throw runtime ? new IllegalStateException("bad event") : new MessagingException("bad event");
+          sent.add((GeoEvent) args[0]);
+          return null;
+        }
+      });
+  }
+
+  private GeoEventProducer blockingProducer()
+  {
+    return producer(new InvocationHandler()
+      {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+          while (true)
+          {
+            try
+            {
+              gate.await();
+              break;
+            }
+            catch (InterruptedException e)
+            {
+              // the send is not interruptible, like a producer writing to a socket
+            }
+          }
+          sent.add((GeoEvent) args[0]);
+          return null;
+        }
+      });
+  }
+
+  private static GeoEventProducer producer(final InvocationHandler send)
+  {
+    return (GeoEventProducer) Proxy.newProxyInstance(OutboundStagerTest.class.getClassLoader(), new Class<?>[] { GeoEventProducer.class }, new InvocationHandler()
+      {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+          if (method.getName().equals("send") && args != null && args.length == 1)
+            return send.invoke(proxy, method, args);
+          return null;
+        }
+      });
+  }
+}
@@ -0,0 +1,416 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+
+public class PagedQueryTest
+{
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  /**
+   * Serves pages of the records 0 to total - 1 as <code>{"ids": [...]}</code> and records what was asked.
+   */
+  private static class RecordServer implements PagedQuery.PageSource
+  {
+    final int           total;
+    final int           count;
+    // the most records the server returns per page, whatever was asked for
+    final int           cap;
+    final List<String>  requests = Collections.synchronizedList(new ArrayList<String>());
+    final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+
+    RecordServer(int total, int count, int cap)
+    {
+      this.total = total;
+      this.count = count;
+      this.cap = cap;
+    }
+
+    @Override
+    public boolean fetch(String url, String parameters, PagedQuery.PageReader reader)
+    {
+      requests.add(parameters);
+      String body;
+      if (parameters.equals("returnCountOnly=true"))
+      {
+        body = "{\"count\":" + count + "}";
+      }
+      else
+      {
+        Map<String, String> query = parse(parameters);
+        int offset = Integer.parseInt(query.get("resultOffset"));
+        int size = Math.min(Integer.parseInt(query.get("resultRecordCount")), cap);
+        StringBuilder ids = new StringBuilder();
+        for (int id = offset; id < Math.min(total, offset + size); id++)
+          ids.append((ids.length() > 0) ? "," : "").append(id);
+        body = "{\"ids\":[" + ids + "]}";
+      }
+      return respond(reader, body, null);
+    }
+
+    @Override
+    public int receive(InputStream in, String charsetName)
+    {
+      try
+      {
+        JsonNode ids = mapper.readTree(in).path("ids");
+        for (JsonNode id : ids)
+          received.add(id.getIntValue());
+        return ids.size();
+      }
+      catch (IOException e)
+      {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    // each record exactly once, in any order
+    void assertReceived(int records)
+    {
+      List<Integer> sorted = new ArrayList<Integer>(received);
+      Collections.sort(sorted);
+      List<Integer> expected = new ArrayList<Integer>();
+      for (int id = 0; id < records; id++)
+        expected.add(id);
+      assertEquals(expected, sorted);
+    }
+  }
+
+  @Test
+  public void testOffsetPagesUntilAnEmptyPage()
+  {
+    RecordServer server = new RecordServer(25, -1, 100);
+    PagedQuery query = query(PagedQuery.MODE_OFFSET, 10, 4, 1000, "");
+    assertTrue(query.run("http://host/query", server));
+    server.assertReceived(25);
+    assertEquals(Arrays.asList("resultOffset=0&resultRecordCount=10", "resultOffset=10&resultRecordCount=10", "resultOffset=20&resultRecordCount=10", "resultOffset=25&resultRecordCount=10"), server.requests);
+  }
+
+  @Test
+  public void testCappedPagesAdvanceByTheRecordsReceived()
+  {
+    // a server with a maxRecordCount of 7 below the page size asked for
+    RecordServer server = new RecordServer(25, -1, 7);
+    assertTrue(query(PagedQuery.MODE_OFFSET, 10, 1, 1000, "").run("http://host/query", server));
+    server.assertReceived(25);
+    assertEquals("resultOffset=7&resultRecordCount=10", server.requests.get(1));
+  }
+
+  @Test
+  public void testParallelRangesOfACountedQuery()
+  {
+    RecordServer server = new RecordServer(95, 95, 100);
+    PagedQuery query = query(PagedQuery.MODE_OFFSET, 10, 4, 1000, "returnCountOnly=true");
+    try
+    {
+      assertTrue(query.run("http://host/query", server));
+    }
+    finally
+    {
+      query.shutdown();
+    }
+    server.assertReceived(95);
+    // the count, then one request per page, the last one asking for the rest only
+    assertEquals(11, server.requests.size());
+    assertEquals("returnCountOnly=true", server.requests.get(0));
+    assertTrue(server.requests.contains("resultOffset=90&resultRecordCount=5"));
+    assertTrue(query.toString(), query.toString().contains("pages=10, records=95"));
+  }
+
+  @Test
+  public void testParallelRangesCatchUpOnCappedPages()
+  {
+    RecordServer server = new RecordServer(95, 95, 6);
+    PagedQuery query = query(PagedQuery.MODE_OFFSET, 10, 3, 1000, "returnCountOnly=true");
+    assertTrue(query.run("http://host/query", server));
+    server.assertReceived(95);
+    // each range asks for what its first page left out
+    assertTrue(server.requests.contains("resultOffset=6&resultRecordCount=4"));
+    assertTrue(server.requests.contains("resultOffset=16&resultRecordCount=4"));
+    query.shutdown();
+  }
+
+  @Test
+  public void testCountAboveTheDataStopsAtTheEmptyPage()
+  {
+    RecordServer server = new RecordServer(25, 60, 100);
+    PagedQuery query = query(PagedQuery.MODE_OFFSET, 10, 1, 1000, "returnCountOnly=true");
+    assertTrue(query.run("http://host/query", server));
+    server.assertReceived(25);
+    // without parallel ranges the pages stop at the first empty one, at offset 25
+    assertEquals(Arrays.asList("returnCountOnly=true", "resultOffset=0&resultRecordCount=10", "resultOffset=10&resultRecordCount=10", "resultOffset=20&resultRecordCount=10", "resultOffset=25&resultRecordCount=10"), server.requests);
+  }
+
+  @Test
+  public void testEmptyCountFetchesNothing()
+  {
+    RecordServer server = new RecordServer(0, 0, 100);
+    assertTrue(query(PagedQuery.MODE_OFFSET, 10, 4, 1000, "returnCountOnly=true").run("http://host/query", server));
+    assertEquals(Arrays.asList("returnCountOnly=true"), server.requests);
+  }
+
+  @Test
+  public void testMaxPages()
+  {
+    RecordServer server = new RecordServer(1000, 1000, 100);
+    PagedQuery query = query(PagedQuery.MODE_OFFSET, 10, 2, 3, "returnCountOnly=true");
+    assertTrue(query.run("http://host/query", server));
+    server.assertReceived(30);
+    query.shutdown();
+
+    server = new RecordServer(1000, -1, 100);
+    assertTrue(query(PagedQuery.MODE_OFFSET, 10, 1, 3, "").run("http://host/query", server));
+    server.assertReceived(30);
+  }
+
+  @Test
+  public void testFailedPage()
+  {
+    RecordServer server = new RecordServer(25, -1, 100)
+      {
+        @Override
+        public boolean fetch(String url, String parameters, PagedQuery.PageReader reader)
+        {
+          return !parameters.startsWith("resultOffset=10") && super.fetch(url, parameters, reader);
+        }
+      };
+    assertFalse(query(PagedQuery.MODE_OFFSET, 10, 1, 1000, "").run("http://host/query", server));
+    server.assertReceived(10);
+  }
+
+  @Test
+  public void testNextLinkHeader()
+  {
+    assertEquals("https://host/items?page=2", PagedQuery.nextLink("<https://host/items?page=2>; rel=\"next\""));
+    assertEquals("/items?page=3", PagedQuery.nextLink("<https://host/items?page=1>; rel=\"prev\", <https://host/items?page=9>; rel=last, </items?page=3>; rel=next"));
+    assertEquals("https://host/b", PagedQuery.nextLink("<https://host/a>; rel=\"first\", <https://host/b>; title=\"more\"; rel=\"next last\""));
+    assertNull(PagedQuery.nextLink("<https://host/items?page=1>; rel=\"prev\""));
+    assertNull(PagedQuery.nextLink("<https://host/items?page=1>; rel=\"nextpage\""));
+    assertNull(PagedQuery.nextLink(null));
+  }
+
+  @Test
+  public void testNextLinkPages()
+  {
+    final List<String> urls = new ArrayList<String>();
+    RecordServer server = new RecordServer(0, -1, 0)
+      {
+        @Override
+        public boolean fetch(String url, String parameters, PagedQuery.PageReader reader)
+        {
+          urls.add(url);
+          int page = url.endsWith("page=2") ? 2 : url.endsWith("page=3") ? 3 : 1;
+          // relative links resolve against the page they came from; the last page links to itself
+          String link = (page == 3) ? "<items?page=3>; rel=\"next\"" : "<items?page=" + (page + 1) + ">; rel=\"next\"";
+          return respond(reader, "{\"ids\":[" + page + "]}", link);
+        }
+      };
+    assertTrue(query(PagedQuery.MODE_NEXT_LINK, 10, 1, 1000, "").run("http://host/api/items", server));
+    assertEquals(Arrays.asList("http://host/api/items", "http://host/api/items?page=2", "http://host/api/items?page=3"), urls);
+    assertEquals(Arrays.asList(1, 2, 3), server.received);
+  }
+
+  @Test
+  public void testNextLinkField()
+  {
+    final Map<String, String> pages = new HashMap<String, String>();
+    pages.put("http://host/items", "{\"ids\":[1,2],\"links\":[{\"rel\":\"self\",\"href\":\"/items\"},{\"rel\":\"next\",\"href\":\"/items?offset=2\"}]}");
+    pages.put("http://host/items?offset=2", "{\"ids\":[3],\"links\":[{\"rel\":\"self\",\"href\":\"/items?offset=2\"}]}");
+    RecordServer server = new RecordServer(0, -1, 0)
+      {
+        @Override
+        public boolean fetch(String url, String parameters, PagedQuery.PageReader reader)
+        {
+          requests.add(url);
+          return pages.containsKey(url) && respond(reader, pages.get(url), null);
+        }
+      };
+    PagedQuery query = new PagedQuery("test", PagedQuery.MODE_NEXT_LINK, 10, 1, 1000, 1, null, null, null, null, "$.links", null, null);
+    assertTrue(query.run("http://host/items", server));
+    assertEquals(Arrays.asList(1, 2, 3), server.received);
+    assertEquals(2, server.requests.size());
+  }
+
+  @Test
+  public void testCursorPages()
+  {
+    RecordServer server = new RecordServer(0, -1, 0)
+      {
+        @Override
+        public boolean fetch(String url, String parameters, PagedQuery.PageReader reader)
+        {
+          requests.add(parameters);
+          switch (parameters)
+          {
+            case "":
+              return respond(reader, "{\"next_cursor\":\"a b\",\"ids\":[1]}", null);
+            case "cursor=a+b":
+              return respond(reader, "{\"ids\":[2,3],\"meta\":{\"next_cursor\":\"c\"}}", null);
+            default:
+              // an empty cursor marks the last page
+              return respond(reader, "{\"ids\":[4],\"next_cursor\":\"\"}", null);
+          }
+        }
+      };
+    PagedQuery query = new PagedQuery("test", PagedQuery.MODE_CURSOR, 10, 1, 1000, 1, null, null, null, null, null, "next_cursor", "cursor");
+    assertTrue(query.run("http://host/items", server));
+    assertEquals(Arrays.asList("", "cursor=a+b", "cursor=c"), server.requests);
+    assertEquals(Arrays.asList(1, 2, 3, 4), server.received);
+  }
+
+  @Test
+  public void testSubmittedQueriesAreBounded() throws InterruptedException
+  {
+    final CountDownLatch running = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    RecordServer server = new RecordServer(5, -1, 100)
+      {
+        @Override
+        public boolean fetch(String url, String parameters, PagedQuery.PageReader reader)
+        {
+          running.countDown();
+          try
+          {
+            release.await();
+          }
+          catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+          }
+          return super.fetch(url, parameters, reader);
+        }
+      };
+    final AtomicInteger succeeded = new AtomicInteger();
+    final CountDownLatch completed = new CountDownLatch(101);
+    PagedQuery.Completion completion = new PagedQuery.Completion()
+      {
+        @Override
+        public void completed(boolean success)
+        {
+          if (success)
+            succeeded.incrementAndGet();
+          completed.countDown();
+        }
+      };
+    PagedQuery query = new PagedQuery("test", PagedQuery.MODE_OFFSET, 10, 1, 1000, 1, "resultOffset", "resultRecordCount", null, null, null, null, null);
+    assertTrue(query.submit("http://host/items", server, completion));
+    assertTrue(running.await(5, TimeUnit.SECONDS));
+    // one query runs, 100 wait and the next is dropped
+    for (int i = 0; i < 100; i++)
+      assertTrue(query.submit("http://host/items", server, completion));
+    assertFalse(query.submit("http://host/items", server, completion));
+    assertEquals(1, query.getDroppedCount());
+
+    release.countDown();
+    assertTrue(completed.await(5, TimeUnit.SECONDS));
+    assertEquals(101, succeeded.get());
+    assertEquals(101 * 5, server.received.size());
+
+    query.shutdown();
+    assertFalse(query.submit("http://host/items", server, completion));
+    assertEquals(2, query.getDroppedCount());
+  }
+
+  @Test
+  public void testFailedQueryCompletes() throws InterruptedException
+  {
+    final boolean[] outcome = { true };
+    final CountDownLatch completed = new CountDownLatch(1);
+    RecordServer server = new RecordServer(5, -1, 100)
+      {
+        @Override
+        public boolean fetch(String url, String parameters, PagedQuery.PageReader reader)
+        {
+          throw new IllegalStateException("connection reset");
+        }
+      };
+    PagedQuery query = query(PagedQuery.MODE_OFFSET, 10, 1, 1000, "");
+    assertTrue(query.submit("http://host/items", server, new PagedQuery.Completion()
+      {
+        @Override
+        public void completed(boolean succeeded)
+        {
+          outcome[0] = succeeded;
+          completed.countDown();
+        }
+      }));
+    assertTrue(completed.await(5, TimeUnit.SECONDS));
+    assertFalse(outcome[0]);
+    query.shutdown();
+  }
+
+  private static PagedQuery query(String mode, int pageSize, int parallelism, int maxPages, String countQuery)
+  {
+    return new PagedQuery("test", mode, pageSize, parallelism, maxPages, 2, "resultOffset", "resultRecordCount", countQuery, "count", null, null, null);
+  }
+
+  private static boolean respond(PagedQuery.PageReader reader, String body, String linkHeader)
+  {
+    try
+    {
+      reader.read(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), "UTF-8", linkHeader);
+      return true;
+    }
+    catch (IOException e)
+    {
+      return false;
+    }
+  }
+
+  private static Map<String, String> parse(String parameters)
+  {
+    Map<String, String> values = new HashMap<String, String>();
+    for (String parameter : parameters.split("&"))
+    {
+      int separator = parameter.indexOf('=');
+      values.put(parameter.substring(0, separator), parameter.substring(separator + 1));
+    }
+    return values;
+  }
+}
@@ -0,0 +1,244 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.ObjectNode;
+import org.junit.After;
+import org.junit.Test;
+
+import com.esri.ges.core.geoevent.FieldException;
+import com.esri.ges.core.geoevent.FieldType;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+
+public class ParallelConverterTest
+{
+  private final GeoEventDefinition definition = SdkFakes.definition("guid", "record", SdkFakes.field("track", FieldType.String), SdkFakes.field("seq", FieldType.Integer));
+  private final ExecutorService    pool       = Executors.newFixedThreadPool(4);
+  private final List<GeoEvent>     sent       = Collections.synchronizedList(new ArrayList<GeoEvent>());
+  private final List<Thread>       senders    = Collections.synchronizedList(new ArrayList<Thread>());
+  private final CountDownLatch     gate       = new CountDownLatch(1);
+  private final AtomicInteger      started    = new AtomicInteger();
+  private volatile boolean         gated;
+  private volatile boolean         jitter;
+
+  private final ParallelConverter.Conversion conversion = new ParallelConverter.Conversion()
+    {
+      @Override
+      public GeoEvent convert(JsonNode record)
+      {
+        started.incrementAndGet();
+        try
+        {
+          if (gated)
+            gate.await(5, TimeUnit.SECONDS);
+          if (jitter)
+            Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+        if (record.get("seq").asInt() < 0)
+          return null;
+        GeoEvent event = SdkFakes.event(definition);
+        try
+        {
+          event.setField(0, record.get("track").asText());
+          event.setField(1, record.get("seq").asInt());
+        }
+        catch (FieldException e)
+        {
+          throw new IllegalStateException(e);
+        }
+        return event;
+      }
+
+      @Override
+      public void send(GeoEvent event)
+      {
+        senders.add(Thread.currentThread());
+        sent.add(event);
+      }
+    };
+
+  @After
+  public void tearDown()
+  {
+    gate.countDown();
+    pool.shutdownNow();
+  }
+
+  private static JsonNode record(String track, int seq)
+  {
+    ObjectNode record = JsonNodeFactory.instance.objectNode();
+    record.put("track", track);
+    record.put("seq", seq);
+    return record;
+  }
+
+  private void convert(ParallelConverter converter, int count) throws InterruptedException
+  {
+    ParallelConverter.Session session = converter.open();
+    for (int i = 0; i < count; i++)
+      session.add(record("t" + (i % 5), i));
+    session.finish();
+  }
+
+  private List<Integer> sequence()
+  {
+    List<Integer> sequence = new ArrayList<Integer>();
+    synchronized (sent)
+    {
+      for (GeoEvent event : sent)
+        sequence.add((Integer) event.getField(1));
+    }
+    return sequence;
+  }
+
+  @Test
+  public void testNoneSendsEveryRecord() throws Exception
+  {
+    jitter = true;
+    convert(new ParallelConverter(pool, 4, 7, ParallelConverter.ORDERING_NONE, null, conversion), 200);
+    List<Integer> sequence = sequence();
+    assertEquals(200, sequence.size());
+    Collections.sort(sequence);
+    for (int i = 0; i < 200; i++)
+      assertEquals(Integer.valueOf(i), sequence.get(i));
+    assertFalse(senders.contains(Thread.currentThread()));
+  }
+
+  @Test
+  public void testGlobalSendsInResponseOrderFromTheParsingThread() throws Exception
+  {
+    jitter = true;
+    convert(new ParallelConverter(pool, 4, 3, ParallelConverter.ORDERING_GLOBAL, null, conversion), 100);
+    List<Integer> sequence = sequence();
+    assertEquals(100, sequence.size());
+    for (int i = 0; i < 100; i++)
+      assertEquals(Integer.valueOf(i), sequence.get(i));
+    for (Thread sender : senders)
+      assertEquals(Thread.currentThread(), sender);
+  }
+
+  @Test
+  public void testTrackIdKeepsTheOrderOfEachTrack() throws Exception
+  {
+    jitter = true;
+    convert(new ParallelConverter(pool, 4, 3, ParallelConverter.ORDERING_TRACK_ID, "track", conversion), 200);
+    assertEquals(200, sent.size());
+    Map<String, Integer> last = new HashMap<String, Integer>();
+    synchronized (sent)
+    {
+      for (GeoEvent event : sent)
+      {
+        String track = (String) event.getField(0);
+        int seq = (Integer) event.getField(1);
+        Integer previous = last.put(track, seq);
+        assertTrue(previous == null || previous < seq);
+      }
+    }
+  }
+
+  @Test
+  public void testUnconvertedRecordsAreNotSent() throws Exception
+  {
+    ParallelConverter.Session session = new ParallelConverter(pool, 2, 2, ParallelConverter.ORDERING_GLOBAL, null, conversion).open();
+    session.add(record("a", 0));
+    session.add(record("a", -1));
+    session.add(record("a", 2));
+    session.finish();
+    assertEquals(2, sent.size());
+  }
+
+  @Test
+  public void testLimitsChunksInFlight() throws Exception
+  {
+    gated = true;
+    // one lane of parallelism allows two pending chunks of one record each
+    final ParallelConverter converter = new ParallelConverter(pool, 1, 1, ParallelConverter.ORDERING_NONE, null, conversion);
+    final AtomicInteger added = new AtomicInteger();
+    Thread parser = new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          try
+          {
+            ParallelConverter.Session session = converter.open();
+            for (int i = 0; i < 10; i++)
+            {
+              session.add(record("a", i));
+              added.incrementAndGet();
+            }
+            session.finish();
+          }
+          catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+    parser.start();
+    long deadline = System.currentTimeMillis() + 5000;
+    while (started.get() < 2 && System.currentTimeMillis() < deadline)
+      Thread.sleep(5);
+    Thread.sleep(100);
+    // the third record waits for the first chunk to complete
+    assertEquals(2, added.get());
+    gate.countDown();
+    parser.join(5000);
+    assertEquals(10, added.get());
+    assertEquals(10, sent.size());
+  }
+
+  @Test
+  public void testTrackIdWithoutFieldIsUnordered()
+  {
+    ParallelConverter converter = new ParallelConverter(pool, 2, 10, ParallelConverter.ORDERING_TRACK_ID, null, conversion);
+    assertTrue(converter.hasSameConfiguration(10, ParallelConverter.ORDERING_NONE, null));
+    assertFalse(converter.hasSameConfiguration(10, ParallelConverter.ORDERING_GLOBAL, null));
+  }
+}
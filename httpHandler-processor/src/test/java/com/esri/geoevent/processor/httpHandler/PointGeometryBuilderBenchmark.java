@@ -0,0 +1,136 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import com.esri.ges.core.geoevent.FieldException;
+import com.esri.ges.core.geoevent.FieldType;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+import com.esri.ges.util.Converter;
+
+/**
+ * Point construction throughput of {@link PointGeometryBuilder}, which reads the coordinates by field index
+ * and shares spatial references, against building the point as before: fields looked up by name, values
+ * converted through boxed numbers and a spatial reference created per event. The spatial reference comes
+ * from a WKID field or a WKT field.
+ * <p>
+ * Run with <code>java -cp &lt;test classpath&gt; com.esri.geoevent.processor.httpHandler.PointGeometryBuilderBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PointGeometryBuilderBenchmark
+{
+  private static final int    EVENT_COUNT = 1024;
+  private static final String WGS84_WKT   = "GEOGCS[\"GCS_WGS_1984\",DATUM[\"D_WGS_1984\",SPHEROID[\"WGS_1984\",6378137.0,298.257223563]],PRIMEM[\"Greenwich\",0.0],UNIT[\"Degree\",0.0174532925199433]]";
+
+  @Param({ "wkid", "wkt" })
+  private String              spatialReferenceField;
+
+  private GeoEvent[]          events;
+  private FieldBindingPlan    plan;
+  private PointGeometryBuilder builder;
+  private int                 next;
+
+  @Setup
+  public void setUp() throws FieldException
+  {
+    GeoEventDefinition definition = SdkFakes.definition("guid-avl", "avl", SdkFakes.field("id", FieldType.Long), SdkFakes.field("lon", FieldType.Double), SdkFakes.field("lat", FieldType.Double), SdkFakes.field("alt", FieldType.Double), SdkFakes.field("wkid", FieldType.Integer), SdkFakes.field("wkt", FieldType.String), SdkFakes.field("geometry", FieldType.Geometry));
+    plan = FieldBindingPlan.compile(definition);
+    events = new GeoEvent[EVENT_COUNT];
+    for (int i = 0; i < EVENT_COUNT; i++)
+    {
+      GeoEvent event = SdkFakes.event(definition);
+      event.setField(0, (long) i);
+      event.setField(1, -117.0 - i * 0.001);
+      event.setField(2, 34.0 + i * 0.001);
+      event.setField(3, 100.0 + i);
+      event.setField(4, 4326);
+      event.setField(5, WGS84_WKT);
+      events[i] = event;
+    }
+    boolean wkid = "wkid".equals(spatialReferenceField);
+    builder = new PointGeometryBuilder("lon", "lat", "alt", wkid ? "wkid" : null, wkid ? null : "wkt");
+  }
+
+  @Benchmark
+  public GeoEvent builder() throws FieldException
+  {
+    GeoEvent event = nextEvent();
+    builder.build(event, plan);
+    return event;
+  }
+
+  @Benchmark
+  public GeoEvent perEventLookup() throws FieldException
+  {
+    GeoEvent event = nextEvent();
+    double x = Converter.convertToDouble(event.getField("lon"));
+    double y = Converter.convertToDouble(event.getField("lat"));
+    double z = Converter.convertToDouble(event.getField("alt"));
+    SpatialReference spatialReference;
+    if ("wkid".equals(spatialReferenceField))
+      spatialReference = SpatialReference.create(Converter.convertToInteger(event.getField("wkid")));
+    else
+      spatialReference = SpatialReference.create((String) event.getField("wkt"));
+    event.setGeometry(new MapGeometry(new Point(x, y, z), spatialReference));
+    return event;
+  }
+
+  private GeoEvent nextEvent()
+  {
+    next = (next + 1) % EVENT_COUNT;
+    return events[next];
+  }
+
+  public static void main(String[] args) throws RunnerException
+  {
+    new Runner(new OptionsBuilder().include(PointGeometryBuilderBenchmark.class.getSimpleName()).build()).run();
+  }
+}
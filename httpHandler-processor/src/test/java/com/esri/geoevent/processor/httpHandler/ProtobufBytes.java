@@ -0,0 +1,115 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the protocol buffers wire format by hand, so that tests can build messages, including malformed
+ * ones, without generated classes.
+ */
+final class ProtobufBytes
+{
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+  ProtobufBytes varint(int fieldNumber, long value)
+  {
+    tag(fieldNumber, ProtobufReader.WIRETYPE_VARINT);
+    return rawVarint(value);
+  }
+
+  ProtobufBytes fixed32(int fieldNumber, float value)
+  {
+    tag(fieldNumber, ProtobufReader.WIRETYPE_FIXED32);
+    return rawFixed32(Float.floatToIntBits(value));
+  }
+
+  ProtobufBytes fixed64(int fieldNumber, double value)
+  {
+    tag(fieldNumber, ProtobufReader.WIRETYPE_FIXED64);
+    return rawFixed64(Double.doubleToLongBits(value));
+  }
+
+  ProtobufBytes string(int fieldNumber, String value)
+  {
+    return bytes(fieldNumber, value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  ProtobufBytes message(int fieldNumber, ProtobufBytes message)
+  {
+    return bytes(fieldNumber, message.toByteArray());
+  }
+
+  ProtobufBytes bytes(int fieldNumber, byte[] value)
+  {
+    tag(fieldNumber, ProtobufReader.WIRETYPE_LENGTH_DELIMITED);
+    rawVarint(value.length);
+    return raw(value);
+  }
+
+  ProtobufBytes tag(int fieldNumber, int wireType)
+  {
+    return rawVarint(fieldNumber << 3 | wireType);
+  }
+
+  ProtobufBytes rawVarint(long value)
+  {
+    while ((value & ~0x7FL) != 0)
+    {
+      out.write((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write((int) value);
+    return this;
+  }
+
+  ProtobufBytes rawFixed32(int value)
+  {
+    for (int i = 0; i < 4; i++)
+      out.write(value >>> (8 * i));
+    return this;
+  }
+
+  ProtobufBytes rawFixed64(long value)
+  {
+    for (int i = 0; i < 8; i++)
+      out.write((int) (value >>> (8 * i)));
+    return this;
+  }
+
+  ProtobufBytes raw(byte... value)
+  {
+    out.write(value, 0, value.length);
+    return this;
+  }
+
+  byte[] toByteArray()
+  {
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,257 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ProtobufReaderTest
+{
+  @Test
+  public void testVarints() throws IOException
+  {
+    ProtobufReader reader = reader(new ProtobufBytes().rawVarint(0).rawVarint(1).rawVarint(127).rawVarint(128).rawVarint(300).rawVarint(Long.MAX_VALUE));
+    assertEquals(0, reader.readVarint());
+    assertEquals(1, reader.readVarint());
+    assertEquals(127, reader.readVarint());
+    assertEquals(128, reader.readVarint());
+    assertEquals(5, reader.getPosition());
+    assertEquals(300, reader.readVarint());
+    assertEquals(Long.MAX_VALUE, reader.readVarint());
+    assertEquals(16, reader.getPosition());
+  }
+
+  @Test
+  public void testNegativeInt32IsTenBytes() throws IOException
+  {
+    // int32 is sign extended to 64 bits on the wire
+    ProtobufBytes bytes = new ProtobufBytes().rawVarint(-1L).rawVarint(Integer.MIN_VALUE).rawVarint(1).rawVarint(0);
+    assertEquals(22, bytes.toByteArray().length);
+    ProtobufReader reader = reader(bytes);
+    assertEquals(-1, reader.readInt32());
+    assertEquals(Integer.MIN_VALUE, reader.readInt32());
+    assertTrue(reader.readBool());
+    assertFalse(reader.readBool());
+  }
+
+  @Test
+  public void testMalformedVarint() throws IOException
+  {
+    byte[] bytes = new byte[11];
+    Arrays.fill(bytes, (byte) 0x80);
+    try
+    {
+      reader(new ProtobufBytes().raw(bytes)).readVarint();
+      fail("varint of more than 10 bytes");
+    }
+    catch (IOException e)
+    {
+      assertFalse(e instanceof EOFException);
+    }
+  }
+
+  @Test
+  public void testFixedWidthValuesAreLittleEndian() throws IOException
+  {
+    ProtobufReader reader = reader(new ProtobufBytes().raw((byte) 0x01, (byte) 0x02, (byte) 0x03, (byte) 0x84).rawFixed64(0x0102030405060708L).rawFixed32(Float.floatToIntBits(34.1f)).rawFixed64(Double.doubleToLongBits(-117.25)));
+    assertEquals(0x84030201, reader.readFixed32());
+    assertEquals(0x0102030405060708L, reader.readFixed64());
+    assertEquals(34.1f, reader.readFloat(), 0f);
+    assertEquals(-117.25, reader.readDouble(), 0.0);
+  }
+
+  @Test
+  public void testStrings() throws IOException
+  {
+    ProtobufReader reader = reader(new ProtobufBytes().string(1, "Gare du Nord \u2192 Ch\u00e2telet").string(2, ""));
+    int tag = reader.readTag();
+    assertEquals(1, ProtobufReader.fieldNumber(tag));
+    assertEquals(ProtobufReader.WIRETYPE_LENGTH_DELIMITED, ProtobufReader.wireType(tag));
+    assertEquals("Gare du Nord \u2192 Ch\u00e2telet", reader.readString());
+    assertEquals(2, ProtobufReader.fieldNumber(reader.readTag()));
+    assertEquals("", reader.readString());
+    assertEquals(0, reader.readTag());
+  }
+
+  @Test
+  public void testEmbeddedMessages() throws IOException
+  {
+    ProtobufBytes inner = new ProtobufBytes().varint(1, 7).string(2, "skipped").fixed32(3, 1f);
+    ProtobufReader reader = reader(new ProtobufBytes().message(1, new ProtobufBytes().message(1, inner).varint(2, 42)).varint(2, 9));
+
+    assertEquals(1 << 3 | ProtobufReader.WIRETYPE_LENGTH_DELIMITED, reader.readTag());
+    long outer = reader.pushLimit();
+    assertEquals(1 << 3 | ProtobufReader.WIRETYPE_LENGTH_DELIMITED, reader.readTag());
+    long previous = reader.pushLimit();
+    assertEquals(1 << 3 | ProtobufReader.WIRETYPE_VARINT, reader.readTag());
+    assertEquals(7, reader.readVarint());
+    // leaving the message skips the fields not read
+    reader.popLimit(previous);
+    assertEquals(2 << 3 | ProtobufReader.WIRETYPE_VARINT, reader.readTag());
+    assertEquals(42, reader.readVarint());
+    assertEquals(0, reader.readTag());
+    reader.popLimit(outer);
+
+    assertEquals(2 << 3 | ProtobufReader.WIRETYPE_VARINT, reader.readTag());
+    assertEquals(9, reader.readVarint());
+    assertEquals(0, reader.readTag());
+  }
+
+  @Test
+  public void testFieldRunningPastItsMessage() throws IOException
+  {
+    // a fixed32 that claims 4 bytes of a message of 2
+    ProtobufReader reader = reader(new ProtobufBytes().bytes(1, new ProtobufBytes().tag(1, ProtobufReader.WIRETYPE_FIXED32).raw((byte) 0).toByteArray()).varint(2, 1));
+    reader.readTag();
+    reader.pushLimit();
+    reader.readTag();
+    try
+    {
+      reader.readFixed32();
+      fail("field beyond its message");
+    }
+    catch (IOException e)
+    {
+      assertFalse(e instanceof EOFException);
+    }
+  }
+
+  @Test
+  public void testLengthBeyondItsMessage() throws IOException
+  {
+    ProtobufReader reader = reader(new ProtobufBytes().bytes(1, new ProtobufBytes().tag(1, ProtobufReader.WIRETYPE_LENGTH_DELIMITED).rawVarint(100).toByteArray()));
+    reader.readTag();
+    reader.pushLimit();
+    reader.readTag();
+    try
+    {
+      reader.readString();
+      fail("string longer than its message");
+    }
+    catch (IOException e)
+    {
+      assertFalse(e instanceof EOFException);
+    }
+  }
+
+  @Test
+  public void testSkipField() throws IOException
+  {
+    ProtobufReader reader = reader(new ProtobufBytes().varint(1, -1L).fixed64(2, 1.5).string(3, "abc").fixed32(4, 2.5f).varint(5, 5));
+    for (int i = 0; i < 4; i++)
+      reader.skipField(reader.readTag());
+    assertEquals(5 << 3 | ProtobufReader.WIRETYPE_VARINT, reader.readTag());
+    assertEquals(5, reader.readVarint());
+    assertEquals(0, reader.readTag());
+  }
+
+  @Test
+  public void testUnsupportedWireTypes() throws IOException
+  {
+    // groups (3 and 4) are deprecated and 6 and 7 are not defined
+    for (int wireType : new int[] { 3, 4, 6, 7 })
+    {
+      ProtobufReader reader = reader(new ProtobufBytes().tag(1, wireType).rawVarint(0));
+      try
+      {
+        reader.skipField(reader.readTag());
+        fail("wire type " + wireType);
+      }
+      catch (IOException e)
+      {
+        assertTrue(e.getMessage(), e.getMessage().contains("wire type " + wireType));
+      }
+    }
+  }
+
+  @Test
+  public void testInvalidTag() throws IOException
+  {
+    try
+    {
+      reader(new ProtobufBytes().tag(0, ProtobufReader.WIRETYPE_VARINT)).readTag();
+      fail("field number 0");
+    }
+    catch (IOException e)
+    {
+      assertFalse(e instanceof EOFException);
+    }
+  }
+
+  @Test
+  public void testTruncatedInput() throws IOException
+  {
+    byte[] message = new ProtobufBytes().string(1, "truncated").fixed64(2, 1.0).toByteArray();
+    assertTruncated(message, 5);
+    assertTruncated(message, message.length - 3);
+    // a varint cut after a continuation byte
+    assertTruncated(new ProtobufBytes().varint(1, 300).toByteArray(), 2);
+  }
+
+  @Test
+  public void testEmptyStream() throws IOException
+  {
+    ProtobufReader reader = reader(new ProtobufBytes());
+    assertEquals(0, reader.readTag());
+    assertEquals(0, reader.readTag());
+  }
+
+  private static void assertTruncated(byte[] message, int length) throws IOException
+  {
+    ProtobufReader reader = new ProtobufReader(new ByteArrayInputStream(message, 0, length));
+    try
+    {
+      int tag;
+      while ((tag = reader.readTag()) != 0)
+      {
+        if (ProtobufReader.wireType(tag) == ProtobufReader.WIRETYPE_LENGTH_DELIMITED)
+          reader.readString();
+        else
+          reader.skipField(tag);
+      }
+      fail("message cut at " + length + " bytes");
+    }
+    catch (EOFException e)
+    {
+      // expected
+    }
+  }
+
+  private static ProtobufReader reader(ProtobufBytes bytes)
+  {
+    return new ProtobufReader(new ByteArrayInputStream(bytes.toByteArray()));
+  }
+}
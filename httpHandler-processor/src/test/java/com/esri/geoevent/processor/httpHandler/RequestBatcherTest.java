@@ -0,0 +1,170 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.After;
+import org.junit.Test;
+
+public class RequestBatcherTest
+{
+  private final List<String>   payloads = Collections.synchronizedList(new ArrayList<String>());
+  private final List<String[]> keys     = Collections.synchronizedList(new ArrayList<String[]>());
+  private RequestBatcher       batcher;
+
+  private final RequestBatcher.Flusher flusher = new RequestBatcher.Flusher()
+    {
+      @Override
+      public void flush(String endpointURL, String[] headerValues, String payload, String[] batchKeys)
+      {
+        payloads.add(endpointURL + " " + payload);
+        keys.add(batchKeys);
+      }
+    };
+
+  @After
+  public void tearDown()
+  {
+    if (batcher != null)
+      batcher.shutdown();
+  }
+
+  @Test
+  public void testFlushesByCount()
+  {
+    batcher = new RequestBatcher("test", 2, 1024, 60000, null, flusher);
+    batcher.add("http://a", null, "1", "k1");
+    batcher.add("http://b", null, "9", null);
+    assertTrue(payloads.isEmpty());
+    batcher.add("http://a", null, "2", "k2");
+    assertEquals(Collections.singletonList("http://a [1,2]"), payloads);
+    assertArrayEquals(new String[] {"k1", "k2"}, keys.get(0));
+    assertEquals(1, batcher.getBatchCount());
+    assertEquals(3, batcher.getItemCount());
+  }
+
+  @Test
+  public void testHeadersSeparateBatches()
+  {
+    batcher = new RequestBatcher("test", 2, 1024, 60000, null, flusher);
+    batcher.add("http://a", new String[] {"x"}, "1", null);
+    batcher.add("http://a", new String[] {"y"}, "2", null);
+    assertTrue(payloads.isEmpty());
+    batcher.flushAll();
+    assertEquals(2, payloads.size());
+  }
+
+  @Test
+  public void testNeverExceedsMaxBytes()
+  {
+    // "[" + "aaaa" + "," + "bbbb" + "]" is 11 bytes, one more item would not fit in 12
+    batcher = new RequestBatcher("test", 100, 12, 60000, null, flusher);
+    batcher.add("http://a", null, "aaaa", null);
+    batcher.add("http://a", null, "bbbb", null);
+    assertTrue(payloads.isEmpty());
+    batcher.add("http://a", null, "cccc", null);
+    assertEquals(Collections.singletonList("http://a [aaaa,bbbb]"), payloads);
+    batcher.flushAll();
+    assertEquals("http://a [cccc]", payloads.get(1));
+  }
+
+  @Test
+  public void testMeasuresUtf8Bytes()
+  {
+    // two characters but six bytes each, so the second item does not fit in 12 bytes
+    batcher = new RequestBatcher("test", 100, 12, 60000, null, flusher);
+    batcher.add("http://a", null, "\u20ac\u20ac", null);
+    batcher.add("http://a", null, "\u20ac\u20ac", null);
+    assertEquals(Collections.singletonList("http://a [\u20ac\u20ac]"), payloads);
+    assertEquals(6, RequestBatcher.utf8Length("\u20ac\u20ac"));
+    assertEquals(4, RequestBatcher.utf8Length("\ud83d\ude00"));
+    assertEquals(3, RequestBatcher.utf8Length("a\u00e9"));
+  }
+
+  @Test
+  public void testOversizedItemIsSentAlone()
+  {
+    batcher = new RequestBatcher("test", 100, 8, 60000, "{\"items\":[{$items}]}", flusher);
+    batcher.add("http://a", null, "1", null);
+    batcher.add("http://a", null, "too large for the batch", null);
+    assertEquals(2, payloads.size());
+    assertEquals("http://a {\"items\":[1]}", payloads.get(0));
+    assertEquals("http://a {\"items\":[too large for the batch]}", payloads.get(1));
+  }
+
+  @Test
+  public void testFlushesAfterLinger() throws Exception
+  {
+    batcher = new RequestBatcher("test", 100, 1024, 20, null, flusher);
+    batcher.add("http://a", null, "1", null);
+    batcher.add("http://a", null, "2", null);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (payloads.isEmpty() && System.currentTimeMillis() < deadline)
+      Thread.sleep(5);
+    assertEquals(Collections.singletonList("http://a [1,2]"), payloads);
+  }
+
+  @Test
+  public void testShutdownFlushesPendingBatches()
+  {
+    batcher = new RequestBatcher("test", 100, 1024, 60000, null, flusher);
+    batcher.add("http://a", null, "1", null);
+    batcher.shutdown();
+    batcher = null;
+    assertEquals(Collections.singletonList("http://a [1]"), payloads);
+  }
+
+  @Test
+  public void testMapsResponseByPosition() throws Exception
+  {
+    JsonNode items = new ObjectMapper().readTree("[{\"id\":\"a\"},{\"id\":\"b\"}]");
+    JsonNode[] matched = RequestBatcher.mapResponse(items, new String[3], null);
+    assertEquals("a", matched[0].get("id").asText());
+    assertEquals("b", matched[1].get("id").asText());
+    assertNull(matched[2]);
+  }
+
+  @Test
+  public void testMapsResponseByKey() throws Exception
+  {
+    JsonNode items = new ObjectMapper().readTree("{\"results\":[{\"result\":{\"id\":\"b\"},\"ok\":true},{\"result\":{\"id\":\"a\"},\"ok\":false}]}").get("results");
+    JsonNode[] matched = RequestBatcher.mapResponse(items, new String[] {"a", "c", null, "b"}, "id");
+    assertEquals(false, matched[0].get("ok").asBoolean());
+    assertNull(matched[1]);
+    assertNull(matched[2]);
+    assertEquals(true, matched[3].get("ok").asBoolean());
+  }
+}
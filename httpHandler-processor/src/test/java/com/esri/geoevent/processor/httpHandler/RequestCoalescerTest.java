@@ -0,0 +1,95 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RequestCoalescerTest
+{
+  private final RequestCoalescer coalescer = new RequestCoalescer();
+
+  @Test
+  public void testFollowersJoinTheLeader()
+  {
+    long leader = coalescer.join("a", 60000);
+    assertTrue(leader > 0);
+    assertEquals(0, coalescer.join("a", 60000));
+    assertEquals(0, coalescer.join("a", 60000));
+    assertTrue(coalescer.join("b", 60000) > 0);
+    assertEquals(2, coalescer.getInFlightCount());
+
+    assertEquals(2, coalescer.complete("a", leader));
+    assertEquals(1, coalescer.getInFlightCount());
+    assertEquals(2, coalescer.getLeaderCount());
+    assertEquals(2, coalescer.getCoalescedCount());
+  }
+
+  @Test
+  public void testCompletedKeyStartsANewFlight()
+  {
+    long first = coalescer.join("a", 60000);
+    assertEquals(0, coalescer.complete("a", first));
+    long second = coalescer.join("a", 60000);
+    assertTrue(second > 0);
+    assertTrue(second != first);
+    assertEquals(0, coalescer.complete("a", first));
+    assertEquals(1, coalescer.getInFlightCount());
+  }
+
+  @Test
+  public void testStaleLeaderDoesNotEndItsReplacement() throws Exception
+  {
+    long stale = coalescer.join("a", 60000);
+    assertEquals(0, coalescer.join("a", 60000));
+    Thread.sleep(5);
+    // the first leader is presumed lost, the next request replaces it and takes its waiter over
+    long replacement = coalescer.join("a", 1);
+    assertTrue(replacement > 0);
+    assertTrue(replacement != stale);
+    assertEquals(0, coalescer.join("a", 60000));
+
+    // the stale leader finishing late only delivers its own response
+    assertEquals(0, coalescer.complete("a", stale));
+    assertEquals(1, coalescer.getInFlightCount());
+    assertEquals(0, coalescer.join("a", 60000));
+
+    assertEquals(3, coalescer.complete("a", replacement));
+    assertEquals(0, coalescer.getInFlightCount());
+  }
+
+  @Test
+  public void testClearEndsAllFlights()
+  {
+    long leader = coalescer.join("a", 60000);
+    coalescer.join("a", 60000);
+    coalescer.clear();
+    assertEquals(0, coalescer.getInFlightCount());
+    assertEquals(0, coalescer.complete("a", leader));
+  }
+}
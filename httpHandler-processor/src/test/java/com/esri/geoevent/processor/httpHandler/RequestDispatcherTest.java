@@ -0,0 +1,261 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.esri.geoevent.processor.httpHandler.RequestDispatcher.OverflowPolicy;
+
+public class RequestDispatcherTest
+{
+  @Rule
+  public TemporaryFolder        folder = new TemporaryFolder();
+
+  private final List<Integer>   ran    = Collections.synchronizedList(new ArrayList<Integer>());
+  private CountDownLatch        gate;
+  private RequestDispatcher     dispatcher;
+
+  private class Task implements RequestDispatcher.SpillableTask
+  {
+    private final int id;
+
+    Task(int id)
+    {
+      this.id = id;
+    }
+
+    @Override
+    public void run()
+    {
+      try
+      {
+        gate.await(5, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+      ran.add(id);
+    }
+
+    @Override
+    public void writeTo(DataOutputStream out) throws IOException
+    {
+      out.writeInt(id);
+    }
+  }
+
+  private final RequestDispatcher.SpillReader reader = new RequestDispatcher.SpillReader()
+    {
+      @Override
+      public RequestDispatcher.SpillableTask readFrom(DataInputStream in) throws IOException
+      {
+        return new Task(in.readInt());
+      }
+    };
+
+  @Before
+  public void setUp()
+  {
+    gate = new CountDownLatch(1);
+  }
+
+  @After
+  public void tearDown()
+  {
+    gate.countDown();
+    if (dispatcher != null)
+      dispatcher.shutdown();
+  }
+
+  private RequestDispatcher create(OverflowPolicy policy, RequestDispatcher predecessor)
+  {
+    return new RequestDispatcher("test", 1, 2, policy, folder.getRoot(), reader, predecessor);
+  }
+
+  // one task occupies the single worker, the next two fill the queue
+  private void fill(RequestDispatcher target) throws InterruptedException
+  {
+    target.dispatch(new Task(1));
+    // a prestarted worker already counts as active before it has taken the task
+    while (target.getActiveCount() == 0 || target.getQueueSize() > 0)
+      Thread.sleep(1);
+    target.dispatch(new Task(2));
+    target.dispatch(new Task(3));
+  }
+
+  private void awaitRan(int count) throws InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (ran.size() < count && System.currentTimeMillis() < deadline)
+      Thread.sleep(5);
+  }
+
+  @Test
+  public void testParsePolicy()
+  {
+    assertEquals(OverflowPolicy.DROP_OLDEST, RequestDispatcher.parsePolicy(" drop_oldest "));
+    assertEquals(OverflowPolicy.BLOCK, RequestDispatcher.parsePolicy("unknown"));
+    assertEquals(OverflowPolicy.BLOCK, RequestDispatcher.parsePolicy(null));
+  }
+
+  @Test
+  public void testDropNewest() throws Exception
+  {
+    dispatcher = create(OverflowPolicy.DROP_NEWEST, null);
+    fill(dispatcher);
+    dispatcher.dispatch(new Task(4));
+    assertEquals(1, dispatcher.getDroppedCount());
+    gate.countDown();
+    awaitRan(3);
+    assertEquals(Arrays.asList(1, 2, 3), ran);
+  }
+
+  @Test
+  public void testDropOldest() throws Exception
+  {
+    dispatcher = create(OverflowPolicy.DROP_OLDEST, null);
+    fill(dispatcher);
+    dispatcher.dispatch(new Task(4));
+    assertEquals(1, dispatcher.getDroppedCount());
+    gate.countDown();
+    awaitRan(3);
+    assertEquals(Arrays.asList(1, 3, 4), ran);
+  }
+
+  @Test
+  public void testTryDispatchDoesNotApplyPolicy() throws Exception
+  {
+    dispatcher = create(OverflowPolicy.BLOCK, null);
+    fill(dispatcher);
+    assertFalse(dispatcher.tryDispatch(new Task(4)));
+    assertEquals(0, dispatcher.getDroppedCount());
+  }
+
+  @Test
+  public void testSpillKeepsOrder() throws Exception
+  {
+    dispatcher = create(OverflowPolicy.SPILL_TO_DISK, null);
+    fill(dispatcher);
+    for (int id = 4; id <= 10; id++)
+      dispatcher.dispatch(new Task(id));
+    assertEquals(7, dispatcher.getSpilledCount());
+    assertEquals(0, dispatcher.getDroppedCount());
+    gate.countDown();
+    awaitRan(10);
+    assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), ran);
+  }
+
+  @Test
+  public void testShutdownRunsSpilledTasks() throws Exception
+  {
+    dispatcher = create(OverflowPolicy.SPILL_TO_DISK, null);
+    fill(dispatcher);
+    for (int id = 4; id <= 6; id++)
+      dispatcher.dispatch(new Task(id));
+    gate.countDown();
+    dispatcher.shutdown();
+    dispatcher = null;
+    assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), ran);
+    assertFalse(new File(folder.getRoot(), "test.spill").exists());
+  }
+
+  @Test
+  public void testSuccessorTakesOverSpill() throws Exception
+  {
+    RequestDispatcher previous = create(OverflowPolicy.SPILL_TO_DISK, null);
+    fill(previous);
+    for (int id = 4; id <= 6; id++)
+      previous.dispatch(new Task(id));
+    previous.shutdownAsync();
+    gate.countDown();
+    dispatcher = create(OverflowPolicy.BLOCK, previous);
+    awaitRan(6);
+    assertEquals(6, ran.size());
+    assertTrue(ran.containsAll(Arrays.asList(4, 5, 6)));
+  }
+
+  @Test
+  public void testSuccessorDoesNotWaitForTheBacklog() throws Exception
+  {
+    RequestDispatcher previous = create(OverflowPolicy.SPILL_TO_DISK, null);
+    fill(previous);
+    for (int id = 4; id <= 9; id++)
+      previous.dispatch(new Task(id));
+    previous.shutdownAsync();
+    // six spilled tasks do not fit the queue of two of a blocking successor whose worker is held up
+    long start = System.currentTimeMillis();
+    dispatcher = create(OverflowPolicy.BLOCK, previous);
+    assertTrue(System.currentTimeMillis() - start < 1000);
+    assertTrue(ran.isEmpty());
+    gate.countDown();
+    awaitRan(9);
+    assertEquals(9, ran.size());
+    assertTrue(ran.containsAll(Arrays.asList(4, 5, 6, 7, 8, 9)));
+  }
+
+  @Test
+  public void testDispatchAfterShutdownIsCounted() throws Exception
+  {
+    dispatcher = create(OverflowPolicy.BLOCK, null);
+    dispatcher.shutdownAsync();
+    dispatcher.dispatch(new Task(1));
+    assertEquals(1, dispatcher.getDroppedCount());
+  }
+
+  @Test
+  public void testSpillDirectoryIsPrivate() throws Exception
+  {
+    File directory = new File(folder.getRoot(), "spill");
+    dispatcher = new RequestDispatcher("test", 1, 2, OverflowPolicy.SPILL_TO_DISK, directory, reader, null);
+    if (Files.getFileAttributeView(directory.toPath(), PosixFileAttributeView.class) == null)
+      return;
+    assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(directory.toPath())));
+    assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(new File(directory, "test.spill").toPath())));
+  }
+}
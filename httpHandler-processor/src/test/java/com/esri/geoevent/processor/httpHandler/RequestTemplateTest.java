@@ -0,0 +1,141 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.esri.ges.core.geoevent.FieldException;
+import com.esri.ges.core.geoevent.FieldType;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+
+public class RequestTemplateTest
+{
+  @Test
+  public void testLiteral()
+  {
+    String url = "http://host/path?f=json";
+    RequestTemplate template = RequestTemplate.compile(url);
+    assertTrue(template.isLiteral());
+    assertFalse(template.hasFieldSlots());
+    assertSame(url, template.render(null, null, false));
+    // empty and unclosed braces are text
+    assertEquals("a{}b{c", RequestTemplate.compile("a{}b{c").render(null, null, false));
+    assertEquals("", RequestTemplate.compile(null).render(null, null, false));
+  }
+
+  @Test
+  public void testFieldSlots() throws FieldException
+  {
+    RequestTemplate template = RequestTemplate.compile("http://host/{ id }/items?name={name}&id={id}&x={missing}");
+    assertTrue(template.hasFieldSlots());
+    assertFalse(template.isLiteral());
+
+    GeoEventDefinition definition = SdkFakes.definition("guid-1", "items", SdkFakes.field("name", FieldType.String), SdkFakes.field("id", FieldType.Integer));
+    GeoEvent event = SdkFakes.event(definition);
+    event.setField(0, "a b");
+    event.setField(1, 42);
+    // a field the definition does not have is rendered as its name
+    assertEquals("http://host/42/items?name=a b&id=42&x=missing", template.render(event, null, false));
+
+    event.setField(0, null);
+    assertEquals("http://host/42/items?name=&id=42&x=missing", template.render(event, null, false));
+    // without an event, e.g. when polling, every field slot is rendered as its name
+    assertEquals("http://host/id/items?name=name&id=id&x=missing", template.render(null, null, false));
+  }
+
+  @Test
+  public void testIndexesAreCachedPerGuid() throws FieldException
+  {
+    RequestTemplate template = RequestTemplate.compile("{a}/{b}");
+    GeoEventDefinition first = SdkFakes.definition("guid-1", "items", SdkFakes.field("a", FieldType.String), SdkFakes.field("b", FieldType.String));
+    GeoEvent event = SdkFakes.event(first);
+    event.setField(0, "1");
+    event.setField(1, "2");
+    assertEquals("1/2", template.render(event, null, false));
+
+    // the same GUID with the same number of fields reuses the indexes resolved for it
+    GeoEventDefinition reordered = SdkFakes.definition("guid-1", "items", SdkFakes.field("b", FieldType.String), SdkFakes.field("a", FieldType.String));
+    GeoEvent cached = SdkFakes.event(reordered);
+    cached.setField(0, "x");
+    cached.setField(1, "y");
+    assertEquals("x/y", template.render(cached, null, false));
+
+    // a definition edited in place keeps its GUID, a changed field count resolves the indexes again
+    GeoEventDefinition edited = SdkFakes.definition("guid-1", "items", SdkFakes.field("c", FieldType.String), SdkFakes.field("b", FieldType.String), SdkFakes.field("a", FieldType.String));
+    GeoEvent resolved = SdkFakes.event(edited);
+    resolved.setField(0, "0");
+    resolved.setField(1, "b");
+    resolved.setField(2, "a");
+    assertEquals("a/b", template.render(resolved, null, false));
+
+    // another GUID has indexes of its own
+    GeoEventDefinition other = SdkFakes.definition("guid-2", "items", SdkFakes.field("b", FieldType.String), SdkFakes.field("a", FieldType.String));
+    GeoEvent otherEvent = SdkFakes.event(other);
+    otherEvent.setField(0, "q");
+    otherEvent.setField(1, "p");
+    assertEquals("p/q", template.render(otherEvent, null, false));
+    assertEquals("1/2", template.render(event, null, false));
+  }
+
+  @Test
+  public void testLastPollingDateTime()
+  {
+    RequestTemplate template = RequestTemplate.compile("since={" + RequestTemplate.LAST_POLLING_DATE_TIME + "}");
+    assertFalse(template.hasFieldSlots());
+    Date since = new Date(1500000000123L);
+    assertEquals("since=1500000000", template.render(null, since, false));
+    assertEquals("since=1500000000123", template.render(null, since, true));
+
+    // before the first poll the current time is used
+    long before = System.currentTimeMillis();
+    long rendered = Long.parseLong(template.render(null, null, true).substring("since=".length()));
+    assertTrue(rendered >= before && rendered <= System.currentTimeMillis());
+  }
+
+  @Test
+  public void testCurrentDateTime()
+  {
+    RequestTemplate template = RequestTemplate.compile("{" + RequestTemplate.CURRENT_DATE_TIME + "}-{" + RequestTemplate.LAST_POLLING_DATE_TIME + "}");
+    long before = System.currentTimeMillis();
+    String[] times = template.render(null, new Date(0), false).split("-");
+    long after = System.currentTimeMillis();
+    long seconds = Long.parseLong(times[0]);
+    assertTrue(seconds >= before / 1000 && seconds <= after / 1000);
+    assertEquals("0", times[1]);
+
+    long millis = Long.parseLong(template.render(null, new Date(0), true).split("-")[0]);
+    assertTrue(millis >= before && millis <= System.currentTimeMillis());
+  }
+}
@@ -0,0 +1,134 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ResponseCacheTest
+{
+  private static final long HOUR = 60L * 60 * 1000;
+
+  @Test
+  public void testEvictsLeastRecentlyUsedEntry()
+  {
+    ResponseCache cache = new ResponseCache(HOUR, 0, 2, 1024);
+    cache.put("a", new byte[1], null);
+    cache.put("b", new byte[1], null);
+    assertNotNull(cache.get("a"));
+    cache.put("c", new byte[1], null);
+    assertEquals(2, cache.size());
+    assertNull(cache.get("b"));
+    assertNotNull(cache.get("a"));
+    assertNotNull(cache.get("c"));
+    assertEquals(1, cache.getEvictionCount());
+  }
+
+  @Test
+  public void testEvictsBySize()
+  {
+    ResponseCache cache = new ResponseCache(HOUR, 0, 100, 10);
+    cache.put("a", new byte[4], null);
+    cache.put("b", new byte[4], null);
+    cache.put("c", new byte[4], null);
+    assertEquals(8, cache.getTotalBytes());
+    assertNull(cache.get("a"));
+    // a body larger than the whole cache is not stored
+    cache.put("d", new byte[11], null);
+    assertNull(cache.get("d"));
+    assertEquals(8, cache.getTotalBytes());
+  }
+
+  @Test
+  public void testReplacingAnEntryKeepsTheSizeRight()
+  {
+    ResponseCache cache = new ResponseCache(HOUR, 0, 10, 100);
+    cache.put("a", new byte[10], "UTF-8");
+    cache.put("a", new byte[3], "ISO-8859-1");
+    assertEquals(1, cache.size());
+    assertEquals(3, cache.getTotalBytes());
+    assertEquals("ISO-8859-1", cache.get("a").getCharset());
+  }
+
+  @Test
+  public void testStaleWhileRevalidate() throws InterruptedException
+  {
+    ResponseCache cache = new ResponseCache(0, HOUR, 10, 100);
+    cache.put("a", new byte[1], null);
+    Thread.sleep(5);
+    ResponseCache.Entry entry = cache.get("a");
+    assertNotNull(entry);
+    assertFalse(cache.isFresh(entry));
+    assertEquals(1, cache.getStaleHitCount());
+
+    // a single request revalidates the entry until it fails
+    assertTrue(cache.startRefresh(entry));
+    assertFalse(cache.startRefresh(entry));
+    cache.refreshFailed("a");
+    assertTrue(cache.startRefresh(entry));
+  }
+
+  @Test
+  public void testExpiredEntryIsRemoved() throws InterruptedException
+  {
+    ResponseCache cache = new ResponseCache(0, 0, 10, 100);
+    cache.put("a", new byte[1], null);
+    Thread.sleep(5);
+    assertNull(cache.get("a"));
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getTotalBytes());
+    assertEquals(1, cache.getExpirationCount());
+  }
+
+  @Test
+  public void testFreshEntry()
+  {
+    ResponseCache cache = new ResponseCache(HOUR, 0, 10, 100);
+    byte[] body = new byte[1];
+    cache.put("a", body, null);
+    ResponseCache.Entry entry = cache.get("a");
+    assertSame(body, entry.getBody());
+    assertTrue(cache.isFresh(entry));
+    assertNull(cache.get("b"));
+    assertEquals(0.5, cache.getHitRatio(), 1e-9);
+  }
+
+  @Test
+  public void testKeyIncludesMethodHeadersAndBody()
+  {
+    String key = ResponseCache.key("GET", "http://host/a", "", new String[] { "token1" });
+    assertEquals(key, ResponseCache.key("GET", "http://host/a", "", new String[] { "token1" }));
+    assertFalse(key.equals(ResponseCache.key("POST", "http://host/a", "", new String[] { "token1" })));
+    assertFalse(key.equals(ResponseCache.key("GET", "http://host/a", "", new String[] { "token2" })));
+    assertFalse(key.equals(ResponseCache.key("GET", "http://host/a", "x", new String[] { "token1" })));
+  }
+}
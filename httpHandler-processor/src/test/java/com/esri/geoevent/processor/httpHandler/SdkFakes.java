@@ -0,0 +1,305 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.esri.ges.core.geoevent.FieldCardinality;
+import com.esri.ges.core.geoevent.FieldDefinition;
+import com.esri.ges.core.geoevent.FieldGroup;
+import com.esri.ges.core.geoevent.FieldType;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+import com.esri.ges.manager.geoeventdefinition.GeoEventDefinitionManager;
+import com.esri.ges.messaging.GeoEventCreator;
+import com.esri.ges.messaging.GeoEventProducer;
+
+/**
+ * In-memory stand-ins for the GeoEvent Server components the parsers talk to. They are dynamic proxies, so
+ * only the methods used here are implemented and every other method returns null, zero or false.
+ */
+final class SdkFakes
+{
+  private SdkFakes()
+  {
+  }
+
+  static FieldDefinition field(String name, FieldType type)
+  {
+    return field(name, type, FieldCardinality.One, Collections.<FieldDefinition>emptyList());
+  }
+
+  // a Group field of cardinality Many, such as a list of stops
+  static FieldDefinition group(String name, FieldDefinition... children)
+  {
+    return field(name, FieldType.Group, FieldCardinality.Many, Arrays.asList(children));
+  }
+
+  private static FieldDefinition field(final String name, final FieldType type, final FieldCardinality cardinality, final List<FieldDefinition> children)
+  {
+    return proxy(FieldDefinition.class, new Handler()
+      {
+        @Override
+        Object call(String method, Object[] args)
+        {
+          switch (method)
+          {
+            case "getName":
+              return name;
+            case "getType":
+              return type;
+            case "getCardinality":
+              return cardinality;
+            case "getChildren":
+              return children;
+            case "getTags":
+              return Collections.emptyList();
+            default:
+              return null;
+          }
+        }
+      });
+  }
+
+  static GeoEventDefinition definition(final String guid, final String name, FieldDefinition... fields)
+  {
+    final List<FieldDefinition> fieldDefinitions = new ArrayList<FieldDefinition>();
+    Collections.addAll(fieldDefinitions, fields);
+    final Map<String, Integer> indexes = new HashMap<String, Integer>();
+    for (int i = 0; i < fields.length; i++)
+      indexes.put(fields[i].getName(), i);
+    return proxy(GeoEventDefinition.class, new Handler()
+      {
+        @Override
+        Object call(String method, Object[] args)
+        {
+          switch (method)
+          {
+            case "getGuid":
+              return guid;
+            case "getName":
+              return name;
+            case "getFieldDefinitions":
+              return fieldDefinitions;
+            case "getIndexOf":
+              return indexes.containsKey(args[0]) ? indexes.get(args[0]) : -1;
+            case "getFieldDefinition":
+              return indexes.containsKey(args[0]) ? fieldDefinitions.get(indexes.get(args[0])) : null;
+            default:
+              return null;
+          }
+        }
+      });
+  }
+
+  /**
+   * A creator whose manager holds the given definitions. Like the server, definitions are looked up by
+   * GUID in a map, while a search by name scans all of them and returns a new collection.
+   */
+  static GeoEventCreator creator(GeoEventDefinition... definitions)
+  {
+    final List<GeoEventDefinition> registered = new CopyOnWriteArrayList<GeoEventDefinition>();
+    final Map<String, GeoEventDefinition> byGuid = new ConcurrentHashMap<String, GeoEventDefinition>();
+    for (GeoEventDefinition definition : definitions)
+    {
+      registered.add(definition);
+      byGuid.put(definition.getGuid(), definition);
+    }
+    final GeoEventDefinitionManager manager = proxy(GeoEventDefinitionManager.class, new Handler()
+      {
+        @Override
+        Object call(String method, Object[] args)
+        {
+          switch (method)
+          {
+            case "getGeoEventDefinition":
+              return byGuid.get(args[0]);
+            case "searchGeoEventDefinitionByName":
+              List<GeoEventDefinition> found = new ArrayList<GeoEventDefinition>();
+              for (GeoEventDefinition definition : registered)
+              {
+                if (definition.getName().equals(args[0]))
+                  found.add(definition);
+              }
+              return found;
+            case "addGeoEventDefinition":
+              GeoEventDefinition added = (GeoEventDefinition) args[0];
+              registered.add(added);
+              if (added.getGuid() != null)
+                byGuid.put(added.getGuid(), added);
+              return null;
+            case "deleteGeoEventDefinition":
+              GeoEventDefinition deleted = byGuid.remove(args[0]);
+              registered.remove(deleted);
+              return null;
+            default:
+              return null;
+          }
+        }
+      });
+    return proxy(GeoEventCreator.class, new Handler()
+      {
+        @Override
+        Object call(String method, Object[] args)
+        {
+          switch (method)
+          {
+            case "getGeoEventDefinitionManager":
+              return manager;
+            case "create":
+              return event(byGuid.get(args[0]));
+            default:
+              return null;
+          }
+        }
+      });
+  }
+
+  // collects the events sent
+  static GeoEventProducer producer(final List<GeoEvent> sent)
+  {
+    return proxy(GeoEventProducer.class, new Handler()
+      {
+        @Override
+        Object call(String method, Object[] args)
+        {
+          if (method.equals("send"))
+            sent.add((GeoEvent) args[0]);
+          return null;
+        }
+      });
+  }
+
+  static GeoEvent event(GeoEventDefinition definition)
+  {
+    return fieldGroup(GeoEvent.class, definition, definition.getFieldDefinitions());
+  }
+
+  // an event, or a group of one, holding the values of the fields in order
+  private static <T extends FieldGroup> T fieldGroup(Class<T> type, final GeoEventDefinition definition, final List<FieldDefinition> fields)
+  {
+    final Object[] values = new Object[fields.size()];
+    final Object[] geometry = new Object[1];
+    return proxy(type, new Handler()
+      {
+        @Override
+        Object call(String method, Object[] args)
+        {
+          switch (method)
+          {
+            case "getGeoEventDefinition":
+              return definition;
+            case "getField":
+              return values[index(args[0])];
+            case "setField":
+              values[index(args[0])] = args[1];
+              return null;
+            case "getGeometry":
+              return geometry[0];
+            case "setGeometry":
+              geometry[0] = args[0];
+              return null;
+            case "createFieldGroup":
+              return fieldGroup(FieldGroup.class, definition, fields.get(index(args[0])).getChildren());
+            case "getFieldGroups":
+              return Collections.emptyList();
+            default:
+              return null;
+          }
+        }
+
+        private int index(Object field)
+        {
+          if (field instanceof Integer)
+            return (Integer) field;
+          for (int i = 0; i < fields.size(); i++)
+          {
+            if (fields.get(i).getName().equals(field))
+              return i;
+          }
+          throw new IllegalArgumentException("No field " + field);
+        }
+      });
+  }
+
+  private static <T> T proxy(Class<T> type, Handler handler)
+  {
+    return type.cast(Proxy.newProxyInstance(SdkFakes.class.getClassLoader(), new Class<?>[] { type }, handler));
+  }
+
+  private abstract static class Handler implements InvocationHandler
+  {
+    abstract Object call(String method, Object[] args);
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+    {
+      switch (method.getName())
+      {
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return "fake@" + Integer.toHexString(System.identityHashCode(proxy));
+        default:
+          Object result = call(method.getName(), args);
+          return (result == null) ? defaultValue(method.getReturnType()) : result;
+      }
+    }
+
+    private static Object defaultValue(Class<?> type)
+    {
+      if (!type.isPrimitive() || type == void.class)
+        return null;
+      if (type == boolean.class)
+        return false;
+      if (type == char.class)
+        return (char) 0;
+      if (type == long.class)
+        return 0L;
+      if (type == double.class)
+        return 0.0;
+      if (type == float.class)
+        return 0f;
+      if (type == byte.class)
+        return (byte) 0;
+      if (type == short.class)
+        return (short) 0;
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,195 @@
+/*
+  Copyright 2017 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.​
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+*/
+
+
+package com.esri.geoevent.processor.httpHandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ObjectNode;
+import org.junit.Test;
+
+public class XmlRecordReaderTest
+{
+  private static final String RSS    = "<?xml version=\"1.0\"?>\n<rss version=\"2.0\" xmlns:geo=\"http://www.w3.org/2003/01/geo/wgs84_pos#\">\n  <channel>\n    <title>Feed</title>\n    <item id=\"a1\">\n      <title>First</title>\n      <geo:lat>34.5</geo:lat>\n      <geo:long>-117.25</geo:long>\n      <category>x</category>\n      <category>y</category>\n    </item>\n    <item id=\"a2\">\n      <title><![CDATA[Second & <last>]]></title>\n      <code>007</code>\n      <active>TRUE</active>\n      <note lang=\"en\">text</note>\n    </item>\n  </channel>\n</rss>";
+
+  private final ObjectMapper  mapper = new ObjectMapper();
+
+  @Test
+  public void testPaths() throws IOException
+  {
+    assertEquals(2, read("/rss/channel/item", RSS).size());
+    assertEquals(2, read("channel/item", RSS).size());
+    assertEquals(2, read("item", RSS).size());
+    assertEquals(2, read("*/item", RSS).size());
+    assertEquals(2, read("/rss/*/item", RSS).size());
+    assertEquals(0, read("/channel/item", RSS).size());
+    assertEquals(0, read("rss/item", RSS).size());
+  }
+
+  @Test
+  public void testElementsBecomeFields() throws IOException
+  {
+    List<ObjectNode> items = read("item", RSS);
+    assertEquals(mapper.readTree("{\"id\":\"a1\",\"title\":\"First\",\"geo:lat\":34.5,\"geo:long\":-117.25,\"category\":[\"x\",\"y\"]}"), items.get(0));
+    assertEquals(mapper.readTree("{\"id\":\"a2\",\"title\":\"Second & <last>\",\"code\":\"007\",\"active\":true,\"note\":{\"lang\":\"en\",\"content\":\"text\"}}"), items.get(1));
+  }
+
+  @Test
+  public void testPrefixedRecordElements() throws IOException
+  {
+    String xml = "<a:feed xmlns:a=\"urn:a\"><a:entry><a:id>1</a:id></a:entry><a:entry><a:id>2</a:id></a:entry></a:feed>";
+    // the last step matches the local or the prefixed name, the others the name as written
+    assertEquals(2, read("entry", xml).size());
+    assertEquals(2, read("a:feed/a:entry", xml).size());
+    assertEquals(0, read("feed/entry", xml).size());
+    assertEquals(1, read("entry", xml).get(0).get("a:id").getLongValue());
+  }
+
+  @Test
+  public void testNestedRecordElementsStayInTheirRecord() throws IOException
+  {
+    List<ObjectNode> records = read("item", "<r><item><n>1</n><item><n>2</n></item></item></r>");
+    assertEquals(1, records.size());
+    assertEquals(2, records.get(0).get("item").get("n").getLongValue());
+  }
+
+  @Test
+  public void testTextOnlyRecordsAreSkipped() throws IOException
+  {
+    List<ObjectNode> records = read("v", "<r><v>1</v><v a=\"1\"/></r>");
+    assertEquals(1, records.size());
+    assertEquals(1, records.get(0).get("a").getLongValue());
+  }
+
+  @Test
+  public void testWholeDocument() throws IOException
+  {
+    ObjectNode document = XmlRecordReader.readDocument(stream("<r><a>1</a><a>2</a><b> x </b></r>"), null);
+    // integers are longs, which the mapper would read as ints, so the text is compared
+    assertEquals("{\"r\":{\"a\":[1,2],\"b\":\"x\"}}", document.toString());
+    assertEquals(1, read(null, "<r><a>1</a></r>").size());
+  }
+
+  @Test
+  public void testTypedValues()
+  {
+    assertEquals(12L, XmlRecordReader.toValue("12").getLongValue());
+    assertEquals(-0.5, XmlRecordReader.toValue("-0.5").getDoubleValue(), 0);
+    assertEquals(0.5, XmlRecordReader.toValue(".5").getDoubleValue(), 0);
+    assertEquals(1e5, XmlRecordReader.toValue("1e5").getDoubleValue(), 0);
+    assertEquals(0L, XmlRecordReader.toValue("0").getLongValue());
+    assertTrue(XmlRecordReader.toValue("false").isBoolean());
+    assertTrue(XmlRecordReader.toValue("0123").isTextual());
+    assertTrue(XmlRecordReader.toValue("1.2.3").isTextual());
+    assertTrue(XmlRecordReader.toValue("1e999").isTextual());
+    assertTrue(XmlRecordReader.toValue("-").isTextual());
+    assertTrue(XmlRecordReader.toValue("").isTextual());
+  }
+
+  @Test
+  public void testCharset() throws IOException
+  {
+    byte[] latin1 = "<r><item><name>Zürich</name></item></r>".getBytes(StandardCharsets.ISO_8859_1);
+    final List<ObjectNode> records = new ArrayList<ObjectNode>();
+    XmlRecordReader.compile("item").read(new ByteArrayInputStream(latin1), "ISO-8859-1", new XmlRecordReader.Target()
+      {
+        @Override
+        public void found(ObjectNode record)
+        {
+          records.add(record);
+        }
+      });
+    assertEquals("Zürich", records.get(0).get("name").getTextValue());
+  }
+
+  @Test
+  public void testExternalEntitiesAreNotResolved() throws IOException
+  {
+    String xml = "<?xml version=\"1.0\"?><!DOCTYPE r [<!ENTITY e SYSTEM \"file:///etc/hostname\">]><r><item><v>&e;</v><w>1</w></item></r>";
+    try
+    {
+      for (ObjectNode record : read("item", xml))
+      {
+        JsonNode v = record.get("v");
+        assertFalse(v != null && v.isTextual() && !v.getTextValue().isEmpty());
+      }
+    }
+    catch (IOException e)
+    {
+      // rejecting the document is as good
+    }
+  }
+
+  @Test
+  public void testMalformedDocument()
+  {
+    try
+    {
+      read("item", "<r><item><v>1</item></r>");
+      fail();
+    }
+    catch (IOException e)
+    {
+      ;
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptyStep()
+  {
+    XmlRecordReader.compile("channel//item");
+  }
+
+  private static List<ObjectNode> read(String path, String xml) throws IOException
+  {
+    final List<ObjectNode> records = new ArrayList<ObjectNode>();
+    int count = XmlRecordReader.compile(path).read(stream(xml), null, new XmlRecordReader.Target()
+      {
+        @Override
+        public void found(ObjectNode record)
+        {
+          records.add(record);
+        }
+      });
+    assertEquals(records.size(), count);
+    return records;
+  }
+
+  private static ByteArrayInputStream stream(String xml)
+  {
+    return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+  }
+}